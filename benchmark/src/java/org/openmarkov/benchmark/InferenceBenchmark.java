@@ -0,0 +1,494 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.openmarkov.core.exception.ParserException;
+import org.openmarkov.core.inference.InferenceAlgorithm;
+import org.openmarkov.core.inference.InferenceOptions;
+import org.openmarkov.core.inference.annotation.InferenceManager;
+import org.openmarkov.core.model.network.EvidenceCase;
+import org.openmarkov.core.model.network.Finding;
+import org.openmarkov.core.model.network.NodeType;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.ProbNode;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.VariableType;
+import org.openmarkov.core.model.network.potential.OffHeapTable;
+import org.openmarkov.core.model.network.potential.TablePotential;
+import org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations;
+import org.openmarkov.core.model.network.type.InfluenceDiagramType;
+import org.openmarkov.io.probmodel.PGMXReader;
+
+/**
+ * Measures, for each network received and each inference algorithm
+ * registered with <code>InferenceAnnotation</code> that can evaluate it, the
+ * latency of <code>getProbsAndUtilities</code>,
+ * <code>getJointProbability</code> and, on influence diagrams,
+ * <code>getGlobalUtility</code>, the peak heap during the queries and the
+ * error of the results with respect to those of an exact algorithm. Usage:
+ * <pre>
+ * java -cp benchmark/OpenMarkovBenchmark.jar org.openmarkov.benchmark.InferenceBenchmark
+ *      [-runs n] [-warmup n] [-evidence n] [-joint n] [-seed n] [-algorithms a,b...]
+ *      [-reference algorithm] [-singlePrecision] [-decisionDiagrams]
+ *      [-offHeapThreshold n]
+ *      [-rf json|csv] [-rff file] network.pgmx...
+ * </pre>
+ * Each run sets a random evidence case with <code>-evidence</code> findings
+ * on chance variables, discarding those that are incompatible for the
+ * reference algorithm, and asks for the joint probability of
+ * <code>-joint</code> random variables without findings. The same evidence
+ * cases are used for every algorithm. The error is the largest absolute
+ * difference between a value of the result and the corresponding value of
+ * the reference, which is <code>VariableElimination</code> by default.
+ * <code>-singlePrecision</code> sets
+ * <code>InferenceOptions.singlePrecisionTables</code> in the measured
+ * algorithms, but not in the reference, and <code>-decisionDiagrams</code>
+ * sets <code>InferenceOptions.decisionDiagrams</code> in the same way.
+ * <code>-offHeapThreshold</code> sets
+ * the number of values above which the tables of the results are mapped off
+ * the heap, for all the algorithms. The results have a line per network,
+ * algorithm and query.
+ *
+ * @author agent
+ */
+public class InferenceBenchmark {
+
+	// Constants
+	/** Queries measured; the names are those of the methods. */
+	public enum Query {
+		getProbsAndUtilities, getJointProbability, getGlobalUtility
+	}
+
+	/** Random evidence cases tried before giving up on a network. */
+	private static final int MAX_EVIDENCE_ATTEMPTS = 100;
+
+	// Attributes
+	private int runs = 20;
+
+	private int warmupRuns = 5;
+
+	private int numFindings = 3;
+
+	private int numJointVariables = 2;
+
+	private long seed = 0;
+
+	private List<String> algorithmNames = null;
+
+	private String referenceName = "VariableElimination";
+
+	private boolean singlePrecision = false;
+
+	private boolean decisionDiagrams = false;
+
+	private String resultFormat = "json";
+
+	private String resultFile = null;
+
+	private List<String> networks = new ArrayList<String>();
+
+	private InferenceManager inferenceManager = new InferenceManager();
+
+	private List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+
+	// Constructor
+	private InferenceBenchmark(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-runs")) {
+				runs = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-warmup")) {
+				warmupRuns = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-evidence")) {
+				numFindings = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-joint")) {
+				numJointVariables = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else if (arg.equals("-algorithms")) {
+				algorithmNames = Arrays.asList(args[++i].split(","));
+			} else if (arg.equals("-reference")) {
+				referenceName = args[++i];
+			} else if (arg.equals("-singlePrecision")) {
+				singlePrecision = true;
+			} else if (arg.equals("-decisionDiagrams")) {
+				decisionDiagrams = true;
+			} else if (arg.equals("-offHeapThreshold")) {
+				OffHeapTable.setThreshold(Long.parseLong(args[++i]));
+			} else if (arg.equals("-rf")) {
+				resultFormat = args[++i].toLowerCase(Locale.ROOT);
+			} else if (arg.equals("-rff")) {
+				resultFile = args[++i];
+			} else if (arg.startsWith("-")) {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			} else {
+				networks.add(arg);
+			}
+		}
+		if (networks.isEmpty()) {
+			throw new IllegalArgumentException("No network received");
+		}
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				heapPools.add(pool);
+			}
+		}
+	}
+
+	// Methods
+	public static void main(String[] args) throws Exception {
+		new InferenceBenchmark(args).run();
+	}
+
+	private void run() throws IOException, ParserException {
+		List<Result> results = new ArrayList<Result>();
+		for (String network : networks) {
+			ProbNet probNet = new PGMXReader().loadProbNet(network).getProbNet();
+			System.out.println("# " + network + ": " + probNet.getNumNodes() + " nodes");
+			List<Run> networkRuns = createRuns(probNet, new Random(seed));
+			if (networkRuns == null) {
+				System.out.println("# No compatible evidence found for " + network);
+				continue;
+			}
+			List<String> names = algorithmNames != null ? algorithmNames : inferenceManager
+					.getInferenceAlgorithmNames(probNet);
+			Collections.sort(names = new ArrayList<String>(names));
+			for (String name : names) {
+				if (createAlgorithm(name, probNet.copy()) == null) {
+					System.out.println("# " + name + " can not evaluate " + network);
+					continue;
+				}
+				for (Query query : getQueries(probNet)) {
+					Result result = measure(name, network, probNet, query, networkRuns);
+					result.network = new File(network).getName();
+					result.numNodes = probNet.getNumNodes();
+					result.algorithm = name;
+					System.out.println(result.getSummary());
+					results.add(result);
+				}
+			}
+		}
+		if (resultFile == null) {
+			resultFile = "openmarkov-inference." + resultFormat;
+		}
+		PrintWriter writer = new PrintWriter(new FileWriter(resultFile));
+		try {
+			if (resultFormat.equals("csv")) {
+				writeCSV(results, writer);
+			} else {
+				writeJSON(results, writer);
+			}
+		} finally {
+			writer.close();
+		}
+		System.out.println("# Results written in " + new File(resultFile).getAbsolutePath());
+	}
+
+	/**
+	 * @return The evidence cases and variables of interest of the warm-up and
+	 *         measured runs, with the results of the reference algorithm, or
+	 *         <code>null</code> if no compatible evidence case was found
+	 */
+	private List<Run> createRuns(ProbNet probNet, Random random) {
+		List<Variable> chanceVariables = new ArrayList<Variable>();
+		for (ProbNode probNode : probNet.getProbNodes(NodeType.CHANCE)) {
+			if (probNode.getVariable().getVariableType() != VariableType.NUMERIC) {
+				chanceVariables.add(probNode.getVariable());
+			}
+		}
+		if (createAlgorithm(referenceName, probNet.copy()) == null) {
+			throw new IllegalArgumentException(referenceName + " can not evaluate "
+					+ probNet.getName());
+		}
+		List<Query> queries = getQueries(probNet);
+		List<Run> networkRuns = new ArrayList<Run>();
+		int attempts = 0;
+		while (networkRuns.size() < warmupRuns + runs) {
+			if (attempts++ == MAX_EVIDENCE_ATTEMPTS) {
+				return null;
+			}
+			List<Variable> shuffled = new ArrayList<Variable>(chanceVariables);
+			Collections.shuffle(shuffled, random);
+			int numEvidenceVariables = Math.min(numFindings, shuffled.size());
+			Run run = new Run();
+			run.evidence = new EvidenceCase();
+			try {
+				for (Variable variable : shuffled.subList(0, numEvidenceVariables)) {
+					run.evidence.addFinding(new Finding(variable, random.nextInt(variable
+							.getNumStates())));
+				}
+				run.variablesOfInterest = new ArrayList<Variable>(shuffled.subList(
+						numEvidenceVariables, Math.min(shuffled.size(), numEvidenceVariables
+								+ numJointVariables)));
+				for (Query query : queries) {
+					InferenceAlgorithm reference = createAlgorithm(referenceName, probNet.copy());
+					run.referenceResults.put(query, execute(reference, query, run));
+				}
+			} catch (Exception e) {
+				// incompatible evidence
+				continue;
+			}
+			attempts = 0;
+			networkRuns.add(run);
+		}
+		return networkRuns;
+	}
+
+	/** @return The queries that make sense for the network */
+	private static List<Query> getQueries(ProbNet probNet) {
+		List<Query> queries = new ArrayList<Query>(Arrays.asList(Query.getProbsAndUtilities,
+				Query.getJointProbability));
+		if (probNet.getNetworkType().equals(InfluenceDiagramType.getUniqueInstance())) {
+			queries.add(Query.getGlobalUtility);
+		}
+		return queries;
+	}
+
+	/** @return An instance of the algorithm, or null if it can not evaluate the network */
+	private InferenceAlgorithm createAlgorithm(String name, ProbNet probNet) {
+		try {
+			return inferenceManager.getInferenceAlgorithmByName(name, probNet);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return The results of the query, indexed by variable; the results that
+	 *         are not associated with a variable have the key
+	 *         <code>null</code>
+	 */
+	private static Map<Variable, TablePotential> execute(InferenceAlgorithm algorithm, Query query,
+			Run run) throws Exception {
+		algorithm.setPreResolutionEvidence(run.evidence);
+		Map<Variable, TablePotential> results;
+		switch (query) {
+		case getProbsAndUtilities:
+			results = algorithm.getProbsAndUtilities();
+			break;
+		case getJointProbability:
+			results = new HashMap<Variable, TablePotential>();
+			results.put(null, algorithm.getJointProbability(run.variablesOfInterest));
+			break;
+		case getGlobalUtility:
+			results = new HashMap<Variable, TablePotential>();
+			results.put(null, algorithm.getGlobalUtility());
+			break;
+		default:
+			throw new IllegalArgumentException(query.toString());
+		}
+		return results;
+	}
+
+	/**
+	 * Each query is made on a new instance of the algorithm, because some
+	 * algorithms resolve the network only once; the time of creating it is
+	 * not measured. Each failed run is printed with its exception.
+	 */
+	private Result measure(String name, String network, ProbNet probNet, Query query,
+			List<Run> networkRuns) {
+		Result result = new Result();
+		result.query = query;
+		for (int i = 0; i < networkRuns.size(); i++) {
+			Run run = networkRuns.get(i);
+			boolean warmup = i < warmupRuns;
+			ProbNet algorithmNet = probNet.copy();
+			InferenceAlgorithm algorithm = createAlgorithm(name, algorithmNet);
+			if (singlePrecision || decisionDiagrams) {
+				InferenceOptions options = new InferenceOptions(algorithmNet, null);
+				options.singlePrecisionTables = singlePrecision;
+				options.decisionDiagrams = decisionDiagrams;
+				algorithm.setInferenceOptions(options);
+			}
+			if (!warmup) {
+				System.gc();
+				for (MemoryPoolMXBean pool : heapPools) {
+					pool.resetPeakUsage();
+				}
+			}
+			Map<Variable, TablePotential> results;
+			long start = System.nanoTime();
+			try {
+				results = execute(algorithm, query, run);
+			} catch (Exception e) {
+				System.out.println("# " + name + " failed on " + network + ", " + query + ", run "
+						+ i + (warmup ? " (warm-up)" : "") + ": " + e);
+				if (!warmup) {
+					result.failures++;
+				}
+				continue;
+			}
+			long time = System.nanoTime() - start;
+			if (!warmup) {
+				long peakHeap = 0;
+				for (MemoryPoolMXBean pool : heapPools) {
+					peakHeap += pool.getPeakUsage().getUsed();
+				}
+				result.peakHeap = Math.max(result.peakHeap, peakHeap);
+				result.latencies.add(time / 1e6);
+				result.maxError = Math.max(result.maxError, getError(results,
+						run.referenceResults.get(query), run.evidence));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The largest absolute difference between the values of the
+	 *         results and those of the reference, or
+	 *         <code>Double.POSITIVE_INFINITY</code> if some result of the
+	 *         reference, other than those of the variables with findings, is
+	 *         missing or has other variables
+	 */
+	private static double getError(Map<Variable, TablePotential> results,
+			Map<Variable, TablePotential> referenceResults, EvidenceCase evidence) {
+		double error = 0.0;
+		for (Variable variable : referenceResults.keySet()) {
+			if (variable != null && evidence.contains(variable)) {
+				continue;
+			}
+			TablePotential referenceResult = referenceResults.get(variable);
+			TablePotential potential = results.get(variable);
+			if (potential == null
+					|| !potential.getVariables().containsAll(referenceResult.getVariables())
+					|| potential.getVariables().size() != referenceResult.getVariables().size()) {
+				return Double.POSITIVE_INFINITY;
+			}
+			if (!potential.getVariables().equals(referenceResult.getVariables())) {
+				potential = DiscretePotentialOperations.reorder(potential,
+						referenceResult.getVariables());
+			}
+			for (int i = 0; i < referenceResult.values.length; i++) {
+				error = Math.max(error, Math.abs(potential.values[i] - referenceResult.values[i]));
+			}
+		}
+		return error;
+	}
+
+	private void writeJSON(List<Result> results, PrintWriter writer) {
+		writer.println("[");
+		for (int r = 0; r < results.size(); r++) {
+			Result result = results.get(r);
+			writer.println("    {");
+			writer.println("        \"network\" : \"" + result.network + "\",");
+			writer.println("        \"nodes\" : " + result.numNodes + ",");
+			writer.println("        \"algorithm\" : \"" + result.algorithm + "\",");
+			writer.println("        \"query\" : \"" + result.query + "\",");
+			writer.println("        \"findings\" : " + numFindings + ",");
+			writer.println("        \"runs\" : " + result.latencies.size() + ",");
+			writer.println("        \"failures\" : " + result.failures + ",");
+			writer.println("        \"latencyUnit\" : \"ms\",");
+			writer.println("        \"mean\" : " + format(result.getMean()) + ",");
+			writer.println("        \"p50\" : " + format(result.getPercentile(50)) + ",");
+			writer.println("        \"p90\" : " + format(result.getPercentile(90)) + ",");
+			writer.println("        \"p99\" : " + format(result.getPercentile(99)) + ",");
+			writer.println("        \"max\" : " + format(result.getPercentile(100)) + ",");
+			writer.println("        \"peakHeapBytes\" : " + result.peakHeap + ",");
+			writer.println("        \"maxError\" : " + format(result.maxError));
+			writer.println(r < results.size() - 1 ? "    }," : "    }");
+		}
+		writer.println("]");
+	}
+
+	private void writeCSV(List<Result> results, PrintWriter writer) {
+		writer.println("network,nodes,algorithm,query,findings,runs,failures,mean ms,p50 ms,p90 ms,"
+				+ "p99 ms,max ms,peak heap bytes,max error");
+		for (Result result : results) {
+			writer.println(result.network + "," + result.numNodes + "," + result.algorithm + ","
+					+ result.query + "," + numFindings + "," + result.latencies.size() + ","
+					+ result.failures + "," + format(result.getMean()) + ","
+					+ format(result.getPercentile(50)) + "," + format(result.getPercentile(90)) + ","
+					+ format(result.getPercentile(99)) + "," + format(result.getPercentile(100))
+					+ "," + result.peakHeap + "," + format(result.maxError));
+		}
+	}
+
+	/** JSON has no literals for NaN and infinity, so they are written as null. */
+	private static String format(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return "null";
+		}
+		return String.format(Locale.ROOT, "%.6g", value);
+	}
+
+	/** Evidence case of a run, with the results of the reference algorithm. */
+	private static class Run {
+
+		private EvidenceCase evidence;
+
+		private List<Variable> variablesOfInterest;
+
+		private Map<Query, Map<Variable, TablePotential>> referenceResults = new HashMap<Query, Map<Variable, TablePotential>>();
+	}
+
+	/** Measures of an algorithm and a query on a network. */
+	private static class Result {
+
+		private String network;
+
+		private int numNodes;
+
+		private String algorithm;
+
+		private Query query;
+
+		/** Milliseconds of each measured run that did not fail. */
+		private List<Double> latencies = new ArrayList<Double>();
+
+		private int failures;
+
+		private long peakHeap;
+
+		private double maxError;
+
+		double getMean() {
+			double sum = 0.0;
+			for (double latency : latencies) {
+				sum += latency;
+			}
+			return latencies.isEmpty() ? Double.NaN : sum / latencies.size();
+		}
+
+		/** @return The percentile by the nearest-rank method */
+		double getPercentile(double percentile) {
+			if (latencies.isEmpty()) {
+				return Double.NaN;
+			}
+			List<Double> sorted = new ArrayList<Double>(latencies);
+			Collections.sort(sorted);
+			int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+			return sorted.get(Math.max(0, rank - 1));
+		}
+
+		String getSummary() {
+			return String.format(Locale.ROOT,
+					"%s %s: p50 = %.3f ms, p99 = %.3f ms, peak heap = %d MB, max error = %.3g%s",
+					algorithm, query, getPercentile(50), getPercentile(99), peakHeap >> 20,
+					maxError, failures > 0 ? ", " + failures + " failures" : "");
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.TablePotential;
+import org.openmarkov.core.model.network.potential.operation.TableKernels;
+
+/**
+ * Compares, for the factor shapes that have a specialized kernel in
+ * <code>TableKernels</code>, the time of the generic kernel with the time of
+ * the kernel chosen by <code>TableKernels.multiplyAndSum</code>. Usage:
+ * <pre>
+ * java -cp OpenMarkov.jar:benchmark org.openmarkov.benchmark.KernelBenchmark [numStates [repetitions [shape]]]
+ * </pre>
+ * It prints a line per shape with the nanoseconds per configuration of the
+ * union of both kernels (best of the repetitions) and the speedup. The
+ * numbers are more stable when each shape, given by its index, is measured
+ * in its own virtual machine.
+ *
+ * @author agent
+ */
+public class KernelBenchmark {
+
+	// Constants
+	private static final int MIN_CONFIGURATIONS_PER_RUN = 1 << 20;
+
+	/** The shapes have up to 9 variables, so larger tables would not fit. */
+	private static final int MAX_NUM_STATES = 6;
+
+	// Attributes
+	private final String name;
+
+	private final double[][] tables;
+
+	private final int[] initialPositions;
+
+	private final int[][] offsets;
+
+	private final int[] dimensions;
+
+	private final int innerSize;
+
+	private final double[] result;
+
+	private final int unionSize;
+
+	// Constructor
+	/**
+	 * @param name
+	 *            Name of the shape
+	 * @param potentials
+	 *            Factors
+	 * @param unionVariables
+	 *            Variables of the factors; the first
+	 *            <code>numEliminated</code> are summed out
+	 * @param numEliminated
+	 *            Number of variables eliminated
+	 */
+	private KernelBenchmark(String name, List<TablePotential> potentials,
+			List<Variable> unionVariables, int numEliminated) {
+		this.name = name;
+		tables = new double[potentials.size()][];
+		initialPositions = new int[potentials.size()];
+		for (int i = 0; i < tables.length; i++) {
+			tables[i] = potentials.get(i).values;
+		}
+		offsets = TableKernels.getOffsets(potentials, unionVariables);
+		dimensions = TablePotential.calculateDimensions(unionVariables);
+		innerSize = TablePotential.computeTableSize(unionVariables.subList(0, numEliminated));
+		unionSize = TablePotential.computeTableSize(unionVariables);
+		result = new double[unionSize / innerSize];
+	}
+
+	// Methods
+	public static void main(String[] args) {
+		int numStates = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int shapeIndex = args.length > 2 ? Integer.parseInt(args[2]) : -1;
+		if (numStates < 2 || numStates > MAX_NUM_STATES) {
+			throw new IllegalArgumentException("The number of states must be between 2 and "
+					+ MAX_NUM_STATES + ": " + numStates);
+		}
+		Random random = new Random(0);
+		List<Variable> variables = new ArrayList<Variable>();
+		for (int i = 0; i < 10; i++) {
+			variables.add(new Variable("X" + i, numStates));
+		}
+		List<KernelBenchmark> shapes = new ArrayList<KernelBenchmark>();
+		shapes.add(new KernelBenchmark("two factors", Arrays.asList(
+				createPotential(variables, random, 0, 1, 2, 3, 4, 5),
+				createPotential(variables, random, 3, 4, 5, 6, 7, 8)),
+				variables.subList(0, 9), 0));
+		shapes.add(new KernelBenchmark("prefix factor", Arrays.asList(
+				createPotential(variables, random, 0, 1, 2, 3, 4, 5, 6, 7, 8),
+				createPotential(variables, random, 0, 1, 2, 3),
+				createPotential(variables, random, 0, 1)),
+				variables.subList(0, 9), 0));
+		shapes.add(new KernelBenchmark("suffix factor", Arrays.asList(
+				createPotential(variables, random, 0, 1, 2, 3, 4, 5, 6, 7, 8),
+				createPotential(variables, random, 5, 6, 7, 8),
+				createPotential(variables, random, 7, 8)),
+				variables.subList(0, 9), 0));
+		shapes.add(new KernelBenchmark("eliminated innermost", Arrays.asList(
+				createPotential(variables, random, 0, 1, 2, 3, 4),
+				createPotential(variables, random, 0, 1, 5, 6, 7),
+				createPotential(variables, random, 0, 1, 8)),
+				variables.subList(0, 9), 2));
+		shapes.add(new KernelBenchmark("constant-stride block", Arrays.asList(
+				createPotential(variables, random, 1, 0, 2, 4, 6, 8),
+				createPotential(variables, random, 3, 0, 5, 7)),
+				variables.subList(0, 9), 0));
+		System.out.println(String.format("%-24s %12s %12s %8s", "shape", "generic ns", "kernel ns",
+				"speedup"));
+		if (shapeIndex != -1) {
+			shapes = shapes.subList(shapeIndex, shapeIndex + 1);
+		}
+		for (KernelBenchmark shape : shapes) {
+			double genericTime = shape.measure(true, repetitions);
+			double kernelTime = shape.measure(false, repetitions);
+			System.out.println(String.format("%-24s %12.3f %12.3f %8.2f", shape.name, genericTime,
+					kernelTime, genericTime / kernelTime));
+		}
+	}
+
+	/**
+	 * @return The best time, in nanoseconds per configuration of the union,
+	 *         of <code>repetitions</code> runs after as many warm-up runs.
+	 *         Each run repeats the operation until it has traversed at least
+	 *         <code>MIN_CONFIGURATIONS_PER_RUN</code> configurations.
+	 */
+	private double measure(boolean generic, int repetitions) {
+		int calls = Math.max(1, MIN_CONFIGURATIONS_PER_RUN / unionSize);
+		long bestTime = Long.MAX_VALUE;
+		for (int i = 0; i < 2 * repetitions; i++) {
+			long start = System.nanoTime();
+			for (int call = 0; call < calls; call++) {
+				if (generic) {
+					TableKernels.multiplyAndSumGeneric(tables, initialPositions, offsets, dimensions,
+							1.0, innerSize, result, 0, result.length);
+				} else {
+					TableKernels.multiplyAndSum(tables, initialPositions, offsets, dimensions, 1.0,
+							innerSize, result, 0, result.length);
+				}
+			}
+			long time = (System.nanoTime() - start) / calls;
+			if (i >= repetitions) {
+				bestTime = Math.min(bestTime, time);
+			}
+		}
+		return (double) bestTime / unionSize;
+	}
+
+	/**
+	 * @return A potential with random values over the variables of the
+	 *         indexes received, in that order
+	 */
+	private static TablePotential createPotential(List<Variable> variables, Random random,
+			int... indexes) {
+		List<Variable> potentialVariables = new ArrayList<Variable>();
+		for (int index : indexes) {
+			potentialVariables.add(variables.get(index));
+		}
+		TablePotential potential = new TablePotential(potentialVariables,
+				PotentialRole.CONDITIONAL_PROBABILITY);
+		for (int i = 0; i < potential.values.length; i++) {
+			potential.values[i] = random.nextDouble();
+		}
+		return potential;
+	}
+
+}
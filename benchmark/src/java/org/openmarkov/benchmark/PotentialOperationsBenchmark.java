@@ -0,0 +1,567 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.openmarkov.core.exception.NormalizeNullVectorException;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.Potential;
+import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.TablePotential;
+import org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations;
+
+/**
+ * Measures the average time and the allocation per call of the hot paths of
+ * <code>DiscretePotentialOperations</code> over a grid of factor shapes. It
+ * follows the model of JMH: every combination of parameters runs in its own
+ * forked virtual machine, with warm-up iterations followed by measurement
+ * iterations of a fixed duration, and the results are written in the JSON
+ * format of JMH, so the usual JMH tools can compare two runs. Usage:
+ * <pre>
+ * java -jar benchmark/OpenMarkovBenchmark.jar [regexp] [-wi n] [-i n] [-r ms] [-f n]
+ *      [-p name=v1,v2...] [-prof gc] [-rf json|csv] [-rff file] [-jvmArgs options]
+ * </pre>
+ * The parameters are:
+ * <ul>
+ * <li><code>size</code>: size of the largest table, from 1KB to 1GB. The
+ * number of variables is the largest one whose table fits in that size.</li>
+ * <li><code>states</code>: number of states of each variable.</li>
+ * <li><code>overlap</code>: variables of the second factor with respect to
+ * the first one, which contains all the variables: <code>prefix</code> (the
+ * first half), <code>suffix</code> (the second half) or
+ * <code>interleaved</code> (every other variable).</li>
+ * </ul>
+ * The tables of 1GB need a heap of at least 4GB, given with
+ * <code>-jvmArgs -Xmx6g</code>. <code>-prof gc</code> adds the bytes allocated
+ * per call, <code>gc.alloc.rate.norm</code>, measured by the thread allocation
+ * counters of the virtual machine.
+ *
+ * @author agent
+ */
+public class PotentialOperationsBenchmark {
+
+	// Constants
+	/** Operations measured; the names are those of the methods. */
+	public enum Operation {
+		multiply, multiplyAndMarginalize, marginalize, divide, normalize, reorder, multiplyAndMaximize
+	}
+
+	private static final String[] DEFAULT_SIZES = {"1KB", "32KB", "1MB", "32MB", "1GB"};
+
+	private static final String[] DEFAULT_STATES = {"2", "4"};
+
+	private static final String[] DEFAULT_OVERLAPS = {"prefix", "suffix", "interleaved"};
+
+	/** Prefix of the lines with the measures written by the forks. */
+	private static final String ITERATION_PREFIX = "# iteration ";
+
+	/** Half-width of the 99.9% confidence interval in standard errors. */
+	private static final double Z_999 = 3.291;
+
+	// Attributes
+	private Pattern filter = Pattern.compile(".*");
+
+	private int warmupIterations = 5;
+
+	private int measurementIterations = 5;
+
+	private long iterationMillis = 1000;
+
+	private int forks = 1;
+
+	private boolean gcProfiler = false;
+
+	private String resultFormat = "json";
+
+	private String resultFile = null;
+
+	private String jvmArgs = null;
+
+	private Map<String, String[]> params = new LinkedHashMap<String, String[]>();
+
+	// Constructor
+	private PotentialOperationsBenchmark(String[] args) {
+		params.put("size", DEFAULT_SIZES);
+		params.put("states", DEFAULT_STATES);
+		params.put("overlap", DEFAULT_OVERLAPS);
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-wi")) {
+				warmupIterations = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-i")) {
+				measurementIterations = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-r")) {
+				iterationMillis = Long.parseLong(args[++i]);
+			} else if (arg.equals("-f")) {
+				forks = Integer.parseInt(args[++i]);
+			} else if (arg.equals("-prof")) {
+				String profiler = args[++i];
+				if (!profiler.equals("gc")) {
+					throw new IllegalArgumentException("Unknown profiler: " + profiler);
+				}
+				gcProfiler = true;
+			} else if (arg.equals("-rf")) {
+				resultFormat = args[++i].toLowerCase(Locale.ROOT);
+			} else if (arg.equals("-rff")) {
+				resultFile = args[++i];
+			} else if (arg.equals("-jvmArgs")) {
+				jvmArgs = args[++i];
+			} else if (arg.equals("-p")) {
+				String[] param = args[++i].split("=", 2);
+				if (!params.containsKey(param[0])) {
+					throw new IllegalArgumentException("Unknown parameter: " + param[0]);
+				}
+				params.put(param[0], param[1].split(","));
+			} else if (arg.startsWith("-")) {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			} else {
+				filter = Pattern.compile(arg);
+			}
+		}
+	}
+
+	// Methods
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("--fork")) {
+			runFork(args);
+		} else {
+			new PotentialOperationsBenchmark(args).run();
+		}
+	}
+
+	/** Runs every combination of operation and parameters and writes the results. */
+	private void run() throws IOException, InterruptedException {
+		List<Result> results = new ArrayList<Result>();
+		for (Operation operation : Operation.values()) {
+			if (!filter.matcher(operation.name()).find()) {
+				continue;
+			}
+			for (String size : params.get("size")) {
+				for (String states : params.get("states")) {
+					for (String overlap : params.get("overlap")) {
+						Result result = new Result(operation, size, states, overlap);
+						System.out.println("# " + result.getLabel());
+						for (int fork = 0; fork < Math.max(1, forks); fork++) {
+							if (forks == 0) {
+								runIterations(new Shape(size, states, overlap), operation, result,
+										System.out);
+							} else {
+								fork(result);
+							}
+						}
+						System.out.println(result.getSummary());
+						results.add(result);
+					}
+				}
+			}
+		}
+		if (resultFile == null) {
+			resultFile = "openmarkov-benchmark." + resultFormat;
+		}
+		PrintWriter writer = new PrintWriter(new FileWriter(resultFile));
+		try {
+			if (resultFormat.equals("csv")) {
+				writeCSV(results, writer);
+			} else {
+				writeJSON(results, writer);
+			}
+		} finally {
+			writer.close();
+		}
+		System.out.println("# Results written in " + new File(resultFile).getAbsolutePath());
+	}
+
+	/** Runs the iterations of <code>result</code> in a new virtual machine. */
+	private void fork(Result result) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		if (jvmArgs != null) {
+			command.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+		} else {
+			command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(PotentialOperationsBenchmark.class.getName());
+		command.add("--fork");
+		command.add(result.operation.name());
+		command.add(result.size);
+		command.add(result.states);
+		command.add(result.overlap);
+		command.add(String.valueOf(warmupIterations));
+		command.add(String.valueOf(measurementIterations));
+		command.add(String.valueOf(iterationMillis));
+		command.add(String.valueOf(gcProfiler));
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		List<double[]> forkMeasures = new ArrayList<double[]>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith(ITERATION_PREFIX)) {
+				String[] fields = line.substring(ITERATION_PREFIX.length()).split(" ");
+				forkMeasures.add(new double[] {Double.parseDouble(fields[0]),
+						Double.parseDouble(fields[1])});
+			} else {
+				System.out.println(line);
+			}
+		}
+		if (process.waitFor() != 0) {
+			throw new IOException("The fork of " + result.getLabel() + " failed");
+		}
+		result.forkMeasures.add(forkMeasures);
+	}
+
+	/** Entry point of the forked virtual machines. */
+	private static void runFork(String[] args) {
+		Shape shape = new Shape(args[2], args[3], args[4]);
+		PotentialOperationsBenchmark benchmark = new PotentialOperationsBenchmark(new String[0]);
+		benchmark.warmupIterations = Integer.parseInt(args[5]);
+		benchmark.measurementIterations = Integer.parseInt(args[6]);
+		benchmark.iterationMillis = Long.parseLong(args[7]);
+		benchmark.gcProfiler = Boolean.parseBoolean(args[8]);
+		Result result = new Result(Operation.valueOf(args[1]), args[2], args[3], args[4]);
+		benchmark.runIterations(shape, result.operation, result, System.out);
+	}
+
+	/**
+	 * Runs the warm-up and measurement iterations, printing a line per
+	 * measurement iteration, and adds the measures to <code>result</code>.
+	 */
+	private void runIterations(Shape shape, Operation operation, Result result,
+			PrintStream out) {
+		List<double[]> measures = new ArrayList<double[]>();
+		for (int i = 0; i < warmupIterations + measurementIterations; i++) {
+			long calls = 0;
+			long allocatedBytes = getAllocatedBytes();
+			long start = System.nanoTime();
+			long end = start + iterationMillis * 1000000L;
+			long now;
+			do {
+				shape.sink += shape.run(operation);
+				calls++;
+				now = System.nanoTime();
+			} while (now < end);
+			allocatedBytes = getAllocatedBytes() - allocatedBytes;
+			double microsPerCall = (now - start) / 1000.0 / calls;
+			double bytesPerCall = (double) allocatedBytes / calls;
+			boolean warmup = i < warmupIterations;
+			String allocation = gcProfiler ? String.format(Locale.ROOT, ", %.1f B/op", bytesPerCall)
+					: "";
+			out.println(String.format(Locale.ROOT, "%s %d: %.3f us/op%s",
+					warmup ? "# Warmup Iteration" : "Iteration",
+					(warmup ? i : i - warmupIterations) + 1, microsPerCall, allocation));
+			if (!warmup) {
+				out.println(ITERATION_PREFIX + microsPerCall + " " + bytesPerCall);
+				measures.add(new double[] {microsPerCall, bytesPerCall});
+			}
+		}
+		if (shape.sink == 42.4242) {
+			out.println("# " + shape.sink);
+		}
+		result.forkMeasures.add(measures);
+	}
+
+	/** @return Bytes allocated by the current thread, or 0 if unsupported */
+	private long getAllocatedBytes() {
+		if (!gcProfiler) {
+			return 0;
+		}
+		java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread
+					.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private void writeJSON(List<Result> results, PrintWriter writer) {
+		writer.println("[");
+		for (int r = 0; r < results.size(); r++) {
+			Result result = results.get(r);
+			writer.println("    {");
+			writer.println("        \"benchmark\" : \"" + PotentialOperationsBenchmark.class.getName()
+					+ "." + result.operation + "\",");
+			writer.println("        \"mode\" : \"avgt\",");
+			writer.println("        \"threads\" : 1,");
+			writer.println("        \"forks\" : " + result.forkMeasures.size() + ",");
+			writer.println("        \"jvm\" : \"" + escape(System.getProperty("java.home")) + "\",");
+			writer.println("        \"vmVersion\" : \"" + escape(System.getProperty("java.vm.version"))
+					+ "\",");
+			writer.println("        \"warmupIterations\" : " + warmupIterations + ",");
+			writer.println("        \"warmupTime\" : \"" + iterationMillis + " ms\",");
+			writer.println("        \"measurementIterations\" : " + measurementIterations + ",");
+			writer.println("        \"measurementTime\" : \"" + iterationMillis + " ms\",");
+			writer.println("        \"params\" : {");
+			writer.println("            \"size\" : \"" + result.size + "\",");
+			writer.println("            \"states\" : \"" + result.states + "\",");
+			writer.println("            \"overlap\" : \"" + result.overlap + "\"");
+			writer.println("        },");
+			writer.print("        \"primaryMetric\" : ");
+			writeMetric(result, 0, "us/op", "            ", writer);
+			if (gcProfiler) {
+				writer.println(",");
+				writer.println("        \"secondaryMetrics\" : {");
+				writer.print("            \"gc.alloc.rate.norm\" : ");
+				writeMetric(result, 1, "B/op", "                ", writer);
+				writer.println();
+				writer.println("        }");
+			} else {
+				writer.println(",");
+				writer.println("        \"secondaryMetrics\" : {");
+				writer.println("        }");
+			}
+			writer.println(r < results.size() - 1 ? "    }," : "    }");
+		}
+		writer.println("]");
+	}
+
+	private static void writeMetric(Result result, int index, String unit, String indent,
+			PrintWriter writer) {
+		double[] statistics = result.getStatistics(index);
+		writer.println("{");
+		writer.println(indent + "\"score\" : " + format(statistics[0]) + ",");
+		writer.println(indent + "\"scoreError\" : " + format(statistics[1]) + ",");
+		writer.println(indent + "\"scoreConfidence\" : [ " + format(statistics[0] - statistics[1])
+				+ ", " + format(statistics[0] + statistics[1]) + " ],");
+		writer.println(indent + "\"scoreUnit\" : \"" + unit + "\",");
+		writer.print(indent + "\"rawData\" : [ ");
+		for (int f = 0; f < result.forkMeasures.size(); f++) {
+			List<double[]> measures = result.forkMeasures.get(f);
+			writer.print(f > 0 ? ", [ " : "[ ");
+			for (int i = 0; i < measures.size(); i++) {
+				writer.print((i > 0 ? ", " : "") + format(measures.get(i)[index]));
+			}
+			writer.print(" ]");
+		}
+		writer.println(" ]");
+		writer.print(indent.substring(4) + "}");
+	}
+
+	private void writeCSV(List<Result> results, PrintWriter writer) {
+		writer.println("\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\","
+				+ "\"Unit\",\"Param: size\",\"Param: states\",\"Param: overlap\"");
+		for (Result result : results) {
+			writeCSVLine(result, "", 0, "us/op", writer);
+			if (gcProfiler) {
+				writeCSVLine(result, ":gc.alloc.rate.norm", 1, "B/op", writer);
+			}
+		}
+	}
+
+	private static void writeCSVLine(Result result, String suffix, int index, String unit,
+			PrintWriter writer) {
+		double[] statistics = result.getStatistics(index);
+		writer.println("\"" + PotentialOperationsBenchmark.class.getName() + "." + result.operation
+				+ suffix + "\",\"avgt\",1," + (int) statistics[2] + "," + format(statistics[0]) + ","
+				+ format(statistics[1]) + ",\"" + unit + "\"," + result.size + "," + result.states
+				+ "," + result.overlap);
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.6g", value);
+	}
+
+	private static String escape(String text) {
+		return text == null ? "" : text.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/** Measures of a combination of operation and parameters. */
+	private static class Result {
+
+		private final Operation operation;
+
+		private final String size;
+
+		private final String states;
+
+		private final String overlap;
+
+		/** For each fork, time and allocation of each measurement iteration. */
+		private final List<List<double[]>> forkMeasures = new ArrayList<List<double[]>>();
+
+		Result(Operation operation, String size, String states, String overlap) {
+			this.operation = operation;
+			this.size = size;
+			this.states = states;
+			this.overlap = overlap;
+		}
+
+		String getLabel() {
+			return operation + " (size = " + size + ", states = " + states + ", overlap = " + overlap
+					+ ")";
+		}
+
+		/**
+		 * @return Mean, half-width of the 99.9% confidence interval and number
+		 *         of samples of the measure with the given index
+		 */
+		double[] getStatistics(int index) {
+			double sum = 0.0;
+			double sumOfSquares = 0.0;
+			int n = 0;
+			for (List<double[]> measures : forkMeasures) {
+				for (double[] measure : measures) {
+					sum += measure[index];
+					sumOfSquares += measure[index] * measure[index];
+					n++;
+				}
+			}
+			double mean = n > 0 ? sum / n : Double.NaN;
+			double error = Double.NaN;
+			if (n > 1) {
+				double variance = Math.max(0.0, (sumOfSquares - n * mean * mean) / (n - 1));
+				error = Z_999 * Math.sqrt(variance / n);
+			}
+			return new double[] {mean, error, n};
+		}
+
+		String getSummary() {
+			double[] time = getStatistics(0);
+			return String.format(Locale.ROOT, "Result \"%s\": %.3f +- %.3f us/op", getLabel(),
+					time[0], time[1]);
+		}
+	}
+
+	/** Factors of a combination of parameters. */
+	private static class Shape {
+
+		/** Factor over all the variables. */
+		private final TablePotential first;
+
+		/** Factor over the variables given by the overlap. */
+		private final TablePotential second;
+
+		/** A variable of both factors, the one that is eliminated. */
+		private final Variable variable;
+
+		/** Variables of <code>first</code> with those of the second one first. */
+		private final List<Variable> order;
+
+		/** Accumulates the results so that the calls are not optimized away. */
+		private double sink;
+
+		Shape(String size, String states, String overlap) {
+			int numStates = Integer.parseInt(states);
+			long numCells = parseSize(size) / 8;
+			List<Variable> variables = new ArrayList<Variable>();
+			for (long cells = numStates; cells <= numCells; cells *= numStates) {
+				variables.add(new Variable("X" + variables.size(), numStates));
+			}
+			if (variables.size() < 2) {
+				throw new IllegalArgumentException("The size " + size + " is too small for "
+						+ numStates + " states");
+			}
+			int numVariables = variables.size();
+			List<Variable> secondVariables;
+			if (overlap.equals("prefix")) {
+				secondVariables = new ArrayList<Variable>(variables.subList(0, numVariables / 2));
+			} else if (overlap.equals("suffix")) {
+				secondVariables = new ArrayList<Variable>(variables.subList(numVariables / 2,
+						numVariables));
+			} else if (overlap.equals("interleaved")) {
+				secondVariables = new ArrayList<Variable>();
+				for (int i = 1; i < numVariables; i += 2) {
+					secondVariables.add(variables.get(i));
+				}
+			} else {
+				throw new IllegalArgumentException("Unknown overlap: " + overlap);
+			}
+			Random random = new Random(0);
+			first = createPotential(variables, random);
+			second = createPotential(secondVariables, random);
+			variable = secondVariables.get(0);
+			order = new ArrayList<Variable>(secondVariables);
+			for (Variable firstVariable : variables) {
+				if (!order.contains(firstVariable)) {
+					order.add(firstVariable);
+				}
+			}
+		}
+
+		/** @return A value of the result, to keep it alive */
+		double run(Operation operation) {
+			TablePotential result;
+			switch (operation) {
+			case multiply:
+				result = DiscretePotentialOperations.multiply(Arrays.asList(first, second));
+				break;
+			case multiplyAndMarginalize:
+				result = DiscretePotentialOperations.multiplyAndMarginalize(
+						Arrays.asList(first, second), variable);
+				break;
+			case marginalize:
+				result = DiscretePotentialOperations.marginalize(first, variable);
+				break;
+			case divide:
+				result = DiscretePotentialOperations.divide(first, second);
+				break;
+			case normalize:
+				try {
+					result = DiscretePotentialOperations.normalize(first);
+				} catch (NormalizeNullVectorException e) {
+					throw new IllegalStateException(e);
+				}
+				break;
+			case reorder:
+				result = DiscretePotentialOperations.reorder(first, order);
+				break;
+			case multiplyAndMaximize:
+				result = (TablePotential) DiscretePotentialOperations.multiplyAndMaximize(
+						new ArrayList<Potential>(Arrays.asList(first, second)), variable)[0];
+				break;
+			default:
+				throw new IllegalArgumentException(operation.toString());
+			}
+			return result.values[0];
+		}
+
+		private static TablePotential createPotential(List<Variable> variables, Random random) {
+			TablePotential potential = new TablePotential(variables,
+					PotentialRole.CONDITIONAL_PROBABILITY);
+			for (int i = 0; i < potential.values.length; i++) {
+				potential.values[i] = 0.01 + random.nextDouble();
+			}
+			return potential;
+		}
+
+		/** @return The number of bytes of a size like 32KB, 1MB or 1GB */
+		private static long parseSize(String size) {
+			String upperCase = size.trim().toUpperCase(Locale.ROOT);
+			long unit = 1;
+			if (upperCase.endsWith("KB")) {
+				unit = 1L << 10;
+			} else if (upperCase.endsWith("MB")) {
+				unit = 1L << 20;
+			} else if (upperCase.endsWith("GB")) {
+				unit = 1L << 30;
+			}
+			String number = unit == 1 ? upperCase.replace("B", "") : upperCase.substring(0,
+					upperCase.length() - 2);
+			return Long.parseLong(number) * unit;
+		}
+	}
+
+}
@@ -21,6 +21,7 @@ import org.openmarkov.core.model.network.EvidenceCase;
 import org.openmarkov.core.model.network.Finding;
 import org.openmarkov.core.model.network.NodeType;
 import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.ProbNetView;
 import org.openmarkov.core.model.network.ProbNode;
 import org.openmarkov.core.model.network.State;
 import org.openmarkov.core.model.network.Variable;
@@ -66,8 +67,7 @@ public class DecisionTreeBuilder
                 Variable alwaysObservedVariable = alwaysObservedNode.getVariable ();
                 
                 DecisionTreeNode treeNode = new DecisionTreeNode (alwaysObservedNode);
-                ProbNet probNetWithoutObservedVariable = probNet.copy ();
-                probNetWithoutObservedVariable.removeProbNode (probNetWithoutObservedVariable.getProbNode (alwaysObservedVariable));
+                ProbNet probNetWithoutObservedVariable = withoutProbNode (probNet, alwaysObservedVariable);
                 for (State state : alwaysObservedVariable.getStates ())
                 {
                     DecisionTreeBranch treeBranch = new DecisionTreeBranch (originalProbNet,
@@ -85,8 +85,7 @@ public class DecisionTreeBuilder
                     ProbNode decisionNode = parentlessDecisions.get (0);
                     DecisionTreeNode treeNode = new DecisionTreeNode (decisionNode);
                     Variable decisionVariable = decisionNode.getVariable ();
-                    ProbNet probNetWithoutDecisionNode = probNet.copy ();
-                    probNetWithoutDecisionNode.removeProbNode (probNetWithoutDecisionNode.getProbNode (decisionNode.getVariable ()));
+                    ProbNet probNetWithoutDecisionNode = withoutProbNode (probNet, decisionVariable);
                     for (State state : decisionVariable.getStates ())
                     {
                         DecisionTreeBranch treeBranch = new DecisionTreeBranch (originalProbNet,
@@ -119,8 +118,7 @@ public class DecisionTreeBuilder
                         Variable parentlessDecisionVariable = parentlessDecisionNode.getVariable ();
                         DecisionTreeNode decisionTreeNode = new DecisionTreeNode (parentlessDecisionNode);
                         treeBranch.setChild (decisionTreeNode);
-                        ProbNet probNetWithoutDecisionNode = probNet.copy ();
-                        probNetWithoutDecisionNode.removeProbNode (probNetWithoutDecisionNode.getProbNode (parentlessDecisionVariable));
+                        ProbNet probNetWithoutDecisionNode = withoutProbNode (probNet, parentlessDecisionVariable);
                         for (State state : parentlessDecisionVariable.getStates ())
                         {
                             DecisionTreeBranch subTreeBranch = new DecisionTreeBranch (originalProbNet,
@@ -137,11 +135,10 @@ public class DecisionTreeBuilder
                 }
             }else if(!neverObservedVariables.isEmpty ()) // Never observed variables
             {
-                ProbNet dtProbNet = probNet.copy ();
                 ProbNode neverObservedNode = neverObservedVariables.get (0);
                 Variable neverObservedVariable = neverObservedNode.getVariable ();
                 DecisionTreeNode treeNode = new DecisionTreeNode (neverObservedNode);
-                dtProbNet.removeProbNode (dtProbNet.getProbNode (neverObservedVariable));
+                ProbNet dtProbNet = withoutProbNode (probNet, neverObservedVariable);
                 for (State state : neverObservedVariable.getStates ())
                 {
                     DecisionTreeBranch treeBranch = new DecisionTreeBranch (originalProbNet,
@@ -337,8 +334,24 @@ public class DecisionTreeBuilder
         return svTreeNode;
    }
     
+    /**
+     * Copies the network from which a node has been removed in order to apply the
+     * restrictions and revelations of the links of the node for one of its states.
+     * The network is returned without copying when the links of the node have
+     * neither restrictions nor revelations, because it is not modified later: the
+     * branches below copy it before removing or adding nodes
+     * @param probNet
+     * @param probNode
+     * @param state
+     * @param originalProbNet
+     * @return
+     */
     private static ProbNet applyRestrictionsAndReveal(ProbNet probNet, ProbNode probNode, State state, ProbNet originalProbNet)
     {
+        if (!hasRestrictionsOrRevelations (probNode))
+        {
+            return probNet;
+        }
         ProbNet probNetCopy = probNet.copy ();
         
         for (Link link : probNode.getNode ().getLinks ())
@@ -403,8 +416,7 @@ public class DecisionTreeBuilder
                         
                     }else if(nonRestrictedStates.size () == 1) // Remove variables with a single variable
                     {
-                        ProbNet probNetWithoutSingleStateVariable = probNetCopy.copy ();
-                        probNetWithoutSingleStateVariable.removeProbNode (probNetWithoutSingleStateVariable.getProbNode (destinationNode.getVariable ()));
+                        ProbNet probNetWithoutSingleStateVariable = withoutProbNode (probNetCopy, destinationNode.getVariable ());
                         probNetCopy = applyRestrictionsAndReveal(probNetWithoutSingleStateVariable, destinationNode, nonRestrictedStates.get (0), originalProbNet);
                     }else if(nonRestrictedStates.size () < destinationNode.getVariable ().getStates ().length)
                     {
@@ -424,6 +436,32 @@ public class DecisionTreeBuilder
         return probNetCopy;
     }
 
+    /**
+     * @param probNet
+     * @param variable
+     * @return A copy of probNet without the node of variable. Only the other nodes
+     * are copied
+     */
+    private static ProbNet withoutProbNode (ProbNet probNet, Variable variable)
+    {
+        ProbNetView probNetView = new ProbNetView (probNet);
+        probNetView.removeProbNode (variable);
+        return probNetView.toProbNet ();
+    }
+
+    private static boolean hasRestrictionsOrRevelations (ProbNode probNode)
+    {
+        for (Link link : probNode.getNode ().getLinks ())
+        {
+            if (link.getNode1 ().getObject ().equals (probNode)
+                && (link.hasRestrictions () || link.hasRevealingConditions ()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static List<ProbNode> getNeverObservedVariables (ProbNet dtProbNet)
     {
         List<ProbNode> neverObservedVariables = new ArrayList<> ();
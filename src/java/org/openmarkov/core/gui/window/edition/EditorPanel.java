@@ -71,6 +71,7 @@ import org.openmarkov.core.gui.window.MainPanelMenuAssistant;
 import org.openmarkov.core.gui.window.edition.mode.EditionMode;
 import org.openmarkov.core.gui.window.edition.mode.EditionModeManager;
 import org.openmarkov.core.inference.InferenceAlgorithm;
+import org.openmarkov.core.inference.InferencePlan;
 import org.openmarkov.core.inference.annotation.InferenceManager;
 import org.openmarkov.core.model.graph.Link;
 import org.openmarkov.core.model.network.EvidenceCase;
@@ -1665,6 +1666,7 @@ public class EditorPanel extends JPanel
             // current case is needed.
             if (networkChanged)
             {
+                disposeInferenceAlgorithm ();
                 for (int i = 0; i < postResolutionEvidence.size (); i++)
                 {
                     doPropagation (getEvidenceCase (i), i);
@@ -2010,9 +2012,26 @@ public class EditorPanel extends JPanel
      */
     public void setInferenceAlgorithm (InferenceAlgorithm inferenceAlgorithm)
     {
+        if (this.inferenceAlgorithm != inferenceAlgorithm)
+        {
+            disposeInferenceAlgorithm ();
+        }
         this.inferenceAlgorithm = inferenceAlgorithm;
     }
 
+    /**
+     * Disposes the inference algorithm assigned to the panel, if any, so that
+     * it stops listening to the network, and removes it from the panel.
+     */
+    private void disposeInferenceAlgorithm ()
+    {
+        if (inferenceAlgorithm != null)
+        {
+            inferenceAlgorithm.dispose ();
+            inferenceAlgorithm = null;
+        }
+    }
+
     /**
      * This method does the propagation of the evidence in the network
      * @param evidenceCase the evidence case with which the propagation must be
@@ -2028,7 +2047,24 @@ public class EditorPanel extends JPanel
             long start = System.currentTimeMillis ();
             try
             {
-                inferenceAlgorithm = getInferenceManager().getDefaultInferenceAlgorithm (probNet);
+                // an incremental algorithm keeps its compiled structures
+                // between propagations, so it is only created once
+                if (inferenceAlgorithm == null || !inferenceAlgorithm.isIncremental ())
+                {
+                    // the cost of exact inference is estimated before
+                    // allocating any potential
+                    InferencePlan plan = getInferenceManager ().getInferencePlan (probNet, new EvidenceCase ());
+                    if (plan.getStrategy () == InferencePlan.Strategy.APPROXIMATE && !approximateInferenceWarningGiven)
+                    {
+                        JOptionPane.showMessageDialog (Utilities.getOwner (this),
+                                                       stringDatabase.getString ("NotEnoughMemoryForExactInference.Text"),
+                                                       stringDatabase.getString ("NotEnoughMemoryForExactInference.Title"),
+                                                       JOptionPane.WARNING_MESSAGE);
+                        approximateInferenceWarningGiven = true;
+                    }
+                    disposeInferenceAlgorithm ();
+                    inferenceAlgorithm = getInferenceManager ().getInferenceAlgorithm (probNet, plan);
+                }
                 if (inferenceAlgorithm == null)
                 {
                     throw new UnsupportedOperationException ();
@@ -2040,6 +2076,8 @@ public class EditorPanel extends JPanel
             }
             catch (OutOfMemoryError e)
             {
+                // the plan is an estimate: exact inference may need more
+                // memory than planned
                 if (!approximateInferenceWarningGiven)
                 {
                     JOptionPane.showMessageDialog (Utilities.getOwner (this),
@@ -2048,7 +2086,9 @@ public class EditorPanel extends JPanel
                                                    JOptionPane.WARNING_MESSAGE);
                     approximateInferenceWarningGiven = true;
                 }
-                inferenceAlgorithm = getInferenceManager().getDefaultApproximateAlgorithm (probNet);
+                disposeInferenceAlgorithm ();
+                inferenceAlgorithm = getInferenceManager ().getDefaultApproximateAlgorithm (probNet);
+                inferenceAlgorithm.setPreResolutionEvidence (preResolutionEvidence);
                 inferenceAlgorithm.setPostResolutionEvidence (evidenceCase);
                 individualProbabilities = inferenceAlgorithm.getProbsAndUtilities ();
             }
@@ -2659,6 +2699,7 @@ public class EditorPanel extends JPanel
     public void setProbNet (ProbNet probNet)
     {
         networkChanged = true;
+        disposeInferenceAlgorithm ();
         this.probNet = probNet;
         visualNetwork.setProbNet (probNet);
     }
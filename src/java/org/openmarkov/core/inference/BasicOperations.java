@@ -18,6 +18,7 @@ import org.openmarkov.core.model.graph.Node;
 import org.openmarkov.core.model.network.EvidenceCase;
 import org.openmarkov.core.model.network.NodeType;
 import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.ProbNetView;
 import org.openmarkov.core.model.network.ProbNode;
 import org.openmarkov.core.model.network.Variable;
 import org.openmarkov.core.model.network.potential.Potential;
@@ -103,12 +104,11 @@ public class BasicOperations {
      * @return A copy of the probNet after removing utility nodes.
      */
     public static ProbNet removeUtilityNodes(ProbNet sourceProbNet) {
-        ProbNet network = sourceProbNet.copy();
-        for (Variable utilityVariable : network.getVariables(NodeType.UTILITY)) {
-            ProbNode probNode = network.getProbNode(utilityVariable);
-            network.removeProbNode(probNode);
+        ProbNetView network = new ProbNetView(sourceProbNet);
+        for (Variable utilityVariable : sourceProbNet.getVariables(NodeType.UTILITY)) {
+            network.removeProbNode(utilityVariable);
         }
-        return network;
+        return network.toProbNet();
     }
 
     /**
@@ -134,8 +134,10 @@ public class BasicOperations {
      */
     public static ProbNet removeSuperValueNodes(ProbNet sourceProbNet, EvidenceCase evidence,
             boolean keepComponents, boolean leaveImplicitSum, Variable utilityVariableToKeep) {
-        ProbNet network = sourceProbNet.copy();
-        List<ProbNode> utilityNodes = network.getProbNodes(NodeType.UTILITY);
+        // the changes are recorded in a view and only the resulting network
+        // is copied
+        ProbNetView network = new ProbNetView(sourceProbNet);
+        List<ProbNode> utilityNodes = sourceProbNet.getProbNodes(NodeType.UTILITY);
         for (ProbNode utilityNode : utilityNodes) {
             Variable utilityVariable = utilityNode.getVariable();
             if ((isSuperValueNode(utilityNode) && utilityVariableToKeep == null)
@@ -152,16 +154,12 @@ public class BasicOperations {
                 }
                 // add links between of new potential of supervalue nodes
                 for (Variable variable : potential.getVariables()) {
-                    try {
-                        network.addLink(variable, utilityVariable, true);
-                    } catch (NodeNotFoundException e) {
-                        e.printStackTrace();
-                    }
+                    network.addLink(variable, utilityVariable, true);
                 }
                 // sets the new potential
                 List<Potential> newPotentials = new ArrayList<Potential>();
                 newPotentials.add(potential);
-                network.getProbNode(utilityVariable).setPotentials(newPotentials);
+                network.setPotentials(utilityVariable, newPotentials);
             }
         }
         if (!keepComponents) {
@@ -180,11 +178,11 @@ public class BasicOperations {
             }
             for (ProbNode utilityNode : utilityNodes) {
                 if (!nodesToKeep.contains(utilityNode.getVariable())) {
-                    network.removeProbNode(utilityNode);
+                    network.removeProbNode(utilityNode.getVariable());
                 }
             }
         }
-        return network;
+        return network.toProbNet();
     }
     
     public static ProbNet removeSuperValueNodes(ProbNet sourceProbNet, EvidenceCase evidence) {
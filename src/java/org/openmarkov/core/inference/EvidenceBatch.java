@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.inference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.openmarkov.core.model.network.EvidenceCase;
+import org.openmarkov.core.model.network.Finding;
+
+/**
+ * List of evidence cases prepared to be evaluated together. Identical cases
+ * are evaluated only once, and the distinct cases are grouped by the set of
+ * observed variables, so that the work that depends only on which variables
+ * are observed (pruning, elimination order, compiled structures) can be shared
+ * by the cases of a group. Inside a group the cases are sorted by their
+ * findings, so that consecutive cases tend to differ in few findings.
+ *
+ * @author agent
+ */
+public class EvidenceBatch {
+
+	// Attributes
+	private List<EvidenceCase> distinctCases;
+
+	/** Index in <code>distinctCases</code> of each case received. */
+	private int[] distinctIndexes;
+
+	/** Indexes of the distinct cases of each group. */
+	private List<List<Integer>> groups;
+
+	// Constructor
+	/**
+	 * @param evidenceCases
+	 *            <code>List</code> of <code>EvidenceCase</code>. It may
+	 *            contain repeated cases.
+	 */
+	public EvidenceBatch(List<EvidenceCase> evidenceCases) {
+		distinctCases = new ArrayList<EvidenceCase>();
+		distinctIndexes = new int[evidenceCases.size()];
+		final List<String> signatures = new ArrayList<String>();
+		LinkedHashMap<String, Integer> indexesBySignature = new LinkedHashMap<String, Integer>();
+		LinkedHashMap<String, List<Integer>> groupsByVariables = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < evidenceCases.size(); i++) {
+			EvidenceCase evidenceCase = evidenceCases.get(i);
+			String signature = getSignature(evidenceCase, true);
+			Integer index = indexesBySignature.get(signature);
+			if (index == null) {
+				index = distinctCases.size();
+				indexesBySignature.put(signature, index);
+				distinctCases.add(evidenceCase);
+				signatures.add(signature);
+				String observedVariables = getSignature(evidenceCase, false);
+				List<Integer> group = groupsByVariables.get(observedVariables);
+				if (group == null) {
+					group = new ArrayList<Integer>();
+					groupsByVariables.put(observedVariables, group);
+				}
+				group.add(index);
+			}
+			distinctIndexes[i] = index;
+		}
+		groups = new ArrayList<List<Integer>>(groupsByVariables.values());
+		for (List<Integer> group : groups) {
+			Collections.sort(group, new Comparator<Integer>() {
+				public int compare(Integer index1, Integer index2) {
+					return signatures.get(index1).compareTo(signatures.get(index2));
+				}
+			});
+		}
+	}
+
+	// Methods
+	/** @return The cases received, without repetitions */
+	public List<EvidenceCase> getDistinctCases() {
+		return distinctCases;
+	}
+
+	/**
+	 * @return The indexes of the distinct cases grouped by the set of
+	 *         observed variables.
+	 */
+	public List<List<Integer>> getGroups() {
+		return groups;
+	}
+
+	/**
+	 * @return The indexes of all the distinct cases, group after group. This
+	 *         is the order in which the cases should be evaluated.
+	 */
+	public List<Integer> getEvaluationOrder() {
+		List<Integer> order = new ArrayList<Integer>(distinctCases.size());
+		for (List<Integer> group : groups) {
+			order.addAll(group);
+		}
+		return order;
+	}
+
+	/**
+	 * @param distinctResults
+	 *            Result of each distinct case, in the order of
+	 *            <code>getDistinctCases</code>
+	 * @return The result of each case received, in the order received
+	 */
+	public <T> List<T> expand(List<T> distinctResults) {
+		List<T> results = new ArrayList<T>(distinctIndexes.length);
+		for (int index : distinctIndexes) {
+			results.add(distinctResults.get(index));
+		}
+		return results;
+	}
+
+	/**
+	 * @param evidenceCase
+	 *            <code>EvidenceCase</code>
+	 * @param includeValues
+	 *            When false only the observed variables are considered
+	 * @return A string that identifies the findings of the case, independent
+	 *         of the order in which they were added.
+	 */
+	public static String getSignature(EvidenceCase evidenceCase, boolean includeValues) {
+		List<String> findings = new ArrayList<String>();
+		for (Finding finding : evidenceCase.getFindings()) {
+			String signature = finding.getVariable().getName();
+			if (includeValues) {
+				signature += "\u0000" + finding.getStateIndex() + "\u0000"
+						+ finding.getNumericalValue();
+			}
+			findings.add(signature);
+		}
+		Collections.sort(findings);
+		StringBuilder signature = new StringBuilder();
+		for (String finding : findings) {
+			signature.append(finding).append('\u0001');
+		}
+		return signature.toString();
+	}
+
+}
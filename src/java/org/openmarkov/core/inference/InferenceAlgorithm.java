@@ -6,6 +6,8 @@
 
 package org.openmarkov.core.inference;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -14,6 +16,8 @@ import org.openmarkov.core.exception.IncompatibleEvidenceException;
 import org.openmarkov.core.exception.NormalizeNullVectorException;
 import org.openmarkov.core.exception.NotEvaluableNetworkException;
 import org.openmarkov.core.exception.UnexpectedInferenceException;
+import org.openmarkov.core.inference.annotation.InferenceAnnotation;
+import org.openmarkov.core.inference.heuristic.EliminationHeuristic;
 import org.openmarkov.core.model.network.EvidenceCase;
 import org.openmarkov.core.model.network.ProbNet;
 import org.openmarkov.core.model.network.ProbNode;
@@ -75,6 +79,11 @@ public abstract class InferenceAlgorithm
      */
     private List<Variable> conditioningVariables;
     
+    /**
+     * Options of the inference. When null the default options are used.
+     */
+    private InferenceOptions inferenceOptions;
+    
   
     /**
      * @return The pre-resolution evidence
@@ -104,6 +113,52 @@ public abstract class InferenceAlgorithm
 		this.conditioningVariables = conditioningVariables;
 	}
 
+	/**
+	 * @return The inference options, or null if they have not been set
+	 */
+	public InferenceOptions getInferenceOptions() {
+		return inferenceOptions;
+	}
+
+	/**
+	 * @param inferenceOptions The inference options to set
+	 */
+	public void setInferenceOptions(InferenceOptions inferenceOptions) {
+		this.inferenceOptions = inferenceOptions;
+	}
+
+	/**
+	 * @return True when the inference options ask for the concurrent
+	 * potential operations
+	 */
+	public boolean usesConcurrentPotentialOperations() {
+		return inferenceOptions != null && inferenceOptions.concurrentPotentialOperations;
+	}
+
+	/**
+	 * @return True when the inference options ask for storing the largest
+	 * tables in single precision
+	 */
+	public boolean usesSinglePrecisionTables() {
+		return inferenceOptions != null && inferenceOptions.singlePrecisionTables;
+	}
+
+	/**
+	 * @return True when the inference options ask for projecting the tree
+	 * potentials as decision diagrams
+	 */
+	public boolean usesDecisionDiagrams() {
+		return inferenceOptions != null && inferenceOptions.decisionDiagrams;
+	}
+
+	/**
+	 * @return The class of the elimination heuristic chosen in the inference
+	 * options, or null when the algorithm must use its default heuristic
+	 */
+	public Class<? extends EliminationHeuristic> getEliminationHeuristic() {
+		return inferenceOptions != null ? inferenceOptions.eliminationHeuristic : null;
+	}
+
 	/**
 	 * @return The imposed policies
 	 *//*
@@ -237,6 +292,98 @@ public abstract class InferenceAlgorithm
     	return (getImposedPolicy(decision)!=null);
     }
 
+    /**
+     * @return True if the algorithm keeps the structures compiled from the
+     *         network between queries, so that the same instance can be
+     *         queried again after changing only the evidence.
+     */
+    public boolean isIncremental ()
+    {
+        return false;
+    }
+
+    /**
+     * Releases the structures kept between queries and stops listening to the
+     * edits of the network. The algorithm must not be used afterwards.
+     */
+    public void dispose ()
+    {
+    }
+
+    /**
+     * @return True if the algorithm accepts a cutset, i.e., variables that are
+     *         instantiated in turn in each of their configurations to reduce
+     *         the size of the largest potential (cutset conditioning), as
+     *         declared in its <code>InferenceAnnotation</code>.
+     */
+    public boolean acceptsCutset ()
+    {
+        InferenceAnnotation annotation = getClass ().getAnnotation (InferenceAnnotation.class);
+        return annotation != null && annotation.acceptsCutset ();
+    }
+
+    /**
+     * @param cutsetVariables Variables instantiated in turn during the
+     *            inference. The results do not depend on the cutset, only
+     *            the memory and the time needed to get them.
+     * @throws UnsupportedOperationException if the cutset is not empty and
+     *             the algorithm does not accept a cutset
+     */
+    public void setCutsetVariables (List<Variable> cutsetVariables)
+    {
+        if (!cutsetVariables.isEmpty ())
+        {
+            throw new UnsupportedOperationException (getClass ().getName ()
+                                                     + " does not accept a cutset.");
+        }
+    }
+
+    /**
+     * Computes the posterior joint probability of <code>variables</code> for
+     * each case of a batch. Each case is used in turn as pre-resolution
+     * evidence; the post-resolution evidence is kept. Repeated cases are
+     * evaluated once and the cases with the same observed variables are
+     * evaluated consecutively, so that incremental algorithms only update the
+     * changed findings. Algorithms that can evaluate the cases in parallel
+     * override this method.
+     * @param evidenceCases <code>List</code> of <code>EvidenceCase</code>
+     * @param variables <code>List</code> of <code>Variable</code>
+     * @return The joint probability for each case, in the same order as
+     *         <code>evidenceCases</code>, or <code>null</code> for the cases
+     *         whose evidence is incompatible
+     * @throws UnexpectedInferenceException
+     */
+    public List<TablePotential> getJointProbabilities (List<EvidenceCase> evidenceCases,
+                                                       List<Variable> variables)
+        throws UnexpectedInferenceException
+    {
+        EvidenceBatch batch = new EvidenceBatch (evidenceCases);
+        List<EvidenceCase> distinctCases = batch.getDistinctCases ();
+        List<TablePotential> results = new ArrayList<TablePotential> (
+                Collections.<TablePotential> nCopies (distinctCases.size (), null));
+        EvidenceCase preResolutionEvidence = getPreResolutionEvidence ();
+        try
+        {
+            for (int index : batch.getEvaluationOrder ())
+            {
+                setPreResolutionEvidence (distinctCases.get (index));
+                try
+                {
+                    results.set (index, getJointProbability (variables));
+                }
+                catch (IncompatibleEvidenceException e)
+                {
+                    // the result of this case remains null
+                }
+            }
+        }
+        finally
+        {
+            setPreResolutionEvidence (preResolutionEvidence);
+        }
+        return batch.expand (results);
+    }
+
     protected static void checkEvaluability (ProbNet probNet)
         throws NotEvaluableNetworkException
     {
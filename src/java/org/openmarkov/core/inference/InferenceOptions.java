@@ -9,6 +9,7 @@
 
 package org.openmarkov.core.inference;
 
+import org.openmarkov.core.inference.heuristic.EliminationHeuristic;
 import org.openmarkov.core.model.network.ProbNet;
 import org.openmarkov.core.model.network.State;
 import org.openmarkov.core.model.network.Variable;
@@ -30,6 +31,29 @@ public class InferenceOptions {
 
 	public ProbNet probNet;
 	
+	/** When true the inference algorithms multiply and marginalize the 
+	 * potentials with the fork/join operations of 
+	 * <code>operation.concurrent.DiscretePotentialOperations</code>. */
+	public boolean concurrentPotentialOperations = false;
+	
+	/** When true the largest tables computed by the inference algorithms 
+	 * (the beliefs of the cliques and the intermediate factors of the 
+	 * variable elimination) are stored in single precision, which halves 
+	 * their memory. The results are still given in double precision. */
+	public boolean singlePrecisionTables = false;
+	
+	/** When true the tree potentials are projected as algebraic decision 
+	 * diagrams (<code>ADDPotential</code>), which are multiplied and 
+	 * marginalized without expanding their tables while they are smaller. 
+	 * It is used by the variable elimination of Bayesian networks. */
+	public boolean decisionDiagrams = false;
+	
+	/** Class of the heuristic that chooses the elimination order, e.g. 
+	 * <code>IncrementalMinimalWeight</code>. It must have a constructor with 
+	 * the arguments of that of <code>EliminationHeuristic</code>. When null 
+	 * each algorithm uses its default heuristic. */
+	public Class<? extends EliminationHeuristic> eliminationHeuristic = null;
+	
 	// Constructor
 	public InferenceOptions(ProbNet probNet, Variable simulationIndexVariable) {
 		this.probNet = probNet;
@@ -54,6 +78,18 @@ public class InferenceOptions {
 			buffer.append("No simulation indices.\n");
 		}
 		buffer.append("Discount rate = " + discountRate);
+		if (concurrentPotentialOperations) {
+			buffer.append("\nConcurrent potential operations.");
+		}
+		if (singlePrecisionTables) {
+			buffer.append("\nSingle-precision tables.");
+		}
+		if (decisionDiagrams) {
+			buffer.append("\nDecision diagrams.");
+		}
+		if (eliminationHeuristic != null) {
+			buffer.append("\nElimination heuristic: " + eliminationHeuristic.getSimpleName());
+		}
 		return buffer.toString();
 	}
 	
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1(EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.inference;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.openmarkov.core.model.network.Variable;
+
+/**
+ * Result of <code>InferencePlanner</code>: the kind of inference chosen for a
+ * network and the estimated cost of exact inference on which the choice was
+ * based. Sizes are numbers of cells(<code>double</code> values) of the
+ * potentials created by the elimination of the variables; they are stored as
+ * <code>double</code> because they overflow a <code>long</code> in large
+ * networks.
+ */
+public class InferencePlan {
+
+	public enum Strategy {
+		/** Exact inference on the whole network. */
+		EXACT,
+		/** Exact inference once per configuration of a cutset. */
+		EXACT_WITH_CONDITIONING,
+		/** Stochastic simulation. */
+		APPROXIMATE
+	}
+
+	// Attributes
+	private Strategy strategy;
+
+	private List<Variable> eliminationOrder;
+
+	private double maxPotentialSize;
+
+	private double totalSize;
+
+	private double estimatedMillis;
+
+	private List<Variable> cutsetVariables;
+
+	private double numCutsetConfigurations;
+
+	private double maxPotentialSizeWithCutset;
+
+	private double totalSizeWithCutset;
+
+	private long memoryBudget;
+
+	// Constructor
+	/**
+	 * @param strategy
+	 * @param eliminationOrder Order used to estimate the cost of exact
+	 *            inference on the whole network.
+	 * @param maxPotentialSize Size of the largest potential of exact inference.
+	 * @param totalSize Sum of the sizes of the potentials of exact inference.
+	 * @param cutsetVariables Variables to instantiate; empty unless the
+	 *            strategy is <code>EXACT_WITH_CONDITIONING</code>.
+	 * @param maxPotentialSizeWithCutset Size of the largest potential of each
+	 *            exact inference given a configuration of the cutset.
+	 * @param totalSizeWithCutset Sum of the sizes of the potentials of each
+	 *            exact inference given a configuration of the cutset.
+	 * @param estimatedMillis Estimated time of the chosen strategy. For the
+	 *            approximate strategy, the time of exact inference.
+	 * @param memoryBudget Bytes available for the potentials.
+	 */
+	public InferencePlan(Strategy strategy, List<Variable> eliminationOrder,
+			double maxPotentialSize, double totalSize, List<Variable> cutsetVariables,
+			double maxPotentialSizeWithCutset, double totalSizeWithCutset,
+			double estimatedMillis, long memoryBudget) {
+		this.strategy = strategy;
+		this.eliminationOrder = Collections.unmodifiableList(eliminationOrder);
+		this.maxPotentialSize = maxPotentialSize;
+		this.totalSize = totalSize;
+		this.cutsetVariables = Collections.unmodifiableList(cutsetVariables);
+		this.numCutsetConfigurations = 1.0;
+		for (Variable variable : cutsetVariables) {
+			numCutsetConfigurations *= variable.getNumStates();
+		}
+		this.maxPotentialSizeWithCutset = maxPotentialSizeWithCutset;
+		this.totalSizeWithCutset = totalSizeWithCutset;
+		this.estimatedMillis = estimatedMillis;
+		this.memoryBudget = memoryBudget;
+	}
+
+	// Methods
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/** @return The elimination order of exact inference on the whole network. */
+	public List<Variable> getEliminationOrder() {
+		return eliminationOrder;
+	}
+
+	/** @return Number of cells of the largest potential of exact inference. */
+	public double getMaxPotentialSize() {
+		return maxPotentialSize;
+	}
+
+	/** @return Sum of the number of cells of the potentials of exact inference. */
+	public double getTotalSize() {
+		return totalSize;
+	}
+
+	/** @return The cutset. Empty unless the strategy is <code>EXACT_WITH_CONDITIONING</code>. */
+	public List<Variable> getCutsetVariables() {
+		return cutsetVariables;
+	}
+
+	public double getNumCutsetConfigurations() {
+		return numCutsetConfigurations;
+	}
+
+	/** @return Number of cells of the largest potential given a configuration of the cutset. */
+	public double getMaxPotentialSizeWithCutset() {
+		return maxPotentialSizeWithCutset;
+	}
+
+	/** @return Sum of the number of cells of the potentials given a configuration of the cutset. */
+	public double getTotalSizeWithCutset() {
+		return totalSizeWithCutset;
+	}
+
+	/** @return Estimated time, in milliseconds. It is only an order of magnitude. */
+	public double getEstimatedMillis() {
+		return estimatedMillis;
+	}
+
+	/** @return Bytes available for the potentials. */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("Inference plan: " + strategy);
+		buffer.append(String.format(
+				". Exact inference: largest potential %.3g cells, total %.3g cells",
+				maxPotentialSize, totalSize));
+		if (!cutsetVariables.isEmpty()) {
+			buffer.append(String.format(". Cutset %s (%.3g configurations): "
+					+ "largest potential %.3g cells, total %.3g cells", cutsetVariables,
+					numCutsetConfigurations, maxPotentialSizeWithCutset, totalSizeWithCutset));
+		}
+		buffer.append(String.format(". Estimated time %.3g ms. Memory budget %.3g MB.",
+				estimatedMillis, memoryBudget / (1024.0 * 1024.0)));
+		return buffer.toString();
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.inference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openmarkov.core.inference.InferencePlan.Strategy;
+import org.openmarkov.core.inference.heuristic.IndexedPriorityQueue;
+import org.openmarkov.core.model.network.EvidenceCase;
+import org.openmarkov.core.model.network.NodeType;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.ProbNode;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.Potential;
+
+/**
+ * Decides, before allocating any potential, whether a network can be
+ * evaluated exactly within a memory budget. The elimination of the variables
+ * is simulated on the interaction graph of the potentials (a minimal weight
+ * order) to get the size of the potentials that exact inference would create.
+ * If they do not fit in the budget, a cutset is searched by removing each
+ * time the variable with more neighbors, until the potentials given each
+ * configuration of the cutset fit in the budget or the estimated time exceeds
+ * the time limit; in that case approximate inference is proposed.
+ * <p>
+ * The estimates are those of a minimal weight order, not bounds: the
+ * algorithms triangulate with their own heuristics, whose potentials can be
+ * larger, and the elimination order of influence diagrams is constrained by
+ * the order of the decisions. The callers must be ready for exact inference
+ * running out of memory anyway.
+ */
+public class InferencePlanner {
+
+	// Attributes
+	/** Bytes of each cell of a <code>TablePotential</code>. */
+	private static final int BYTES_PER_CELL = Double.SIZE / Byte.SIZE;
+
+	/** Bytes available for the potentials of exact inference. */
+	private long memoryBudget;
+
+	/** Maximum estimated time of exact inference with conditioning, in ms. */
+	private double maxMillis;
+
+	/** Time needed to compute each cell of a potential, in nanoseconds. */
+	private double nanosPerCell;
+
+	// Constructor
+	/**
+	 * Creates a planner whose budget is a quarter of the maximum heap size,
+	 * with a time limit of one minute.
+	 */
+	public InferencePlanner() {
+		this(Runtime.getRuntime().maxMemory() / 4, 60000.0);
+	}
+
+	/**
+	 * @param memoryBudget Bytes available for the potentials.
+	 * @param maxMillis Maximum estimated time of exact inference with
+	 *            conditioning, in milliseconds.
+	 */
+	public InferencePlanner(long memoryBudget, double maxMillis) {
+		this.memoryBudget = memoryBudget;
+		this.maxMillis = maxMillis;
+		this.nanosPerCell = 20.0;
+	}
+
+	// Methods
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+
+	public void setMaxMillis(double maxMillis) {
+		this.maxMillis = maxMillis;
+	}
+
+	public double getNanosPerCell() {
+		return nanosPerCell;
+	}
+
+	/** @param nanosPerCell Calibration of the estimated time. */
+	public void setNanosPerCell(double nanosPerCell) {
+		this.nanosPerCell = nanosPerCell;
+	}
+
+	/**
+	 * @param probNet <code>ProbNet</code>
+	 * @param evidence Findings. The observed variables are not eliminated.
+	 * @param conditioningAllowed True if there is an exact algorithm that
+	 *            accepts a cutset for this network.
+	 * @param approximationAllowed True if there is an approximate algorithm
+	 *            for this network.
+	 * @return The plan. When exact inference exceeds the budget and neither
+	 *         conditioning nor approximation are allowed, the strategy is
+	 *         <code>EXACT</code> anyway.
+	 */
+	public InferencePlan plan(ProbNet probNet, EvidenceCase evidence,
+			boolean conditioningAllowed, boolean approximationAllowed) {
+		LinkedHashMap<Variable, Set<Variable>> graph = getInteractionGraph(probNet, evidence);
+		List<Variable> eliminationOrder = new ArrayList<Variable>();
+		double[] sizes = simulateElimination(graph, eliminationOrder);
+		double maxSize = sizes[0];
+		double totalSize = sizes[1];
+		double exactMillis = getMillis(totalSize);
+		if (fits(totalSize) || (!conditioningAllowed && !approximationAllowed)) {
+			return new InferencePlan(Strategy.EXACT, eliminationOrder, maxSize, totalSize,
+					new ArrayList<Variable>(), maxSize, totalSize, exactMillis, memoryBudget);
+		}
+		if (conditioningAllowed) {
+			List<Variable> cutset = new ArrayList<Variable>();
+			double numConfigurations = 1.0;
+			while (!graph.isEmpty()) {
+				Variable variable = getVariableWithMoreNeighbors(graph);
+				removeVariable(graph, variable);
+				cutset.add(variable);
+				numConfigurations *= variable.getNumStates();
+				// each configuration takes at least one cell per variable
+				if (getMillis(numConfigurations * graph.size()) > maxMillis) {
+					break;
+				}
+				sizes = simulateElimination(graph, new ArrayList<Variable>());
+				double millis = getMillis(numConfigurations * sizes[1]);
+				if (millis > maxMillis) {
+					break;
+				}
+				if (fits(sizes[1])) {
+					return new InferencePlan(Strategy.EXACT_WITH_CONDITIONING, eliminationOrder,
+							maxSize, totalSize, cutset, sizes[0], sizes[1], millis, memoryBudget);
+				}
+			}
+		}
+		Strategy strategy = approximationAllowed ? Strategy.APPROXIMATE : Strategy.EXACT;
+		return new InferencePlan(strategy, eliminationOrder, maxSize, totalSize,
+				new ArrayList<Variable>(), maxSize, totalSize, exactMillis, memoryBudget);
+	}
+
+	/** @return True if <code>numCells</code> fit in the memory budget. */
+	private boolean fits(double numCells) {
+		return numCells * BYTES_PER_CELL <= memoryBudget;
+	}
+
+	private double getMillis(double numCells) {
+		return numCells * nanosPerCell / 1.0E6;
+	}
+
+	/**
+	 * @param probNet
+	 * @param evidence
+	 * @return Neighbors of each chance and decision variable not observed: the
+	 *         variables with which it shares a potential.
+	 */
+	private static LinkedHashMap<Variable, Set<Variable>> getInteractionGraph(ProbNet probNet,
+			EvidenceCase evidence) {
+		LinkedHashMap<Variable, Set<Variable>> graph = new LinkedHashMap<Variable, Set<Variable>>();
+		for (ProbNode probNode : probNet.getProbNodes()) {
+			Variable variable = probNode.getVariable();
+			if (probNode.getNodeType() != NodeType.UTILITY && !evidence.contains(variable)) {
+				graph.put(variable, new LinkedHashSet<Variable>());
+			}
+		}
+		for (Potential potential : probNet.getPotentials()) {
+			List<Variable> variables = new ArrayList<Variable>(potential.getVariables());
+			variables.retainAll(graph.keySet());
+			for (Variable variable : variables) {
+				Set<Variable> neighbors = graph.get(variable);
+				neighbors.addAll(variables);
+				neighbors.remove(variable);
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Eliminates the variables of a copy of <code>graph</code>, each time the
+	 * one whose neighbors and itself have less configurations.
+	 * @param graph Interaction graph. It is not modified.
+	 * @param eliminationOrder Receives the elimination order.
+	 * @return The number of configurations of the largest potential created
+	 *         and the sum of the number of configurations of all of them.
+	 */
+	private static double[] simulateElimination(Map<Variable, Set<Variable>> graph,
+			List<Variable> eliminationOrder) {
+		HashMap<Variable, Set<Variable>> neighbors = new HashMap<Variable, Set<Variable>>();
+		IndexedPriorityQueue<Variable> queue = new IndexedPriorityQueue<Variable>(graph.size());
+		for (Variable variable : graph.keySet()) {
+			neighbors.put(variable, new LinkedHashSet<Variable>(graph.get(variable)));
+		}
+		for (Variable variable : graph.keySet()) {
+			queue.add(variable, getWeight(variable, neighbors.get(variable)));
+		}
+		double maxSize = 0.0;
+		double totalSize = 0.0;
+		while (!queue.isEmpty()) {
+			Variable variable = queue.peek();
+			double size = queue.getScore(variable);
+			maxSize = Math.max(maxSize, size);
+			totalSize += size;
+			queue.remove(variable);
+			eliminationOrder.add(variable);
+			Set<Variable> variableNeighbors = neighbors.remove(variable);
+			for (Variable neighbor : variableNeighbors) {
+				Set<Variable> neighborNeighbors = neighbors.get(neighbor);
+				neighborNeighbors.remove(variable);
+				for (Variable otherNeighbor : variableNeighbors) {
+					if (otherNeighbor != neighbor) {
+						neighborNeighbors.add(otherNeighbor);
+					}
+				}
+			}
+			for (Variable neighbor : variableNeighbors) {
+				queue.update(neighbor, getWeight(neighbor, neighbors.get(neighbor)));
+			}
+		}
+		return new double[] {maxSize, totalSize};
+	}
+
+	/** @return Product of the number of states of the variables. */
+	private static double getWeight(Variable variable, Set<Variable> neighbors) {
+		double weight = variable.getNumStates();
+		for (Variable neighbor : neighbors) {
+			weight *= neighbor.getNumStates();
+		}
+		return weight;
+	}
+
+	private static Variable getVariableWithMoreNeighbors(Map<Variable, Set<Variable>> graph) {
+		Variable variableWithMoreNeighbors = null;
+		int maxNumNeighbors = -1;
+		for (Map.Entry<Variable, Set<Variable>> entry : graph.entrySet()) {
+			if (entry.getValue().size() > maxNumNeighbors) {
+				maxNumNeighbors = entry.getValue().size();
+				variableWithMoreNeighbors = entry.getKey();
+			}
+		}
+		return variableWithMoreNeighbors;
+	}
+
+	private static void removeVariable(Map<Variable, Set<Variable>> graph, Variable variable) {
+		for (Variable neighbor : graph.remove(variable)) {
+			graph.get(neighbor).remove(variable);
+		}
+	}
+
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.inference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.openmarkov.core.exception.NonProjectablePotentialException;
+import org.openmarkov.core.exception.WrongCriterionException;
+import org.openmarkov.core.model.network.EvidenceCase;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.Potential;
+import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.SumPotential;
+import org.openmarkov.core.model.network.potential.TablePotential;
+
+/**
+ * Potentials of a network compiled for forward sampling. The variables are
+ * numbered, a sample is an <code>int[]</code> with the state index of each
+ * variable (the configuration) and each table stores the strides of its
+ * variables, so that drawing a sample and computing its weight do not look up
+ * any map nor create any object. The rows of the variables with many states
+ * are sampled in constant time with alias tables.
+ * <p>
+ * A plan is only read after being built: several threads can sample from the
+ * same plan, each one with its own configuration and random generator.
+ *
+ * @author agent
+ */
+public class SamplingPlan {
+
+	/** Variables with at least this number of states are sampled with alias tables. */
+	public static final int MIN_STATES_FOR_ALIAS_TABLES = 8;
+
+	/** Table of a potential, indexed by the configuration. */
+	private static class CompiledTable {
+
+		private int[] ids;
+
+		private int[] strides;
+
+		private double[] values;
+
+		private CompiledTable(TablePotential potential, SamplingPlan plan) {
+			List<Variable> variables = potential.getVariables();
+			int[] offsets = potential.getOffsets();
+			ids = new int[variables.size()];
+			strides = new int[variables.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = plan.addVariable(variables.get(i));
+				strides[i] = offsets[i];
+			}
+			values = potential.values;
+		}
+
+		private double getValue(int[] configuration) {
+			return values[getIndex(configuration, ids, strides)];
+		}
+	}
+
+	/** Sampling of a variable or evaluation of a utility. */
+	private static class Step {
+
+		/** Variable sampled or utility variable. */
+		private int id;
+
+		/** Conditional probability or utility table. */
+		private CompiledTable table;
+
+		/** Utility variables added, when the step is a sum of utilities. */
+		private int[] addendIds;
+
+		private int numStates;
+
+		/** Alias tables of the rows, or <code>null</code> when not used. */
+		private double[] aliasProbabilities;
+
+		private int[] aliases;
+	}
+
+	// Attributes
+	private List<Variable> variables;
+
+	private HashMap<Variable, Integer> ids;
+
+	/** State index of the observed variables; 0 for the rest. */
+	private int[] initialConfiguration;
+
+	private Step[] steps;
+
+	/** Factors of the weight of a sample. */
+	private CompiledTable[] weightTables;
+
+	// Constructor
+	/**
+	 * @param potentialsToSample
+	 *            Conditional probabilities of the variables to sample, whose
+	 *            first variable is the conditioned one, and utility
+	 *            potentials, in topological order
+	 * @param weightPotentials
+	 *            Potentials whose product is the weight of a sample: the
+	 *            conditional probabilities of the observed variables and the
+	 *            link restrictions. The probabilities of observed variables
+	 *            without parents are constant; they are ignored unless they
+	 *            are 0.
+	 * @param evidence
+	 *            <code>EvidenceCase</code>
+	 * @throws NonProjectablePotentialException
+	 *             if some potential can not be converted into a table
+	 * @throws WrongCriterionException
+	 */
+	public SamplingPlan(List<Potential> potentialsToSample, List<Potential> weightPotentials,
+			EvidenceCase evidence) throws NonProjectablePotentialException,
+			WrongCriterionException {
+		variables = new ArrayList<Variable>();
+		ids = new HashMap<Variable, Integer>();
+		for (Variable variable : evidence.getVariables()) {
+			addVariable(variable);
+		}
+		steps = new Step[potentialsToSample.size()];
+		for (int i = 0; i < steps.length; i++) {
+			steps[i] = createStep(potentialsToSample.get(i));
+		}
+		List<CompiledTable> factors = new ArrayList<CompiledTable>();
+		for (Potential potential : weightPotentials) {
+			CompiledTable factor = new CompiledTable(getTable(potential), this);
+			factors.add(factor);
+		}
+		weightTables = factors.toArray(new CompiledTable[factors.size()]);
+		initialConfiguration = new int[variables.size()];
+		for (Variable variable : evidence.getVariables()) {
+			initialConfiguration[ids.get(variable)] = evidence.getState(variable);
+		}
+		// constant factors
+		List<CompiledTable> variableFactors = new ArrayList<CompiledTable>();
+		for (CompiledTable factor : weightTables) {
+			if (factor.ids.length > 1 || factor.getValue(initialConfiguration) == 0.0) {
+				variableFactors.add(factor);
+			}
+		}
+		weightTables = variableFactors.toArray(new CompiledTable[variableFactors.size()]);
+	}
+
+	// Methods
+	/** @return The variables, in the order of their ids */
+	public List<Variable> getVariables() {
+		return Collections.unmodifiableList(variables);
+	}
+
+	/**
+	 * @param variable
+	 *            <code>Variable</code>
+	 * @return The id of <code>variable</code>, i.e., its position in the
+	 *         configuration, or -1 if it does not appear in the plan
+	 */
+	public int getId(Variable variable) {
+		Integer id = ids.get(variable);
+		return (id != null) ? id : -1;
+	}
+
+	/**
+	 * @param variables
+	 *            <code>List</code> of <code>Variable</code> of the plan
+	 * @return The ids of <code>variables</code>
+	 */
+	public int[] getIds(List<Variable> variables) {
+		int[] ids = new int[variables.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = getId(variables.get(i));
+		}
+		return ids;
+	}
+
+	/**
+	 * @return A new configuration with the findings of the evidence. It is
+	 *         overwritten by each call to <code>sample</code>.
+	 */
+	public int[] createConfiguration() {
+		return initialConfiguration.clone();
+	}
+
+	/** @return A new array for the utilities, indexed by id. */
+	public double[] createUtilities() {
+		return new double[variables.size()];
+	}
+
+	/**
+	 * Samples the unobserved variables in topological order and evaluates the
+	 * utilities.
+	 *
+	 * @param randomGenerator
+	 *            <code>Random</code>
+	 * @param configuration
+	 *            Created by <code>createConfiguration</code>. Receives the
+	 *            sampled states.
+	 * @param utilities
+	 *            Created by <code>createUtilities</code>. Receives the value
+	 *            of each utility variable.
+	 */
+	public void sample(Random randomGenerator, int[] configuration, double[] utilities) {
+		for (Step step : steps) {
+			if (step.addendIds != null) {
+				double sum = 0.0;
+				for (int addendId : step.addendIds) {
+					sum += utilities[addendId];
+				}
+				utilities[step.id] = sum;
+			} else if (step.numStates == 0) {
+				utilities[step.id] = step.table.getValue(configuration);
+			} else {
+				configuration[step.id] = sampleRow(step, configuration, randomGenerator);
+			}
+		}
+	}
+
+	/**
+	 * @param configuration
+	 *            <code>int[]</code>
+	 * @return The product of the weight potentials in the configuration
+	 */
+	public double getWeight(int[] configuration) {
+		double weight = 1.0;
+		for (CompiledTable factor : weightTables) {
+			weight *= factor.getValue(configuration);
+		}
+		return weight;
+	}
+
+	/**
+	 * @param configuration
+	 *            <code>int[]</code>
+	 * @param ids
+	 *            Ids of the variables of a table
+	 * @param strides
+	 *            Offsets of the variables in the table
+	 * @return The position in the table of the configuration
+	 */
+	public static int getIndex(int[] configuration, int[] ids, int[] strides) {
+		int index = 0;
+		for (int i = 0; i < ids.length; i++) {
+			index += configuration[ids[i]] * strides[i];
+		}
+		return index;
+	}
+
+	private int addVariable(Variable variable) {
+		Integer id = ids.get(variable);
+		if (id == null) {
+			id = variables.size();
+			ids.put(variable, id);
+			variables.add(variable);
+		}
+		return id;
+	}
+
+	private Step createStep(Potential potential) throws NonProjectablePotentialException,
+			WrongCriterionException {
+		Step step = new Step();
+		if (potential.getPotentialRole() == PotentialRole.UTILITY) {
+			step.id = addVariable(potential.getUtilityVariable());
+			if (potential instanceof SumPotential) {
+				step.addendIds = new int[potential.getNumVariables()];
+				for (int i = 0; i < step.addendIds.length; i++) {
+					step.addendIds[i] = addVariable(potential.getVariable(i));
+				}
+			} else {
+				step.table = new CompiledTable(getTable(potential), this);
+			}
+		} else {
+			TablePotential table = getTable(potential);
+			step.table = new CompiledTable(table, this);
+			step.id = step.table.ids[0];
+			step.numStates = potential.getVariable(0).getNumStates();
+			if (step.numStates >= MIN_STATES_FOR_ALIAS_TABLES) {
+				buildAliasTables(step);
+			}
+		}
+		return step;
+	}
+
+	private static TablePotential getTable(Potential potential)
+			throws NonProjectablePotentialException, WrongCriterionException {
+		if (potential instanceof TablePotential) {
+			return (TablePotential) potential;
+		}
+		if (potential.getPotentialRole() == PotentialRole.UTILITY) {
+			return potential.tableProject(new EvidenceCase(), null).get(0);
+		}
+		return potential.getCPT();
+	}
+
+	/**
+	 * @return The state sampled from the row of the table given by the states
+	 *         of the parents. When the row does not sum 1, the last state
+	 *         takes the difference.
+	 */
+	private static int sampleRow(Step step, int[] configuration, Random randomGenerator) {
+		CompiledTable table = step.table;
+		int rowStart = 0;
+		for (int i = 1; i < table.ids.length; i++) {
+			rowStart += configuration[table.ids[i]] * table.strides[i];
+		}
+		int numStates = step.numStates;
+		if (step.aliases != null) {
+			double random = randomGenerator.nextDouble() * numStates;
+			int column = Math.min((int) random, numStates - 1);
+			return (random - column < step.aliasProbabilities[rowStart + column]) ? column
+					: step.aliases[rowStart + column];
+		}
+		double random = randomGenerator.nextDouble();
+		int sampleIndex = 0;
+		double accumulatedProbability = table.values[rowStart];
+		while (random > accumulatedProbability && sampleIndex < numStates - 1) {
+			++sampleIndex;
+			accumulatedProbability += table.values[rowStart + sampleIndex];
+		}
+		return sampleIndex;
+	}
+
+	/**
+	 * Builds the alias table of each row with Vose's method. Each row is
+	 * normalized first; the difference between its sum and 1 is assigned to
+	 * the last state, as in the sequential sampling.
+	 */
+	private static void buildAliasTables(Step step) {
+		double[] values = step.table.values;
+		int numStates = step.numStates;
+		step.aliasProbabilities = new double[values.length];
+		step.aliases = new int[values.length];
+		double[] scaled = new double[numStates];
+		int[] small = new int[numStates];
+		int[] large = new int[numStates];
+		for (int rowStart = 0; rowStart < values.length; rowStart += numStates) {
+			double sum = 0.0;
+			for (int i = 0; i < numStates - 1; i++) {
+				scaled[i] = Math.max(0.0, Math.min(values[rowStart + i], 1.0 - sum));
+				sum += scaled[i];
+			}
+			scaled[numStates - 1] = Math.max(0.0, 1.0 - sum);
+			int numSmall = 0;
+			int numLarge = 0;
+			for (int i = 0; i < numStates; i++) {
+				scaled[i] *= numStates;
+				if (scaled[i] < 1.0) {
+					small[numSmall++] = i;
+				} else {
+					large[numLarge++] = i;
+				}
+			}
+			while (numSmall > 0 && numLarge > 0) {
+				int less = small[--numSmall];
+				int more = large[--numLarge];
+				step.aliasProbabilities[rowStart + less] = scaled[less];
+				step.aliases[rowStart + less] = more;
+				scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+				if (scaled[more] < 1.0) {
+					small[numSmall++] = more;
+				} else {
+					large[numLarge++] = more;
+				}
+			}
+			while (numLarge > 0) {
+				int state = large[--numLarge];
+				step.aliasProbabilities[rowStart + state] = 1.0;
+				step.aliases[rowStart + state] = state;
+			}
+			while (numSmall > 0) {
+				// rounding errors
+				int state = small[--numSmall];
+				step.aliasProbabilities[rowStart + state] = 1.0;
+				step.aliases[rowStart + state] = state;
+			}
+		}
+	}
+
+}
@@ -23,4 +23,10 @@ public @interface InferenceAnnotation {
      * @return The name of the inference algorithm
      */
     String name ();
+
+    /**
+     * @return True if the algorithm accepts a cutset, i.e., variables that
+     *         are instantiated in turn in each of their configurations
+     */
+    boolean acceptsCutset () default false;
 }
\ No newline at end of file
@@ -16,6 +16,9 @@ import java.util.List;
 
 import org.openmarkov.core.exception.NotEvaluableNetworkException;
 import org.openmarkov.core.inference.InferenceAlgorithm;
+import org.openmarkov.core.inference.InferencePlan;
+import org.openmarkov.core.inference.InferencePlanner;
+import org.openmarkov.core.model.network.EvidenceCase;
 import org.openmarkov.core.model.network.ProbNet;
 import org.openmarkov.core.model.network.type.BayesianNetworkType;
 import org.openmarkov.core.model.network.type.InfluenceDiagramType;
@@ -42,6 +45,10 @@ public class InferenceManager
      * The list of plugins detected in the project
      */
     private HashMap<String, Class<? extends InferenceAlgorithm>> inferenceAlgorithms;
+    /**
+     * Estimates the cost of exact inference before choosing an algorithm
+     */
+    private InferencePlanner                                     planner;
 
     /**
      * Constructor for InferenceManager.
@@ -52,6 +59,7 @@ public class InferenceManager
         super ();
         this.pluginsLoader = new PluginLoader ();
         this.inferenceAlgorithms = new HashMap<String, Class<? extends InferenceAlgorithm>> ();
+        this.planner = new InferencePlanner ();
         for (Class<?> InferenceAlgorithmClass : findAllInferencePlugins ())
         {
             InferenceAnnotation lAnnotation = InferenceAlgorithmClass.getAnnotation (InferenceAnnotation.class);
@@ -260,6 +268,38 @@ public class InferenceManager
         return defaultAlgorithm;
     }
 
+    /**
+     * Returns an instance of the default algorithm for interactive use, where
+     * the same instance is queried again each time a finding is added or
+     * retracted. For Bayesian networks it is the clique tree propagation, if
+     * available; otherwise the default inference algorithm.
+     * @param probNet
+     * @return
+     * @throws NotEvaluableNetworkException
+     */
+    public InferenceAlgorithm getDefaultIncrementalAlgorithm (ProbNet probNet)
+        throws NotEvaluableNetworkException
+    {
+        InferenceAlgorithm defaultAlgorithm = null;
+        if (probNet.getNetworkType ().equals (BayesianNetworkType.getUniqueInstance ())
+            && inferenceAlgorithms.containsKey ("CliqueTreePropagation"))
+        {
+            try
+            {
+                defaultAlgorithm = getInferenceAlgorithmByName ("CliqueTreePropagation", probNet);
+            }
+            catch (SecurityException | NoSuchMethodException e)
+            {
+                e.printStackTrace ();
+            }
+        }
+        if (defaultAlgorithm == null)
+        {
+            defaultAlgorithm = getDefaultInferenceAlgorithm (probNet);
+        }
+        return defaultAlgorithm;
+    }
+
     /**
      * Returns an instance of the default approximate algorithm given the
      * ProbNet
@@ -284,6 +324,123 @@ public class InferenceManager
         return defaultAlgorithm;
     }
 
+    /**
+     * Returns the planner used by <code>getInferencePlan</code>, whose memory
+     * budget and time limit can be configured
+     * @return
+     */
+    public InferencePlanner getPlanner ()
+    {
+        return planner;
+    }
+
+    /**
+     * Simulates the elimination of the variables of the network, without
+     * allocating any potential, and chooses exact inference, exact inference
+     * with conditioning or approximate inference according to the memory
+     * budget of the planner
+     * @param probNet
+     * @param evidence
+     * @return
+     */
+    public InferencePlan getInferencePlan (ProbNet probNet, EvidenceCase evidence)
+    {
+        boolean conditioningAllowed = getCutsetAlgorithmName (probNet) != null;
+        boolean approximationAllowed = isEvaluable ("LikelihoodWeighting", probNet);
+        return planner.plan (probNet, evidence, conditioningAllowed, approximationAllowed);
+    }
+
+    /**
+     * Returns an instance of the algorithm that carries out the plan
+     * @param probNet
+     * @param plan
+     * @return
+     * @throws NotEvaluableNetworkException
+     */
+    public InferenceAlgorithm getInferenceAlgorithm (ProbNet probNet, InferencePlan plan)
+        throws NotEvaluableNetworkException
+    {
+        InferenceAlgorithm algorithm = null;
+        switch (plan.getStrategy ())
+        {
+            case EXACT :
+                algorithm = getDefaultIncrementalAlgorithm (probNet);
+                break;
+            case EXACT_WITH_CONDITIONING :
+                String algorithmName = getCutsetAlgorithmName (probNet);
+                if (algorithmName != null)
+                {
+                    try
+                    {
+                        algorithm = getInferenceAlgorithmByName (algorithmName, probNet);
+                    }
+                    catch (SecurityException | NoSuchMethodException e)
+                    {
+                        e.printStackTrace ();
+                    }
+                }
+                if (algorithm != null)
+                {
+                    algorithm.setCutsetVariables (plan.getCutsetVariables ());
+                }
+                break;
+            case APPROXIMATE :
+                algorithm = getDefaultApproximateAlgorithm (probNet);
+                break;
+        }
+        return algorithm;
+    }
+
+    /**
+     * Looks for the algorithm in the annotations of the registered classes,
+     * without creating any instance
+     * @param probNet
+     * @return The name of an algorithm that accepts a cutset and can evaluate
+     *         the network, or null if there is none
+     */
+    private String getCutsetAlgorithmName (ProbNet probNet)
+    {
+        String cutsetAlgorithmName = null;
+        for (String algorithmName : inferenceAlgorithms.keySet ())
+        {
+            InferenceAnnotation annotation = inferenceAlgorithms.get (algorithmName).getAnnotation (InferenceAnnotation.class);
+            if (cutsetAlgorithmName == null && annotation != null && annotation.acceptsCutset ()
+                && isEvaluable (algorithmName, probNet))
+            {
+                cutsetAlgorithmName = algorithmName;
+            }
+        }
+        return cutsetAlgorithmName;
+    }
+
+    /**
+     * @param algorithmName
+     * @param probNet
+     * @return True if the algorithm is registered and can evaluate the network
+     */
+    private boolean isEvaluable (String algorithmName, ProbNet probNet)
+    {
+        Class<? extends InferenceAlgorithm> inferenceAlgorithmClass = inferenceAlgorithms.get (algorithmName);
+        boolean isEvaluable = inferenceAlgorithmClass != null;
+        if (isEvaluable)
+        {
+            try
+            {
+                Method checkEval = inferenceAlgorithmClass.getMethod ("checkEvaluability", ProbNet.class);
+                checkEval.invoke (inferenceAlgorithmClass, probNet);
+            }
+            catch (InvocationTargetException e)
+            {
+                isEvaluable = e.getTargetException ().getClass () != NotEvaluableNetworkException.class;
+            }
+            catch (SecurityException | NoSuchMethodException | IllegalAccessException | IllegalArgumentException e)
+            {
+                e.printStackTrace ();
+            }
+        }
+        return isEvaluable;
+    }
+
     /**
      * This method gets all the plugins with InferenceType annotations
      * @return a list with the plugins detected with InferenceType annotations.
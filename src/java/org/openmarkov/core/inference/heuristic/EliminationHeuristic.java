@@ -67,6 +67,27 @@ public abstract class EliminationHeuristic implements PNUndoableEditListener {
 		variableProposed = null;
 	}
 
+	/** Creates a heuristic of the received class with its constructor 
+	 * <code>(ProbNet, List)</code>, the same as that of this class.
+	 * @param heuristicClass <code>Class</code> of the heuristic
+	 * @param probNet <code>ProbNet</code>
+	 * @param variablesToEliminate <code>List</code> of <code>List</code> of 
+	 *   <code>Variable</code>
+	 * @return <code>EliminationHeuristic</code>
+	 * @throws IllegalArgumentException if the class has not that constructor
+	 *   or the constructor fails */
+	public static EliminationHeuristic newInstance(
+			Class<? extends EliminationHeuristic> heuristicClass, ProbNet probNet,
+			List<List<Variable>> variablesToEliminate) {
+		try {
+			return heuristicClass.getConstructor(ProbNet.class, List.class).newInstance(
+					probNet, variablesToEliminate);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Can not create the heuristic "
+					+ heuristicClass.getName() + ": " + e);
+		}
+	}
+
 	// Methods
 	/** @return The <code>ProbNode</code> that the heuristic suggest to 
 	 * eliminate. */
@@ -0,0 +1,183 @@
+/*
+* Copyright 2011 CISIAD, UNED, Spain
+*
+* Licensed under the European Union Public Licence, version 1.1 (EUPL)
+*
+* Unless required by applicable law, this code is distributed
+* on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+*/
+
+package org.openmarkov.core.inference.heuristic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.event.UndoableEditEvent;
+
+import org.openmarkov.core.exception.CanNotDoEditException;
+import org.openmarkov.core.exception.ConstraintViolationException;
+import org.openmarkov.core.exception.NonProjectablePotentialException;
+import org.openmarkov.core.exception.WrongCriterionException;
+import org.openmarkov.core.model.graph.Node;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.ProbNode;
+import org.openmarkov.core.model.network.Variable;
+
+/** Skeleton of the heuristics that keep the score of the candidate variables
+ * in an <code>IndexedPriorityQueue</code>. The heuristic keeps its own copy of
+ * the undirected graph; when a variable is eliminated it links its neighbors
+ * and recomputes only the scores that may have changed, instead of scoring 
+ * every remaining variable at each step. The lowest score is eliminated first.
+ * @author agent */
+public abstract class IncrementalEliminationHeuristic extends EliminationHeuristic {
+
+	// Attributes
+	/** Neighbors of each variable not yet eliminated in the graph triangulated
+	 * so far. */
+	protected HashMap<Variable, Set<Variable>> neighbors;
+	
+	/** Candidates: variables of the last non empty array of 
+	 * <code>variablesToEliminate</code>. */
+	private IndexedPriorityQueue<Variable> queue;
+
+	// Constructor
+	/** @param probNet <code>ProbNet</code>
+	 * @param variablesToEliminate <code>List</code> of <code>List</code> of
+	 *  <code>Variable</code>. Variables will be eliminated from the last array 
+	 *  to the first. */
+	public IncrementalEliminationHeuristic(ProbNet probNet,
+			List<List<Variable>> variablesToEliminate) {
+		super(probNet, variablesToEliminate);
+		List<ProbNode> probNodes = probNet.getProbNodes();
+		neighbors = new HashMap<Variable, Set<Variable>>(probNodes.size());
+		for (ProbNode probNode : probNodes) {
+			List<Node> nodeNeighbors = probNode.getNode().getNeighbors();
+			Set<Variable> variableNeighbors = new LinkedHashSet<Variable>(nodeNeighbors.size());
+			for (Node neighbor : nodeNeighbors) {
+				variableNeighbors.add(((ProbNode)neighbor.getObject()).getVariable());
+			}
+			neighbors.put(probNode.getVariable(), variableNeighbors);
+		}
+		queue = new IndexedPriorityQueue<Variable>(probNodes.size());
+	}
+
+	// Methods
+	/** @param variable <code>Variable</code> not eliminated yet.
+	 * @return Score of <code>variable</code> in the current graph. */
+	protected abstract double getScore(Variable variable);
+	
+	/** @return <code>true</code> when the score of a variable depends on the
+	 *  links between its neighbors, not only on its neighbors. In this case,
+	 *  adding a link changes the score of the variables adjacent to both 
+	 *  ends. */
+	protected abstract boolean dependsOnLinksBetweenNeighbors();
+	
+	/** @return Variable with the lowest score among the variables of the last
+	 *  non empty array, or <code>null</code> if there are no variables left */
+	public Variable getVariableToDelete() {
+		if (queue.isEmpty()) {
+			fillQueue();
+		}
+		return queue.peek();
+	}
+
+	/** Puts in the queue the variables of the last non empty array. */
+	private void fillQueue() {
+		for (int i = variablesToEliminate.size() - 1; i >= 0 && queue.isEmpty(); i--) {
+			List<Variable> variables = variablesToEliminate.get(i);
+			if (variables != null) {
+				for (Variable variable : variables) {
+					if (neighbors.containsKey(variable) && !queue.contains(variable)) {
+						queue.add(variable, getScore(variable));
+					}
+				}
+			}
+		}
+	}
+
+	/** Eliminates the variable of the edit from the graph of the heuristic,
+	 * links its neighbors and updates the affected scores. 
+	 * @param event <code>UndoableEditEvent</code> */
+	public void undoableEditHappened(UndoableEditEvent event) {
+		super.undoableEditHappened(event);
+		Variable eliminatedVariable = getEventVariable(event);
+		if (eliminatedVariable == null) {
+			return;
+		}
+		Set<Variable> eliminatedNeighbors = neighbors.remove(eliminatedVariable);
+		queue.remove(eliminatedVariable);
+		if (eliminatedNeighbors == null) {
+			return;
+		}
+		Set<Variable> affectedVariables = new HashSet<Variable>(eliminatedNeighbors);
+		List<Variable> clique = new ArrayList<Variable>(eliminatedNeighbors);
+		for (Variable variable : clique) {
+			neighbors.get(variable).remove(eliminatedVariable);
+		}
+		int cliqueSize = clique.size();
+		for (int i = 0; i < cliqueSize - 1; i++) {
+			Variable variableI = clique.get(i);
+			Set<Variable> neighborsI = neighbors.get(variableI);
+			for (int j = i + 1; j < cliqueSize; j++) {
+				Variable variableJ = clique.get(j);
+				if (!neighborsI.contains(variableJ)) {
+					Set<Variable> neighborsJ = neighbors.get(variableJ);
+					if (dependsOnLinksBetweenNeighbors()) {
+						addCommonNeighbors(neighborsI, neighborsJ, affectedVariables);
+					}
+					neighborsI.add(variableJ);
+					neighborsJ.add(variableI);
+				}
+			}
+		}
+		for (Variable variable : affectedVariables) {
+			if (queue.contains(variable)) {
+				queue.update(variable, getScore(variable));
+			}
+		}
+	}
+	
+	/** Adds to <code>affectedVariables</code> the variables that belong to both
+	 *  sets. */
+	private void addCommonNeighbors(Set<Variable> neighbors1, Set<Variable> neighbors2,
+			Set<Variable> affectedVariables) {
+		if (neighbors1.size() > neighbors2.size()) {
+			Set<Variable> aux = neighbors1;
+			neighbors1 = neighbors2;
+			neighbors2 = aux;
+		}
+		for (Variable variable : neighbors1) {
+			if (neighbors2.contains(variable)) {
+				affectedVariables.add(variable);
+			}
+		}
+	}
+	
+	/** @param variables <code>Collection</code> of <code>Variable</code>
+	 * @return Product of the number of states of <code>variables</code>. It
+	 *  is a <code>double</code> because it overflows an <code>int</code> or a 
+	 *  <code>long</code> in wide cliques. */
+	protected static double getWeight(Collection<Variable> variables) {
+		double weight = 1.0;
+		for (Variable variable : variables) {
+			weight *= variable.getNumStates();
+		}
+		return weight;
+	}
+
+	/** It does nothing. */
+	public void undoableEditWillHappen(UndoableEditEvent event)
+			throws ConstraintViolationException, CanNotDoEditException,
+			NonProjectablePotentialException, WrongCriterionException {
+	}
+
+	/** It does nothing. */
+	public void undoEditHappened(UndoableEditEvent event) {
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+* Copyright 2011 CISIAD, UNED, Spain
+*
+* Licensed under the European Union Public Licence, version 1.1 (EUPL)
+*
+* Unless required by applicable law, this code is distributed
+* on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+*/
+
+package org.openmarkov.core.inference.heuristic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Binary heap of elements ordered by a <code>double</code> score that, unlike
+ * <code>java.util.PriorityQueue</code>, can change or remove the score of any
+ * element in O(log n). Elements with the same score leave the queue in the
+ * order in which they were added.
+ * @param <E> Element type. Elements must not be repeated. */
+public class IndexedPriorityQueue<E> {
+
+	// Attributes
+	private List<E> heap;
+	
+	private double[] scores;
+	
+	/** Insertion order of each heap position, used to break ties. */
+	private long[] ordinals;
+	
+	/** Position of each element in <code>heap</code>. */
+	private HashMap<E, Integer> positions;
+	
+	private long numInsertions;
+
+	// Constructor
+	/** @param initialCapacity <code>int</code> */
+	public IndexedPriorityQueue(int initialCapacity) {
+		initialCapacity = Math.max(initialCapacity, 1);
+		heap = new ArrayList<E>(initialCapacity);
+		scores = new double[initialCapacity];
+		ordinals = new long[initialCapacity];
+		positions = new HashMap<E, Integer>(initialCapacity);
+		numInsertions = 0;
+	}
+	
+	public IndexedPriorityQueue() {
+		this(16);
+	}
+
+	// Methods
+	/** @param element <code>E</code> not contained in the queue
+	 * @param score <code>double</code> */
+	public void add(E element, double score) {
+		int position = heap.size();
+		if (position == scores.length) {
+			int newLength = 2 * scores.length;
+			double[] newScores = new double[newLength];
+			long[] newOrdinals = new long[newLength];
+			System.arraycopy(scores, 0, newScores, 0, position);
+			System.arraycopy(ordinals, 0, newOrdinals, 0, position);
+			scores = newScores;
+			ordinals = newOrdinals;
+		}
+		heap.add(element);
+		scores[position] = score;
+		ordinals[position] = numInsertions++;
+		positions.put(element, position);
+		siftUp(position);
+	}
+	
+	/** Changes the score of <code>element</code>, keeping its insertion order.
+	 * @param element <code>E</code> contained in the queue
+	 * @param score <code>double</code> */
+	public void update(E element, double score) {
+		int position = positions.get(element);
+		double oldScore = scores[position];
+		scores[position] = score;
+		if (score < oldScore) {
+			siftUp(position);
+		} else if (score > oldScore) {
+			siftDown(position);
+		}
+	}
+	
+	/** @param element <code>E</code>
+	 * @return <code>true</code> if the element was in the queue */
+	public boolean remove(E element) {
+		Integer position = positions.remove(element);
+		if (position == null) {
+			return false;
+		}
+		int last = heap.size() - 1;
+		E lastElement = heap.remove(last);
+		if (position != last) {
+			heap.set(position, lastElement);
+			scores[position] = scores[last];
+			ordinals[position] = ordinals[last];
+			positions.put(lastElement, position);
+			siftDown(position);
+			siftUp(position);
+		}
+		return true;
+	}
+	
+	/** @return The element with the lowest score, or <code>null</code> if the
+	 *  queue is empty */
+	public E peek() {
+		return heap.isEmpty() ? null : heap.get(0);
+	}
+	
+	/** @param element <code>E</code>
+	 * @return The score of <code>element</code> */
+	public double getScore(E element) {
+		return scores[positions.get(element)];
+	}
+	
+	public boolean contains(E element) {
+		return positions.containsKey(element);
+	}
+	
+	public boolean isEmpty() {
+		return heap.isEmpty();
+	}
+	
+	public int size() {
+		return heap.size();
+	}
+	
+	public void clear() {
+		heap.clear();
+		positions.clear();
+	}
+	
+	private boolean isLower(int position1, int position2) {
+		return scores[position1] < scores[position2]
+				|| (scores[position1] == scores[position2] 
+				&& ordinals[position1] < ordinals[position2]);
+	}
+	
+	private void siftUp(int position) {
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (!isLower(position, parent)) {
+				break;
+			}
+			swap(position, parent);
+			position = parent;
+		}
+	}
+	
+	private void siftDown(int position) {
+		int size = heap.size();
+		while (true) {
+			int lowest = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+			if (left < size && isLower(left, lowest)) {
+				lowest = left;
+			}
+			if (right < size && isLower(right, lowest)) {
+				lowest = right;
+			}
+			if (lowest == position) {
+				break;
+			}
+			swap(position, lowest);
+			position = lowest;
+		}
+	}
+	
+	private void swap(int position1, int position2) {
+		E element1 = heap.get(position1);
+		E element2 = heap.get(position2);
+		heap.set(position1, element2);
+		heap.set(position2, element1);
+		positions.put(element2, position1);
+		positions.put(element1, position2);
+		double score = scores[position1];
+		scores[position1] = scores[position2];
+		scores[position2] = score;
+		long ordinal = ordinals[position1];
+		ordinals[position1] = ordinals[position2];
+		ordinals[position2] = ordinal;
+	}
+
+	public String toString() {
+		return heap.toString();
+	}
+	
+}
@@ -12,6 +12,7 @@ package org.openmarkov.core.model.graph;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Stack;
 
@@ -44,6 +45,12 @@ public class Graph {
 	
 	private Logger logger;
 
+	/** Created by <code>wouldCreateCycle</code>, <code>null</code> until then */
+	private TopologicalOrder topologicalOrder;
+
+	/** Incremented when a node or a link is added or removed */
+	private int numChanges;
+
 	// Constructor
 	public Graph() {
 		this.nodes = new ArrayList<Node>();
@@ -190,6 +197,10 @@ public class Graph {
 				removeLink(link);
 			}
 		}
+		numChanges++;
+		if (topologicalOrder != null) {
+			topologicalOrder.linkRemoved();
+		}
 
 	}
 
@@ -318,45 +329,28 @@ public class Graph {
 		if (node1 == node2) {
 			return true;
 		}
-		List<Node> nodeList = getNodes();
-		int numNodes = nodeList.size();
-		boolean[] markedNodes = new boolean[numNodes];
+		HashSet<Node> markedNodes = new HashSet<Node>();
 		Stack<Node> nodesToExpand = new Stack<Node>();
 
-		for (int i = 0; i < numNodes; i++) {
-			markedNodes[i] = false;
-		}
-
 		// Mark node1 and put it in the list of nodes to be expanded
 		nodesToExpand.push(node1);
-		markedNodes[nodeList.indexOf(node1)] = true;
+		markedNodes.add(node1);
 
-		List<Node> nodes;
 		List<Node> neighbors = new ArrayList<Node>();
 		while (!nodesToExpand.empty()) {
 			Node expandableNode = nodesToExpand.pop(); // the top of the stack
-			nodes = expandableNode.getChildren();
-			for (Node nodeChildren : nodes) {
-				neighbors.add(nodeChildren);
-			}
+			neighbors.clear();
+			neighbors.addAll(expandableNode.getChildren());
 			if (!directed) {
-				nodes = expandableNode.getParents();
-				for (Node nodeParent : nodes) {
-					neighbors.add(nodeParent);
-				}
-				nodes = expandableNode.getSiblings();
-				for (Node nodeSibling : nodes) {
-					neighbors.add(nodeSibling);
-				}
-			}
-			if (neighbors.indexOf(node2) != -1) {
-				return true; // node2 is in a path from node1
+				neighbors.addAll(expandableNode.getParents());
+				neighbors.addAll(expandableNode.getSiblings());
 			}
-
 			for (Node neighborNode : neighbors) {
-				if (!markedNodes[nodeList.indexOf(neighborNode)]) {
+				if (neighborNode == node2) {
+					return true; // node2 is in a path from node1
+				}
+				if (markedNodes.add(neighborNode)) {
 					nodesToExpand.push(neighborNode);
-					markedNodes[nodeList.indexOf(neighborNode)] = true;
 				}
 			}
 		}
@@ -364,6 +358,32 @@ public class Graph {
 		return false;
 	}
 
+	/** @return <code>true</code> if a directed link from <code>node1</code> to
+	 * <code>node2</code> would create a directed cycle. The first call creates
+	 * a <code>TopologicalOrder</code> that is updated as links are added and
+	 * removed, so the next calls do not need to search the whole graph.
+	 * @param node1 <code>Node</code>. 
+	 * @param node2 <code>Node</code>. */
+	public boolean wouldCreateCycle(Node node1, Node node2) {
+		return getTopologicalOrder().wouldCreateCycle(node1, node2);
+	}
+
+	/** @return A number that changes whenever a node or a link is added or
+	 * removed, so that the structures computed from the graph can tell
+	 * whether they are still valid */
+	public int getNumChanges() {
+		return numChanges;
+	}
+
+	/** @return The <code>TopologicalOrder</code> of the nodes, which is
+	 * updated as links are added and removed */
+	public TopologicalOrder getTopologicalOrder() {
+		if (topologicalOrder == null) {
+			topologicalOrder = new TopologicalOrder(this);
+		}
+		return topologicalOrder;
+	}
+
 	/** Adds an undirected link between each pair of nodes in
 	 *    <code>nodeList</code> if it did not exist.
 	 * @param nodeList <code>ArrayList</code> of <code>? extends Node</code>.
@@ -387,6 +407,10 @@ public class Graph {
 	public void removeNode(Node node) {
 		node.uf_removeAllLinks();
 		nodes.remove(node);
+		numChanges++;
+		if (topologicalOrder != null) {
+			topologicalOrder.linkRemoved();
+		}
 	}
 
 	/** Adds an implicit link by setting cross references between the two nodes.
@@ -401,13 +425,19 @@ public class Graph {
 	 * @param directed <code>boolean</code>
 	 * @argCondition Both nodes must belong to the same graph. */
 	void uf_addImplicitLink(Node node1, Node node2, boolean directed) {
+		numChanges++;
 		if (directed) {
+			boolean added = false;
 			if (!node1.isChild(node2)) {
 				node1.uf_addChild(node2);
+				added = true;
 			}
 			if (!node2.isParent(node1)) {
 				node2.uf_addParent(node1);
 			}
+			if (added && topologicalOrder != null) {
+				topologicalOrder.linkAdded(node1, node2);
+			}
 		} else {
 			if (!node1.isSibling(node2)) {
 				node1.uf_addSibling(node2);
@@ -433,9 +463,13 @@ public class Graph {
 	 * @param directed <code>boolean</code>
 	 * @argCondition The two nodes must belong to the same graph */
 	void uf_removeImplicitLink(Node node1, Node node2, boolean directed) {
+		numChanges++;
 		if (directed) {
 			node1.uf_removeChild(node2);
 			node2.uf_removeParent(node1);
+			if (topologicalOrder != null) {
+				topologicalOrder.linkRemoved();
+			}
 		} else {
 			node1.uf_removeSibling(node2);
 			node2.uf_removeSibling(node1);
@@ -445,6 +479,10 @@ public class Graph {
 	/** @param node <code>Node</code> */
 	public void uf_addNode(Node node) {
 		nodes.add(node);
+		numChanges++;
+		if (topologicalOrder != null) {
+			topologicalOrder.nodeAdded(node);
+		}
 	}
 
 	/** @return A <code>String</code> with:
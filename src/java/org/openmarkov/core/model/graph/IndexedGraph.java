@@ -0,0 +1,556 @@
+/*
+* Copyright 2011 CISIAD, UNED, Spain
+*
+* Licensed under the European Union Public Licence, version 1.1 (EUPL)
+*
+* Unless required by applicable law, this code is distributed
+* on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+*/
+
+package org.openmarkov.core.model.graph;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/** Immutable snapshot of the structure of a <code>Graph</code> for the
+ * algorithms that traverse it many times. Each node is identified by its
+ * position in <code>Graph.getNodes()</code>, from 0 to
+ * <code>getNumNodes() - 1</code>, and its parents, children and siblings are
+ * stored as ranges of three arrays of identifiers (compressed sparse rows),
+ * in the same order as in the <code>Node</code>.
+ * <p>
+ * The snapshot does not change when the graph is edited; a new one must be
+ * built after that.
+ * @author agent
+ * @see openmarkov.graphs.Graph */
+public final class IndexedGraph {
+
+	// Attributes
+	private final Node[] nodes;
+
+	private final HashMap<Node, Integer> ids;
+
+	/** The parents of node i are in <code>parents[parentsStart[i]]</code>
+	 * .. <code>parents[parentsStart[i + 1] - 1]</code> */
+	private final int[] parentsStart;
+
+	private final int[] parents;
+
+	private final int[] childrenStart;
+
+	private final int[] children;
+
+	private final int[] siblingsStart;
+
+	private final int[] siblings;
+
+	// Constructor
+	/** @param graph <code>Graph</code> */
+	public IndexedGraph(Graph graph) {
+		List<Node> graphNodes = graph.getNodes();
+		int numNodes = graphNodes.size();
+		nodes = graphNodes.toArray(new Node[numNodes]);
+		ids = new HashMap<Node, Integer>(2 * numNodes);
+		for (int i = 0; i < numNodes; i++) {
+			ids.put(nodes[i], i);
+		}
+		parentsStart = new int[numNodes + 1];
+		childrenStart = new int[numNodes + 1];
+		siblingsStart = new int[numNodes + 1];
+		for (int i = 0; i < numNodes; i++) {
+			parentsStart[i + 1] = parentsStart[i] + nodes[i].getNumParents();
+			childrenStart[i + 1] = childrenStart[i] + nodes[i].getNumChildren();
+			siblingsStart[i + 1] = siblingsStart[i] + nodes[i].getNumSiblings();
+		}
+		parents = toIds(parentsStart, 0);
+		children = toIds(childrenStart, 1);
+		siblings = toIds(siblingsStart, 2);
+	}
+
+	// Methods
+	/** @return Number of nodes in the graph
+	 * @consultation */
+	public int getNumNodes() {
+		return nodes.length;
+	}
+
+	/** @param id <code>int</code>
+	 * @return The node with that identifier */
+	public Node getNode(int id) {
+		return nodes[id];
+	}
+
+	/** @param node <code>Node</code>
+	 * @return The identifier of <code>node</code>, or -1 if it is not in the
+	 * graph */
+	public int getId(Node node) {
+		Integer id = ids.get(node);
+		return (id != null) ? id : -1;
+	}
+
+	/** @param id <code>int</code>
+	 * @return Number of parents of the node */
+	public int getNumParents(int id) {
+		return parentsStart[id + 1] - parentsStart[id];
+	}
+
+	/** @param id <code>int</code>
+	 * @param index <code>int</code> between 0 and
+	 * <code>getNumParents(id) - 1</code>
+	 * @return The identifier of a parent of the node */
+	public int getParent(int id, int index) {
+		return parents[parentsStart[id] + index];
+	}
+
+	/** @param id <code>int</code>
+	 * @return Number of children of the node */
+	public int getNumChildren(int id) {
+		return childrenStart[id + 1] - childrenStart[id];
+	}
+
+	/** @param id <code>int</code>
+	 * @param index <code>int</code> between 0 and
+	 * <code>getNumChildren(id) - 1</code>
+	 * @return The identifier of a child of the node */
+	public int getChild(int id, int index) {
+		return children[childrenStart[id] + index];
+	}
+
+	/** @param id <code>int</code>
+	 * @return Number of siblings of the node */
+	public int getNumSiblings(int id) {
+		return siblingsStart[id + 1] - siblingsStart[id];
+	}
+
+	/** @param id <code>int</code>
+	 * @param index <code>int</code> between 0 and
+	 * <code>getNumSiblings(id) - 1</code>
+	 * @return The identifier of a sibling of the node */
+	public int getSibling(int id, int index) {
+		return siblings[siblingsStart[id] + index];
+	}
+
+	/** @param id1 <code>int</code>
+	 * @param id2 <code>int</code>
+	 * @param directed <code>boolean</code>. If this parameter is true, only
+	 * the directed paths are considered; otherwise, any path.
+	 * @return <code>true</code> if there is a path from the first node to the
+	 * second one. */
+	public boolean existsPath(int id1, int id2, boolean directed) {
+		return id1 == id2 || getReachable(id1, -1, directed).get(id2);
+	}
+
+	/** @param id1 <code>int</code>
+	 * @param id2 <code>int</code>
+	 * @return <code>true</code> if there is a directed path from the first
+	 * node to the second one other than the link between them. */
+	public boolean existsIndirectPath(int id1, int id2) {
+		return getReachable(id1, id2, true).get(id2);
+	}
+
+	/** @param id <code>int</code>
+	 * @param directed <code>boolean</code>
+	 * @return The node and the nodes that can be reached from it */
+	public BitSet getReachable(int id, boolean directed) {
+		BitSet reachable = getReachable(id, -1, directed);
+		reachable.set(id);
+		return reachable;
+	}
+
+	/** @param ids <code>BitSet</code> of identifiers
+	 * @return The nodes and their ancestors */
+	public BitSet getAncestors(BitSet ids) {
+		return close(ids, parentsStart, parents);
+	}
+
+	/** @param ids <code>BitSet</code> of identifiers
+	 * @return The nodes and their descendants */
+	public BitSet getDescendants(BitSet ids) {
+		return close(ids, childrenStart, children);
+	}
+
+	/** Uses the algorithm by Kahn (1962), taking the nodes without pending
+	 * parents from a stack.
+	 * @return The identifiers of the nodes in topological order. When there
+	 * is a directed cycle the array only contains the nodes that do not
+	 * descend from it. */
+	public int[] sortTopologically() {
+		int numNodes = nodes.length;
+		int[] numPendingParents = new int[numNodes];
+		int[] stack = new int[numNodes];
+		int top = 0;
+		for (int i = 0; i < numNodes; i++) {
+			numPendingParents[i] = getNumParents(i);
+			if (numPendingParents[i] == 0) {
+				stack[top++] = i;
+			}
+		}
+		int[] sorted = new int[numNodes];
+		int numSorted = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			sorted[numSorted++] = node;
+			for (int k = childrenStart[node]; k < childrenStart[node + 1]; k++) {
+				if (--numPendingParents[children[k]] == 0) {
+					stack[top++] = children[k];
+				}
+			}
+		}
+		return (numSorted == numNodes) ? sorted : Arrays.copyOf(sorted, numSorted);
+	}
+
+	/** @return <code>true</code> if there is a directed cycle */
+	public boolean hasDirectedCycle() {
+		return sortTopologically().length < nodes.length;
+	}
+
+	/** @return <code>true</code> if there is a cycle when the direction of the
+	 * links is ignored, including two links between the same nodes. */
+	public boolean hasLoop() {
+		int[] components = new int[nodes.length];
+		for (int i = 0; i < components.length; i++) {
+			components[i] = i;
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			for (int k = childrenStart[i]; k < childrenStart[i + 1]; k++) {
+				if (!join(components, i, children[k])) {
+					return true;
+				}
+			}
+			for (int k = siblingsStart[i]; k < siblingsStart[i + 1]; k++) {
+				if (i < siblings[k] && !join(components, i, siblings[k])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/** @return The moral graph: for each node, the sorted identifiers of its
+	 * parents, children, siblings and the other parents of its children. */
+	public int[][] getMoralGraph() {
+		int numNodes = nodes.length;
+		int[][] moralGraph = new int[numNodes][];
+		int[] marks = new int[numNodes];
+		Arrays.fill(marks, -1);
+		int[] neighbors = new int[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			marks[i] = i;
+			int numNeighbors = 0;
+			numNeighbors = mark(i, parentsStart, parents, marks, neighbors, numNeighbors);
+			numNeighbors = mark(i, siblingsStart, siblings, marks, neighbors, numNeighbors);
+			for (int k = childrenStart[i]; k < childrenStart[i + 1]; k++) {
+				int child = children[k];
+				if (marks[child] != i) {
+					marks[child] = i;
+					neighbors[numNeighbors++] = child;
+				}
+				numNeighbors = mark(i, parentsStart[child], parentsStart[child + 1], parents,
+						marks, neighbors, numNeighbors);
+			}
+			moralGraph[i] = Arrays.copyOf(neighbors, numNeighbors);
+			Arrays.sort(moralGraph[i]);
+		}
+		return moralGraph;
+	}
+
+	/** Finds the nodes d-connected to <code>sources</code> by the directed
+	 * links with the Bayes-ball algorithm (Shachter, 1998). The siblings are
+	 * ignored.
+	 * @param sources <code>BitSet</code> of identifiers
+	 * @param observed <code>BitSet</code> of identifiers
+	 * @return The nodes not observed that are connected to
+	 * <code>sources</code> by an active path given <code>observed</code>,
+	 * including the sources that are not observed. */
+	public BitSet getDConnected(BitSet sources, BitSet observed) {
+		int numNodes = nodes.length;
+		BitSet observedAndAncestors = getAncestors(observed);
+		// a node can be visited from a child (up) and from a parent (down)
+		boolean[] visitedUp = new boolean[numNodes];
+		boolean[] visitedDown = new boolean[numNodes];
+		BitSet connected = new BitSet(numNodes);
+		// i when the node is visited up and -i - 1 when it is visited down
+		int[] pending = new int[2 * numNodes];
+		int top = 0;
+		for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+			visitedUp[i] = true;
+			pending[top++] = i;
+		}
+		while (top > 0) {
+			int code = pending[--top];
+			int node = (code >= 0) ? code : -code - 1;
+			boolean up = code >= 0;
+			boolean isObserved = observed.get(node);
+			if (!isObserved) {
+				connected.set(node);
+			}
+			if (up && !isObserved) {
+				for (int k = parentsStart[node]; k < parentsStart[node + 1]; k++) {
+					if (!visitedUp[parents[k]]) {
+						visitedUp[parents[k]] = true;
+						pending[top++] = parents[k];
+					}
+				}
+			}
+			if (!isObserved) {
+				for (int k = childrenStart[node]; k < childrenStart[node + 1]; k++) {
+					if (!visitedDown[children[k]]) {
+						visitedDown[children[k]] = true;
+						pending[top++] = -children[k] - 1;
+					}
+				}
+			}
+			if (!up && observedAndAncestors.get(node)) {
+				// head-to-head connection activated by the evidence
+				for (int k = parentsStart[node]; k < parentsStart[node + 1]; k++) {
+					if (!visitedUp[parents[k]]) {
+						visitedUp[parents[k]] = true;
+						pending[top++] = parents[k];
+					}
+				}
+			}
+		}
+		return connected;
+	}
+
+	/** @param id1 <code>int</code>
+	 * @param id2 <code>int</code>
+	 * @param observed <code>BitSet</code> of identifiers
+	 * @return <code>true</code> if the nodes are d-separated by
+	 * <code>observed</code> in the directed graph */
+	public boolean isDSeparated(int id1, int id2, BitSet observed) {
+		BitSet source = new BitSet(nodes.length);
+		source.set(id1);
+		return !getDConnected(source, observed).get(id2);
+	}
+
+	/** Finds the requisite nodes for the posterior probability of
+	 * <code>queries</code> given <code>observed</code> with the Bayes-ball
+	 * algorithm (Shachter, 1998): the nodes marked on top, whose potentials
+	 * are needed. The parents of a requisite node are requisite or observed.
+	 * The siblings are ignored.
+	 * @param queries <code>BitSet</code> of identifiers
+	 * @param observed <code>BitSet</code> of identifiers
+	 * @return The requisite nodes */
+	public BitSet getRequisite(BitSet queries, BitSet observed) {
+		int numNodes = nodes.length;
+		BitSet requisite = new BitSet(numNodes);
+		boolean[] bottom = new boolean[numNodes];
+		// a node can be visited from a child (up) and from a parent (down)
+		boolean[] visitedUp = new boolean[numNodes];
+		boolean[] visitedDown = new boolean[numNodes];
+		// i when the node is visited up and -i - 1 when it is visited down
+		int[] pending = new int[2 * numNodes];
+		int top = 0;
+		for (int i = queries.nextSetBit(0); i >= 0; i = queries.nextSetBit(i + 1)) {
+			visitedUp[i] = true;
+			pending[top++] = i;
+		}
+		while (top > 0) {
+			int code = pending[--top];
+			int node = (code >= 0) ? code : -code - 1;
+			boolean up = code >= 0;
+			boolean isObserved = observed.get(node);
+			// the ball goes to the parents from the nodes not observed visited
+			// from a child and from the observed nodes visited from a parent,
+			// and to the children from the nodes not observed
+			if (up != isObserved && !requisite.get(node)) {
+				requisite.set(node);
+				for (int k = parentsStart[node]; k < parentsStart[node + 1]; k++) {
+					if (!visitedUp[parents[k]]) {
+						visitedUp[parents[k]] = true;
+						pending[top++] = parents[k];
+					}
+				}
+			}
+			if (!isObserved && !bottom[node]) {
+				bottom[node] = true;
+				for (int k = childrenStart[node]; k < childrenStart[node + 1]; k++) {
+					if (!visitedDown[children[k]]) {
+						visitedDown[children[k]] = true;
+						pending[top++] = -children[k] - 1;
+					}
+				}
+			}
+		}
+		return requisite;
+	}
+
+	/** Eliminates the nodes of an undirected graph in the given order, linking
+	 * the neighbors of each node not eliminated yet.
+	 * @param adjacency For each node, the identifiers of its neighbors, as
+	 * returned by <code>getMoralGraph</code>
+	 * @param eliminationOrder All the identifiers
+	 * @return The triangulated graph: for each node, the sorted identifiers
+	 * of its neighbors, including the links added */
+	public static int[][] triangulate(int[][] adjacency, int[] eliminationOrder) {
+		int[][] triangulated = new int[adjacency.length][];
+		eliminate(adjacency, eliminationOrder, triangulated);
+		return triangulated;
+	}
+
+	/** @param adjacency For each node, the identifiers of its neighbors
+	 * @param eliminationOrder All the identifiers
+	 * @return The largest number of neighbors not eliminated yet that a node
+	 * has when it is eliminated (the size of the largest clique minus one) */
+	public static int getInducedWidth(int[][] adjacency, int[] eliminationOrder) {
+		return eliminate(adjacency, eliminationOrder, null);
+	}
+
+	private static int eliminate(int[][] adjacency, int[] eliminationOrder,
+			int[][] triangulated) {
+		int numNodes = adjacency.length;
+		int[][] neighbors = new int[numNodes][];
+		int[] numNeighbors = new int[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			neighbors[i] = Arrays.copyOf(adjacency[i], Math.max(4, adjacency[i].length));
+			numNeighbors[i] = adjacency[i].length;
+		}
+		boolean[] eliminated = new boolean[numNodes];
+		int[] marks = new int[numNodes];
+		int mark = 0;
+		int[] clique = new int[numNodes];
+		int inducedWidth = 0;
+		for (int step = 0; step < eliminationOrder.length; step++) {
+			int node = eliminationOrder[step];
+			int cliqueSize = 0;
+			for (int k = 0; k < numNeighbors[node]; k++) {
+				int neighbor = neighbors[node][k];
+				if (!eliminated[neighbor] && neighbor != node) {
+					clique[cliqueSize++] = neighbor;
+				}
+			}
+			inducedWidth = Math.max(inducedWidth, cliqueSize);
+			eliminated[node] = true;
+			for (int i = 0; i < cliqueSize; i++) {
+				int neighbor = clique[i];
+				mark++;
+				for (int k = 0; k < numNeighbors[neighbor]; k++) {
+					marks[neighbors[neighbor][k]] = mark;
+				}
+				for (int j = 0; j < cliqueSize; j++) {
+					int other = clique[j];
+					if (other != neighbor && marks[other] != mark) {
+						if (numNeighbors[neighbor] == neighbors[neighbor].length) {
+							neighbors[neighbor] = Arrays.copyOf(neighbors[neighbor],
+									2 * numNeighbors[neighbor]);
+						}
+						neighbors[neighbor][numNeighbors[neighbor]++] = other;
+					}
+				}
+			}
+		}
+		if (triangulated != null) {
+			for (int i = 0; i < numNodes; i++) {
+				triangulated[i] = Arrays.copyOf(neighbors[i], numNeighbors[i]);
+				Arrays.sort(triangulated[i]);
+			}
+		}
+		return inducedWidth;
+	}
+
+	/** @param start the ranges of <code>nodes</code> for each node
+	 * @param type 0 for parents, 1 for children and 2 for siblings
+	 * @return The identifiers of the parents, children or siblings */
+	private int[] toIds(int[] start, int type) {
+		int[] array = new int[start[nodes.length]];
+		int k = 0;
+		for (Node node : nodes) {
+			List<Node> neighbors = (type == 0) ? node.getParents()
+					: (type == 1) ? node.getChildren() : node.getSiblings();
+			for (Node neighbor : neighbors) {
+				array[k++] = ids.get(neighbor);
+			}
+		}
+		return array;
+	}
+
+	/** @param id <code>int</code>
+	 * @param excludedChild Child of <code>id</code> that is not followed from
+	 * <code>id</code>, or -1
+	 * @param directed <code>boolean</code>
+	 * @return The nodes reached from <code>id</code> by at least one link */
+	private BitSet getReachable(int id, int excludedChild, boolean directed) {
+		BitSet reached = new BitSet(nodes.length);
+		int[] stack = new int[nodes.length];
+		int top = 0;
+		stack[top++] = id;
+		while (top > 0) {
+			int node = stack[--top];
+			for (int k = childrenStart[node]; k < childrenStart[node + 1]; k++) {
+				if (!(node == id && children[k] == excludedChild) && !reached.get(children[k])) {
+					reached.set(children[k]);
+					stack[top++] = children[k];
+				}
+			}
+			if (!directed) {
+				top = push(node, parentsStart, parents, reached, stack, top);
+				top = push(node, siblingsStart, siblings, reached, stack, top);
+			}
+		}
+		return reached;
+	}
+
+	private static int push(int node, int[] start, int[] neighbors, BitSet reached,
+			int[] stack, int top) {
+		for (int k = start[node]; k < start[node + 1]; k++) {
+			if (!reached.get(neighbors[k])) {
+				reached.set(neighbors[k]);
+				stack[top++] = neighbors[k];
+			}
+		}
+		return top;
+	}
+
+	private BitSet close(BitSet ids, int[] start, int[] neighbors) {
+		BitSet closure = (BitSet) ids.clone();
+		int[] stack = new int[nodes.length];
+		int top = 0;
+		for (int i = ids.nextSetBit(0); i >= 0; i = ids.nextSetBit(i + 1)) {
+			stack[top++] = i;
+		}
+		while (top > 0) {
+			top = push(stack[--top], start, neighbors, closure, stack, top);
+		}
+		return closure;
+	}
+
+	private static int mark(int node, int[] start, int[] neighbors, int[] marks,
+			int[] marked, int numMarked) {
+		return mark(node, start[node], start[node + 1], neighbors, marks, marked, numMarked);
+	}
+
+	private static int mark(int mark, int from, int to, int[] neighbors, int[] marks,
+			int[] marked, int numMarked) {
+		for (int k = from; k < to; k++) {
+			if (marks[neighbors[k]] != mark) {
+				marks[neighbors[k]] = mark;
+				marked[numMarked++] = neighbors[k];
+			}
+		}
+		return numMarked;
+	}
+
+	/** @return <code>false</code> if the nodes were already in the same
+	 * component */
+	private static boolean join(int[] components, int node1, int node2) {
+		int root1 = find(components, node1);
+		int root2 = find(components, node2);
+		if (root1 == root2) {
+			return false;
+		}
+		components[root1] = root2;
+		return true;
+	}
+
+	private static int find(int[] components, int node) {
+		while (components[node] != node) {
+			components[node] = components[components[node]];
+			node = components[node];
+		}
+		return node;
+	}
+
+}
@@ -60,6 +60,13 @@ public class Node {
 	
 	/** The Y coordinate of node */
 	private double coordinateY = 100;
+
+	/** Position of the node in the <code>TopologicalOrder</code> of the
+	 * graph, if it has been created */
+	int topologicalIndex;
+
+	/** Used by <code>TopologicalOrder</code> to mark the visited nodes */
+	int visitMark;
 	
 	// Constructor
 	/** @param graph <code>Graph</code>.
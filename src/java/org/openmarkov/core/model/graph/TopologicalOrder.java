@@ -0,0 +1,201 @@
+/*
+* Copyright 2011 CISIAD, UNED, Spain
+*
+* Licensed under the European Union Public Licence, version 1.1 (EUPL)
+*
+* Unless required by applicable law, this code is distributed
+* on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+*/
+
+package org.openmarkov.core.model.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/** Topological order of the nodes of a <code>Graph</code> that is kept up to
+ * date when the directed links are added and removed, with the algorithm by
+ * Pearce and Kelly (2006). A link that follows the order is added in
+ * constant time; otherwise only the nodes placed between its ends are
+ * searched and reordered. The order answers whether a new link would
+ * create a directed cycle without searching the whole graph.
+ * <p>
+ * The graph creates the order the first time that
+ * <code>Graph.wouldCreateCycle</code> is invoked. While the graph has a
+ * directed cycle there is no order and the method searches the graph, as
+ * <code>Graph.existsPath</code> does, until a link is removed and the order
+ * can be built again.
+ * @author agent
+ * @see openmarkov.graphs.Graph */
+public class TopologicalOrder {
+
+	// Attributes
+	private Graph graph;
+
+	/** <code>false</code> while the graph has a directed cycle */
+	private boolean valid;
+
+	/** <code>true</code> when a link has been removed since the order was
+	 * found to be invalid */
+	private boolean rebuild;
+
+	/** Index of the next node added to the graph */
+	private int nextIndex;
+
+	/** Last mark used to visit the nodes */
+	private int mark;
+
+	private static final Comparator<Node> INDEX_ORDER = new Comparator<Node>() {
+		public int compare(Node node1, Node node2) {
+			return Integer.compare(node1.topologicalIndex, node2.topologicalIndex);
+		}
+	};
+
+	// Constructor
+	/** @param graph <code>Graph</code> */
+	TopologicalOrder(Graph graph) {
+		this.graph = graph;
+		build();
+	}
+
+	// Methods
+	/** @param node1 <code>Node</code>
+	 * @param node2 <code>Node</code>
+	 * @return <code>true</code> if a link from <code>node1</code> to
+	 * <code>node2</code> would close a directed cycle, i.e., if
+	 * <code>node1</code> is <code>node2</code> or it is reached from it */
+	public boolean wouldCreateCycle(Node node1, Node node2) {
+		if (node1 == node2) {
+			return true;
+		}
+		if (!valid && rebuild) {
+			build();
+		}
+		if (!valid) {
+			return graph.existsPath(node2, node1, true);
+		}
+		if (node1.topologicalIndex < node2.topologicalIndex) {
+			return false;
+		}
+		// node1 can only be reached through nodes placed before it
+		return search(node2, node1, node1.topologicalIndex, true, null);
+	}
+
+	/** @return <code>true</code> if the graph has no directed cycle, i.e., if
+	 * the order is valid */
+	public boolean isValid() {
+		if (!valid && rebuild) {
+			build();
+		}
+		return valid;
+	}
+
+	/** @param node <code>Node</code>
+	 * @return The position of the node in the order, which only increases
+	 * along the directed links while <code>isValid()</code> */
+	public int getIndex(Node node) {
+		return node.topologicalIndex;
+	}
+
+	/** Invoked by the graph after adding the link <code>node1</code> to
+	 * <code>node2</code>.
+	 * @param node1 <code>Node</code>
+	 * @param node2 <code>Node</code> */
+	void linkAdded(Node node1, Node node2) {
+		if (!valid || node1.topologicalIndex < node2.topologicalIndex) {
+			return;
+		}
+		List<Node> forward = new ArrayList<Node>();
+		if (search(node2, node1, node1.topologicalIndex, true, forward)) {
+			valid = false; // the link closes a cycle
+			rebuild = false;
+			return;
+		}
+		List<Node> backward = new ArrayList<Node>();
+		search(node1, null, node2.topologicalIndex, false, backward);
+		// the ancestors of node1 take the first indexes of the affected nodes
+		Collections.sort(forward, INDEX_ORDER);
+		Collections.sort(backward, INDEX_ORDER);
+		int[] indexes = new int[forward.size() + backward.size()];
+		int i = 0;
+		for (Node node : backward) {
+			indexes[i++] = node.topologicalIndex;
+		}
+		for (Node node : forward) {
+			indexes[i++] = node.topologicalIndex;
+		}
+		Arrays.sort(indexes);
+		i = 0;
+		for (Node node : backward) {
+			node.topologicalIndex = indexes[i++];
+		}
+		for (Node node : forward) {
+			node.topologicalIndex = indexes[i++];
+		}
+	}
+
+	/** Invoked by the graph after removing a directed link, which does not
+	 * invalidate the order. */
+	void linkRemoved() {
+		if (!valid) {
+			rebuild = true;
+		}
+	}
+
+	/** Invoked by the graph after adding a node, which goes to the end.
+	 * @param node <code>Node</code> */
+	void nodeAdded(Node node) {
+		node.topologicalIndex = nextIndex++;
+	}
+
+	/** Sorts the nodes with the algorithm by Kahn (1962). */
+	private void build() {
+		IndexedGraph indexedGraph = new IndexedGraph(graph);
+		int[] sorted = indexedGraph.sortTopologically();
+		for (int i = 0; i < sorted.length; i++) {
+			indexedGraph.getNode(sorted[i]).topologicalIndex = i;
+		}
+		nextIndex = sorted.length;
+		valid = sorted.length == indexedGraph.getNumNodes();
+		rebuild = false;
+	}
+
+	/** Depth-first search that only visits the nodes placed before
+	 * <code>bound</code> when going forward (to the children) or after it
+	 * when going backward (to the parents).
+	 * @param start <code>Node</code>
+	 * @param target <code>Node</code> that stops the search, or
+	 * <code>null</code>
+	 * @param bound <code>int</code>
+	 * @param forward <code>boolean</code>
+	 * @param visited <code>List</code> that receives the visited nodes, or
+	 * <code>null</code>
+	 * @return <code>true</code> if <code>target</code> has been reached */
+	private boolean search(Node start, Node target, int bound, boolean forward,
+			List<Node> visited) {
+		mark++;
+		List<Node> stack = new ArrayList<Node>();
+		start.visitMark = mark;
+		stack.add(start);
+		while (!stack.isEmpty()) {
+			Node node = stack.remove(stack.size() - 1);
+			if (visited != null) {
+				visited.add(node);
+			}
+			for (Node next : forward ? node.children : node.parents) {
+				if (next == target) {
+					return true;
+				}
+				if (next.visitMark != mark && (forward ? next.topologicalIndex < bound
+						: next.topologicalIndex > bound)) {
+					next.visitMark = mark;
+					stack.add(next);
+				}
+			}
+		}
+		return false;
+	}
+
+}
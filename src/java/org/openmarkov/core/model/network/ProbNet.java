@@ -386,9 +386,18 @@ public class ProbNet implements Cloneable {
      * variables nor potentials.
      * 
      * @return <code>this probNet</code> copied.
-     * @throws ConstraintViolationException
+     * @see ProbNetView#toProbNet()
      */
     public ProbNet copy() {
+        return new ProbNetView(this).toProbNet();
+    }
+
+    /**
+     * @return A <code>ProbNet</code> with the type, the name, the constraints,
+     *         the listeners and the properties of <code>this</code> but without
+     *         nodes.
+     */
+    ProbNet copyWithoutNodes() {
         ProbNet copyNet = new ProbNet(this.networkType);
         copyNet.setName(name);
         // copy constraints
@@ -400,58 +409,6 @@ public class ProbNet implements Cloneable {
                 // Unreachable code because constraints are not tested in copy
             }
         }
-        List<ProbNode> probNodes = getProbNodes();
-        // Adds variables and create corresponding nodes. Also add potentials
-        for (ProbNode probNode : probNodes) {
-            // Add variables and create corresponding nodes
-            Variable variable = probNode.getVariable();
-            ProbNode newProbNode = null;
-            newProbNode = copyNet.addProbNode(variable, probNode.getNodeType());
-            Node newNode = newProbNode.getNode();
-            Node node = probNode.getNode();
-            newNode.setCoordinateX(node.getCoordinateX());
-            newNode.setCoordinateY(node.getCoordinateY());
-            newProbNode.setPotentials(probNode.getPotentials());
-            // TODO Hacer clon para probNode y quitar estas lineas
-            newProbNode.setPurpose(probNode.getPurpose());
-            newProbNode.setRelevance(probNode.getRelevance());
-            newProbNode.setComment(probNode.getComment());
-            newProbNode.setCanonicalParameters(probNode.isCanonicalParameters());
-            newProbNode.additionalProperties = additionalProperties;
-            newProbNode.setAlwaysObserved(probNode.isAlwaysObserved());
-        }
-        // Adds links
-        List<ProbNode> nodes = this.getProbNodes();
-        Graph copyGraph = copyNet.getGraph();
-        if (graph.useExplicitLinks()) {
-            copyGraph.makeLinksExplicit(false);
-        }
-        for (ProbNode node : nodes) {
-            ProbNode copyNode = copyNet.getProbNode(node.getVariable());
-            List<ProbNode> siblings = getProbNodesOfNodes(node.getNode().getSiblings());
-            for (ProbNode sibling : siblings) {
-                ProbNode copySibling = copyNet.getProbNode(sibling.getVariable());
-                if (!copyNode.getNode().isSibling(copySibling.getNode())) {
-                    copyGraph.addLink(copyNode.getNode(), copySibling.getNode(), false);
-                }
-            }
-            List<ProbNode> children = getProbNodesOfNodes(node.getNode().getChildren());
-            for (ProbNode child : children) {
-                ProbNode copyChild = copyNet.getProbNode(child.getVariable());
-                copyGraph.addLink(copyNode.getNode(), copyChild.getNode(), true);
-            }
-        }
-        // Copy explicit links' properties
-        if (graph.useExplicitLinks()) {
-            for (Link originalLink : graph.getLinks()) {
-                Node copyNode1 = copyNet.getProbNode(((ProbNode) originalLink.getNode1().getObject()).getVariable()).getNode();
-                Node copyNode2 = copyNet.getProbNode(((ProbNode) originalLink.getNode2().getObject()).getVariable()).getNode();
-                Link copyLink = copyGraph.getLink(copyNode1, copyNode2, originalLink.isDirected());
-                copyLink.setRestrictionsPotential(originalLink.getRestrictionsPotential());
-                copyLink.setRevealingIntervals(originalLink.getRevealingIntervals());
-                copyLink.setRevealingStates(originalLink.getRevealingStates());
-            }
-        }
         // copy listeners
         copyNet.getPNESupport().setListeners(getpNESupport().getListeners());
         // Copy additionalProperties
@@ -472,6 +429,34 @@ public class ProbNet implements Cloneable {
         return copyNet;
     }
 
+    /**
+     * Adds to <code>copyNet</code> a node with the variable, the type and the
+     * properties of <code>probNode</code>, which shares its potentials.
+     * 
+     * @param copyNet
+     *            <code>ProbNet</code>
+     * @param probNode
+     *            <code>ProbNode</code> of <code>this</code>
+     * @return The new <code>ProbNode</code>, without links
+     */
+    ProbNode copyProbNode(ProbNet copyNet, ProbNode probNode) {
+        ProbNode newProbNode = copyNet.addProbNode(probNode.getVariable(),
+                probNode.getNodeType());
+        Node newNode = newProbNode.getNode();
+        Node node = probNode.getNode();
+        newNode.setCoordinateX(node.getCoordinateX());
+        newNode.setCoordinateY(node.getCoordinateY());
+        newProbNode.setPotentials(probNode.getPotentials());
+        // TODO Hacer clon para probNode y quitar estas lineas
+        newProbNode.setPurpose(probNode.getPurpose());
+        newProbNode.setRelevance(probNode.getRelevance());
+        newProbNode.setComment(probNode.getComment());
+        newProbNode.setCanonicalParameters(probNode.isCanonicalParameters());
+        newProbNode.additionalProperties = additionalProperties;
+        newProbNode.setAlwaysObserved(probNode.isAlwaysObserved());
+        return newProbNode;
+    }
+
     /**
      * Inserts a link (<code>directed = true</code> or <code>false</code>)
      * between the nodes <code>node1</code> and <code>node2</code> in
@@ -583,6 +568,26 @@ public class ProbNet implements Cloneable {
         return projectedPotentials;
     }
 
+    /**
+     * @param evidenceCase
+     * @param inferenceOptions
+     *            Options given to the <code>tableProject</code> method of
+     *            each potential
+     * @return The potentials of the network projected on the evidence
+     * @throws NonProjectablePotentialException
+     * @throws WrongCriterionException
+     */
+    public List<TablePotential> tableProjectPotentials(EvidenceCase evidenceCase,
+            InferenceOptions inferenceOptions)
+            throws NonProjectablePotentialException, WrongCriterionException {
+        List<TablePotential> projectedPotentials = new ArrayList<TablePotential>();
+        for (Potential potential : getSortedPotentials()) {
+            projectedPotentials.addAll(potential.tableProject(evidenceCase, inferenceOptions,
+                    projectedPotentials));
+        }
+        return projectedPotentials;
+    }
+
     /**
      * @return All the potentials of this network. <code>List</code> of
      *         <code>Potential</code>s.
@@ -1000,6 +1005,39 @@ public class ProbNet implements Cloneable {
         return probNodeDepot.getProbNode(variable);
     }
 
+    /**
+     * @param id
+     *            Identifier of a node, as given by <code>getNodeId</code>
+     * @return The <code>ProbNode</code> with that identifier, or
+     *         <code>null</code>
+     * @consultation
+     */
+    public ProbNode getProbNodeById(int id) {
+        return probNodeDepot.getProbNode(id);
+    }
+
+    /**
+     * @param probNode
+     *            <code>ProbNode</code>
+     * @return An integer that identifies the node while it is in the network,
+     *         lower than <code>getNumNodeIds()</code>, or -1 if the node is
+     *         not in the network. The identifiers of the removed nodes are
+     *         reused.
+     * @consultation
+     */
+    public int getNodeId(ProbNode probNode) {
+        return probNodeDepot.getId(probNode);
+    }
+
+    /**
+     * @return A number greater than the identifiers of all the nodes, to size
+     *         the arrays indexed by identifier
+     * @consultation
+     */
+    public int getNumNodeIds() {
+        return probNodeDepot.getNumIds();
+    }
+
     /**
      * @param nameOfVariable
      *            . <code>String</code>
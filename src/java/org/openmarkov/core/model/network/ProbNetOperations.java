@@ -11,6 +11,7 @@ package org.openmarkov.core.model.network;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -27,7 +28,7 @@ import org.openmarkov.core.exception.NoFindingException;
 import org.openmarkov.core.exception.NonProjectablePotentialException;
 import org.openmarkov.core.exception.WrongCriterionException;
 import org.openmarkov.core.inference.InferenceOptions;
-import org.openmarkov.core.model.graph.Graph;
+import org.openmarkov.core.model.graph.IndexedGraph;
 import org.openmarkov.core.model.graph.Node;
 import org.openmarkov.core.model.network.modelUncertainty.UncertainValue;
 import org.openmarkov.core.model.network.potential.Potential;
@@ -42,13 +43,12 @@ public class ProbNetOperations {
 
     // Methods
     /**
-     * Performs prune operation in these steps:
-     * <ol>
-     * <li>Copy the received <code>ProbNet</code>.
-     * <li>Remove barren nodes from the copied <code>ProbNet</code>.
-     * <li>Remove unreachable nodes from <code>variablesOfInterest</code> given
-     * the <code>variablesOfEvidence</code>.
-     * </ol>
+     * Performs prune operation: copies the received <code>ProbNet</code> with
+     * the requisite nodes for the <code>variablesOfInterest</code> given the
+     * variables of the <code>evidence</code>, found by
+     * <code>RequisiteNodes</code>. The variables of interest and the observed
+     * parents of the requisite nodes are also kept, but without potentials.
+     * The other nodes are only removed from a <code>ProbNetView</code>.
      * 
      * @return <code>ProbNet</code>. Evidence variables are removed in serial
      *         connections
@@ -56,14 +56,30 @@ public class ProbNetOperations {
     public static ProbNet getPruned(ProbNet probNet,
             Collection<Variable> variablesOfInterest,
             EvidenceCase evidence) {
-        ProbNet prunedProbNet = probNet.copy();
-        HashSet<Variable> variablesOfInterest2 = new HashSet<Variable>(variablesOfInterest);
-        HashSet<Variable> variablesOfEvidence2 = new HashSet<Variable>(evidence.getVariables());
-        prunedProbNet = removeBarrenNodes(prunedProbNet, variablesOfInterest2, variablesOfEvidence2);
-        prunedProbNet = removeUnreachableNodes(prunedProbNet,
-                variablesOfInterest2,
-                variablesOfEvidence2);
-        return prunedProbNet;
+        List<ProbNode> requisiteNodes = new RequisiteNodes(probNet).getRequisiteNodes(
+                variablesOfInterest, evidence.getVariables());
+        Set<ProbNode> nodesWithPotentials = new HashSet<ProbNode>(requisiteNodes);
+        Set<Node> nodesWithoutPotentials = new HashSet<Node>();
+        for (ProbNode probNode : requisiteNodes) {
+            nodesWithoutPotentials.addAll(probNode.getNode().getParents());
+        }
+        for (Variable variable : variablesOfInterest) {
+            ProbNode probNode = probNet.getProbNode(variable);
+            if (probNode != null) {
+                nodesWithoutPotentials.add(probNode.getNode());
+            }
+        }
+        ProbNetView prunedView = new ProbNetView(probNet);
+        for (ProbNode probNode : probNet.getProbNodes()) {
+            if (!nodesWithPotentials.contains(probNode)) {
+                if (nodesWithoutPotentials.contains(probNode.getNode())) {
+                    prunedView.setPotentials(probNode.getVariable(), new ArrayList<Potential>());
+                } else {
+                    prunedView.removeProbNode(probNode.getVariable());
+                }
+            }
+        }
+        return prunedView.toProbNet();
     }
 
     /**
@@ -120,60 +136,40 @@ public class ProbNetOperations {
     public static ProbNet removeBarrenNodes(ProbNet prunedProbNet,
             Collection<Variable> variablesOfInterest,
             HashSet<Variable> variablesOfEvidence) {
-        HashSet<ProbNode> barrenNodes = new HashSet<ProbNode>();
-        List<ProbNode> probNodes = prunedProbNet.getProbNodes();
-        for (ProbNode probNode : probNodes) {
-            Node node = probNode.getNode();
-            if (node.getNumChildren() == 0) {
-                Variable variable = probNode.getVariable();
-                if (!variablesOfInterest.contains(variable)
-                        && !variablesOfEvidence.contains(variable)) {
-                    barrenNodes.add(probNode);
-                }
-            }
+        for (ProbNode barrenNode : getBarrenNodes(prunedProbNet, variablesOfInterest,
+                variablesOfEvidence)) {
+            prunedProbNet.removeProbNode(barrenNode);
         }
-        HashSet<ProbNode> newBarrenNodes = new HashSet<ProbNode>(barrenNodes);
-        boolean foundBarrenNodes = newBarrenNodes.size() > 0;
-        while (foundBarrenNodes) {
-            foundBarrenNodes = false;
-            List<ProbNode> listNewBarrenNodes = new ArrayList<ProbNode>(newBarrenNodes);
-            for (ProbNode probNode : listNewBarrenNodes) {
-                newBarrenNodes.remove(probNode);
-                Node node = probNode.getNode();
-                List<Node> parents = node.getParents();
-                for (Node parent : parents) {
-                    ProbNode parentProbNode = (ProbNode) parent.getObject();
-                    Variable parentVariable = parentProbNode.getVariable();
-                    if (!variablesOfInterest.contains(parentVariable)
-                            && !variablesOfEvidence.contains(parentVariable)
-                            && !barrenNodes.contains(parentProbNode)) {
-                        List<Node> childrenOfParent = parent.getChildren();
-                        boolean allChildrenBarren = true;
-                        int numChildren = childrenOfParent.size();
-                        if (numChildren > 1) { // at least one children is
-                                               // barren
-                            for (int i = 0; allChildrenBarren && i < numChildren; i++) {
-                                Node child = childrenOfParent.get(i);
-                                ProbNode probNodeChild = (ProbNode) child.getObject();
-                                allChildrenBarren &= barrenNodes.contains(probNodeChild);
-                            }
-                        }
-                        if (allChildrenBarren) {
-                            newBarrenNodes.add(parentProbNode);
-                            foundBarrenNodes = true;
-                        }
-                    }
-                }
-            }
-            if (foundBarrenNodes) {
-                barrenNodes.addAll(newBarrenNodes);
+        return prunedProbNet;
+    }
+
+    /**
+     * @return The nodes of <code>probNet</code> that are barren, i.e., that
+     *         are neither of interest nor evidence and whose descendants are
+     *         neither of interest nor evidence
+     */
+    private static List<ProbNode> getBarrenNodes(ProbNet probNet,
+            Collection<Variable> variablesOfInterest,
+            Collection<Variable> variablesOfEvidence) {
+        // a node is barren when neither it nor its descendants are of interest
+        // or evidence, i.e., when it is not an ancestor of any of them
+        IndexedGraph graph = new IndexedGraph(probNet.getGraph());
+        int numNodes = graph.getNumNodes();
+        BitSet interestAndEvidence = new BitSet(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            Variable variable = ((ProbNode) graph.getNode(i).getObject()).getVariable();
+            if (variablesOfInterest.contains(variable) || variablesOfEvidence.contains(variable)) {
+                interestAndEvidence.set(i);
             }
         }
-        // Remove barren nodes
-        for (ProbNode probNode : barrenNodes) {
-            prunedProbNet.removeProbNode(probNode);
+        BitSet notBarrenNodes = graph.getAncestors(interestAndEvidence);
+        List<ProbNode> barrenNodes = new ArrayList<ProbNode>(numNodes
+                - notBarrenNodes.cardinality());
+        for (int i = notBarrenNodes.nextClearBit(0); i < numNodes; i = notBarrenNodes
+                .nextClearBit(i + 1)) {
+            barrenNodes.add((ProbNode) graph.getNode(i).getObject());
         }
-        return prunedProbNet;
+        return barrenNodes;
     }
 
     /**
@@ -364,10 +360,11 @@ public class ProbNetOperations {
     public static List<Variable> sortTopologically(ProbNet probNet, List<Variable> variablesToSort) {
         List<ProbNode> sortedNodes = sortTopologically(probNet);
         List<Variable> sortedVariables = new ArrayList<Variable>(sortedNodes.size());
+        HashSet<Variable> variablesToSortSet = new HashSet<Variable>(variablesToSort);
         // fill sortedVariables list with filtering the l list with the list of
         // variables to sort
         for (ProbNode node : sortedNodes) {
-            if (variablesToSort.contains(node.getVariable())) {
+            if (variablesToSortSet.contains(node.getVariable())) {
                 sortedVariables.add(node.getVariable());
             }
         }
@@ -380,36 +377,11 @@ public class ProbNetOperations {
      * @param probNet
      */
     public static List<ProbNode> sortTopologically(ProbNet probNet) {
-        Graph graph = probNet.getGraph().copy();
-        List<ProbNode> sortedNodes = new ArrayList<ProbNode>();
-        // Empty list that will contain the sorted elements
-        Stack<Node> s = new Stack<Node>();
-        // Set of all nodes with no incoming edges
-        List<Node> l = new ArrayList<Node>();
-        // Look for variables/nodes with no parents
-        for (Node node : graph.getNodes()) {
-            if (node.getParents().size() == 0) {
-                s.push(node);
-            }
-        }
-        // while S is non-empty do
-        while (!s.isEmpty()) {
-            // remove a node n from S
-            Node n = s.pop();
-            // insert n into L
-            l.add(n);
-            // for each node m with an edge e from n to m do
-            for (Node m : n.getChildren()) {
-                // remove edge e from the graph
-                graph.removeLink(n, m, true);
-                // if m has no other incoming edges then insert m into S
-                if (m.getParents().isEmpty()) {
-                    s.push(m);
-                }
-            }
-        }
-        for (Node node : l) {
-            sortedNodes.add((ProbNode) node.getObject());
+        IndexedGraph graph = new IndexedGraph(probNet.getGraph());
+        int[] sortedIds = graph.sortTopologically();
+        List<ProbNode> sortedNodes = new ArrayList<ProbNode>(sortedIds.length);
+        for (int id : sortedIds) {
+            sortedNodes.add((ProbNode) graph.getNode(id).getObject());
         }
         return sortedNodes;
     }
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain Licensed under the European Union Public
+ * Licence, version 1.1 (EUPL) Unless required by applicable law, this code is
+ * distributed on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.model.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openmarkov.core.model.graph.Graph;
+import org.openmarkov.core.model.graph.Link;
+import org.openmarkov.core.model.graph.Node;
+import org.openmarkov.core.model.network.potential.Potential;
+
+/**
+ * A network derived from a <code>ProbNet</code> that shares its nodes,
+ * variables and potentials. The view does not modify the
+ * <code>ProbNet</code>: it only records the nodes and links removed and
+ * added and the potentials replaced, and its methods return the result of
+ * applying those changes. Building a view costs nothing, whatever the size
+ * of the network; <code>toProbNet</code> creates a <code>ProbNet</code> with
+ * the nodes that remain when it is needed, e.g. to run an inference
+ * algorithm on it.
+ * <p>
+ * The <code>ProbNet</code> must not be modified while the view is used.
+ *
+ * @author agent
+ * @see org.openmarkov.core.model.network.ProbNet
+ */
+public class ProbNetView {
+
+    // Attributes
+    private ProbNet probNet;
+
+    private Set<Variable> removedVariables;
+
+    /** Types of the nodes added, in the order in which they were added */
+    private LinkedHashMap<Variable, NodeType> addedVariables;
+
+    private List<ViewLink> removedLinks;
+
+    private List<ViewLink> addedLinks;
+
+    /** Potentials that replace those of the nodes and of the added nodes */
+    private Map<Variable, List<Potential>> potentials;
+
+    // Constructors
+    /**
+     * @param probNet
+     *            <code>ProbNet</code>
+     */
+    public ProbNetView(ProbNet probNet) {
+        this.probNet = probNet;
+        removedVariables = new HashSet<Variable>();
+        addedVariables = new LinkedHashMap<Variable, NodeType>();
+        removedLinks = new ArrayList<ViewLink>();
+        addedLinks = new ArrayList<ViewLink>();
+        potentials = new HashMap<Variable, List<Potential>>();
+    }
+
+    /**
+     * Creates a view of the same <code>ProbNet</code> with the changes of
+     * <code>view</code>, which can then be changed independently of it.
+     *
+     * @param view
+     *            <code>ProbNetView</code>
+     */
+    public ProbNetView(ProbNetView view) {
+        probNet = view.probNet;
+        removedVariables = new HashSet<Variable>(view.removedVariables);
+        addedVariables = new LinkedHashMap<Variable, NodeType>(view.addedVariables);
+        removedLinks = new ArrayList<ViewLink>(view.removedLinks);
+        addedLinks = new ArrayList<ViewLink>(view.addedLinks);
+        potentials = new HashMap<Variable, List<Potential>>(view.potentials);
+    }
+
+    // Methods
+    /** @return The <code>ProbNet</code> from which the view is derived */
+    public ProbNet getProbNet() {
+        return probNet;
+    }
+
+    /**
+     * @param variable
+     *            <code>Variable</code>
+     * @return <code>true</code> if the view has a node for
+     *         <code>variable</code>
+     */
+    public boolean containsVariable(Variable variable) {
+        return addedVariables.containsKey(variable)
+                || (!removedVariables.contains(variable) && probNet.getProbNode(variable) != null);
+    }
+
+    /** @return The number of nodes of the view */
+    public int getNumNodes() {
+        return probNet.getNumNodes() - removedVariables.size() + addedVariables.size();
+    }
+
+    /**
+     * @return The variables of the view: those of the <code>ProbNet</code>
+     *         that have not been removed followed by the added ones
+     */
+    public List<Variable> getVariables() {
+        List<Variable> variables = new ArrayList<Variable>(getNumNodes());
+        for (ProbNode probNode : probNet.getProbNodes()) {
+            if (!removedVariables.contains(probNode.getVariable())) {
+                variables.add(probNode.getVariable());
+            }
+        }
+        variables.addAll(addedVariables.keySet());
+        return variables;
+    }
+
+    /**
+     * @param nodeType
+     *            <code>NodeType</code>
+     * @return The variables of the nodes of that type
+     */
+    public List<Variable> getVariables(NodeType nodeType) {
+        List<Variable> variables = new ArrayList<Variable>();
+        for (ProbNode probNode : probNet.getProbNodes(nodeType)) {
+            if (!removedVariables.contains(probNode.getVariable())) {
+                variables.add(probNode.getVariable());
+            }
+        }
+        for (Map.Entry<Variable, NodeType> entry : addedVariables.entrySet()) {
+            if (entry.getValue() == nodeType) {
+                variables.add(entry.getKey());
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * @param variable
+     *            <code>Variable</code> of the view
+     * @return The type of its node
+     */
+    public NodeType getNodeType(Variable variable) {
+        NodeType nodeType = addedVariables.get(variable);
+        return nodeType != null ? nodeType : probNet.getProbNode(variable).getNodeType();
+    }
+
+    /**
+     * @param variable
+     *            <code>Variable</code> of the view
+     * @return The potentials of its node, which are shared with the
+     *         <code>ProbNet</code> unless they have been replaced
+     */
+    public List<Potential> getPotentials(Variable variable) {
+        List<Potential> nodePotentials = potentials.get(variable);
+        if (nodePotentials != null) {
+            return nodePotentials;
+        }
+        if (addedVariables.containsKey(variable)) {
+            return new ArrayList<Potential>();
+        }
+        return probNet.getProbNode(variable).getPotentials();
+    }
+
+    /** @return The potentials of all the nodes of the view */
+    public List<Potential> getPotentials() {
+        List<Potential> allPotentials = new ArrayList<Potential>();
+        for (Variable variable : getVariables()) {
+            allPotentials.addAll(getPotentials(variable));
+        }
+        return allPotentials;
+    }
+
+    /**
+     * @param variable
+     *            <code>Variable</code> of the view
+     * @return The variables of the parents of its node
+     */
+    public List<Variable> getParents(Variable variable) {
+        List<Variable> parents = new ArrayList<Variable>();
+        ProbNode probNode = getOriginalProbNode(variable);
+        if (probNode != null) {
+            for (Node parent : probNode.getNode().getParents()) {
+                Variable parentVariable = ((ProbNode) parent.getObject()).getVariable();
+                if (!removedVariables.contains(parentVariable)
+                        && indexOf(removedLinks, parentVariable, variable, true) == -1) {
+                    parents.add(parentVariable);
+                }
+            }
+        }
+        for (ViewLink link : addedLinks) {
+            if (link.directed && link.variable2 == variable) {
+                parents.add(link.variable1);
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * @param variable
+     *            <code>Variable</code> of the view
+     * @return The variables of the children of its node
+     */
+    public List<Variable> getChildren(Variable variable) {
+        List<Variable> children = new ArrayList<Variable>();
+        ProbNode probNode = getOriginalProbNode(variable);
+        if (probNode != null) {
+            for (Node child : probNode.getNode().getChildren()) {
+                Variable childVariable = ((ProbNode) child.getObject()).getVariable();
+                if (!removedVariables.contains(childVariable)
+                        && indexOf(removedLinks, variable, childVariable, true) == -1) {
+                    children.add(childVariable);
+                }
+            }
+        }
+        for (ViewLink link : addedLinks) {
+            if (link.directed && link.variable1 == variable) {
+                children.add(link.variable2);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @param variable
+     *            <code>Variable</code> of the view
+     * @return The variables linked to its node by undirected links
+     */
+    public List<Variable> getSiblings(Variable variable) {
+        List<Variable> siblings = new ArrayList<Variable>();
+        ProbNode probNode = getOriginalProbNode(variable);
+        if (probNode != null) {
+            for (Node sibling : probNode.getNode().getSiblings()) {
+                Variable siblingVariable = ((ProbNode) sibling.getObject()).getVariable();
+                if (!removedVariables.contains(siblingVariable)
+                        && indexOf(removedLinks, variable, siblingVariable, false) == -1) {
+                    siblings.add(siblingVariable);
+                }
+            }
+        }
+        for (ViewLink link : addedLinks) {
+            if (!link.directed && (link.variable1 == variable || link.variable2 == variable)) {
+                siblings.add(link.variable1 == variable ? link.variable2 : link.variable1);
+            }
+        }
+        return siblings;
+    }
+
+    /**
+     * Removes the node of <code>variable</code> and its links from the view.
+     *
+     * @param variable
+     *            <code>Variable</code> of the view
+     */
+    public void removeProbNode(Variable variable) {
+        if (addedVariables.remove(variable) == null) {
+            removedVariables.add(variable);
+        }
+        potentials.remove(variable);
+        for (int i = addedLinks.size() - 1; i >= 0; i--) {
+            if (addedLinks.get(i).variable1 == variable
+                    || addedLinks.get(i).variable2 == variable) {
+                addedLinks.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Adds a node without links nor potentials to the view.
+     *
+     * @param variable
+     *            <code>Variable</code> that is not in the view
+     * @param nodeType
+     *            <code>NodeType</code>
+     */
+    public void addProbNode(Variable variable, NodeType nodeType) {
+        addedVariables.put(variable, nodeType);
+    }
+
+    /**
+     * @param variable1
+     *            <code>Variable</code> of the view
+     * @param variable2
+     *            <code>Variable</code> of the view
+     * @param directed
+     *            <code>boolean</code>
+     */
+    public void addLink(Variable variable1, Variable variable2, boolean directed) {
+        int index = indexOf(removedLinks, variable1, variable2, directed);
+        if (index != -1) {
+            removedLinks.remove(index);
+        } else if (!(directed ? getChildren(variable1) : getSiblings(variable1))
+                .contains(variable2)) {
+            addedLinks.add(new ViewLink(variable1, variable2, directed));
+        }
+    }
+
+    /**
+     * @param variable1
+     *            <code>Variable</code> of the view
+     * @param variable2
+     *            <code>Variable</code> of the view
+     * @param directed
+     *            <code>boolean</code>
+     */
+    public void removeLink(Variable variable1, Variable variable2, boolean directed) {
+        int index = indexOf(addedLinks, variable1, variable2, directed);
+        if (index != -1) {
+            addedLinks.remove(index);
+        } else {
+            removedLinks.add(new ViewLink(variable1, variable2, directed));
+        }
+    }
+
+    /**
+     * Replaces the potentials of a node in the view. The list is adopted, not
+     * copied.
+     *
+     * @param variable
+     *            <code>Variable</code> of the view
+     * @param nodePotentials
+     *            <code>List</code> of <code>Potential</code>
+     */
+    public void setPotentials(Variable variable, List<Potential> nodePotentials) {
+        potentials.put(variable, nodePotentials);
+    }
+
+    /**
+     * Creates a <code>ProbNet</code> with the nodes and links of the view. As
+     * in <code>ProbNet.copy</code>, the variables and the potentials are
+     * shared but the nodes and the links are new; only the nodes that remain
+     * in the view are created.
+     *
+     * @return <code>ProbNet</code>
+     */
+    public ProbNet toProbNet() {
+        ProbNet derivedNet = probNet.copyWithoutNodes();
+        List<ProbNode> probNodes = probNet.getProbNodes();
+        Map<ProbNode, ProbNode> derivedProbNodes = new IdentityHashMap<ProbNode, ProbNode>();
+        for (ProbNode probNode : probNodes) {
+            if (!removedVariables.contains(probNode.getVariable())) {
+                ProbNode derivedProbNode = probNet.copyProbNode(derivedNet, probNode);
+                List<Potential> nodePotentials = potentials.get(probNode.getVariable());
+                if (nodePotentials != null) {
+                    derivedProbNode.setPotentials(nodePotentials);
+                }
+                derivedProbNodes.put(probNode, derivedProbNode);
+            }
+        }
+        for (Map.Entry<Variable, NodeType> entry : addedVariables.entrySet()) {
+            ProbNode derivedProbNode = derivedNet.addProbNode(entry.getKey(), entry.getValue());
+            List<Potential> nodePotentials = potentials.get(entry.getKey());
+            if (nodePotentials != null) {
+                derivedProbNode.setPotentials(nodePotentials);
+            }
+        }
+        // Adds links
+        Graph graph = probNet.getGraph();
+        Graph derivedGraph = derivedNet.getGraph();
+        if (graph.useExplicitLinks()) {
+            derivedGraph.makeLinksExplicit(false);
+        }
+        for (ProbNode probNode : probNodes) {
+            ProbNode derivedProbNode = derivedProbNodes.get(probNode);
+            if (derivedProbNode == null) {
+                continue;
+            }
+            for (Node sibling : probNode.getNode().getSiblings()) {
+                ProbNode derivedSibling = derivedProbNodes.get(sibling.getObject());
+                if (derivedSibling != null
+                        && !derivedProbNode.getNode().isSibling(derivedSibling.getNode())
+                        && !isRemoved(probNode, (ProbNode) sibling.getObject(), false)) {
+                    derivedGraph.addLink(derivedProbNode.getNode(), derivedSibling.getNode(), false);
+                }
+            }
+            for (Node child : probNode.getNode().getChildren()) {
+                ProbNode derivedChild = derivedProbNodes.get(child.getObject());
+                if (derivedChild != null && !isRemoved(probNode, (ProbNode) child.getObject(), true)) {
+                    derivedGraph.addLink(derivedProbNode.getNode(), derivedChild.getNode(), true);
+                }
+            }
+        }
+        for (ViewLink link : addedLinks) {
+            derivedNet.addLink(derivedNet.getProbNode(link.variable1),
+                    derivedNet.getProbNode(link.variable2), link.directed);
+        }
+        // Copy explicit links' properties
+        if (graph.useExplicitLinks()) {
+            for (Link link : graph.getLinks()) {
+                ProbNode derivedProbNode1 = derivedProbNodes.get(link.getNode1().getObject());
+                ProbNode derivedProbNode2 = derivedProbNodes.get(link.getNode2().getObject());
+                Link derivedLink = (derivedProbNode1 != null && derivedProbNode2 != null) ? derivedGraph
+                        .getLink(derivedProbNode1.getNode(), derivedProbNode2.getNode(),
+                                link.isDirected()) : null;
+                if (derivedLink != null) {
+                    derivedLink.setRestrictionsPotential(link.getRestrictionsPotential());
+                    derivedLink.setRevealingIntervals(link.getRevealingIntervals());
+                    derivedLink.setRevealingStates(link.getRevealingStates());
+                }
+            }
+        }
+        return derivedNet;
+    }
+
+    /** @return The node of <code>variable</code> in the <code>ProbNet</code>,
+     *         or <code>null</code> if it has been added to the view */
+    private ProbNode getOriginalProbNode(Variable variable) {
+        return addedVariables.containsKey(variable) ? null : probNet.getProbNode(variable);
+    }
+
+    private boolean isRemoved(ProbNode probNode1, ProbNode probNode2, boolean directed) {
+        return !removedLinks.isEmpty()
+                && indexOf(removedLinks, probNode1.getVariable(), probNode2.getVariable(),
+                        directed) != -1;
+    }
+
+    private static int indexOf(List<ViewLink> links, Variable variable1, Variable variable2,
+            boolean directed) {
+        for (int i = 0; i < links.size(); i++) {
+            ViewLink link = links.get(i);
+            if (link.directed == directed
+                    && ((link.variable1 == variable1 && link.variable2 == variable2) || (!directed
+                            && link.variable1 == variable2 && link.variable2 == variable1))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** A link added to or removed from the view. */
+    private static class ViewLink {
+        private final Variable variable1;
+
+        private final Variable variable2;
+
+        private final boolean directed;
+
+        private ViewLink(Variable variable1, Variable variable2, boolean directed) {
+            this.variable1 = variable1;
+            this.variable2 = variable2;
+            this.directed = directed;
+        }
+    }
+
+}
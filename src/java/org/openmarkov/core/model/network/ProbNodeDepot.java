@@ -7,7 +7,10 @@
 package org.openmarkov.core.model.network;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -20,6 +23,16 @@ import org.openmarkov.core.model.network.potential.PotentialRole;
  * @author mluque It is the type of 'nodesHashMaps'. It contains a
  *         <code>LinkedHashMap</code> from <code>NodeType</code> to
  *         <code>NodesHashMapType</code>.
+ *         <p>
+ *         The nodes are also indexed by the name of their variables and by
+ *         their graph nodes, so that they are found in constant time, and
+ *         each node has an integer identifier, which does not change while
+ *         the node is in the depot. The identifiers are dense: those of the
+ *         removed nodes are given to the next nodes added. The variables
+ *         tell the depot when they are renamed, either with
+ *         <code>NodeNameEdit</code> or directly with <code>Variable</code>
+ *         setters, and the index by name is updated, or rebuilt when some
+ *         names are repeated.
  */
 public class ProbNodeDepot {
     /**
@@ -37,8 +50,8 @@ public class ProbNodeDepot {
             return nodesHashMap.get(variable);
         }
 
-        public void put(Variable variable, ProbNode probNode) {
-            nodesHashMap.put(variable, probNode);
+        public ProbNode put(Variable variable, ProbNode probNode) {
+            return nodesHashMap.put(variable, probNode);
         }
 
         public int size() {
@@ -49,19 +62,44 @@ public class ProbNodeDepot {
             return nodesHashMap.values();
         }
 
-        public void remove(Variable variable) {
-            nodesHashMap.remove(variable);
+        public ProbNode remove(Variable variable) {
+            return nodesHashMap.remove(variable);
         }
     }
 
     LinkedHashMap<NodeType, NodesHashMap> nodesHashMaps;
 
+    /**
+     * Node of each variable name, <code>null</code> when it has to be
+     * rebuilt. It is only assigned once complete.
+     */
+    private volatile HashMap<String, ProbNode> nodesByName;
+
+    /**
+     * True if some name of <code>nodesByName</code> belongs to several nodes,
+     * so that removing or renaming one of them needs a rebuild.
+     */
+    private boolean repeatedNames;
+
+    private HashMap<Node, ProbNode> nodesByNode;
+
+    private IdentityHashMap<ProbNode, Integer> ids;
+
+    /** Nodes by identifier, <code>null</code> for the free identifiers. */
+    private ArrayList<ProbNode> nodesById;
+
+    private BitSet freeIds;
+
     ProbNodeDepot() {
         nodesHashMaps = new LinkedHashMap<NodeType, NodesHashMap>();
         // create a linkedHashMap for each type of nodes
         for (NodeType type : NodeType.values()) {
             nodesHashMaps.put(type, new NodesHashMap());
         }
+        nodesByNode = new HashMap<Node, ProbNode>();
+        ids = new IdentityHashMap<ProbNode, Integer>();
+        nodesById = new ArrayList<ProbNode>();
+        freeIds = new BitSet();
     }
 
     public int getNumNodes() {
@@ -121,27 +159,39 @@ public class ProbNodeDepot {
     }
 
     public ProbNode getProbNode(String nameOfVariable) {
-        for (NodeType nodeType : NodeType.values()) {
-            Collection<ProbNode> probNodes = nodesHashMaps.get(nodeType).values();
-            for (ProbNode probNode : probNodes) {
-                if (probNode.getVariable().getName().contentEquals(nameOfVariable)) {
-                    return probNode;
-                }
-            }
-        }
-        return null;
+        return getNodesByName().get(nameOfVariable);
     }
 
     public ProbNode getProbNode(Node node) {
-        for (NodeType nodeType : NodeType.values()) {
-            Collection<ProbNode> probNodes = nodesHashMaps.get(nodeType).values();
-            for (ProbNode probNode : probNodes) {
-                if (probNode.getNode().equals(node)) {
-                    return probNode;
-                }
-            }
-        }
-        return null;
+        return nodesByNode.get(node);
+    }
+
+    /**
+     * @param id
+     *            Identifier of a node
+     * @return The node with that identifier, or <code>null</code> if there is
+     *         none
+     */
+    public ProbNode getProbNode(int id) {
+        return (id >= 0 && id < nodesById.size()) ? nodesById.get(id) : null;
+    }
+
+    /**
+     * @param probNode
+     *            <code>ProbNode</code>
+     * @return The identifier of the node, or -1 if it is not in the depot
+     */
+    public int getId(ProbNode probNode) {
+        Integer id = ids.get(probNode);
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * @return A number greater than the identifiers of all the nodes, to size
+     *         the arrays indexed by identifier
+     */
+    public int getNumIds() {
+        return nodesById.size();
     }
     
     public ProbNode getProbNode (Variable variable)
@@ -166,7 +216,14 @@ public class ProbNodeDepot {
      */
     public ProbNode getProbNode (String nameOfVariable, NodeType nodeType)
     {
-        for (ProbNode node : nodesHashMaps.get (nodeType).values ())
+        ProbNode probNode = getProbNode (nameOfVariable);
+        NodesHashMap nodes = nodesHashMaps.get (nodeType);
+        if (probNode == null || nodes.get (probNode.getVariable ()) == probNode)
+        {
+            return probNode;
+        }
+        // another node of a different type has the same name
+        for (ProbNode node : nodes.values ())
         {
             if (node.getVariable ().getName ().contentEquals (nameOfVariable))
             {
@@ -177,16 +234,137 @@ public class ProbNodeDepot {
     }    
 
     public void addProbNode(Variable variable, ProbNode probNode) {
-        nodesHashMaps.get(probNode.getNodeType()).put(variable, probNode);
+        ProbNode previous = nodesHashMaps.get(probNode.getNodeType()).put(variable, probNode);
+        if (previous != probNode) {
+            if (previous != null) {
+                removeFromIndexes(previous);
+            }
+            addToIndexes(probNode);
+        }
     }
 
     public void removeProbNode(ProbNode probNode) {
         NodeType nodeKindValue = probNode.getNodeType ();
         Variable variable = probNode.getVariable ();
         NodesHashMap nodesMap = nodesHashMaps.get (nodeKindValue);
-        nodesMap.remove (variable);
+        ProbNode removed = nodesMap.remove (variable);
+        if (removed != null) {
+            removeFromIndexes(removed);
+        }
      }
 
+    /**
+     * @return The index by name, which is built if it has been discarded
+     */
+    private HashMap<String, ProbNode> getNodesByName() {
+        HashMap<String, ProbNode> index = nodesByName;
+        if (index == null) {
+            index = new HashMap<String, ProbNode>(2 * ids.size());
+            boolean repeated = false;
+            // the first node in the order of the types keeps a repeated name
+            for (NodesHashMap hashMap : nodesHashMaps.values()) {
+                for (ProbNode probNode : hashMap.values()) {
+                    String name = probNode.getVariable().getName();
+                    if (index.containsKey(name)) {
+                        repeated = true;
+                    } else {
+                        index.put(name, probNode);
+                    }
+                }
+            }
+            repeatedNames = repeated;
+            nodesByName = index;
+        }
+        return index;
+    }
+
+    /**
+     * Called by <code>variable</code> when its name changes.
+     * 
+     * @param variable
+     *            <code>Variable</code> of some node of the depot
+     * @param oldName
+     *            Name of the variable before the change
+     */
+    void variableRenamed(Variable variable, String oldName) {
+        HashMap<String, ProbNode> index = nodesByName;
+        ProbNode probNode = getProbNode(variable);
+        if (index == null || probNode == null) {
+            return;
+        }
+        String name = variable.getName();
+        ProbNode indexed = index.get(name);
+        if (indexed == probNode) {
+            // the name has not changed
+            return;
+        }
+        if (repeatedNames || indexed != null) {
+            nodesByName = null;
+        } else {
+            if (index.get(oldName) == probNode) {
+                index.remove(oldName);
+            }
+            index.put(name, probNode);
+        }
+    }
+
+    private void addToIndexes(ProbNode probNode) {
+        if (ids.containsKey(probNode)) {
+            return;
+        }
+        int id = freeIds.nextSetBit(0);
+        if (id < 0) {
+            id = nodesById.size();
+            nodesById.add(probNode);
+        } else {
+            freeIds.clear(id);
+            nodesById.set(id, probNode);
+        }
+        ids.put(probNode, id);
+        if (!nodesByNode.containsKey(probNode.getNode())) {
+            nodesByNode.put(probNode.getNode(), probNode);
+        }
+        probNode.getVariable().addDepot(this);
+        HashMap<String, ProbNode> index = nodesByName;
+        if (index != null) {
+            // the first node in the order of the types keeps a repeated name
+            String name = probNode.getVariable().getName();
+            ProbNode indexed = index.get(name);
+            if (indexed != null) {
+                repeatedNames = true;
+            }
+            if (indexed == null
+                    || probNode.getNodeType().ordinal() < indexed.getNodeType().ordinal()) {
+                index.put(name, probNode);
+            }
+        }
+    }
+
+    private void removeFromIndexes(ProbNode probNode) {
+        Integer id = ids.remove(probNode);
+        if (id == null) {
+            return;
+        }
+        nodesById.set(id, null);
+        freeIds.set(id);
+        if (nodesByNode.get(probNode.getNode()) == probNode) {
+            nodesByNode.remove(probNode.getNode());
+        }
+        Variable variable = probNode.getVariable();
+        if (getProbNode(variable) == null) {
+            variable.removeDepot(this);
+        }
+        HashMap<String, ProbNode> index = nodesByName;
+        if (index != null) {
+            if (repeatedNames) {
+                // another node with the same name may have to be indexed
+                nodesByName = null;
+            } else if (index.get(variable.getName()) == probNode) {
+                index.remove(variable.getName());
+            }
+        }
+    }
+
     public int getNumPotentials() {
         int numPotentials = 0;
         for (NodesHashMap linkedHasMap : nodesHashMaps.values ())
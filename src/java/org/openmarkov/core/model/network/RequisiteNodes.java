@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain Licensed under the European Union Public
+ * Licence, version 1.1 (EUPL) Unless required by applicable law, this code is
+ * distributed on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.model.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmarkov.core.model.graph.IndexedGraph;
+import org.openmarkov.core.model.network.potential.Potential;
+
+/**
+ * Finds the nodes of a <code>ProbNet</code> whose potentials are needed to
+ * compute the posterior probability of some variables given evidence on
+ * others, with <code>IndexedGraph.getRequisite</code>, without modifying nor
+ * copying the network.
+ * <p>
+ * The nodes found are kept for each pair of query variables and evidence
+ * variables, so that the queries repeated with the same observed variables,
+ * whatever their states, do not search the graph again. They are discarded
+ * when a node or a link of the network is added or removed; the potentials
+ * are always read from the nodes.
+ *
+ * @author agent
+ */
+public class RequisiteNodes {
+
+    // Constants
+    /** Number of pairs of query and evidence variables kept */
+    public static final int MAX_ENTRIES = 1024;
+
+    // Attributes
+    private ProbNet probNet;
+
+    private IndexedGraph graph;
+
+    /** <code>Graph.getNumChanges</code> when <code>graph</code> was built */
+    private int numChanges;
+
+    /** Identifiers of the nodes sorted topologically */
+    private int[] sortedNodes;
+
+    /** Requisite nodes for each list of query and evidence identifiers */
+    private Map<List<BitSet>, List<ProbNode>> cache;
+
+    // Constructor
+    /**
+     * @param probNet
+     *            <code>ProbNet</code>
+     */
+    public RequisiteNodes(ProbNet probNet) {
+        this.probNet = probNet;
+        cache = new LinkedHashMap<List<BitSet>, List<ProbNode>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<BitSet>, List<ProbNode>> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    // Methods
+    /** @return The <code>ProbNet</code> whose nodes are found */
+    public ProbNet getProbNet() {
+        return probNet;
+    }
+
+    /**
+     * @param queryVariables
+     *            <code>Collection</code> of <code>Variable</code>
+     * @param evidenceVariables
+     *            <code>Collection</code> of <code>Variable</code>. Those that
+     *            are not in the network are ignored.
+     * @return The requisite nodes, sorted topologically: the queries not
+     *         observed and the nodes whose potentials give information about
+     *         them, either because they are ancestors or because they are
+     *         connected to them through the evidence. The parents of a
+     *         requisite node are requisite or observed. The list must not be
+     *         modified.
+     */
+    public List<ProbNode> getRequisiteNodes(Collection<Variable> queryVariables,
+            Collection<Variable> evidenceVariables) {
+        if (graph == null || numChanges != probNet.getGraph().getNumChanges()) {
+            numChanges = probNet.getGraph().getNumChanges();
+            graph = new IndexedGraph(probNet.getGraph());
+            sortedNodes = graph.sortTopologically();
+            cache.clear();
+        }
+        List<BitSet> key = Arrays.asList(getIds(queryVariables), getIds(evidenceVariables));
+        List<ProbNode> requisiteNodes = cache.get(key);
+        if (requisiteNodes == null) {
+            BitSet requisite = graph.getRequisite(key.get(0), key.get(1));
+            requisiteNodes = new ArrayList<ProbNode>(requisite.cardinality());
+            for (int id : sortedNodes) {
+                if (requisite.get(id)) {
+                    requisiteNodes.add((ProbNode) graph.getNode(id).getObject());
+                }
+            }
+            requisiteNodes = Collections.unmodifiableList(requisiteNodes);
+            cache.put(key, requisiteNodes);
+        }
+        return requisiteNodes;
+    }
+
+    /**
+     * @param queryVariables
+     *            <code>Collection</code> of <code>Variable</code>
+     * @param evidenceVariables
+     *            <code>Collection</code> of <code>Variable</code>
+     * @return The potentials of the requisite nodes, sorted topologically,
+     *         which are the only ones needed to compute the posterior
+     *         probability of <code>queryVariables</code>
+     */
+    public List<Potential> getRequisitePotentials(Collection<Variable> queryVariables,
+            Collection<Variable> evidenceVariables) {
+        List<Potential> potentials = new ArrayList<Potential>();
+        for (ProbNode probNode : getRequisiteNodes(queryVariables, evidenceVariables)) {
+            potentials.addAll(probNode.getPotentials());
+        }
+        return potentials;
+    }
+
+    private BitSet getIds(Collection<Variable> variables) {
+        BitSet ids = new BitSet(graph.getNumNodes());
+        for (Variable variable : variables) {
+            ProbNode probNode = probNet.getProbNode(variable);
+            if (probNode != null) {
+                ids.set(graph.getId(probNode.getNode()));
+            }
+        }
+        return ids;
+    }
+
+}
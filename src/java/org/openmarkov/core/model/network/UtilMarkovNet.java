@@ -9,10 +9,11 @@
 
 package org.openmarkov.core.model.network;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import org.openmarkov.core.exception.ConstraintViolationException;
-import org.openmarkov.core.exception.NodeNotFoundException;
 import org.openmarkov.core.model.network.constraint.OnlyDiscreteVariables;
 import org.openmarkov.core.model.network.constraint.OnlyUndirectedLinks;
 import org.openmarkov.core.model.network.potential.Potential;
@@ -55,8 +56,9 @@ public class UtilMarkovNet {
 			e.printStackTrace();
 		}
     	for (Potential potential : projectedTablePotentials) {
-    		addPotential(markovNet,originalNet, potential);
+    		addNodesAndPotential(markovNet, originalNet, potential);
     	}
+    	addLinks(markovNet, projectedTablePotentials);
 		return markovNet;
 	}
 	
@@ -82,8 +84,9 @@ public class UtilMarkovNet {
 			e.printStackTrace();
 		}
     	for (Potential potential : projectedTablePotentials) {
-    		addPotential(markovNet, potential);
+    		addNodesAndPotential(markovNet, null, potential);
     	}
+    	addLinks(markovNet, projectedTablePotentials);
 		return markovNet;
 	}
 
@@ -103,6 +106,20 @@ public class UtilMarkovNet {
 	 *         received has been added.
 	 */
 	public static void addPotential(ProbNet markovNet, ProbNet originalNet, Potential potential) {
+		addNodesAndPotential(markovNet, originalNet, potential);
+		addLinks(markovNet, Collections.singletonList(potential));
+	}
+
+	/**
+	 * Adds the variables of the potential that are not in the network and
+	 * adds the potential to its first variable.
+	 * 
+	 * @param originalNet
+	 *            <code>ProbNet</code> that gives the types of the nodes, or
+	 *            <code>null</code> to add them as chance nodes
+	 */
+	private static void addNodesAndPotential(ProbNet markovNet, ProbNet originalNet,
+			Potential potential) {
 		List<Variable> potentialVariables = potential.getVariables();
 		// the probNode where the potential will be stored
 		// TODO hacerlo con edits
@@ -113,25 +130,46 @@ public class UtilMarkovNet {
 		} else {
 			// the potential depends on several variables
 			for (Variable variable : potentialVariables) {
-				//if (originalNet.getProbNode(variable)!=null){
 				if (markovNet.getProbNode(variable) == null) {
-					ProbNode node = originalNet.getProbNode(variable);
-					NodeType nodeType = node.getNodeType();
+					// in a Markov net all nodes are treated as if they were
+					// CHANCE, unless they come from the original network
+					NodeType nodeType = (originalNet != null) ? originalNet.getProbNode(variable)
+							.getNodeType() : NodeType.CHANCE;
 					markovNet.addProbNode(variable, nodeType);
 				}
-				//}
 			}
 			markovNet.getProbNode(potentialVariables.get(0)).
 				addPotential(potential);
+		}
+	}
+
+	/**
+	 * Links every pair of variables of each potential. Each pair is added once,
+	 * in the order of the potentials, identifying the nodes by their integer
+	 * identifiers in the network.
+	 * 
+	 * @param markovNet
+	 *            <code>ProbNet</code> that contains the variables of the
+	 *            potentials
+	 * @param potentials
+	 *            <code>List</code> of <code>Potential</code>
+	 */
+	private static void addLinks(ProbNet markovNet, List<Potential> potentials) {
+		HashSet<Long> links = new HashSet<Long>();
+		for (Potential potential : potentials) {
+			List<Variable> potentialVariables = potential.getVariables();
 			int numVariables = potentialVariables.size();
+			ProbNode[] nodes = new ProbNode[numVariables];
+			long[] ids = new long[numVariables];
+			for (int i = 0; i < numVariables; i++) {
+				nodes[i] = markovNet.getProbNode(potentialVariables.get(i));
+				ids[i] = markovNet.getNodeId(nodes[i]);
+			}
 			for (int i = 0; i < numVariables - 1; i++) {
-				Variable variable1 = potentialVariables.get(i);
 				for (int j = i + 1; j < numVariables; j++) {
-					Variable variable2 = potentialVariables.get(j);
-					try {
-						markovNet.addLink(variable1, variable2, false);
-					} catch (NodeNotFoundException e) {
-						// Unreachable code because the variables are in the net
+					long link = (ids[i] < ids[j]) ? (ids[i] << 32) | ids[j] : (ids[j] << 32) | ids[i];
+					if (links.add(link)) {
+						markovNet.addLink(nodes[i], nodes[j], false);
 					}
 				}
 			}
@@ -154,38 +192,8 @@ public class UtilMarkovNet {
 	 *         received has been added.
 	 */
 	public static void addPotential(ProbNet markovNet, Potential potential) {
-		List<Variable> potentialVariables = potential.getVariables();
-		// the probNode where the potential will be stored
-		// TODO hacerlo con edits
-		if (potential.getVariables().size() == 0) {
-			// it is a constant potential;
-			// adds it to any variable of the network
-			markovNet.getProbNodes().get(0).addPotential(potential);
-		} else {
-			// the potential depends on several variables
-			for (Variable variable : potentialVariables) {
-				if (markovNet.getProbNode(variable) == null) {
-					// in a Markov net all nodes are treated as if they were
-					// CHANCE
-					markovNet.addProbNode(variable, NodeType.CHANCE);
-					
-				}
-			}
-			markovNet.getProbNode(potentialVariables.get(0)).
-				addPotential(potential);
-			int numVariables = potentialVariables.size();
-			for (int i = 0; i < numVariables - 1; i++) {
-				Variable variable1 = potentialVariables.get(i);
-				for (int j = i + 1; j < numVariables; j++) {
-					Variable variable2 = potentialVariables.get(j);
-					try {
-						markovNet.addLink(variable1, variable2, false);
-					} catch (NodeNotFoundException e) {
-						// Unreachable code because the variables are in the net
-					}
-				}
-			}
-		}
+		addNodesAndPotential(markovNet, null, potential);
+		addLinks(markovNet, Collections.singletonList(potential));
 	}
 	
 
@@ -9,6 +9,7 @@
 
 package org.openmarkov.core.model.network;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -49,6 +50,13 @@ public class Variable implements Cloneable {
 	// the baseName is "X"
 	private String baseName;
 
+	/**
+	 * Depots that index this variable by its name, which are told when the
+	 * name changes. The references are weak because the copies of a network
+	 * share its variables. <code>null</code> while it is in no depot.
+	 */
+	private List<WeakReference<ProbNodeDepot>> depots;
+
 	private StringWithProperties unit = new StringWithProperties("");
 
 	/**
@@ -241,6 +249,7 @@ public class Variable implements Cloneable {
 		Object object = null;
 		try {
 			object = super.clone();
+			((Variable) object).depots = null;
 		} catch (CloneNotSupportedException e) {
 			// Unreachable code
 			System.err.println("Can not clone object " + object);
@@ -502,8 +511,10 @@ public class Variable implements Cloneable {
 	 *            . <code>String</code>
 	 */
 	public void setName(String newName) {
+		String oldName = name;
 		name = newName;// new String(newName);
 		timeSlice = getTimeSlice(name);
+		nameChanged(oldName);
 	}
 
 	/**
@@ -511,8 +522,10 @@ public class Variable implements Cloneable {
 	 *            . <code>String</code>
 	 */
 	public void setBaseName(String newBaseName) {
+		String oldName = name;
 		this.baseName = newBaseName;
 		this.name = this.baseName + ((timeSlice >= 0)? " [" + timeSlice + "]" : "");
+		nameChanged(oldName);
 	}
 
 	/**
@@ -687,15 +700,77 @@ public class Variable implements Cloneable {
 	 */
 	public void setTimeSlice(int timeSlice) {
 		if (timeSlice != Integer.MIN_VALUE) {
+			String oldName = name;
 			int beginSlicePart = name.lastIndexOf('[');
 			if (beginSlicePart != -1) {
 				baseName = name.substring(0, beginSlicePart - 1);
 			}
 			name = baseName + " [" + timeSlice + "]";
+			nameChanged(oldName);
 		}
 		this.timeSlice = timeSlice;
 	}
 
+	/**
+	 * @param depot
+	 *            <code>ProbNodeDepot</code> that indexes this variable by its
+	 *            name
+	 */
+	synchronized void addDepot(ProbNodeDepot depot) {
+		if (depots == null) {
+			depots = new ArrayList<WeakReference<ProbNodeDepot>>(1);
+		}
+		for (int i = depots.size() - 1; i >= 0; i--) {
+			ProbNodeDepot registered = depots.get(i).get();
+			if (registered == depot) {
+				return;
+			}
+			if (registered == null) {
+				depots.remove(i);
+			}
+		}
+		depots.add(new WeakReference<ProbNodeDepot>(depot));
+	}
+
+	/**
+	 * @param depot
+	 *            <code>ProbNodeDepot</code> that does not contain this
+	 *            variable any more
+	 */
+	synchronized void removeDepot(ProbNodeDepot depot) {
+		if (depots != null) {
+			for (int i = depots.size() - 1; i >= 0; i--) {
+				ProbNodeDepot registered = depots.get(i).get();
+				if (registered == depot || registered == null) {
+					depots.remove(i);
+				}
+			}
+			if (depots.isEmpty()) {
+				depots = null;
+			}
+		}
+	}
+
+	/** Tells the depots of the variable that its name has changed. */
+	private void nameChanged(String oldName) {
+		List<ProbNodeDepot> renamedIn;
+		synchronized (this) {
+			if (depots == null) {
+				return;
+			}
+			renamedIn = new ArrayList<ProbNodeDepot>(depots.size());
+			for (WeakReference<ProbNodeDepot> reference : depots) {
+				ProbNodeDepot depot = reference.get();
+				if (depot != null) {
+					renamedIn.add(depot);
+				}
+			}
+		}
+		for (ProbNodeDepot depot : renamedIn) {
+			depot.variableRenamed(this, oldName);
+		}
+	}
+
 	public int getTimeSlice() {
 		return timeSlice;
 	}
@@ -17,6 +17,7 @@ import org.openmarkov.core.action.PNEdit;
 import org.openmarkov.core.exception.NonProjectablePotentialException;
 import org.openmarkov.core.exception.WrongCriterionException;
 import org.openmarkov.core.model.graph.Graph;
+import org.openmarkov.core.model.graph.IndexedGraph;
 import org.openmarkov.core.model.graph.Node;
 import org.openmarkov.core.model.network.ProbNet;
 import org.openmarkov.core.model.network.Variable;
@@ -27,17 +28,7 @@ public class NoCycle extends PNConstraint {
 
 	@Override
 	public boolean checkProbNet(ProbNet probNet) {
-		Graph graph = probNet.getGraph();
-		List<Node> nodesGraph = graph.getNodes();
-		for (Node parent : nodesGraph) {
-			List<Node> children = parent.getChildren();
-			for (Node child : children) {
-				if (graph.existsPath(child, parent, true)) {
-					return false;
-				}
-			}
-		}
-		return true;
+		return !new IndexedGraph(probNet.getGraph()).hasDirectedCycle();
 	}
 
 	@Override
@@ -57,7 +48,7 @@ public class NoCycle extends PNConstraint {
 				Node node1 = probNet.getProbNode(variable1).getNode();
 				Variable variable2 = ((AddLinkEdit)simpleEdit).getVariable2(); 
 				Node node2 = probNet.getProbNode(variable2).getNode();
-				if (graph.existsPath(node2, node1, true)) {
+				if (graph.wouldCreateCycle(node1, node2)) {
 					return false;
 				}
 			}
@@ -71,7 +62,7 @@ public class NoCycle extends PNConstraint {
                 Variable variable2 = ((InvertLinkEdit)simpleEdit).getVariable2(); 
                 Node node2 = probNet.getProbNode(variable2).getNode();
                 probNet.getGraph ().removeLink (node1, node2, true);
-                boolean existsPath = graph.existsPath(node1, node2, true);
+                boolean existsPath = graph.wouldCreateCycle(node2, node1);
                 probNet.getGraph ().addLink (node1, node2, true);
                 if (existsPath)
                 {
@@ -16,6 +16,7 @@ import org.openmarkov.core.action.PNEdit;
 import org.openmarkov.core.exception.NonProjectablePotentialException;
 import org.openmarkov.core.exception.WrongCriterionException;
 import org.openmarkov.core.model.graph.Graph;
+import org.openmarkov.core.model.graph.IndexedGraph;
 import org.openmarkov.core.model.graph.Node;
 import org.openmarkov.core.model.network.ProbNet;
 import org.openmarkov.core.model.network.Variable;
@@ -46,36 +47,7 @@ public class NoLoops extends PNConstraint {
 
 	@Override
 	public boolean checkProbNet(ProbNet probNet) {
-		Graph graph = probNet.getGraph();
-		List<Node> nodesGraph = graph.getNodes();
-		boolean probNetOK = true;
-		boolean directed;
-		for (Node node1 : nodesGraph) {
-			List<Node> neighbors = node1.getNeighbors();
-			for (Node node2 : neighbors) {
-				if (node2.isChild(node1)) {
-					graph.removeLink(node2, node1, true);
-					directed = true;
-				} else if (node1.isSibling(node2)) {
-					graph.removeLink(node1, node2, false);
-					directed = false;
-				} else {
-					continue;
-				}
-				if (graph.existsPath(node1, node2, false)) {
-					probNetOK = false;
-				}
-				if (directed) {
-					graph.addLink(node1, node2, true);
-				} else {
-					graph.addLink(node1, node2, false);
-				}
-				if (!probNetOK) {
-					return probNetOK;
-				}
-			}
-		}
-		return probNetOK;
+		return !new IndexedGraph(probNet.getGraph()).hasLoop();
 	}
 
     @Override
@@ -16,6 +16,15 @@ public class XORShiftRandom extends Random {
     public XORShiftRandom() {
     }
 
+    /**
+     * @param seed
+     *            Initial state of the generator. As the state of a xorshift
+     *            generator can not be 0, a seed 0 is replaced by 1.
+     */
+    public XORShiftRandom(long seed) {
+        this.seed = (seed != 0) ? seed : 1;
+    }
+
     protected int next(int nbits) {
         // N.B. Not thread-safe!
         long x = this.seed;
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain Licensed under the European Union Public
+ * Licence, version 1.1 (EUPL) Unless required by applicable law, this code is
+ * distributed on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.model.network.potential;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.openmarkov.core.model.network.Variable;
+
+/**
+ * Node of an algebraic decision diagram. A terminal node holds a value; an
+ * internal node tests a variable and has a child for each of its states.
+ * <p>
+ * The nodes are canonical: they are only created through
+ * <code>getTerminal</code> and <code>getNode</code>, which look them up in a
+ * unique table, so two equal sub-diagrams are the same object and can be
+ * compared with <code>==</code>. A node whose children are all the same is
+ * replaced by that child. Along every path, the variables appear in the order
+ * given by <code>compare</code>. The unique table holds the nodes weakly: a
+ * node is discarded when no diagram uses it.
+ *
+ * @author agent
+ */
+public final class ADDNode {
+
+    // Attributes
+    private static final Map<ADDNode, WeakReference<ADDNode>> uniqueTable = new WeakHashMap<ADDNode, WeakReference<ADDNode>>();
+
+    /** Variable tested by the node, <code>null</code> in terminal nodes. */
+    private final Variable variable;
+
+    /** A child for each state of <code>variable</code>. */
+    private final ADDNode[] children;
+
+    /** Value of a terminal node. */
+    private final double value;
+
+    private final int hashCode;
+
+    // Constructor
+    private ADDNode(Variable variable, ADDNode[] children, double value) {
+        this.variable = variable;
+        this.children = children;
+        this.value = value;
+        if (variable == null) {
+            long bits = Double.doubleToLongBits(value);
+            hashCode = (int) (bits ^ (bits >>> 32));
+        } else {
+            int code = variable.getName().hashCode();
+            for (ADDNode child : children) {
+                code = 31 * code + System.identityHashCode(child);
+            }
+            hashCode = code;
+        }
+    }
+
+    // Methods
+    /**
+     * @param value
+     *            <code>double</code>
+     * @return The terminal node with that value
+     */
+    public static ADDNode getTerminal(double value) {
+        // + 0.0 turns -0.0 into 0.0
+        return intern(new ADDNode(null, null, value + 0.0));
+    }
+
+    /**
+     * @param variable
+     *            Variable tested by the node, which must precede the
+     *            variables of the children
+     * @param children
+     *            A canonical node for each state of <code>variable</code>. The
+     *            array is adopted, not copied.
+     * @return The node, or the child when all the children are the same
+     */
+    public static ADDNode getNode(Variable variable, ADDNode[] children) {
+        boolean redundant = true;
+        for (int i = 1; i < children.length && redundant; i++) {
+            redundant = children[i] == children[0];
+        }
+        return redundant ? children[0] : intern(new ADDNode(variable, children, 0.0));
+    }
+
+    private static ADDNode intern(ADDNode node) {
+        synchronized (uniqueTable) {
+            WeakReference<ADDNode> reference = uniqueTable.get(node);
+            ADDNode canonical = (reference != null) ? reference.get() : null;
+            if (canonical == null) {
+                uniqueTable.put(node, new WeakReference<ADDNode>(node));
+                canonical = node;
+            }
+            return canonical;
+        }
+    }
+
+    /**
+     * Order of the variables in the diagrams: by name, which is unique in a
+     * network.
+     *
+     * @return A negative number, zero or a positive number when
+     *         <code>variable1</code> goes before, is the same as or goes after
+     *         <code>variable2</code>
+     */
+    public static int compare(Variable variable1, Variable variable2) {
+        return variable1.getName().compareTo(variable2.getName());
+    }
+
+    /** @return True when the node holds a value */
+    public boolean isTerminal() {
+        return variable == null;
+    }
+
+    /** @return The variable tested by the node, <code>null</code> if terminal */
+    public Variable getVariable() {
+        return variable;
+    }
+
+    /**
+     * @param stateIndex
+     *            Index of a state of the variable of the node
+     * @return The child for that state
+     */
+    public ADDNode getChild(int stateIndex) {
+        return children[stateIndex];
+    }
+
+    /** @return The value of a terminal node */
+    public double getValue() {
+        return value;
+    }
+
+    /** @return The number of different nodes of the diagram rooted here */
+    public int getNumNodes() {
+        Set<ADDNode> visited = Collections
+                .newSetFromMap(new IdentityHashMap<ADDNode, Boolean>());
+        ArrayDeque<ADDNode> pending = new ArrayDeque<ADDNode>();
+        pending.push(this);
+        visited.add(this);
+        while (!pending.isEmpty()) {
+            ADDNode node = pending.pop();
+            if (!node.isTerminal()) {
+                for (ADDNode child : node.children) {
+                    if (visited.add(child)) {
+                        pending.push(child);
+                    }
+                }
+            }
+        }
+        return visited.size();
+    }
+
+    /**
+     * Two nodes are equal when they are terminal with the same value or when
+     * they test the same variable and have the same children. Only used by
+     * the unique table; the canonical nodes can be compared with
+     * <code>==</code>.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof ADDNode)) {
+            return false;
+        }
+        ADDNode node = (ADDNode) object;
+        if (variable == null || node.variable == null) {
+            return variable == node.variable
+                    && Double.doubleToLongBits(value) == Double.doubleToLongBits(node.value);
+        }
+        if (!variable.equals(node.variable) || children.length != node.children.length) {
+            return false;
+        }
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] != node.children[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return isTerminal() ? Double.toString(value) : variable.getName() + "("
+                + children.length + " children)";
+    }
+
+}
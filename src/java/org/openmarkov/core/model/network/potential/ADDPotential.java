@@ -0,0 +1,243 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain Licensed under the European Union Public
+ * Licence, version 1.1 (EUPL) Unless required by applicable law, this code is
+ * distributed on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.model.network.potential;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.openmarkov.core.model.network.Variable;
+
+/**
+ * A <code>TablePotential</code> stored as an algebraic decision diagram,
+ * whose size depends on the number of different values and on the
+ * context-specific independences of the table rather than on the number of
+ * configurations. <code>operation.ADDOperations</code> multiplies,
+ * marginalizes and restricts the diagrams without expanding them.
+ * <p>
+ * <code>values</code> is <code>null</code> until <code>materialize</code> is
+ * invoked; then the table is expanded and the potential behaves as a dense
+ * one; until then <code>getValues</code> returns an expanded copy. The diagram may not depend on all the variables of the potential.
+ *
+ * @author agent
+ */
+public class ADDPotential extends TablePotential {
+
+    // Constants
+    /**
+     * Approximate memory of a node of a diagram, in values of a table. A
+     * diagram is kept only when it is smaller than the table.
+     */
+    public static final int VALUES_PER_NODE = 16;
+
+    private static final Comparator<Variable> DIAGRAM_ORDER = new Comparator<Variable>() {
+        public int compare(Variable variable1, Variable variable2) {
+            return ADDNode.compare(variable1, variable2);
+        }
+    };
+
+    // Attributes
+    /** Root of the diagram, <code>null</code> once the table is expanded. */
+    private ADDNode root;
+
+    // Constructor
+    /**
+     * @param variables
+     *            <code>List</code> of <code>Variable</code>, which must
+     *            include the variables of the diagram
+     * @param role
+     *            <code>PotentialRole</code>
+     * @param root
+     *            Root of the diagram
+     */
+    public ADDPotential(List<Variable> variables, PotentialRole role, ADDNode root) {
+        super(variables, role, (double[]) null);
+        this.root = root;
+    }
+
+    // Methods
+    /**
+     * @param variables
+     *            <code>List</code> of <code>Variable</code>
+     * @param role
+     *            <code>PotentialRole</code>
+     * @param root
+     *            Root of a diagram that only depends on
+     *            <code>variables</code>
+     * @return An <code>ADDPotential</code> when the diagram is smaller than
+     *         the table; else, a dense <code>TablePotential</code>
+     */
+    public static TablePotential compact(List<Variable> variables, PotentialRole role,
+            ADDNode root) {
+        ADDPotential potential = new ADDPotential(variables, role, root);
+        if (variables.isEmpty() || !potential.isSmallerThanTable()) {
+            return new TablePotential(variables, role, potential.getValues());
+        }
+        return potential;
+    }
+
+    /**
+     * @param potential
+     *            <code>TablePotential</code>
+     * @return The root of the diagram of the potential, built from its
+     *         values unless it is an <code>ADDPotential</code> not expanded
+     */
+    public static ADDNode toDiagram(TablePotential potential) {
+        if (potential instanceof ADDPotential && ((ADDPotential) potential).isDiagram()) {
+            return ((ADDPotential) potential).root;
+        }
+        List<Variable> order = new ArrayList<Variable>(potential.getVariables());
+        Collections.sort(order, DIAGRAM_ORDER);
+        int[] orderOffsets = new int[order.size()];
+        for (int i = 0; i < orderOffsets.length; i++) {
+            orderOffsets[i] = potential.getOffsets()[potential.getVariables().indexOf(
+                    order.get(i))];
+        }
+        return toDiagram(potential, order, orderOffsets, 0, potential.getInitialPosition());
+    }
+
+    private static ADDNode toDiagram(TablePotential potential, List<Variable> order,
+            int[] orderOffsets, int level, int position) {
+        if (level == order.size()) {
+            return ADDNode.getTerminal(potential.getValue(position));
+        }
+        Variable variable = order.get(level);
+        ADDNode[] children = new ADDNode[variable.getNumStates()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = toDiagram(potential, order, orderOffsets, level + 1, position + i
+                    * orderOffsets[level]);
+        }
+        return ADDNode.getNode(variable, children);
+    }
+
+    /** @return True while the table has not been expanded */
+    public boolean isDiagram() {
+        return root != null;
+    }
+
+    /** @return The root of the diagram, or <code>null</code> if expanded */
+    public ADDNode getRoot() {
+        return root;
+    }
+
+    /** @return True when the diagram takes less memory than the table */
+    public boolean isSmallerThanTable() {
+        return root != null
+                && (long) root.getNumNodes() * VALUES_PER_NODE < TablePotential
+                        .computeLongTableSize(variables);
+    }
+
+    @Override
+    public double getValue(long position) {
+        if (root == null) {
+            return super.getValue(position);
+        }
+        ADDNode node = root;
+        while (!node.isTerminal()) {
+            int index = variables.indexOf(node.getVariable());
+            node = node.getChild((int) (position / offsets[index] % dimensions[index]));
+        }
+        return node.getValue();
+    }
+
+    @Override
+    public long getTableLength() {
+        return root == null ? super.getTableLength() : tableSize;
+    }
+
+    /** Expands a copy of the table, without modifying the potential. */
+    @Override
+    protected double[] copyValues() {
+        ADDNode diagram = root;
+        if (diagram == null) {
+            return super.copyValues();
+        }
+        List<Variable> order = new ArrayList<Variable>(variables);
+        Collections.sort(order, DIAGRAM_ORDER);
+        int[] orderOffsets = new int[order.size()];
+        for (int i = 0; i < orderOffsets.length; i++) {
+            orderOffsets[i] = offsets[variables.indexOf(order.get(i))];
+        }
+        double[] table = new double[tableSize];
+        expand(diagram, order, orderOffsets, 0, 0, table);
+        return table;
+    }
+
+    /** Expands the table, which is kept from then on. */
+    @Override
+    public void materialize() {
+        if (root != null) {
+            values = copyValues();
+            root = null;
+        }
+    }
+
+    private static void expand(ADDNode node, List<Variable> order, int[] orderOffsets,
+            int level, int position, double[] table) {
+        if (node.isTerminal()) {
+            // the value is repeated for the configurations of the next
+            // variables, whose positions are position + sum of state * offset
+            fill(node.getValue(), order, orderOffsets, level, position, table);
+            return;
+        }
+        Variable variable = order.get(level);
+        boolean tested = node.getVariable().equals(variable);
+        for (int i = 0; i < variable.getNumStates(); i++) {
+            expand(tested ? node.getChild(i) : node, order, orderOffsets, level + 1, position
+                    + i * orderOffsets[level], table);
+        }
+    }
+
+    private static void fill(double value, List<Variable> order, int[] orderOffsets, int level,
+            int position, double[] table) {
+        if (level == order.size()) {
+            table[position] = value;
+            return;
+        }
+        for (int i = 0; i < order.get(level).getNumStates(); i++) {
+            fill(value, order, orderOffsets, level + 1, position + i * orderOffsets[level], table);
+        }
+    }
+
+    @Override
+    public void setValues(double[] table) {
+        super.setValues(table);
+        root = null;
+    }
+
+    @Override
+    public void setValue(long position, double value) {
+        materialize();
+        super.setValue(position, value);
+    }
+
+    @Override
+    public void setUniform() {
+        materialize();
+        super.setUniform();
+    }
+
+    /** Diagrams are always double precision. */
+    @Override
+    public void setSinglePrecision(boolean singlePrecision) {
+        if (root == null) {
+            super.setSinglePrecision(singlePrecision);
+        }
+    }
+
+    @Override
+    public Potential copy() {
+        if (root == null) {
+            return new TablePotential(this);
+        }
+        ADDPotential copy = new ADDPotential(variables, role, root);
+        copy.setUtilityVariable(utilityVariable);
+        return copy;
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain Licensed under the European Union Public
+ * Licence, version 1.1 (EUPL) Unless required by applicable law, this code is
+ * distributed on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.model.network.potential;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Table of doubles stored outside the Java heap, either in direct
+ * <code>ByteBuffer</code>s or in a memory-mapped temporary file. It is
+ * indexed with <code>long</code>s and divided in segments of
+ * <code>SEGMENT_LENGTH</code> values, so its size is not limited by the
+ * maximum length of an array. The operations traverse it segment by segment.
+ * <p>
+ * The tables of the results of <code>DiscretePotentialOperations</code> that
+ * do not fit in an array, or that have more than <code>threshold</code>
+ * values once it has been set with <code>setThreshold</code>, are created
+ * with <code>allocate</code>. By default no other table is off the heap. The temporary file of a
+ * mapped table is deleted at once; the disk space is freed when the buffers
+ * are garbage collected.
+ *
+ * @author agent
+ */
+public final class OffHeapTable {
+
+    // Constants
+    /** Base 2 logarithm of the number of values of a segment. */
+    public static final int SEGMENT_SHIFT = 27;
+
+    /** Number of values of a segment (1 GB). */
+    public static final int SEGMENT_LENGTH = 1 << SEGMENT_SHIFT;
+
+    private static final long SEGMENT_MASK = SEGMENT_LENGTH - 1;
+
+    /** Largest table that can be stored in a <code>double[]</code>. */
+    public static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    /**
+     * Default value of <code>threshold</code>: only the tables that do not
+     * fit in an array are off the heap.
+     */
+    public static final long DEFAULT_THRESHOLD = Long.MAX_VALUE;
+
+    // Attributes
+    /** Tables with more values are allocated off the heap. */
+    private static volatile long threshold = DEFAULT_THRESHOLD;
+
+    /** When true the tables are mapped in temporary files, else direct. */
+    private static volatile boolean memoryMapped = true;
+
+    private final DoubleBuffer[] segments;
+
+    private final long size;
+
+    // Constructor
+    private OffHeapTable(DoubleBuffer[] segments, long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    // Methods
+    /** @return The number of values above which the tables are off the heap */
+    public static long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold
+     *            Number of values above which the tables of the results are
+     *            allocated off the heap. The tables that do not fit in an
+     *            array are always off the heap.
+     */
+    public static void setThreshold(long threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The threshold can not be negative: " + threshold);
+        }
+        OffHeapTable.threshold = threshold;
+    }
+
+    /** @return True when the tables are mapped in temporary files */
+    public static boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * @param memoryMapped
+     *            True to map the tables in temporary files, limited by the
+     *            disk; false to use direct buffers, limited by
+     *            <code>-XX:MaxDirectMemorySize</code>
+     */
+    public static void setMemoryMapped(boolean memoryMapped) {
+        OffHeapTable.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * @param size
+     *            Number of values of a table
+     * @return True when a table of that size must be allocated off the heap
+     */
+    public static boolean isOffHeap(long size) {
+        return size > threshold || size > MAX_ARRAY_LENGTH;
+    }
+
+    /**
+     * @param size
+     *            Number of values
+     * @return A table mapped in a temporary file or in direct buffers,
+     *         depending on <code>memoryMapped</code>. The values are 0.
+     */
+    public static OffHeapTable allocate(long size) {
+        return memoryMapped ? allocateMapped(size) : allocateDirect(size);
+    }
+
+    /**
+     * @param size
+     *            Number of values
+     * @return A table in direct buffers, whose values are 0
+     */
+    public static OffHeapTable allocateDirect(long size) {
+        DoubleBuffer[] segments = new DoubleBuffer[getNumSegments(size)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect(8 * getSegmentLength(size, i))
+                    .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+        return new OffHeapTable(segments, size);
+    }
+
+    /**
+     * @param size
+     *            Number of values
+     * @return A table mapped in a temporary file, whose values are 0
+     * @throws OutOfMemoryError
+     *             when the file can not be created or mapped
+     */
+    public static OffHeapTable allocateMapped(long size) {
+        DoubleBuffer[] segments = new DoubleBuffer[getNumSegments(size)];
+        File file = null;
+        try {
+            file = File.createTempFile("openmarkov-table", ".bin");
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(8 * size);
+                FileChannel channel = randomAccessFile.getChannel();
+                for (int i = 0; i < segments.length; i++) {
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                            8L * i * SEGMENT_LENGTH, 8L * getSegmentLength(size, i))
+                            .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+                }
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            OutOfMemoryError error = new OutOfMemoryError("Can not map a table of " + size
+                    + " values");
+            error.initCause(e);
+            throw error;
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+        return new OffHeapTable(segments, size);
+    }
+
+    private static int getNumSegments(long size) {
+        return (int) ((size + SEGMENT_LENGTH - 1) >>> SEGMENT_SHIFT);
+    }
+
+    private static int getSegmentLength(long size, int segment) {
+        return (int) Math.min(SEGMENT_LENGTH, size - ((long) segment << SEGMENT_SHIFT));
+    }
+
+    /** @return The number of values */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @param position
+     *            <code>long</code>
+     * @return The value at that position
+     */
+    public double get(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * @param position
+     *            <code>long</code>
+     * @param value
+     *            <code>double</code>
+     */
+    public void set(long position, double value) {
+        segments[(int) (position >>> SEGMENT_SHIFT)].put((int) (position & SEGMENT_MASK), value);
+    }
+
+    /** @return The number of segments */
+    public int getNumSegments() {
+        return segments.length;
+    }
+
+    /**
+     * @param segment
+     *            Index of the segment
+     * @return The buffer of the values from <code>segment</code> *
+     *         <code>SEGMENT_LENGTH</code>. It is shared, not copied: use the
+     *         absolute <code>get</code> and <code>put</code>.
+     */
+    public DoubleBuffer getSegment(int segment) {
+        return segments[segment];
+    }
+
+    /** @return A new table, created with <code>allocate</code>, with the same values */
+    public OffHeapTable copy() {
+        OffHeapTable copy = allocate(size);
+        for (int i = 0; i < segments.length; i++) {
+            DoubleBuffer source = segments[i].duplicate();
+            source.clear();
+            copy.segments[i].duplicate().put(source);
+        }
+        return copy;
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain Licensed under the European Union Public
+ * Licence, version 1.1 (EUPL) Unless required by applicable law, this code is
+ * distributed on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.model.network.potential;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openmarkov.core.model.network.Variable;
+
+/**
+ * A <code>TablePotential</code> that only stores its non-zero configurations:
+ * the positions of the table in increasing order and their values. It is
+ * meant for deterministic and mostly zero potentials, such as logical gates
+ * and link restrictions; <code>DiscretePotentialOperations</code> multiplies
+ * through its non-zero configurations and skips the rest.
+ * <p>
+ * <code>values</code> is <code>null</code> until <code>materialize</code> is
+ * invoked; then the table is expanded and the potential behaves as a dense
+ * one; until then <code>getValues</code> returns an expanded copy.
+ * <code>sparsify</code> converts the dense potentials whose density is below
+ * <code>densityThreshold</code>.
+ *
+ * @author agent
+ */
+public class SparseTablePotential extends TablePotential {
+
+    // Constants
+    /** Default value of <code>densityThreshold</code>. */
+    public static final double DEFAULT_DENSITY_THRESHOLD = 0.25;
+
+    // Attributes
+    /**
+     * Maximum fraction of non-zero values of the potentials converted by
+     * <code>sparsify</code>.
+     */
+    private static volatile double densityThreshold = DEFAULT_DENSITY_THRESHOLD;
+
+    /** Positions of the non-zero values, in increasing order. */
+    private int[]                  indexes;
+
+    /** Non-zero values, in the order of <code>indexes</code>. */
+    private double[]               nonZeroValues;
+
+    // Constructors
+    /**
+     * @param variables
+     *            <code>List</code> of <code>Variable</code>
+     * @param role
+     *            <code>PotentialRole</code>
+     * @param indexes
+     *            Positions of the non-zero values, in increasing order. It is
+     *            adopted, not copied.
+     * @param nonZeroValues
+     *            Values at those positions. It is adopted, not copied.
+     */
+    public SparseTablePotential(List<Variable> variables, PotentialRole role, int[] indexes,
+            double[] nonZeroValues) {
+        super(variables, role, (double[]) null);
+        this.indexes = indexes;
+        this.nonZeroValues = nonZeroValues;
+    }
+
+    /**
+     * Copies the non-zero values of a dense potential.
+     *
+     * @param potential
+     *            <code>TablePotential</code> with a double-precision table
+     *            that starts at position 0
+     */
+    public SparseTablePotential(TablePotential potential) {
+        super(potential.getVariables(), potential.getPotentialRole(), (double[]) null);
+        setUtilityVariable(potential.getUtilityVariable());
+        double[] table = potential.values;
+        int numNonZeros = 0;
+        for (double value : table) {
+            if (value != 0.0) {
+                numNonZeros++;
+            }
+        }
+        indexes = new int[numNonZeros];
+        nonZeroValues = new double[numNonZeros];
+        int k = 0;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != 0.0) {
+                indexes[k] = i;
+                nonZeroValues[k++] = table[i];
+            }
+        }
+    }
+
+    // Methods
+    /** @return The maximum density of the potentials converted by <code>sparsify</code> */
+    public static double getDensityThreshold() {
+        return densityThreshold;
+    }
+
+    /**
+     * @param densityThreshold
+     *            Maximum fraction of non-zero values of the potentials
+     *            converted by <code>sparsify</code>. 0 disables the
+     *            conversion.
+     */
+    public static void setDensityThreshold(double densityThreshold) {
+        if (densityThreshold < 0.0 || densityThreshold > 1.0) {
+            throw new IllegalArgumentException("The density threshold must be in [0, 1]: "
+                    + densityThreshold);
+        }
+        SparseTablePotential.densityThreshold = densityThreshold;
+    }
+
+    /**
+     * @param potential
+     *            <code>TablePotential</code>
+     * @return A <code>SparseTablePotential</code> with the values of
+     *         <code>potential</code> if it is a dense potential with some
+     *         variable and less than <code>densityThreshold</code> non-zero
+     *         values; else, <code>potential</code> itself
+     */
+    public static TablePotential sparsify(TablePotential potential) {
+        double[] table = potential.values;
+        if (potential instanceof SparseTablePotential || table == null
+                || potential.getClass() != TablePotential.class
+                || potential.getNumVariables() == 0 || potential.getInitialPosition() != 0
+                || potential.uncertainValues != null || table.length != potential.getTableSize()) {
+            return potential;
+        }
+        int maxNonZeros = (int) (densityThreshold * table.length);
+        int numNonZeros = 0;
+        for (int i = 0; i < table.length && numNonZeros < maxNonZeros; i++) {
+            if (table[i] != 0.0) {
+                numNonZeros++;
+            }
+        }
+        return numNonZeros < maxNonZeros ? new SparseTablePotential(potential) : potential;
+    }
+
+    /**
+     * Replaces each potential of the list by the result of
+     * <code>sparsify</code>.
+     *
+     * @param potentials
+     *            <code>List</code> of <code>TablePotential</code>
+     */
+    public static void sparsify(List<TablePotential> potentials) {
+        for (int i = 0; i < potentials.size(); i++) {
+            potentials.set(i, sparsify(potentials.get(i)));
+        }
+    }
+
+    /** @return True while the table has not been expanded */
+    public boolean isSparse() {
+        return indexes != null;
+    }
+
+    /**
+     * @return Positions of the non-zero values, in increasing order, or
+     *         <code>null</code> if the table has been expanded
+     */
+    public int[] getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * @return Non-zero values, in the order of <code>getIndexes</code>, or
+     *         <code>null</code> if the table has been expanded
+     */
+    public double[] getNonZeroValues() {
+        return nonZeroValues;
+    }
+
+    /** @return The number of non-zero values */
+    public int getNumNonZeros() {
+        if (indexes == null) {
+            int numNonZeros = 0;
+            for (long i = 0; i < getTableLength(); i++) {
+                if (getValue(i) != 0.0) {
+                    numNonZeros++;
+                }
+            }
+            return numNonZeros;
+        }
+        return indexes.length;
+    }
+
+    @Override
+    public double getValue(long position) {
+        if (indexes == null) {
+            return super.getValue(position);
+        }
+        int k = Arrays.binarySearch(indexes, (int) position);
+        return k >= 0 ? nonZeroValues[k] : 0.0;
+    }
+
+    @Override
+    public long getTableLength() {
+        return indexes == null ? super.getTableLength() : tableSize;
+    }
+
+    /** Expands a copy of the table, without modifying the potential. */
+    @Override
+    protected double[] copyValues() {
+        int[] sparseIndexes = indexes;
+        double[] sparseValues = nonZeroValues;
+        if (sparseIndexes == null) {
+            return super.copyValues();
+        }
+        double[] table = new double[tableSize];
+        for (int k = 0; k < sparseIndexes.length; k++) {
+            table[sparseIndexes[k]] = sparseValues[k];
+        }
+        return table;
+    }
+
+    /** Expands the table, which is kept from then on. */
+    @Override
+    public void materialize() {
+        if (indexes != null) {
+            values = copyValues();
+            indexes = null;
+            nonZeroValues = null;
+        }
+    }
+
+    @Override
+    public void setValues(double[] table) {
+        super.setValues(table);
+        indexes = null;
+        nonZeroValues = null;
+    }
+
+    @Override
+    public void setValue(long position, double value) {
+        materialize();
+        super.setValue(position, value);
+    }
+
+    @Override
+    public void setUniform() {
+        materialize();
+        super.setUniform();
+    }
+
+    /** Sparse potentials are always double precision. */
+    @Override
+    public void setSinglePrecision(boolean singlePrecision) {
+        if (indexes == null) {
+            super.setSinglePrecision(singlePrecision);
+        }
+    }
+
+    @Override
+    public Potential copy() {
+        if (indexes == null) {
+            return new TablePotential(this);
+        }
+        SparseTablePotential copy = new SparseTablePotential(variables, role, indexes.clone(),
+                nonZeroValues.clone());
+        copy.setUtilityVariable(utilityVariable);
+        return copy;
+    }
+
+}
@@ -9,6 +9,7 @@ package org.openmarkov.core.model.network.potential;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -58,6 +59,19 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
      * operations.
      */
     public volatile double[]         values;
+    /**
+     * Table of a single-precision potential, whose <code>values</code> is
+     * then <code>null</code>. It halves the memory of the table; the
+     * operations read it and accumulate in double precision. This attribute
+     * is public for efficiency.
+     */
+    public volatile float[]          floatValues;
+    /**
+     * Table of a potential stored off the heap, whose <code>values</code> is
+     * then <code>null</code>. It is used for the tables that exceed
+     * <code>OffHeapTable.getThreshold()</code> or do not fit in an array.
+     */
+    public volatile OffHeapTable     offHeapValues;
     /**
      * Table storing the values of the potential for the sensitivity analysis.
      * This attribute is public for efficiency and volatile for efficiency in
@@ -127,12 +141,67 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
      * @param role
      *            . <code>PotentialRole</code>
      * @param table
-     *            . <code>double[]</code>
+     *            . <code>double[]</code>. It is adopted by the potential, not
+     *            copied, and no other table is allocated.
      * @argCondition All variables must be discrete.
      */
     public TablePotential(List<Variable> variables, PotentialRole role, double[] table) {
-        this(variables, role);
+        super(variables, role);
+        if (numVariables != 0) {
+            dimensions = TablePotential.calculateDimensions(variables);
+            offsets = TablePotential.calculateOffsets(dimensions);
+            tableSize = computeTableSize(variables);
+        } else {// In this case the potential is a constant
+            tableSize = 1;
+            offsets = new int[0];
+        }
         this.values = table;
+        type = PotentialType.TABLE;
+    }
+
+    /**
+     * Creates a single-precision potential.
+     * 
+     * @param variables
+     *            . <code>ArrayList</code> of <code>Variable</code>
+     * @param role
+     *            . <code>PotentialRole</code>
+     * @param table
+     *            . <code>float[]</code>. It is adopted by the potential, not
+     *            copied.
+     * @argCondition All variables must be discrete.
+     */
+    public TablePotential(List<Variable> variables, PotentialRole role, float[] table) {
+        this(variables, role, (double[]) null);
+        this.floatValues = table;
+    }
+
+    /**
+     * Creates a potential whose table is off the heap. When the table does
+     * not fit in an array, <code>getOffsets</code> returns <code>null</code>
+     * and <code>getTableSize</code> returns <code>Integer.MAX_VALUE</code>;
+     * the positions are then given by <code>getLongOffsets</code>.
+     * 
+     * @param variables
+     *            . <code>ArrayList</code> of <code>Variable</code>
+     * @param role
+     *            . <code>PotentialRole</code>
+     * @param table
+     *            . <code>OffHeapTable</code>. It is adopted by the potential,
+     *            not copied.
+     * @argCondition All variables must be discrete.
+     */
+    public TablePotential(List<Variable> variables, PotentialRole role, OffHeapTable table) {
+        super(variables, role);
+        dimensions = TablePotential.calculateDimensions(variables);
+        if (table.size() <= OffHeapTable.MAX_ARRAY_LENGTH) {
+            offsets = TablePotential.calculateOffsets(dimensions);
+            tableSize = (int) table.size();
+        } else {
+            tableSize = Integer.MAX_VALUE;
+        }
+        this.offHeapValues = table;
+        type = PotentialType.TABLE;
     }
 
     /**
@@ -181,7 +250,13 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
         this.offsets = potential.getOffsets();
         this.dimensions = potential.getDimensions();
         tableSize = potential.tableSize;
-        values = potential.values.clone();
+        if (potential.floatValues != null) {
+            floatValues = potential.floatValues.clone();
+        } else if (potential.offHeapValues != null) {
+            offHeapValues = potential.offHeapValues.copy();
+        } else {
+            values = potential.values.clone();
+        }
         uncertainValues = potential.uncertainValues;
         type = PotentialType.TABLE;
     }
@@ -276,7 +351,7 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                 }
             }
             if (numUnobservedVariables == 0) {// Projection = constant potential
-                projectedPotential.values[0] = values[firstPosition];
+                projectedPotential.values[0] = getValue(firstPosition);
                 if (hasUncertainTable) {
                     projectedPotential.uncertainValues[0] = uncertainValues[firstPosition];
                 }
@@ -291,7 +366,7 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                 }
                 // Copy configurations using the accumulated offsets algorithm
                 for (int projectedPosition = 0; projectedPosition < length - 1; projectedPosition++) {
-                    projectedPotential.values[projectedPosition] = values[firstPosition];
+                    projectedPotential.values[projectedPosition] = getValue(firstPosition);
                     if (hasUncertainTable) {
                         projectedPotential.uncertainValues[projectedPosition] = uncertainValues[firstPosition];
                     }
@@ -310,7 +385,7 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                     firstPosition += accumulatedOffsets[increasedVariable];
                 }
                 int lastPositionProjected = length - 1;
-                projectedPotential.values[lastPositionProjected] = values[firstPosition];
+                projectedPotential.values[lastPositionProjected] = getValue(firstPosition);
                 if (hasUncertainTable) {
                     projectedPotential.uncertainValues[lastPositionProjected] = uncertainValues[firstPosition];
                 }
@@ -326,8 +401,10 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                 && utilityVariable.isTemporal()) {
             int timeSlice = utilityVariable.getTimeSlice();
             double discount = Math.pow(inferenceOptions.discountRate, timeSlice);
-            for (int i = 0; i < projectedPotential.values.length; i++) {
-                projectedPotential.values[i] *= discount;
+            projectedPotential.materialize();
+            double[] projectedValues = projectedPotential.getValues();
+            for (int i = 0; i < projectedValues.length; i++) {
+                projectedValues[i] *= discount;
             }
         }
         // Cylindrical extension for utility potentials in the case of
@@ -830,7 +907,35 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                 position += offsets[indexVariable] * statesIndices[i];
             }
         }
-        return values[position];
+        return getValue(position);
+    }
+
+    /**
+     * @param position
+     *            Position in the table
+     * @return The value at that position, whatever the storage of the table
+     */
+    public double getValue(long position) {
+        float[] floatTable = floatValues;
+        if (floatTable != null) {
+            return floatTable[(int) position];
+        }
+        OffHeapTable offHeapTable = offHeapValues;
+        if (offHeapTable != null) {
+            return offHeapTable.get(position);
+        }
+        return values[(int) position];
+    }
+
+    /** @return The number of values of the table, whatever its storage */
+    public long getTableLength() {
+        if (floatValues != null) {
+            return floatValues.length;
+        }
+        if (offHeapValues != null) {
+            return offHeapValues.size();
+        }
+        return values.length;
     }
 
     /**
@@ -875,7 +980,24 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                 position += offsets[indexVariable] * statesIndexes[i];
             }
         }
-        values[position] = value;
+        setValue(position, value);
+    }
+
+    /**
+     * @param position
+     *            Position in the table
+     * @param value
+     *            Value assigned at that position, whatever the storage of
+     *            the table
+     */
+    public void setValue(long position, double value) {
+        if (floatValues != null) {
+            floatValues[(int) position] = (float) value;
+        } else if (offHeapValues != null) {
+            offHeapValues.set(position, value);
+        } else {
+            values[(int) position] = value;
+        }
     }
 
     /**
@@ -888,14 +1010,63 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
     }
 
     /**
+     * The table of a single-precision or off-heap potential is returned as a
+     * new array in double precision and the potential is not modified, so
+     * the changes in that array are lost; <code>materialize</code> converts
+     * the table of the potential.
+     * 
      * @return <code>double[]</code>: Table containing the values of the
      *         potential.
      * @consultation
      */
     public double[] getValues() {
+        double[] table = values;
+        return table != null ? table : copyValues();
+    }
+
+    /**
+     * @return A new array with the table in double precision, or
+     *         <code>null</code> if the potential has no table
+     */
+    protected double[] copyValues() {
+        float[] floatTable = floatValues;
+        if (floatTable != null) {
+            double[] table = new double[floatTable.length];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = floatTable[i];
+            }
+            return table;
+        }
+        OffHeapTable offHeapTable = offHeapValues;
+        if (offHeapTable != null) {
+            if (offHeapTable.size() > OffHeapTable.MAX_ARRAY_LENGTH) {
+                throw new OutOfMemoryError("The table of " + offHeapTable.size()
+                        + " values does not fit in an array");
+            }
+            double[] table = new double[(int) offHeapTable.size()];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = offHeapTable.get(i);
+            }
+            return table;
+        }
         return values;
     }
 
+    /**
+     * Stores the table in <code>values</code>, on the heap and in double
+     * precision, so that it can be modified through <code>values</code> or
+     * <code>getValues</code>. Unlike <code>getValues</code>, it modifies the
+     * potential: it must not be invoked on a potential read by other threads.
+     */
+    public void materialize() {
+        if (values == null) {
+            double[] table = copyValues();
+            values = table;
+            floatValues = null;
+            offHeapValues = null;
+        }
+    }
+
     /**
      * The dimensions of the new table have to be same that the current table
      * 
@@ -905,6 +1076,47 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
      */
     public void setValues(double[] table) {
         this.values = table;
+        this.floatValues = null;
+        this.offHeapValues = null;
+    }
+
+    /** @return True when the table is stored in <code>floatValues</code> */
+    public boolean isSinglePrecision() {
+        return floatValues != null;
+    }
+
+    /** @return True when the table is stored in <code>offHeapValues</code> */
+    public boolean isOffHeap() {
+        return offHeapValues != null;
+    }
+
+    /**
+     * Converts the table to the given precision, if it has a different one.
+     * Off-heap tables are always double precision.
+     * 
+     * @param singlePrecision
+     *            True to store the table in <code>floatValues</code>, false
+     *            to store it in <code>values</code>
+     */
+    public void setSinglePrecision(boolean singlePrecision) {
+        if (offHeapValues != null) {
+            return;
+        }
+        if (singlePrecision && floatValues == null) {
+            float[] floatTable = new float[values.length];
+            for (int i = 0; i < floatTable.length; i++) {
+                floatTable[i] = (float) values[i];
+            }
+            floatValues = floatTable;
+            values = null;
+        } else if (!singlePrecision && floatValues != null) {
+            double[] table = new double[floatValues.length];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = floatValues[i];
+            }
+            values = table;
+            floatValues = null;
+        }
     }
 
     /**
@@ -1041,7 +1253,7 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                 TablePotential projectedPotential = tableProject(evidenceCase, null).get(0);
                 if ((projectedPotential.getNumVariables() == 1)
                         && (projectedPotential.getPotentialType() == PotentialType.TABLE)) {
-                    double[] table = ((TablePotential) projectedPotential).values;
+                    double[] table = ((TablePotential) projectedPotential).getValues();
                     int zeros = 0;
                     int position = 0;
                     for (int i = 0; i < table.length; i++) {
@@ -1097,9 +1309,7 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                     // Do nothing
                     break;
                 } // When role = UTILITY -> value = 0.0 (default)
-                for (int i = 0; i < values.length; i++) {
-                    values[i] = value;
-                }
+                fill(value);
             } else if (numVariables == 0) {
                 setValue = true;
                 if (role == PotentialRole.JOINT_PROBABILITY) {
@@ -1109,20 +1319,28 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                 }
             }
             if (setValue) {
-                for (int i = 0; i < values.length; i++) {
-                    values[i] = value;
-                }
+                fill(value);
             }
         }
     }
 
+    /** Assigns <code>value</code> to all the positions of the table. */
+    private void fill(double value) {
+        if (floatValues != null) {
+            Arrays.fill(floatValues, (float) value);
+        } else {
+            Arrays.fill(values, value);
+        }
+    }
+
     /** Overrides <code>toString</code> method. Mainly for test purposes */
     public String toString() {
         DecimalFormat formatter = new DecimalFormat("0.###", new DecimalFormatSymbols(Locale.US));
         // writes variables names
         StringBuffer buffer = new StringBuffer(super.toString());
         // Print configurations
-        int valuesPosition = 0;
+        long valuesPosition = 0;
+        long length = getTableLength();
         if (buffer.length() < STRING_MAX_LENGTH) {
             if (variables.size() > 0) {
                 buffer.append(" = {");
@@ -1130,14 +1348,14 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
                 buffer.append((role == PotentialRole.UTILITY) ? " = " : " ");
             }
         }
-        while ((buffer.length() < STRING_MAX_LENGTH) && (valuesPosition < values.length)) {
-            buffer.append(formatter.format(values[valuesPosition++]));
-            if ((valuesPosition < values.length) && (buffer.length() < (STRING_MAX_LENGTH - 2))) {
+        while ((buffer.length() < STRING_MAX_LENGTH) && (valuesPosition < length)) {
+            buffer.append(formatter.format(getValue(valuesPosition++)));
+            if ((valuesPosition < length) && (buffer.length() < (STRING_MAX_LENGTH - 2))) {
                 buffer.append(", ");
             }
         }
-        if (values.length != 1) {
-            if (valuesPosition != values.length || variables.size() == 0) {
+        if (length != 1) {
+            if (valuesPosition != length || variables.size() == 0) {
                 buffer.append("...");
             }
             buffer.append("}");
@@ -1149,7 +1367,7 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
         if (role == PotentialRole.CONDITIONAL_PROBABILITY && numVariables == 1) {
             Variable firstVariable = variables.get(0);
             for (int i = 0; i < firstVariable.getNumStates(); i++) {
-                if (values[i] == 1) {
+                if (getValue(i) == 1) {
                     return firstVariable.getName() + " = " + firstVariable.getStateName(i);
                 }
             }
@@ -1170,6 +1388,32 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
         return tableSize;
     }
 
+    /**
+     * Same as <code>computeTableSize</code>, without overflowing for the
+     * tables that do not fit in an array.
+     */
+    public static long computeLongTableSize(List<Variable> variables) {
+        long tableSize = 1;
+        for (Variable variable : variables) {
+            tableSize *= variable.getNumStates();
+        }
+        return tableSize;
+    }
+
+    /**
+     * @return The offsets of the variables in the table, as
+     *         <code>long</code>s, valid whatever the size of the table
+     */
+    public long[] getLongOffsets() {
+        long[] longOffsets = new long[numVariables];
+        long offset = 1;
+        for (int i = 0; i < numVariables; i++) {
+            longOffsets[i] = offset;
+            offset *= variables.get(i).getNumStates();
+        }
+        return longOffsets;
+    }
+
     /**
      * @param uncertainTable
      */
@@ -1201,10 +1445,11 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
     public boolean equals(Object arg0) {
         boolean isEqual = super.equals(arg0) && arg0 instanceof TablePotential;
         if (isEqual) {
-            double[] otherValues = ((TablePotential) arg0).getValues();
-            if (values.length == otherValues.length) {
-                for (int i = 0; i < values.length; i++) {
-                    isEqual &= values[i] == otherValues[i];
+            TablePotential other = (TablePotential) arg0;
+            long length = getTableLength();
+            if (length == other.getTableLength()) {
+                for (long i = 0; i < length; i++) {
+                    isEqual &= getValue(i) == other.getValue(i);
                 }
             } else {
                 isEqual = false;
@@ -1227,13 +1472,13 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
             index += sampledParents.get(variables.get(i)) * offsets[i];
         }
         double random = randomGenerator.nextDouble();
-        double accumulatedProbability = values[index + sampleIndex];
+        double accumulatedProbability = getValue(index + sampleIndex);
         while (random > accumulatedProbability
         // Make sure we don't go out of bounds even if the sum of probabilities
         // is smaller than one.
                 && sampleIndex < variables.get(0).getNumStates() - 1) {
             ++sampleIndex;
-            accumulatedProbability += values[index + sampleIndex];
+            accumulatedProbability += getValue(index + sampleIndex);
         }
         return sampleIndex;
     }
@@ -1245,7 +1490,7 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
         for (int i = 0; i < variables.size(); ++i) {
             index += sampledStateIndexes.get(variables.get(i)) * offsets[i];
         }
-        return values[index];
+        return getValue(index);
     }
 
     public double getUtility(HashMap<Variable, Integer> sampledStateIndexes,
@@ -1262,10 +1507,11 @@ public class TablePotential extends Potential implements Comparable<TablePotenti
         newPotential.setUtilityVariable(utilityVariable);
         // assigns the values of the new potential
         int newVariableNumStates = newVariable.getNumStates();
+        int length = (int) getTableLength();
         for (int i = 0; i < newVariableNumStates; i++) {
-            for (int j = 0; j < values.length; j++) {
-                newPotential.values[j + i * values.length] = values[j];
-                // newPotential.uncertainValues[j + i * values.length] =
+            for (int j = 0; j < length; j++) {
+                newPotential.values[j + i * length] = getValue(j);
+                // newPotential.uncertainValues[j + i * length] =
                 // uncertainValues[j];
             }
         }
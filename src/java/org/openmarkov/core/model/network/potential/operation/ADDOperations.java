@@ -0,0 +1,420 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.model.network.potential.operation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmarkov.core.model.network.EvidenceCase;
+import org.openmarkov.core.model.network.Finding;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.ADDNode;
+import org.openmarkov.core.model.network.potential.ADDPotential;
+import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.TablePotential;
+
+/**
+ * Operations on algebraic decision diagrams, which work on the canonical
+ * nodes of <code>ADDNode</code> without expanding the tables. The binary
+ * operations follow the classic <i>apply</i> algorithm: both diagrams are
+ * traversed together, splitting on the first of their top variables, and the
+ * results of the pairs of nodes already visited are reused, so the cost is
+ * bounded by the product of the numbers of nodes instead of the number of
+ * configurations.
+ *
+ * @author agent
+ */
+public final class ADDOperations {
+
+    // Constructor
+    private ADDOperations() {
+    }
+
+    // Methods
+    /**
+     * @return The diagram of the product of two diagrams
+     */
+    public static ADDNode multiply(ADDNode diagram1, ADDNode diagram2) {
+        return apply(diagram1, diagram2, Operator.PRODUCT, new HashMap<NodePair, ADDNode>());
+    }
+
+    /**
+     * @return The diagram of the sum of two diagrams
+     */
+    public static ADDNode add(ADDNode diagram1, ADDNode diagram2) {
+        return apply(diagram1, diagram2, Operator.SUM, new HashMap<NodePair, ADDNode>());
+    }
+
+    /**
+     * @return The diagram of the maximum of two diagrams
+     */
+    public static ADDNode maximum(ADDNode diagram1, ADDNode diagram2) {
+        return apply(diagram1, diagram2, Operator.MAXIMUM, new HashMap<NodePair, ADDNode>());
+    }
+
+    /**
+     * @param diagram
+     *            <code>ADDNode</code>
+     * @param variable
+     *            <code>Variable</code> summed out
+     * @return The diagram of the sum over the states of
+     *         <code>variable</code>. When the diagram does not depend on
+     *         <code>variable</code>, it is multiplied by its number of states.
+     */
+    public static ADDNode sumOut(ADDNode diagram, Variable variable) {
+        return eliminate(diagram, variable, Operator.SUM, new HashMap<ADDNode, ADDNode>(),
+                new HashMap<NodePair, ADDNode>());
+    }
+
+    /**
+     * @param diagram
+     *            <code>ADDNode</code>
+     * @param variable
+     *            <code>Variable</code> maximized out
+     * @return The diagram of the maximum over the states of
+     *         <code>variable</code>
+     */
+    public static ADDNode maxOut(ADDNode diagram, Variable variable) {
+        return eliminate(diagram, variable, Operator.MAXIMUM, new HashMap<ADDNode, ADDNode>(),
+                new HashMap<NodePair, ADDNode>());
+    }
+
+    /**
+     * @param diagram
+     *            <code>ADDNode</code>
+     * @param variable
+     *            <code>Variable</code> observed
+     * @param stateIndex
+     *            Index of the observed state
+     * @return The diagram with <code>variable</code> fixed to that state
+     */
+    public static ADDNode restrict(ADDNode diagram, Variable variable, int stateIndex) {
+        if (diagram.isTerminal() || ADDNode.compare(diagram.getVariable(), variable) > 0) {
+            return diagram;
+        }
+        return restrict(diagram, variable, stateIndex, new HashMap<ADDNode, ADDNode>());
+    }
+
+    /**
+     * @param variable
+     *            <code>Variable</code>
+     * @param children
+     *            A diagram for each state of <code>variable</code>, which may
+     *            contain any variable
+     * @return The diagram that is equal to <code>children[i]</code> when
+     *         <code>variable</code> takes its i-th state. It is used to
+     *         convert the branches of a tree.
+     */
+    public static ADDNode branch(Variable variable, ADDNode[] children) {
+        ADDNode[] restrictedChildren = new ADDNode[children.length];
+        Variable top = variable;
+        for (int i = 0; i < children.length; i++) {
+            restrictedChildren[i] = restrict(children[i], variable, i);
+            if (!restrictedChildren[i].isTerminal()
+                    && ADDNode.compare(restrictedChildren[i].getVariable(), top) < 0) {
+                top = restrictedChildren[i].getVariable();
+            }
+        }
+        if (top == variable) {
+            return ADDNode.getNode(variable, restrictedChildren);
+        }
+        // a variable of the children goes before: split on it first
+        ADDNode[] topChildren = new ADDNode[top.getNumStates()];
+        for (int j = 0; j < topChildren.length; j++) {
+            ADDNode[] subChildren = new ADDNode[children.length];
+            for (int i = 0; i < children.length; i++) {
+                subChildren[i] = restrict(restrictedChildren[i], top, j);
+            }
+            topChildren[j] = branch(variable, subChildren);
+        }
+        return ADDNode.getNode(top, topChildren);
+    }
+
+    /**
+     * @param potential
+     *            <code>ADDPotential</code> not expanded
+     * @param evidenceCase
+     *            <code>EvidenceCase</code>
+     * @return The potential with the observed variables removed, as a
+     *         diagram or a table as given by
+     *         <code>ADDPotential.compact</code>
+     */
+    public static TablePotential restrict(ADDPotential potential, EvidenceCase evidenceCase) {
+        ADDNode diagram = potential.getRoot();
+        List<Variable> variables = new ArrayList<Variable>(potential.getVariables());
+        for (Finding finding : evidenceCase.getFindings()) {
+            Variable variable = finding.getVariable();
+            if (variables.remove(variable)) {
+                diagram = restrict(diagram, variable, finding.getStateIndex());
+            }
+        }
+        return ADDPotential.compact(variables, potential.getPotentialRole(), diagram);
+    }
+
+    /**
+     * Multiplies the potentials and sums out <code>variablesToEliminate</code>
+     * on diagrams. The potentials that are not <code>ADDPotential</code>s are
+     * converted first.
+     *
+     * @param potentials
+     *            Factors, with some variable each
+     * @param variablesToKeep
+     *            Variables of the result
+     * @param variablesToEliminate
+     *            Variables summed out
+     * @param constantFactor
+     *            Factor that multiplies the result
+     * @param role
+     *            Role of the result
+     * @return The result, as a diagram or a table as given by
+     *         <code>ADDPotential.compact</code>
+     */
+    public static TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
+            List<Variable> variablesToKeep, List<Variable> variablesToEliminate,
+            double constantFactor, PotentialRole role) {
+        ADDNode diagram = ADDNode.getTerminal(constantFactor);
+        Map<NodePair, ADDNode> computedProducts = new HashMap<NodePair, ADDNode>();
+        for (TablePotential potential : potentials) {
+            diagram = apply(diagram, ADDPotential.toDiagram(potential), Operator.PRODUCT,
+                    computedProducts);
+        }
+        for (Variable variable : variablesToEliminate) {
+            diagram = sumOut(diagram, variable);
+        }
+        return ADDPotential.compact(new ArrayList<Variable>(variablesToKeep), role, diagram);
+    }
+
+    /**
+     * @param potentials
+     *            Factors of an operation
+     * @return True when the largest factor is an <code>ADDPotential</code>
+     *         not expanded, and then the operation is done on diagrams
+     */
+    public static boolean isDiagramOperation(List<TablePotential> potentials) {
+        TablePotential largest = null;
+        for (TablePotential potential : potentials) {
+            if (largest == null || potential.getTableLength() > largest.getTableLength()) {
+                largest = potential;
+            }
+        }
+        return largest instanceof ADDPotential && ((ADDPotential) largest).isDiagram();
+    }
+
+    /**
+     * @param potentials
+     *            <code>List</code> of <code>TablePotential</code>
+     * @return True when some potential is an <code>ADDPotential</code> not
+     *         expanded
+     */
+    public static boolean hasDiagrams(List<TablePotential> potentials) {
+        for (TablePotential potential : potentials) {
+            if (potential instanceof ADDPotential && ((ADDPotential) potential).isDiagram()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the <code>ADDPotential</code>s not expanded by dense copies,
+     * so that they can be read by the table kernels. The potentials are not
+     * modified, because they may be shared by several threads.
+     *
+     * @param potentials
+     *            <code>List</code> of <code>TablePotential</code>
+     * @return <code>potentials</code> itself if it has no diagrams; else, a
+     *         new list
+     */
+    public static List<TablePotential> expand(List<TablePotential> potentials) {
+        List<TablePotential> expandedPotentials = potentials;
+        for (int i = 0; i < potentials.size(); i++) {
+            TablePotential potential = potentials.get(i);
+            if (potential instanceof ADDPotential && ((ADDPotential) potential).isDiagram()) {
+                if (expandedPotentials == potentials) {
+                    expandedPotentials = new ArrayList<TablePotential>(potentials);
+                }
+                TablePotential expandedPotential = new TablePotential(potential.getVariables(),
+                        potential.getPotentialRole(), potential.getValues());
+                expandedPotential.setUtilityVariable(potential.getUtilityVariable());
+                expandedPotentials.set(i, expandedPotential);
+            }
+        }
+        return expandedPotentials;
+    }
+
+    private static ADDNode apply(ADDNode diagram1, ADDNode diagram2, Operator operator,
+            Map<NodePair, ADDNode> computed) {
+        if (diagram1.isTerminal() && diagram2.isTerminal()) {
+            return ADDNode.getTerminal(operator.apply(diagram1.getValue(), diagram2.getValue()));
+        }
+        ADDNode result = operator.simplify(diagram1, diagram2);
+        if (result != null) {
+            return result;
+        }
+        NodePair pair = new NodePair(diagram1, diagram2);
+        result = computed.get(pair);
+        if (result != null) {
+            return result;
+        }
+        Variable top;
+        if (diagram1.isTerminal()) {
+            top = diagram2.getVariable();
+        } else if (diagram2.isTerminal()) {
+            top = diagram1.getVariable();
+        } else {
+            top = ADDNode.compare(diagram1.getVariable(), diagram2.getVariable()) <= 0 ? diagram1
+                    .getVariable() : diagram2.getVariable();
+        }
+        boolean split1 = !diagram1.isTerminal() && diagram1.getVariable().equals(top);
+        boolean split2 = !diagram2.isTerminal() && diagram2.getVariable().equals(top);
+        ADDNode[] children = new ADDNode[top.getNumStates()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = apply(split1 ? diagram1.getChild(i) : diagram1,
+                    split2 ? diagram2.getChild(i) : diagram2, operator, computed);
+        }
+        result = ADDNode.getNode(top, children);
+        computed.put(pair, result);
+        return result;
+    }
+
+    private static ADDNode eliminate(ADDNode diagram, Variable variable, Operator operator,
+            Map<ADDNode, ADDNode> computed, Map<NodePair, ADDNode> computedPairs) {
+        if (diagram.isTerminal() || ADDNode.compare(diagram.getVariable(), variable) > 0) {
+            // the diagram does not depend on the variable
+            return operator == Operator.SUM ? apply(diagram,
+                    ADDNode.getTerminal(variable.getNumStates()), Operator.PRODUCT,
+                    new HashMap<NodePair, ADDNode>()) : diagram;
+        }
+        ADDNode result = computed.get(diagram);
+        if (result != null) {
+            return result;
+        }
+        if (diagram.getVariable().equals(variable)) {
+            result = diagram.getChild(0);
+            for (int i = 1; i < variable.getNumStates(); i++) {
+                result = apply(result, diagram.getChild(i), operator, computedPairs);
+            }
+        } else {
+            ADDNode[] children = new ADDNode[diagram.getVariable().getNumStates()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = eliminate(diagram.getChild(i), variable, operator, computed,
+                        computedPairs);
+            }
+            result = ADDNode.getNode(diagram.getVariable(), children);
+        }
+        computed.put(diagram, result);
+        return result;
+    }
+
+    private static ADDNode restrict(ADDNode diagram, Variable variable, int stateIndex,
+            Map<ADDNode, ADDNode> computed) {
+        if (diagram.isTerminal() || ADDNode.compare(diagram.getVariable(), variable) > 0) {
+            return diagram;
+        }
+        if (diagram.getVariable().equals(variable)) {
+            return diagram.getChild(stateIndex);
+        }
+        ADDNode result = computed.get(diagram);
+        if (result == null) {
+            ADDNode[] children = new ADDNode[diagram.getVariable().getNumStates()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = restrict(diagram.getChild(i), variable, stateIndex, computed);
+            }
+            result = ADDNode.getNode(diagram.getVariable(), children);
+            computed.put(diagram, result);
+        }
+        return result;
+    }
+
+    /** Binary operations on the values of the diagrams. */
+    private enum Operator {
+        PRODUCT {
+            double apply(double value1, double value2) {
+                return value1 * value2;
+            }
+
+            ADDNode simplify(ADDNode diagram1, ADDNode diagram2) {
+                if (isTerminal(diagram1, 1.0) || isTerminal(diagram2, 0.0)) {
+                    return diagram2;
+                }
+                if (isTerminal(diagram2, 1.0) || isTerminal(diagram1, 0.0)) {
+                    return diagram1;
+                }
+                return null;
+            }
+        },
+        SUM {
+            double apply(double value1, double value2) {
+                return value1 + value2;
+            }
+
+            ADDNode simplify(ADDNode diagram1, ADDNode diagram2) {
+                if (isTerminal(diagram1, 0.0)) {
+                    return diagram2;
+                }
+                if (isTerminal(diagram2, 0.0)) {
+                    return diagram1;
+                }
+                return null;
+            }
+        },
+        MAXIMUM {
+            double apply(double value1, double value2) {
+                return Math.max(value1, value2);
+            }
+
+            ADDNode simplify(ADDNode diagram1, ADDNode diagram2) {
+                return diagram1 == diagram2 ? diagram1 : null;
+            }
+        };
+
+        abstract double apply(double value1, double value2);
+
+        /**
+         * @return The result when it does not depend on the other diagram,
+         *         else <code>null</code>
+         */
+        abstract ADDNode simplify(ADDNode diagram1, ADDNode diagram2);
+
+        private static boolean isTerminal(ADDNode diagram, double value) {
+            return diagram.isTerminal() && diagram.getValue() == value;
+        }
+    }
+
+    /** Key of the results of the binary operations, by node identity. */
+    private static final class NodePair {
+
+        private final ADDNode node1;
+
+        private final ADDNode node2;
+
+        NodePair(ADDNode node1, ADDNode node2) {
+            this.node1 = node1;
+            this.node2 = node2;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof NodePair)) {
+                return false;
+            }
+            NodePair pair = (NodePair) object;
+            return node1 == pair.node1 && node2 == pair.node2;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(node1) + System.identityHashCode(node2);
+        }
+    }
+
+}
@@ -42,7 +42,7 @@ public class AuxiliaryOperations {
 		List<TablePotential> properPotentials =
 			new ArrayList<TablePotential>();
 		for (TablePotential potential : potentials) {
-			if (potential.values.length > 1) {
+			if (potential.getTableLength() > 1) {
 				properPotentials.add(potential);
 			}
 		}
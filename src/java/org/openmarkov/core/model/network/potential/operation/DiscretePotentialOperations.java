@@ -25,8 +25,10 @@ import org.openmarkov.core.model.network.State;
 import org.openmarkov.core.model.network.Variable;
 import org.openmarkov.core.model.network.modelUncertainty.UncertainValue;
 import org.openmarkov.core.model.network.potential.GTablePotential;
+import org.openmarkov.core.model.network.potential.OffHeapTable;
 import org.openmarkov.core.model.network.potential.Potential;
 import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.SparseTablePotential;
 import org.openmarkov.core.model.network.potential.TablePotential;
 
 /**
@@ -89,82 +91,42 @@ public final class DiscretePotentialOperations {
 
         // Gets the union
         List<Variable> resultVariables = AuxiliaryOperations.getUnionVariables(potentials);
-
-        int numVariables = resultVariables.size();
+        long longResultSize = TablePotential.computeLongTableSize(resultVariables);
+        if (requiresOffHeap(potentials, longResultSize, longResultSize)) {
+            return multiplyAndSumOffHeap(potentials, resultVariables, resultVariables,
+                    constantFactor, 1, role, false);
+        }
+        if (ADDOperations.isDiagramOperation(potentials)) {
+            return ADDOperations.multiplyAndMarginalize(potentials, resultVariables,
+                    new ArrayList<Variable>(), constantFactor, role);
+        }
+        potentials = ADDOperations.expand(potentials);
+        SparseTablePotential sparsePotential = getSparsest(potentials);
+        if (sparsePotential != null) {
+            return multiplyAndSumSparse(sparsePotential, potentials, resultVariables,
+                    resultVariables, constantFactor, role, false);
+        }
 
         // Gets the tables of each TablePotential
         numPotentials = potentials.size();
         double[][] tables = new double[numPotentials][];
+        int[] initialPositions = new int[numPotentials];
         for (int i = 0; i < numPotentials; i++) {
             tables[i] = potentials.get(i).values;
-        }
-
-        // Gets dimension
-        int[] resultDimension = TablePotential.calculateDimensions(resultVariables);
-
-        // Gets offset accumulate
-        int[][] offsetAccumulate = DiscretePotentialOperations.getAccumulatedOffsets(potentials,
-                resultVariables);
-
-        // Gets coordinate
-        int[] resultCoordinate;
-        if (numVariables != 0) {
-            resultCoordinate = new int[numVariables];
-        } else {
-            resultCoordinate = new int[1];
-            resultCoordinate[0] = 0;
-        }
-
-        // Position in each table potential
-        int[] potentialsPositions = new int[numPotentials];
-        for (int i = 0; i < numPotentials; i++) {
-            potentialsPositions[i] = 0;
+            initialPositions[i] = potentials.get(i).getInitialPosition();
         }
 
         // Multiply
-        int incrementedVariable = 0;
-        double mulResult;
+        double[] resultValues = TableArena.allocate(TablePotential.computeTableSize(resultVariables));
+        int[][] offsets = TableKernels.getOffsets(potentials, resultVariables);
         int[] dimensions = TablePotential.calculateDimensions(resultVariables);
-        int[] offsets = TablePotential.calculateOffsets(dimensions);
-        int tableSize = 1; // If numVariables == 0 the potential is a constant
-        if (numVariables > 0) {
-            tableSize = dimensions[numVariables - 1] * offsets[numVariables - 1];
-        }
-        double[] resultValues = new double[tableSize];
-
-        for (int resultPosition = 0; resultPosition < tableSize; resultPosition++) {
-            mulResult = constantFactor;
-
-            /*
-             * increment the result coordinate and find out which variable is to
-             * be incremented
-             */
-            for (int iVariable = 0; iVariable < resultCoordinate.length; iVariable++) {
-                // try by incrementing the current variable (given by iVariable)
-                resultCoordinate[iVariable]++;
-                if (resultCoordinate[iVariable] != resultDimension[iVariable]) {
-                    // we have incremented the right variable
-                    incrementedVariable = iVariable;
-                    // do not increment other variables;
-                    break;
-                }
-                /*
-                 * this variable could not be incremented; we set it to 0 in
-                 * resultCoordinate (the next iteration of the for-loop will
-                 * increment the next variable)
-                 */
-                resultCoordinate[iVariable] = 0;
-            }
-
-            // multiply
-            for (int iPotential = 0; iPotential < numPotentials; iPotential++) {
-                // multiply the numbers
-                mulResult = mulResult * tables[iPotential][potentialsPositions[iPotential]];
-                // update the current position in each potential table
-                potentialsPositions[iPotential] += offsetAccumulate[iPotential][incrementedVariable];
-            }
-
-            resultValues[resultPosition] = mulResult;
+        if (hasSinglePrecision(potentials)) {
+            TableKernels.multiplyAndSumSinglePrecision(tables, getFloatTables(potentials),
+                    initialPositions, offsets, dimensions, constantFactor, 1, resultValues, null, 0,
+                    resultValues.length);
+        } else {
+            TableKernels.multiplyAndSum(tables, initialPositions, offsets, dimensions,
+                    constantFactor, 1, resultValues, 0, resultValues.length);
         }
         return new TablePotential(resultVariables, role, resultValues);
     }
@@ -298,7 +260,12 @@ public final class DiscretePotentialOperations {
         return sum(potentialList);
     }
 
-    private static PotentialRole getRole(List<? extends Potential> potentials) {
+    /**
+     * @param potentials
+     *            <code>List</code> of <code>Potential</code>s
+     * @return The role of the product of the potentials
+     */
+    public static PotentialRole getRole(List<? extends Potential> potentials) {
         boolean atLeastOneUtility = false;
         for (Potential potential : potentials) {
             atLeastOneUtility = atLeastOneUtility || potential.isUtility();
@@ -333,6 +300,32 @@ public final class DiscretePotentialOperations {
     public static TablePotential multiplyAndMarginalize(List<TablePotential> tablePotentials,
             List<Variable> variablesToKeep,
             List<Variable> variablesToEliminate) {
+        return multiplyAndMarginalize(tablePotentials, variablesToKeep, variablesToEliminate,
+                false);
+    }
+
+    /**
+     * The potentials may have single-precision tables, which are read into
+     * double-precision accumulators.
+     * 
+     * @param tablePotentials
+     *            array to multiply
+     * @param variablesToKeep
+     *            The set of variables that will appear in the resulting
+     *            potential
+     * @param variablesToEliminate
+     *            The set of variables eliminated by marginalization
+     * @param singlePrecision
+     *            When true the table of the result is stored in
+     *            <code>floatValues</code>
+     * @argCondition variablesToKeep and variablesToEliminate are a partition of
+     *               the union of the variables of the potential
+     * @return A <code>TablePotential</code> result of multiply and marginalize.
+     */
+    public static TablePotential multiplyAndMarginalize(List<TablePotential> tablePotentials,
+            List<Variable> variablesToKeep,
+            List<Variable> variablesToEliminate,
+            boolean singlePrecision) {
 
         // Constant potentials are those that do not depend on any variables.
         // The product of all the constant potentials is the constant factor.
@@ -343,7 +336,7 @@ public final class DiscretePotentialOperations {
             if (potential.getNumVariables() != 0) {
                 nonConstantPotentials.add(potential);
             } else {
-                constantFactor *= potential.values[potential.getInitialPosition()];
+                constantFactor *= potential.getValue(potential.getInitialPosition());
             }
         }
 
@@ -359,114 +352,192 @@ public final class DiscretePotentialOperations {
         // variables in the resulting potential
         List<Variable> unionVariables = new ArrayList<Variable>(variablesToEliminate);
         unionVariables.addAll(variablesToKeep);
-        int numUnionVariables = unionVariables.size();
 
-        // current coordinate in the resulting potential
-        int[] unionCoordinate = new int[numUnionVariables];
-        int[] unionDimensions = TablePotential.calculateDimensions(unionVariables);
+        if (requiresOffHeap(nonConstantPotentials,
+                TablePotential.computeLongTableSize(variablesToKeep),
+                TablePotential.computeLongTableSize(unionVariables))) {
+            return multiplyAndSumOffHeap(nonConstantPotentials, unionVariables, variablesToKeep,
+                    constantFactor, TablePotential.computeLongTableSize(variablesToEliminate),
+                    getRole(tablePotentials), singlePrecision);
+        }
+        if (ADDOperations.isDiagramOperation(nonConstantPotentials)) {
+            return ADDOperations.multiplyAndMarginalize(nonConstantPotentials, variablesToKeep,
+                    variablesToEliminate, constantFactor, getRole(tablePotentials));
+        }
+        nonConstantPotentials = ADDOperations.expand(nonConstantPotentials);
+        SparseTablePotential sparsePotential = getSparsest(nonConstantPotentials);
+        if (sparsePotential != null) {
+            return multiplyAndSumSparse(sparsePotential, nonConstantPotentials, unionVariables,
+                    variablesToKeep, constantFactor, getRole(tablePotentials), singlePrecision);
+        }
 
-        // Defines some arrays for the proper potentials...
+        // Defines some arrays for the proper potentials
         double[][] tables = new double[numNonConstantPotentials][];
         int[] initialPositions = new int[numNonConstantPotentials];
-        int[] currentPositions = new int[numNonConstantPotentials];
-        int[][] accumulatedOffsets = new int[numNonConstantPotentials][];
-        // ... and initializes them
-        // TablePotential unionPotential = new
-        // TablePotential(unionVariables,null);
         for (int i = 0; i < numNonConstantPotentials; i++) {
             TablePotential potential = nonConstantPotentials.get(i);
             tables[i] = potential.values;
             initialPositions[i] = potential.getInitialPosition();
-            currentPositions[i] = initialPositions[i];
-            accumulatedOffsets[i] = TablePotential.getAccumulatedOffsets(unionVariables, potential.getVariables());
         }
 
         // The result size is the product of the dimensions of the
         // variables to keep
         int resultSize = TablePotential.computeTableSize(variablesToKeep);
-        double[] resultValues = new double[resultSize];
         // The elimination size is the product of the dimensions of the
-        // variables to eliminate
-        int eliminationSize = 1;
-        for (Variable variable : variablesToEliminate) {
-            eliminationSize *= variable.getNumStates();
+        // variables to eliminate, which vary faster in the union
+        int eliminationSize = TablePotential.computeTableSize(variablesToEliminate);
+        int[][] offsets = TableKernels.getOffsets(nonConstantPotentials, unionVariables);
+        int[] dimensions = TablePotential.calculateDimensions(unionVariables);
+        if (!singlePrecision && !hasSinglePrecision(nonConstantPotentials)) {
+            double[] resultValues = TableArena.allocate(resultSize);
+            TableKernels.multiplyAndSum(tables, initialPositions, offsets, dimensions,
+                    constantFactor, eliminationSize, resultValues, 0, resultSize);
+            return new TablePotential(variablesToKeep, getRole(tablePotentials), resultValues);
         }
+        float[][] floatTables = getFloatTables(nonConstantPotentials);
+        if (!singlePrecision) {
+            double[] resultValues = TableArena.allocate(resultSize);
+            TableKernels.multiplyAndSumSinglePrecision(tables, floatTables, initialPositions,
+                    offsets, dimensions, constantFactor, eliminationSize, resultValues, null, 0,
+                    resultSize);
+            return new TablePotential(variablesToKeep, getRole(tablePotentials), resultValues);
+        }
+        float[] resultValues = TableArena.allocateFloat(resultSize);
+        TableKernels.multiplyAndSumSinglePrecision(tables, floatTables, initialPositions, offsets,
+                dimensions, constantFactor, eliminationSize, null, resultValues, 0, resultSize);
+        return new TablePotential(variablesToKeep, getRole(tablePotentials), resultValues);
+    }
 
-        // Auxiliary variables for the nested loops
-        double multiplicationResult; // product of the table values
-        double accumulator; // in general, the sum or the maximum
-        int increasedVariable = 0; // when computing the next configuration
-
-        // outer iterations correspond to the variables to keep
-        for (int outerIteration = 0; outerIteration < resultSize; outerIteration++) {
-            // Inner iterations correspond to the variables to eliminate
-            // accumulator summarizes the result of all inner iterations
-
-            // first inner iteration
-            multiplicationResult = constantFactor;
-            for (int i = 0; i < numNonConstantPotentials; i++) {
-                // multiply the numbers
-                multiplicationResult *= tables[i][currentPositions[i]];
+    /**
+     * @param potentials
+     *            Factors of an operation
+     * @param resultSize
+     *            Number of values of the result
+     * @param unionSize
+     *            Number of configurations of the union of the variables
+     * @return True when the operation needs the kernel for off-heap tables:
+     *         some factor is off the heap, the result must be, or the union
+     *         is too large for <code>int</code> positions
+     */
+    public static boolean requiresOffHeap(List<TablePotential> potentials, long resultSize,
+            long unionSize) {
+        if (OffHeapTable.isOffHeap(resultSize) || unionSize > OffHeapTable.MAX_ARRAY_LENGTH) {
+            return true;
+        }
+        for (TablePotential potential : potentials) {
+            if (potential.isOffHeap()) {
+                return true;
             }
-            accumulator = multiplicationResult;
-
-            // next inner iterations
-            for (int innerIteration = 1; innerIteration < eliminationSize; innerIteration++) {
-
-                // find the next configuration and the index of the
-                // increased variable
-                for (int j = 0; j < unionCoordinate.length; j++) {
-                    unionCoordinate[j]++;
-                    if (unionCoordinate[j] < unionDimensions[j]) {
-                        increasedVariable = j;
-                        break;
-                    }
-                    unionCoordinate[j] = 0;
-                }
-
-                // update the positions of the potentials we are multiplying
-                for (int i = 0; i < numNonConstantPotentials; i++) {
-                    currentPositions[i] += accumulatedOffsets[i][increasedVariable];
-                }
-
-                // multiply the table values of the potentials
-                multiplicationResult = constantFactor;
-                for (int i = 0; i < numNonConstantPotentials; i++) {
-                    multiplicationResult *= tables[i][currentPositions[i]];
-                }
-
-                // update the accumulator (for this inner iteration)
-                accumulator += multiplicationResult;
-                // accumulator =
-                // operator.combine(accumulator,multiplicationResult);
-
-            } // end of inner iteration
+        }
+        return false;
+    }
 
-            // when eliminationSize == 0 there is a multiplication without
-            // marginalization but we must find the next configuration
-            if (outerIteration < resultSize - 1) {
-                // find the next configuration and the index of the
-                // increased variable
-                for (int j = 0; j < unionCoordinate.length; j++) {
-                    unionCoordinate[j]++;
-                    if (unionCoordinate[j] < unionDimensions[j]) {
-                        increasedVariable = j;
-                        break;
-                    }
-                    unionCoordinate[j] = 0;
-                }
+    /**
+     * Multiplies the factors and sums out the first variables of the union
+     * with <code>TableKernels.multiplyAndSumOffHeap</code>. The result is off
+     * the heap when <code>OffHeapTable.isOffHeap</code> says so.
+     */
+    private static TablePotential multiplyAndSumOffHeap(List<TablePotential> potentials,
+            List<Variable> unionVariables, List<Variable> resultVariables, double constantFactor,
+            long innerSize, PotentialRole role, boolean singlePrecision) {
+        long resultSize = TablePotential.computeLongTableSize(resultVariables);
+        if (OffHeapTable.isOffHeap(resultSize)) {
+            OffHeapTable resultValues = OffHeapTable.allocate(resultSize);
+            TableKernels.multiplyAndSumOffHeap(potentials, unionVariables, constantFactor,
+                    innerSize, null, null, resultValues);
+            return new TablePotential(resultVariables, role, resultValues);
+        }
+        if (singlePrecision) {
+            float[] resultValues = TableArena.allocateFloat((int) resultSize);
+            TableKernels.multiplyAndSumOffHeap(potentials, unionVariables, constantFactor,
+                    innerSize, null, resultValues, null);
+            return new TablePotential(resultVariables, role, resultValues);
+        }
+        double[] resultValues = TableArena.allocate((int) resultSize);
+        TableKernels.multiplyAndSumOffHeap(potentials, unionVariables, constantFactor, innerSize,
+                resultValues, null, null);
+        return new TablePotential(resultVariables, role, resultValues);
+    }
 
-                // update the positions of the potentials we are multiplying
-                for (int i = 0; i < numNonConstantPotentials; i++) {
-                    currentPositions[i] += accumulatedOffsets[i][increasedVariable];
+    /**
+     * @param potentials
+     *            Factors of an operation
+     * @return The sparse factor with the lowest density, which determines the
+     *         configurations visited by
+     *         <code>TableKernels.multiplyAndSumSparse</code>, or
+     *         <code>null</code> if no factor is sparse
+     */
+    public static SparseTablePotential getSparsest(List<TablePotential> potentials) {
+        SparseTablePotential sparsest = null;
+        double minDensity = Double.MAX_VALUE;
+        for (TablePotential potential : potentials) {
+            if (potential instanceof SparseTablePotential
+                    && ((SparseTablePotential) potential).isSparse()) {
+                SparseTablePotential sparsePotential = (SparseTablePotential) potential;
+                double density = (double) sparsePotential.getNumNonZeros()
+                        / sparsePotential.getTableSize();
+                if (density < minDensity) {
+                    sparsest = sparsePotential;
+                    minDensity = density;
                 }
             }
+        }
+        return sparsest;
+    }
 
-            resultValues[outerIteration] = accumulator;
+    /**
+     * Multiplies the factors and sums out the variables of the union that are
+     * not in the result with <code>TableKernels.multiplyAndSumSparse</code>,
+     * which only visits the non-zero configurations of
+     * <code>sparsePotential</code>.
+     */
+    private static TablePotential multiplyAndSumSparse(SparseTablePotential sparsePotential,
+            List<TablePotential> potentials, List<Variable> unionVariables,
+            List<Variable> resultVariables, double constantFactor, PotentialRole role,
+            boolean singlePrecision) {
+        List<TablePotential> otherPotentials = new ArrayList<TablePotential>(potentials);
+        otherPotentials.remove(sparsePotential);
+        double[] resultValues = TableArena.allocate(TablePotential
+                .computeTableSize(resultVariables));
+        TableKernels.multiplyAndSumSparse(sparsePotential, otherPotentials, unionVariables,
+                resultVariables, constantFactor, resultValues);
+        TablePotential result = new TablePotential(resultVariables, role, resultValues);
+        if (singlePrecision) {
+            result.setSinglePrecision(true);
+            TableArena arena = TableArena.getCurrent();
+            if (arena != null) {
+                arena.release(resultValues);
+            }
+        }
+        return result;
+    }
 
-        } // end of outer iteration
+    /**
+     * @param potentials
+     *            <code>List</code> of <code>TablePotential</code>
+     * @return True when some potential has a single-precision table
+     */
+    private static boolean hasSinglePrecision(List<TablePotential> potentials) {
+        for (TablePotential potential : potentials) {
+            if (potential.isSinglePrecision()) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        return new TablePotential(variablesToKeep, getRole(tablePotentials), resultValues);
+    /**
+     * @param potentials
+     *            <code>List</code> of <code>TablePotential</code>
+     * @return The single-precision table of each potential, or
+     *         <code>null</code> for the double-precision ones
+     */
+    private static float[][] getFloatTables(List<TablePotential> potentials) {
+        float[][] floatTables = new float[potentials.size()][];
+        for (int i = 0; i < floatTables.length; i++) {
+            floatTables[i] = potentials.get(i).floatValues;
+        }
+        return floatTables;
     }
 
     /**
@@ -480,6 +551,22 @@ public final class DiscretePotentialOperations {
      */
     public static TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
             List<Variable> variablesOfInterest) {
+        return multiplyAndMarginalize(potentials, variablesOfInterest, false);
+    }
+
+    /**
+     * @param potentials
+     *            potentials array to multiply
+     * @param variablesOfInterest
+     *            Set of variables that must be kept (although this set may
+     *            contain some variables that are not in any potential)
+     * @param singlePrecision
+     *            When true the table of the result is stored in
+     *            <code>floatValues</code>
+     * @return The multiplied potentials
+     */
+    public static TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
+            List<Variable> variablesOfInterest, boolean singlePrecision) {
 
         // Obtain parameters to invoke multiplyAndMarginalize
         // Union of the variables of the potential list
@@ -498,7 +585,8 @@ public final class DiscretePotentialOperations {
 
         return DiscretePotentialOperations.multiplyAndMarginalize(potentials,
                 variablesToKeep,
-                variablesToEliminate);
+                variablesToEliminate,
+                singlePrecision);
     }
 
     /**
@@ -511,9 +599,26 @@ public final class DiscretePotentialOperations {
      */
     public static TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
             Variable variableToEliminate) {
+        return multiplyAndMarginalize(potentials, variableToEliminate, false);
+    }
+
+    /**
+     * @param potentials
+     *            <code>ArrayList</code> of <code>Potential</code>s to multiply.
+     * @param variableToEliminate
+     *            <code>Variable</code>.
+     * @param singlePrecision
+     *            When true the table of the result is stored in
+     *            <code>floatValues</code>
+     * @return result <code>Potential</code> multiplied without
+     *         <code>variableToEliminate</code>
+     */
+    public static TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
+            Variable variableToEliminate, boolean singlePrecision) {
         List<Variable> variablesToKeep = AuxiliaryOperations.getUnionVariables(potentials);
         variablesToKeep.remove(variableToEliminate);
-        return multiplyAndMarginalize(potentials, variablesToKeep, Arrays.asList(variableToEliminate));
+        return multiplyAndMarginalize(potentials, variablesToKeep, Arrays.asList(variableToEliminate),
+                singlePrecision);
     }
 
     /**
@@ -592,10 +697,10 @@ public final class DiscretePotentialOperations {
     public static double getConstantFactor(List<TablePotential> potentials) {
         double constantFactor = 1.0;
         for (TablePotential potential : potentials) {
-            if (potential.values.length > 1) {
+            if (potential.getTableLength() > 1) {
                 continue;
             }
-            constantFactor *= potential.values[0];
+            constantFactor *= potential.getValue(0);
         }
         return constantFactor;
     }
@@ -672,6 +777,8 @@ public final class DiscretePotentialOperations {
     public static TablePotential normalize(TablePotential potential)
             throws NormalizeNullVectorException {
         TablePotential tablePotential = (TablePotential) potential;
+        // single-precision and off-heap tables are normalized on the heap
+        tablePotential.materialize();
         // Check for null vectors
         int p = 0;
         for (p = 0; p < tablePotential.values.length; p++) {
@@ -738,15 +845,16 @@ public final class DiscretePotentialOperations {
         denominatorVariables.removeAll(numeratorVariables);
         numeratorVariables.addAll(denominatorVariables);
         List<Variable> quotientVariables = numeratorVariables;
-        TablePotential quotient = new TablePotential(quotientVariables,
-                PotentialRole.JOINT_PROBABILITY);
         if ((numNumeratorVariables == 0) || (numDenominatorVariables == 0)) {
             return divide(tNumerator,
                     tDenominator,
-                    quotient,
+                    new TablePotential(quotientVariables, PotentialRole.JOINT_PROBABILITY),
                     numNumeratorVariables,
                     numDenominatorVariables);
         }
+        TablePotential quotient = new TablePotential(quotientVariables,
+                PotentialRole.JOINT_PROBABILITY,
+                TableArena.allocate(TablePotential.computeTableSize(quotientVariables)));
 
         int numVariables = quotient.getNumVariables();
 
@@ -1384,7 +1492,8 @@ public final class DiscretePotentialOperations {
      */
     public static TablePotential reorder(TablePotential potential, List<Variable> orderVariables) {
         TablePotential copyPotential = new TablePotential(orderVariables,
-                potential.getPotentialRole());
+                potential.getPotentialRole(),
+                TableArena.allocate(TablePotential.computeTableSize(orderVariables)));
         int[] accOffsets = potential.getAccumulatedOffsets(orderVariables);
         int[] potentialPositions = new int[potential.getNumVariables()];
         int[] potentialDimensions = potential.getDimensions();
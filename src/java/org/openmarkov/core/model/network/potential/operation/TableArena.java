@@ -0,0 +1,244 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.model.network.potential.operation;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.openmarkov.core.model.network.potential.TablePotential;
+
+/**
+ * Scoped pool of the tables of intermediate factors. While an arena is open
+ * in a thread, the tables of the results of the operations of
+ * <code>DiscretePotentialOperations</code> invoked from that thread are taken
+ * from it. A table released with <code>release</code> is given again to a
+ * later result of the same size, so an elimination that releases the factors
+ * it consumes allocates only when it needs a table larger than the free
+ * ones. <code>close</code> releases all the tables in bulk, except those
+ * passed to <code>keep</code>, which must include every result that outlives
+ * the scope:
+ * <pre>
+ * TableArena arena = TableArena.open();
+ * try {
+ *     ...
+ *     arena.keep(result.values);
+ * } finally {
+ *     arena.close();
+ * }
+ * </pre>
+ * The values of a reused table are not cleared: the operations overwrite all
+ * of them. The single-precision tables are pooled apart from the double ones.
+ * Arenas can be nested; closing one makes the previous one current.
+ *
+ * @author agent
+ */
+public final class TableArena {
+
+    // Attributes
+    private static final ThreadLocal<TableArena> current = new ThreadLocal<TableArena>();
+
+    /** Arena that was current when this one was opened. */
+    private final TableArena previous;
+
+    /** Tables given by this arena that have not been released nor kept. */
+    private final Set<Object> liveTables = Collections
+            .newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    /** Released tables, by size. */
+    private final HashMap<Integer, ArrayDeque<double[]>> freeTables = new HashMap<Integer, ArrayDeque<double[]>>();
+
+    /** Released single-precision tables, by size. */
+    private final HashMap<Integer, ArrayDeque<float[]>> freeFloatTables = new HashMap<Integer, ArrayDeque<float[]>>();
+
+    private long allocatedBytes;
+
+    private long reusedBytes;
+
+    private boolean closed;
+
+    // Constructor
+    private TableArena(TableArena previous) {
+        this.previous = previous;
+    }
+
+    // Methods
+    /**
+     * Opens a new arena, which becomes the current one of this thread.
+     *
+     * @return The arena
+     */
+    public static TableArena open() {
+        TableArena arena = new TableArena(current.get());
+        current.set(arena);
+        return arena;
+    }
+
+    /** @return The arena open in this thread, or <code>null</code> */
+    public static TableArena getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * @param size
+     *            Number of values
+     * @return A table from the current arena, whose values are undefined, or
+     *         a new table if there is no arena open in this thread
+     */
+    public static double[] allocate(int size) {
+        TableArena arena = current.get();
+        return arena != null ? arena.newTable(size) : new double[size];
+    }
+
+    /**
+     * @param size
+     *            Number of values
+     * @return A single-precision table from the current arena, whose values
+     *         are undefined, or a new table if there is no arena open in this
+     *         thread
+     */
+    public static float[] allocateFloat(int size) {
+        TableArena arena = current.get();
+        return arena != null ? arena.newFloatTable(size) : new float[size];
+    }
+
+    /**
+     * @param size
+     *            Number of values
+     * @return A released table of that size, or a new one. Its values are
+     *         undefined.
+     */
+    public double[] newTable(int size) {
+        ArrayDeque<double[]> tables = freeTables.get(size);
+        double[] table = tables != null ? tables.poll() : null;
+        if (table != null) {
+            reusedBytes += 8L * size;
+        } else {
+            table = new double[size];
+            allocatedBytes += 8L * size;
+        }
+        liveTables.add(table);
+        return table;
+    }
+
+    /**
+     * @param size
+     *            Number of values
+     * @return A released single-precision table of that size, or a new one.
+     *         Its values are undefined.
+     */
+    public float[] newFloatTable(int size) {
+        ArrayDeque<float[]> tables = freeFloatTables.get(size);
+        float[] table = tables != null ? tables.poll() : null;
+        if (table != null) {
+            reusedBytes += 4L * size;
+        } else {
+            table = new float[size];
+            allocatedBytes += 4L * size;
+        }
+        liveTables.add(table);
+        return table;
+    }
+
+    /**
+     * Gives back a table that is no longer used, so that it can be reused.
+     * Tables that were not given by this arena are ignored.
+     *
+     * @param table
+     *            <code>double[]</code>
+     */
+    public void release(double[] table) {
+        if (table != null && liveTables.remove(table)) {
+            ArrayDeque<double[]> tables = freeTables.get(table.length);
+            if (tables == null) {
+                tables = new ArrayDeque<double[]>();
+                freeTables.put(table.length, tables);
+            }
+            tables.push(table);
+        }
+    }
+
+    /**
+     * Gives back the table of a potential that is no longer used, whatever
+     * its precision.
+     *
+     * @param potential
+     *            <code>TablePotential</code>
+     */
+    public void release(TablePotential potential) {
+        float[] floatTable = potential.floatValues;
+        if (floatTable == null) {
+            release(potential.values);
+        } else if (liveTables.remove(floatTable)) {
+            ArrayDeque<float[]> tables = freeFloatTables.get(floatTable.length);
+            if (tables == null) {
+                tables = new ArrayDeque<float[]>();
+                freeFloatTables.put(floatTable.length, tables);
+            }
+            tables.push(floatTable);
+        }
+    }
+
+    /**
+     * Excludes a table from the arena, so that it is neither reused nor
+     * released by <code>close</code>.
+     *
+     * @param table
+     *            <code>double[]</code>
+     */
+    public void keep(double[] table) {
+        liveTables.remove(table);
+    }
+
+    /**
+     * Excludes the table of a potential from the arena, whatever its
+     * precision.
+     *
+     * @param potential
+     *            <code>TablePotential</code>
+     */
+    public void keep(TablePotential potential) {
+        liveTables.remove(potential.floatValues != null ? potential.floatValues
+                : potential.values);
+    }
+
+    /**
+     * Releases all the tables of the arena, which can not be used any more,
+     * and makes the previous arena the current one of this thread.
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            liveTables.clear();
+            freeTables.clear();
+            freeFloatTables.clear();
+            if (current.get() == this) {
+                if (previous != null) {
+                    current.set(previous);
+                } else {
+                    current.remove();
+                }
+            }
+        }
+    }
+
+    /** @return Bytes of the tables created by this arena */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /** @return Bytes of the tables given again after being released */
+    public long getReusedBytes() {
+        return reusedBytes;
+    }
+
+}
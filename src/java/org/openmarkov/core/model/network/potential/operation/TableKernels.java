@@ -0,0 +1,772 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.core.model.network.potential.operation;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.OffHeapTable;
+import org.openmarkov.core.model.network.potential.SparseTablePotential;
+import org.openmarkov.core.model.network.potential.TablePotential;
+
+/**
+ * Loops that multiply tables and sum out the variables that vary faster in
+ * the union of their variables. They are the core of <code>multiply</code> and
+ * <code>multiplyAndMarginalize</code>.
+ * <p>
+ * The first variables of the union are grouped in an inner block as long as
+ * every factor has a constant stride along the block: a factor whose
+ * variables are a prefix of the union has stride 1, a factor that contains
+ * none of the variables of the block (for example, a suffix of the union) has
+ * stride 0 and its value is taken out of the inner loop. The inner loop is
+ * specialized for zero, one, two or more factors that vary along the block,
+ * and when some variables are eliminated the block never goes beyond them, so
+ * that the eliminated variables are summed in the innermost loop. The
+ * accumulated offsets algorithm only runs once per block. The generic loop,
+ * that runs the odometer once per configuration, is used when the block is
+ * shorter than <code>MIN_BLOCK_LENGTH</code>.
+ *
+ * @author agent
+ */
+public final class TableKernels {
+
+    /** Minimum length of the inner block for the specialized kernels. */
+    public static final int MIN_BLOCK_LENGTH = 8;
+
+    // Constructor. Don't let anyone instantiate this class because it
+    // contains only static methods.
+    private TableKernels() {
+    }
+
+    /**
+     * @param potentials
+     *            <code>List</code> of <code>TablePotential</code>
+     * @param unionVariables
+     *            <code>List</code> of <code>Variable</code> that contains the
+     *            variables of the potentials
+     * @return For each potential, the offset in its table of each variable of
+     *         the union (0 for the variables that are not in the potential)
+     */
+    public static int[][] getOffsets(List<TablePotential> potentials, List<Variable> unionVariables) {
+        int numVariables = unionVariables.size();
+        int[][] offsets = new int[potentials.size()][numVariables];
+        for (int i = 0; i < offsets.length; i++) {
+            TablePotential potential = potentials.get(i);
+            List<Variable> potentialVariables = potential.getVariables();
+            int[] potentialOffsets = potential.getOffsets();
+            for (int j = 0; j < numVariables; j++) {
+                int index = potentialVariables.indexOf(unionVariables.get(j));
+                offsets[i][j] = (index == -1) ? 0 : potentialOffsets[index];
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Multiplies the tables and sums every <code>innerSize</code> consecutive
+     * configurations of the union into a position of <code>result</code>.
+     *
+     * @param tables
+     *            Tables of the factors
+     * @param initialPositions
+     *            Position in each table of the first configuration
+     * @param offsets
+     *            Offset in each table of each variable of the union, as
+     *            returned by <code>getOffsets</code>
+     * @param dimensions
+     *            Number of states of each variable of the union
+     * @param constantFactor
+     *            Factor that multiplies every product
+     * @param innerSize
+     *            Product of the dimensions of the first variables of the
+     *            union, which are eliminated. 1 when nothing is eliminated
+     * @param result
+     *            Array in which the result is written
+     * @param from
+     *            First position of the result, inclusive
+     * @param to
+     *            Last position of the result, exclusive
+     */
+    public static void multiplyAndSum(double[][] tables, int[] initialPositions, int[][] offsets,
+            int[] dimensions, double constantFactor, int innerSize, double[] result, int from, int to) {
+        // number of variables of the inner block and its length
+        int numBlockVariables = 0;
+        int blockLength = 1;
+        if (dimensions.length > 0) {
+            numBlockVariables = 1;
+            blockLength = dimensions[0];
+            while (numBlockVariables < dimensions.length
+                    && (innerSize == 1 || blockLength < innerSize)
+                    && hasConstantStride(offsets, dimensions, numBlockVariables)) {
+                blockLength *= dimensions[numBlockVariables];
+                numBlockVariables++;
+            }
+        }
+        if (blockLength < MIN_BLOCK_LENGTH) {
+            multiplyAndSumGeneric(tables, initialPositions, offsets, dimensions, constantFactor,
+                    innerSize, result, from, to);
+        } else {
+            multiplyAndSumBlocks(tables, initialPositions, offsets, dimensions, constantFactor,
+                    innerSize, result, from, to, numBlockVariables, blockLength);
+        }
+    }
+
+    /**
+     * Reference kernel: traverses the configurations of the union one by one
+     * with the accumulated offsets algorithm. Same parameters as
+     * <code>multiplyAndSum</code>.
+     */
+    public static void multiplyAndSumGeneric(double[][] tables, int[] initialPositions,
+            int[][] offsets, int[] dimensions, double constantFactor, int innerSize,
+            double[] result, int from, int to) {
+        int numPotentials = tables.length;
+        int numVariables = dimensions.length;
+        int[][] accumulatedOffsets = getAccumulatedOffsets(offsets, dimensions, 0);
+        int[] coordinate = new int[numVariables];
+        int[] positions = getPositions(initialPositions, offsets, dimensions, coordinate, 0,
+                from * innerSize);
+        int increasedVariable = 0;
+        for (int resultPosition = from; resultPosition < to; resultPosition++) {
+            double accumulator = 0.0;
+            for (int innerIteration = 0; innerIteration < innerSize; innerIteration++) {
+                double multiplicationResult = constantFactor;
+                for (int i = 0; i < numPotentials; i++) {
+                    multiplicationResult *= tables[i][positions[i]];
+                }
+                accumulator += multiplicationResult;
+                // find the next configuration and the index of the
+                // increased variable
+                for (int j = 0; j < numVariables; j++) {
+                    coordinate[j]++;
+                    if (coordinate[j] < dimensions[j]) {
+                        increasedVariable = j;
+                        break;
+                    }
+                    coordinate[j] = 0;
+                }
+                for (int i = 0; i < numPotentials; i++) {
+                    positions[i] += accumulatedOffsets[i][increasedVariable];
+                }
+            }
+            result[resultPosition] = accumulator;
+        }
+    }
+
+    /**
+     * Kernel for single-precision tables: the loop of
+     * <code>multiplyAndSumGeneric</code>, but the table of factor
+     * <code>i</code> is <code>floatTables[i]</code> when
+     * <code>tables[i]</code> is <code>null</code>, and the result is written in
+     * <code>floatResult</code> when <code>result</code> is <code>null</code>.
+     * The products and the sums are computed in double precision and only
+     * rounded when they are stored.
+     */
+    public static void multiplyAndSumSinglePrecision(double[][] tables, float[][] floatTables,
+            int[] initialPositions, int[][] offsets, int[] dimensions, double constantFactor,
+            int innerSize, double[] result, float[] floatResult, int from, int to) {
+        int numPotentials = tables.length;
+        int numVariables = dimensions.length;
+        int[][] accumulatedOffsets = getAccumulatedOffsets(offsets, dimensions, 0);
+        int[] coordinate = new int[numVariables];
+        int[] positions = getPositions(initialPositions, offsets, dimensions, coordinate, 0,
+                from * innerSize);
+        int increasedVariable = 0;
+        for (int resultPosition = from; resultPosition < to; resultPosition++) {
+            double accumulator = 0.0;
+            for (int innerIteration = 0; innerIteration < innerSize; innerIteration++) {
+                double multiplicationResult = constantFactor;
+                for (int i = 0; i < numPotentials; i++) {
+                    double[] table = tables[i];
+                    multiplicationResult *= (table != null) ? table[positions[i]]
+                            : floatTables[i][positions[i]];
+                }
+                accumulator += multiplicationResult;
+                // find the next configuration and the index of the
+                // increased variable
+                for (int j = 0; j < numVariables; j++) {
+                    coordinate[j]++;
+                    if (coordinate[j] < dimensions[j]) {
+                        increasedVariable = j;
+                        break;
+                    }
+                    coordinate[j] = 0;
+                }
+                for (int i = 0; i < numPotentials; i++) {
+                    positions[i] += accumulatedOffsets[i][increasedVariable];
+                }
+            }
+            if (result != null) {
+                result[resultPosition] = accumulator;
+            } else {
+                floatResult[resultPosition] = (float) accumulator;
+            }
+        }
+    }
+
+    /**
+     * Kernel for tables that are off the heap or that do not fit in an array:
+     * the loop of <code>multiplyAndSumGeneric</code> with <code>long</code>
+     * positions. Each factor is read from its double, single-precision or
+     * off-heap table, or with <code>getValue</code> if it is sparse. Exactly one of <code>result</code>,
+     * <code>floatResult</code> and <code>offHeapResult</code> is not
+     * <code>null</code>; an off-heap result is written segment by segment.
+     *
+     * @param potentials
+     *            Factors, with some variable each
+     * @param unionVariables
+     *            Variables of the factors. The first ones are eliminated.
+     * @param constantFactor
+     *            Factor that multiplies every product
+     * @param innerSize
+     *            Product of the dimensions of the eliminated variables
+     */
+    public static void multiplyAndSumOffHeap(List<TablePotential> potentials,
+            List<Variable> unionVariables, double constantFactor, long innerSize,
+            double[] result, float[] floatResult, OffHeapTable offHeapResult) {
+        int numPotentials = potentials.size();
+        int numVariables = unionVariables.size();
+        int[] dimensions = TablePotential.calculateDimensions(unionVariables);
+        double[][] tables = new double[numPotentials][];
+        float[][] floatTables = new float[numPotentials][];
+        OffHeapTable[] offHeapTables = new OffHeapTable[numPotentials];
+        long[] positions = new long[numPotentials];
+        long[][] accumulatedOffsets = new long[numPotentials][numVariables];
+        for (int i = 0; i < numPotentials; i++) {
+            TablePotential potential = potentials.get(i);
+            tables[i] = potential.values;
+            floatTables[i] = potential.floatValues;
+            offHeapTables[i] = potential.offHeapValues;
+            positions[i] = potential.getInitialPosition();
+            List<Variable> potentialVariables = potential.getVariables();
+            int[] intOffsets = potential.getOffsets();
+            long[] potentialOffsets = (intOffsets == null) ? potential.getLongOffsets() : null;
+            long reset = 0;
+            for (int j = 0; j < numVariables; j++) {
+                int index = potentialVariables.indexOf(unionVariables.get(j));
+                long offset = 0;
+                if (index != -1) {
+                    offset = (intOffsets != null) ? intOffsets[index] : potentialOffsets[index];
+                }
+                accumulatedOffsets[i][j] = offset - reset;
+                reset += offset * (dimensions[j] - 1);
+            }
+        }
+        long resultSize;
+        if (result != null) {
+            resultSize = result.length;
+        } else if (floatResult != null) {
+            resultSize = floatResult.length;
+        } else {
+            resultSize = offHeapResult.size();
+        }
+        int[] coordinate = new int[numVariables];
+        int increasedVariable = 0;
+        DoubleBuffer segment = null;
+        for (long resultPosition = 0; resultPosition < resultSize; resultPosition++) {
+            double accumulator = 0.0;
+            for (long innerIteration = 0; innerIteration < innerSize; innerIteration++) {
+                double multiplicationResult = constantFactor;
+                for (int i = 0; i < numPotentials; i++) {
+                    if (tables[i] != null) {
+                        multiplicationResult *= tables[i][(int) positions[i]];
+                    } else if (floatTables[i] != null) {
+                        multiplicationResult *= floatTables[i][(int) positions[i]];
+                    } else if (offHeapTables[i] != null) {
+                        multiplicationResult *= offHeapTables[i].get(positions[i]);
+                    } else {
+                        multiplicationResult *= potentials.get(i).getValue(positions[i]);
+                    }
+                }
+                accumulator += multiplicationResult;
+                // find the next configuration and the index of the
+                // increased variable
+                for (int j = 0; j < numVariables; j++) {
+                    coordinate[j]++;
+                    if (coordinate[j] < dimensions[j]) {
+                        increasedVariable = j;
+                        break;
+                    }
+                    coordinate[j] = 0;
+                }
+                for (int i = 0; i < numPotentials; i++) {
+                    positions[i] += accumulatedOffsets[i][increasedVariable];
+                }
+            }
+            if (result != null) {
+                result[(int) resultPosition] = accumulator;
+            } else if (floatResult != null) {
+                floatResult[(int) resultPosition] = (float) accumulator;
+            } else {
+                int segmentPosition = (int) (resultPosition & (OffHeapTable.SEGMENT_LENGTH - 1));
+                if (segmentPosition == 0) {
+                    segment = offHeapResult
+                            .getSegment((int) (resultPosition >>> OffHeapTable.SEGMENT_SHIFT));
+                }
+                segment.put(segmentPosition, accumulator);
+            }
+        }
+    }
+
+    /**
+     * Multiplies a sparse factor by other factors and sums out the first
+     * variables of the union, visiting only the configurations in which the
+     * sparse factor is not zero: for each of its non-zero values, the
+     * configurations of the variables that are not in the sparse factor are
+     * traversed with the accumulated offsets algorithm, the first of them in
+     * a tight loop. The factors that do not vary along that loop are
+     * multiplied before it. The double and single-precision tables are read
+     * directly; the other sparse factors are merged: each one keeps a cursor
+     * in its sorted positions that moves forward while the positions visited
+     * grow, and it is only searched when they go back.
+     *
+     * @param sparsePotential
+     *            <code>SparseTablePotential</code> not expanded
+     * @param potentials
+     *            The other factors, with some variable each. They may be
+     *            double, single-precision or sparse.
+     * @param unionVariables
+     *            Variables of all the factors
+     * @param resultVariables
+     *            Variables of the union that are kept
+     * @param constantFactor
+     *            Factor that multiplies every product
+     * @param result
+     *            Array in which the result is written
+     */
+    public static void multiplyAndSumSparse(SparseTablePotential sparsePotential,
+            List<TablePotential> potentials, List<Variable> unionVariables,
+            List<Variable> resultVariables, double constantFactor, double[] result) {
+        List<Variable> sparseVariables = sparsePotential.getVariables();
+        List<Variable> otherVariables = new ArrayList<Variable>(unionVariables);
+        otherVariables.removeAll(sparseVariables);
+        int numPotentials = potentials.size();
+        // the result is handled as one more factor, the last one
+        int[][] sparseOffsets = new int[numPotentials + 1][];
+        int[][] otherOffsets = new int[numPotentials + 1][];
+        double[][] tables = new double[numPotentials][];
+        float[][] floatTables = new float[numPotentials][];
+        int[][] otherIndexes = new int[numPotentials][];
+        double[][] otherNonZeroValues = new double[numPotentials][];
+        int[] cursors = new int[numPotentials];
+        int[] initialPositions = new int[numPotentials + 1];
+        for (int i = 0; i < numPotentials; i++) {
+            TablePotential potential = potentials.get(i);
+            sparseOffsets[i] = getOffsets(potential.getVariables(), potential.getOffsets(),
+                    sparseVariables);
+            otherOffsets[i] = getOffsets(potential.getVariables(), potential.getOffsets(),
+                    otherVariables);
+            if (potential instanceof SparseTablePotential
+                    && ((SparseTablePotential) potential).isSparse()) {
+                otherIndexes[i] = ((SparseTablePotential) potential).getIndexes();
+                otherNonZeroValues[i] = ((SparseTablePotential) potential).getNonZeroValues();
+            } else {
+                tables[i] = potential.values;
+                floatTables[i] = potential.floatValues;
+            }
+            initialPositions[i] = potential.getInitialPosition();
+        }
+        int[] resultOffsets = resultVariables.isEmpty() ? new int[0] : TablePotential
+                .calculateOffsets(TablePotential.calculateDimensions(resultVariables));
+        sparseOffsets[numPotentials] = getOffsets(resultVariables, resultOffsets, sparseVariables);
+        otherOffsets[numPotentials] = getOffsets(resultVariables, resultOffsets, otherVariables);
+        int[] otherDimensions = TablePotential.calculateDimensions(otherVariables);
+        int[][] accumulatedOffsets = getAccumulatedOffsets(otherOffsets, otherDimensions, 1);
+        int otherSize = TablePotential.computeTableSize(otherVariables);
+        int innerDimension = otherDimensions.length > 0 ? otherDimensions[0] : 1;
+        int[] innerOffsets = new int[numPotentials + 1];
+        for (int i = 0; i <= numPotentials && otherDimensions.length > 0; i++) {
+            innerOffsets[i] = otherOffsets[i][0];
+        }
+        // factors that vary along the tight loop and factors constant in it
+        int numVarying = 0;
+        for (int i = 0; i < numPotentials; i++) {
+            if (innerOffsets[i] != 0) {
+                numVarying++;
+            }
+        }
+        int[] varying = new int[numVarying];
+        int[] constant = new int[numPotentials - numVarying];
+        for (int i = 0, v = 0, c = 0; i < numPotentials; i++) {
+            if (innerOffsets[i] != 0) {
+                varying[v++] = i;
+            } else {
+                constant[c++] = i;
+            }
+        }
+        int[] sparseDimensions = sparsePotential.getDimensions();
+        int[] indexes = sparsePotential.getIndexes();
+        double[] nonZeroValues = sparsePotential.getNonZeroValues();
+        Arrays.fill(result, 0.0);
+        int[] positions = new int[numPotentials + 1];
+        int[] coordinate = new int[otherDimensions.length];
+        for (int k = 0; k < indexes.length; k++) {
+            // positions of the configuration of the sparse variables
+            System.arraycopy(initialPositions, 0, positions, 0, positions.length);
+            int remainder = indexes[k];
+            for (int j = 0; j < sparseDimensions.length; j++) {
+                int state = remainder % sparseDimensions[j];
+                remainder /= sparseDimensions[j];
+                for (int i = 0; i <= numPotentials; i++) {
+                    positions[i] += state * sparseOffsets[i][j];
+                }
+            }
+            double value = constantFactor * nonZeroValues[k];
+            Arrays.fill(coordinate, 0);
+            int increasedVariable = 1;
+            for (int configuration = 0; configuration < otherSize; configuration += innerDimension) {
+                // the first variable is traversed in a tight loop
+                double blockValue = value;
+                for (int i : constant) {
+                    blockValue *= (tables[i] != null) ? tables[i][positions[i]]
+                            : getValue(floatTables[i], otherIndexes[i], otherNonZeroValues[i],
+                                    cursors, i, positions[i]);
+                }
+                if (blockValue != 0.0) {
+                    int resultPosition = positions[numPotentials];
+                    for (int state = 0; state < innerDimension; state++) {
+                        double multiplicationResult = blockValue;
+                        for (int i : varying) {
+                            int position = positions[i] + state * innerOffsets[i];
+                            multiplicationResult *= (tables[i] != null) ? tables[i][position]
+                                    : getValue(floatTables[i], otherIndexes[i],
+                                            otherNonZeroValues[i], cursors, i, position);
+                        }
+                        result[resultPosition + state * innerOffsets[numPotentials]] += multiplicationResult;
+                    }
+                }
+                if (configuration + innerDimension == otherSize) {
+                    break;
+                }
+                // find the next configuration of the other variables and
+                // the index of the increased variable
+                for (int j = 1; j < coordinate.length; j++) {
+                    coordinate[j]++;
+                    if (coordinate[j] < otherDimensions[j]) {
+                        increasedVariable = j;
+                        break;
+                    }
+                    coordinate[j] = 0;
+                }
+                for (int i = 0; i <= numPotentials; i++) {
+                    positions[i] += accumulatedOffsets[i][increasedVariable];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The value at <code>position</code> of the factor
+     *         <code>i</code> of <code>multiplyAndSumSparse</code> without a
+     *         double table, read from its single-precision table or, if it is
+     *         <code>null</code>, from its non-zero values. In this case
+     *         <code>cursors[i]</code> is the first index whose position is
+     *         not below the last position read: it is moved forward by
+     *         galloping, or searched before it when the position goes back.
+     */
+    private static double getValue(float[] floatTable, int[] indexes, double[] nonZeroValues,
+            int[] cursors, int i, int position) {
+        if (floatTable != null) {
+            return floatTable[position];
+        }
+        int cursor = cursors[i];
+        int low;
+        int high;
+        if (cursor < indexes.length && indexes[cursor] <= position) {
+            if (indexes[cursor] == position) {
+                return nonZeroValues[cursor];
+            }
+            low = cursor;
+            high = cursor + 1;
+            for (int step = 1; high < indexes.length && indexes[high] <= position; step <<= 1) {
+                low = high;
+                high = low + step;
+            }
+            high = Math.min(high, indexes.length);
+        } else if (cursor == 0 || indexes[cursor - 1] < position) {
+            // between the last position read and the next non-zero one
+            return 0.0;
+        } else {
+            low = 0;
+            high = cursor;
+        }
+        int k = Arrays.binarySearch(indexes, low, high, position);
+        if (k >= 0) {
+            cursors[i] = k;
+            return nonZeroValues[k];
+        }
+        cursors[i] = -k - 1;
+        return 0.0;
+    }
+
+    /**
+     * @return The offset of each variable of <code>variables</code> in a
+     *         table whose variables are <code>tableVariables</code>, with
+     *         offsets <code>tableOffsets</code> (0 for the variables that are
+     *         not in the table)
+     */
+    private static int[] getOffsets(List<Variable> tableVariables, int[] tableOffsets,
+            List<Variable> variables) {
+        int[] offsets = new int[variables.size()];
+        for (int j = 0; j < offsets.length; j++) {
+            int index = tableVariables.indexOf(variables.get(j));
+            offsets[j] = (index == -1) ? 0 : tableOffsets[index];
+        }
+        return offsets;
+    }
+
+    /**
+     * @return True when every factor has a constant stride along the first
+     *         <code>numBlockVariables</code> + 1 variables of the union
+     */
+    private static boolean hasConstantStride(int[][] offsets, int[] dimensions,
+            int numBlockVariables) {
+        for (int[] potentialOffsets : offsets) {
+            if (potentialOffsets[numBlockVariables] != potentialOffsets[numBlockVariables - 1]
+                    * dimensions[numBlockVariables - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void multiplyAndSumBlocks(double[][] tables, int[] initialPositions,
+            int[][] offsets, int[] dimensions, double constantFactor, int innerSize,
+            double[] result, int from, int to, int numBlockVariables, int blockLength) {
+        int numPotentials = tables.length;
+        int numVariables = dimensions.length;
+        // factors that vary along the block and factors constant in the block
+        int numVarying = 0;
+        for (int i = 0; i < numPotentials; i++) {
+            if (offsets[i][0] != 0) {
+                numVarying++;
+            }
+        }
+        int[] varying = new int[numVarying];
+        int[] constant = new int[numPotentials - numVarying];
+        for (int i = 0, v = 0, c = 0; i < numPotentials; i++) {
+            if (offsets[i][0] != 0) {
+                varying[v++] = i;
+            } else {
+                constant[c++] = i;
+            }
+        }
+        double[][] varyingTables = new double[numVarying][];
+        int[] strides = new int[numVarying];
+        for (int v = 0; v < numVarying; v++) {
+            varyingTables[v] = tables[varying[v]];
+            strides[v] = offsets[varying[v]][0];
+        }
+        // the outer variables are traversed with the accumulated offsets
+        int[][] accumulatedOffsets = getAccumulatedOffsets(offsets, dimensions, numBlockVariables);
+        int[] coordinate = new int[numVariables];
+        int firstConfiguration = from * innerSize;
+        int[] positions = getPositions(initialPositions, offsets, dimensions, coordinate,
+                numBlockVariables, firstConfiguration - firstConfiguration % blockLength);
+        int[] varyingPositions = new int[numVarying];
+        if (innerSize == 1) {
+            // products written in the result, maybe starting in the middle
+            // of a block
+            int resultPosition = from;
+            int start = from % blockLength;
+            while (resultPosition < to) {
+                int length = Math.min(blockLength - start, to - resultPosition);
+                double blockFactor = getBlockFactor(tables, constant, positions, constantFactor);
+                for (int v = 0; v < numVarying; v++) {
+                    varyingPositions[v] = positions[varying[v]] + start * strides[v];
+                }
+                multiplyBlock(varyingTables, varyingPositions, strides, blockFactor, result,
+                        resultPosition, length);
+                resultPosition += length;
+                start = 0;
+                nextBlock(positions, coordinate, dimensions, accumulatedOffsets, numBlockVariables);
+            }
+        } else {
+            // each position of the result sums several complete blocks
+            int blocksPerResult = innerSize / blockLength;
+            for (int resultPosition = from; resultPosition < to; resultPosition++) {
+                double accumulator = 0.0;
+                for (int block = 0; block < blocksPerResult; block++) {
+                    double blockFactor = getBlockFactor(tables, constant, positions, constantFactor);
+                    for (int v = 0; v < numVarying; v++) {
+                        varyingPositions[v] = positions[varying[v]];
+                    }
+                    accumulator = sumBlock(varyingTables, varyingPositions, strides, blockFactor,
+                            blockLength, accumulator);
+                    nextBlock(positions, coordinate, dimensions, accumulatedOffsets,
+                            numBlockVariables);
+                }
+                result[resultPosition] = accumulator;
+            }
+        }
+    }
+
+    private static double getBlockFactor(double[][] tables, int[] constant, int[] positions,
+            double constantFactor) {
+        double blockFactor = constantFactor;
+        for (int i : constant) {
+            blockFactor *= tables[i][positions[i]];
+        }
+        return blockFactor;
+    }
+
+    /**
+     * Writes in <code>result</code>, from <code>resultPosition</code>,
+     * <code>length</code> products of the varying factors.
+     */
+    private static void multiplyBlock(double[][] tables, int[] positions, int[] strides,
+            double blockFactor, double[] result, int resultPosition, int length) {
+        int end = resultPosition + length;
+        switch (tables.length) {
+        case 0:
+            for (int r = resultPosition; r < end; r++) {
+                result[r] = blockFactor;
+            }
+            break;
+        case 1: {
+            double[] table0 = tables[0];
+            int stride0 = strides[0];
+            for (int r = resultPosition, p0 = positions[0]; r < end; r++, p0 += stride0) {
+                result[r] = blockFactor * table0[p0];
+            }
+            break;
+        }
+        case 2: {
+            double[] table0 = tables[0];
+            double[] table1 = tables[1];
+            int stride0 = strides[0];
+            int stride1 = strides[1];
+            for (int r = resultPosition, p0 = positions[0], p1 = positions[1]; r < end; r++, p0 += stride0, p1 += stride1) {
+                result[r] = blockFactor * table0[p0] * table1[p1];
+            }
+            break;
+        }
+        default:
+            // one pass per factor, multiplying in place
+            double[] table0 = tables[0];
+            int stride0 = strides[0];
+            for (int r = resultPosition, p0 = positions[0]; r < end; r++, p0 += stride0) {
+                result[r] = blockFactor * table0[p0];
+            }
+            for (int v = 1; v < tables.length; v++) {
+                double[] table = tables[v];
+                int stride = strides[v];
+                for (int r = resultPosition, p = positions[v]; r < end; r++, p += stride) {
+                    result[r] *= table[p];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>accumulator</code> plus the sum of the products of the
+     *         varying factors along a block
+     */
+    private static double sumBlock(double[][] tables, int[] positions, int[] strides,
+            double blockFactor, int length, double accumulator) {
+        switch (tables.length) {
+        case 0:
+            for (int b = 0; b < length; b++) {
+                accumulator += blockFactor;
+            }
+            break;
+        case 1: {
+            double[] table0 = tables[0];
+            int stride0 = strides[0];
+            for (int b = 0, p0 = positions[0]; b < length; b++, p0 += stride0) {
+                accumulator += blockFactor * table0[p0];
+            }
+            break;
+        }
+        case 2: {
+            double[] table0 = tables[0];
+            double[] table1 = tables[1];
+            int stride0 = strides[0];
+            int stride1 = strides[1];
+            for (int b = 0, p0 = positions[0], p1 = positions[1]; b < length; b++, p0 += stride0, p1 += stride1) {
+                accumulator += blockFactor * table0[p0] * table1[p1];
+            }
+            break;
+        }
+        default:
+            for (int b = 0; b < length; b++) {
+                double product = blockFactor;
+                for (int v = 0; v < tables.length; v++) {
+                    product *= tables[v][positions[v] + b * strides[v]];
+                }
+                accumulator += product;
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * Moves <code>positions</code> to the first configuration of the next
+     * block by incrementing the outer variables of <code>coordinate</code>.
+     */
+    private static void nextBlock(int[] positions, int[] coordinate, int[] dimensions,
+            int[][] accumulatedOffsets, int numBlockVariables) {
+        for (int j = numBlockVariables; j < dimensions.length; j++) {
+            coordinate[j]++;
+            if (coordinate[j] < dimensions[j]) {
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] += accumulatedOffsets[i][j];
+                }
+                return;
+            }
+            coordinate[j] = 0;
+        }
+    }
+
+    /**
+     * @return For each factor, the increment of its position when the
+     *         variable <code>j</code> of the union is incremented and the
+     *         variables from <code>firstVariable</code> to <code>j - 1</code>
+     *         go back to 0
+     */
+    private static int[][] getAccumulatedOffsets(int[][] offsets, int[] dimensions,
+            int firstVariable) {
+        int[][] accumulatedOffsets = new int[offsets.length][dimensions.length];
+        for (int i = 0; i < offsets.length; i++) {
+            int reset = 0;
+            for (int j = firstVariable; j < dimensions.length; j++) {
+                accumulatedOffsets[i][j] = offsets[i][j] - reset;
+                reset += offsets[i][j] * (dimensions[j] - 1);
+            }
+        }
+        return accumulatedOffsets;
+    }
+
+    /**
+     * Sets in <code>coordinate</code>, from <code>firstVariable</code>, the
+     * configuration of the union with index <code>configuration</code>.
+     *
+     * @return The position of that configuration in each table
+     */
+    private static int[] getPositions(int[] initialPositions, int[][] offsets, int[] dimensions,
+            int[] coordinate, int firstVariable, int configuration) {
+        int[] positions = initialPositions.clone();
+        int remainder = configuration;
+        for (int j = 0; j < dimensions.length; j++) {
+            int value = remainder % dimensions[j];
+            remainder /= dimensions[j];
+            if (j >= firstVariable) {
+                coordinate[j] = value;
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] += value * offsets[i][j];
+                }
+            }
+        }
+        return positions;
+    }
+
+}
@@ -9,211 +9,392 @@
 
 package org.openmarkov.core.model.network.potential.operation.concurrent;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.openmarkov.core.model.network.Variable;
 import org.openmarkov.core.model.network.potential.Potential;
+import org.openmarkov.core.model.network.potential.PotentialRole;
 import org.openmarkov.core.model.network.potential.TablePotential;
+import org.openmarkov.core.model.network.potential.operation.ADDOperations;
+import org.openmarkov.core.model.network.potential.operation.AuxiliaryOperations;
+import org.openmarkov.core.model.network.potential.operation.TableArena;
+import org.openmarkov.core.model.network.potential.operation.TableKernels;
 
+/**
+ * Concurrent versions of the most expensive operations of
+ * <code>operation.DiscretePotentialOperations</code>. The positions of the
+ * resulting table are divided in blocks that are computed by the tasks of a
+ * <code>ForkJoinPool</code> shared by all the operations. Each position of the
+ * result is computed by only one task, in the same order as in the sequential
+ * version, so the results are identical. Operations smaller than
+ * <code>threshold</code> are delegated to the sequential version, because the
+ * cost of splitting them would exceed the gain.
+ *
+ * @author agent
+ */
+public final class DiscretePotentialOperations {
 
-public class DiscretePotentialOperations {
+	// Constants
+	/** Default value of <code>threshold</code>. */
+	public static final int DEFAULT_THRESHOLD = 1 << 16;
+
+	/** Minimum number of configurations computed by a task. */
+	private static final int MIN_BLOCK_SIZE = 1 << 12;
+
+	/** Number of blocks per thread, to balance the load of the threads. */
+	private static final int BLOCKS_PER_THREAD = 4;
 
 	// Attributes
-	/** Number of logical processors, bear in mind that logical processors are
-	 *   not always the physical ones. If the processors have a n 
-	 *   hyper threading then logical processors = n * physical processors. */
-	public static int numLogicalProcessors = 
-		java.lang.Runtime.getRuntime().availableProcessors();
-	
-	// Constructor. Don't let anyone instantiate this class because in contains 
+	/** Pool shared by all the operations. Its threads are daemon threads. */
+	private static final ForkJoinPool pool = new ForkJoinPool();
+
+	/**
+	 * Minimum number of products (configurations of the union of variables
+	 * times number of factors) of an operation that is done concurrently.
+	 */
+	private static volatile int threshold = DEFAULT_THRESHOLD;
+
+	// Constructor. Don't let anyone instantiate this class because in contains
 	// only static methods.
 	private DiscretePotentialOperations() {
 	}
 
 	// Methods
-	/** @param potentials <code>ArrayList</code> of 
-	 *   <code>? extends Potential</code>
-	  * @return The multiplied potentials <code>TablePotential</code>
-	 * @throws <code>Exception</code> */
-    public static TablePotential multiply (List<TablePotential> potentials)
-        throws Exception
-    {
-		// Sequential part
-		SharedDataMultiply sdm = new SharedDataMultiply(potentials);
-		sdm.initialize();
-
-		// Concurrent part
-		// Starts concurrency
-		Thread[] multipliers = new Thread[numLogicalProcessors];
-		DiscreteMultiply[] cdm = 
-			new DiscreteMultiply[numLogicalProcessors];
-		for (int i = 0; i < numLogicalProcessors; i++) {
-			cdm[i] = new DiscreteMultiply(sdm, i);
-			multipliers[i] = new Thread(cdm[i]);
-			multipliers[i].start();
-			//cdm[i].run();
-		}
+	/** @return The minimum size of an operation that is done concurrently */
+	public static int getThreshold() {
+		return threshold;
+	}
 
-		// Synchronization. The current thread waits until all 
-		// concurrent operations finish
-		for (int i = 0; i < numLogicalProcessors; i++) {
-			try {
-				multipliers[i].join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+	/**
+	 * @param threshold
+	 *            Minimum number of products of an operation that is done
+	 *            concurrently. 0 makes all the operations concurrent.
+	 */
+	public static void setThreshold(int threshold) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("The threshold can not be negative: " + threshold);
 		}
+		DiscretePotentialOperations.threshold = threshold;
+	}
+
+	/** @return The number of threads of the shared pool */
+	public static int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * @return The pool shared by all the operations, where other concurrent
+	 *         computations of the inference can run their tasks too
+	 */
+	public static ForkJoinPool getPool() {
+		return pool;
+	}
 
-		return sdm.result;
+	/**
+	 * @param tablePotentials
+	 *            <code>List</code> of <code>TablePotential</code>
+	 * @return The product of the potentials, as in
+	 *         <code>operation.DiscretePotentialOperations.multiply</code>
+	 */
+	public static TablePotential multiply(List<TablePotential> tablePotentials) {
+		if (tablePotentials.size() < 2) {
+			return org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations.multiply(tablePotentials);
+		}
+		List<TablePotential> potentials = new ArrayList<>(tablePotentials);
+		Collections.sort(potentials);
+		List<TablePotential> properPotentials = AuxiliaryOperations.getProperPotentials(potentials);
+		List<Variable> resultVariables = AuxiliaryOperations.getUnionVariables(properPotentials);
+		long longResultSize = TablePotential.computeLongTableSize(resultVariables);
+		int resultSize = TablePotential.computeTableSize(resultVariables);
+		// the tables off the heap, the sparse ones and the diagrams are
+		// operated sequentially
+		if (properPotentials.isEmpty() || !isConcurrent(resultSize, properPotentials.size())
+				|| org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations
+						.requiresOffHeap(properPotentials, longResultSize, longResultSize)
+				|| org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations
+						.getSparsest(properPotentials) != null
+				|| ADDOperations.hasDiagrams(properPotentials)) {
+			return org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations.multiply(tablePotentials);
+		}
+		double constantFactor = org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations
+				.getConstantFactor(potentials);
+		PotentialRole role = org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations
+				.getRole(potentials);
+		double[] resultValues = TableArena.allocate(resultSize);
+		new Operation(properPotentials, resultVariables, constantFactor, 1, false, resultValues).invoke();
+		return new TablePotential(resultVariables, role, resultValues);
 	}
-	
-    public static TablePotential multiplyAndMarginalize (List<TablePotential> tablePotentials,
-                                                         List<Variable> fSVariablesToKeep,
-                                                         List<Variable> fSVariablesToEliminate)
-    		throws Exception {
-
-		// Sequential part
-		SharedDataMultiplyAndMarginalize sdm = 
-			new SharedDataMultiplyAndMarginalize(tablePotentials, 
-			fSVariablesToKeep, fSVariablesToEliminate);
-		sdm.initializeMultiplyAndMarginalize();
-
-		// Concurrent part
-		// Starts concurrency
-		Thread[] multipliers = new Thread[numLogicalProcessors];
-		DiscreteMultiplyAndMarginalize[] cdm = 
-			new DiscreteMultiplyAndMarginalize[numLogicalProcessors];
-		for (int i = 0; i < numLogicalProcessors; i++) {
-			cdm[i] = new DiscreteMultiplyAndMarginalize(sdm, i);
-			multipliers[i] = new Thread(cdm[i]);
-			multipliers[i].start();
+
+	/**
+	 * @param tablePotentials
+	 *            <code>List</code> of <code>TablePotential</code>
+	 * @param variablesToKeep
+	 *            The set of variables that will appear in the resulting
+	 *            potential
+	 * @param variablesToEliminate
+	 *            The set of variables eliminated by summing out
+	 * @argCondition variablesToKeep and variablesToEliminate are a partition of
+	 *               the union of the variables of the potential
+	 * @return The product of the potentials marginalized onto
+	 *         <code>variablesToKeep</code>, as in
+	 *         <code>operation.DiscretePotentialOperations.multiplyAndMarginalize</code>
+	 */
+	public static TablePotential multiplyAndMarginalize(List<TablePotential> tablePotentials,
+			List<Variable> variablesToKeep, List<Variable> variablesToEliminate) {
+		double constantFactor = 1.0;
+		List<TablePotential> nonConstantPotentials = new ArrayList<TablePotential>();
+		for (TablePotential potential : tablePotentials) {
+			if (potential.getNumVariables() != 0) {
+				nonConstantPotentials.add(potential);
+			} else {
+				constantFactor *= potential.getValue(potential.getInitialPosition());
+			}
+		}
+		int resultSize = TablePotential.computeTableSize(variablesToKeep);
+		int eliminationSize = TablePotential.computeTableSize(variablesToEliminate);
+		long longResultSize = TablePotential.computeLongTableSize(variablesToKeep);
+		if (nonConstantPotentials.isEmpty()
+				|| !isConcurrent((long) resultSize * eliminationSize, nonConstantPotentials.size())
+				|| org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations
+						.requiresOffHeap(nonConstantPotentials, longResultSize, longResultSize
+								* TablePotential.computeLongTableSize(variablesToEliminate))
+				|| org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations
+						.getSparsest(nonConstantPotentials) != null
+				|| ADDOperations.hasDiagrams(nonConstantPotentials)) {
+			return org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations
+					.multiplyAndMarginalize(tablePotentials, variablesToKeep, variablesToEliminate);
 		}
+		// the variables to eliminate vary faster, so each position of the
+		// result corresponds to a contiguous range of the union
+		List<Variable> unionVariables = new ArrayList<Variable>(variablesToEliminate);
+		unionVariables.addAll(variablesToKeep);
+		double[] resultValues = TableArena.allocate(resultSize);
+		new Operation(nonConstantPotentials, unionVariables, constantFactor, eliminationSize, false,
+				resultValues).invoke();
+		return new TablePotential(variablesToKeep,
+				org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations
+						.getRole(tablePotentials), resultValues);
+	}
 
-		// Synchronization. The current thread waits until all 
-		// concurrent operations finish
-		for (int i = 0; i < numLogicalProcessors; i++) {
-			try {
-				multipliers[i].join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+	/**
+	 * @param potentials
+	 *            <code>List</code> of <code>TablePotential</code>
+	 * @param variablesOfInterest
+	 *            Set of variables that must be kept (although this set may
+	 *            contain some variables that are not in any potential)
+	 * @return The product of the potentials marginalized onto the variables of
+	 *         interest
+	 */
+	public static TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
+			List<Variable> variablesOfInterest) {
+		List<Variable> variablesToKeep = new ArrayList<Variable>();
+		List<Variable> variablesToEliminate = new ArrayList<Variable>();
+		for (Variable variable : AuxiliaryOperations.getUnionVariables(potentials)) {
+			if (variablesOfInterest.contains(variable)) {
+				variablesToKeep.add(variable);
+			} else {
+				variablesToEliminate.add(variable);
 			}
 		}
+		return multiplyAndMarginalize(potentials, variablesToKeep, variablesToEliminate);
+	}
 
-		return sdm.result;
+	/**
+	 * @param potentials
+	 *            <code>List</code> of <code>TablePotential</code>
+	 * @param variableToEliminate
+	 *            <code>Variable</code>
+	 * @return The product of the potentials without
+	 *         <code>variableToEliminate</code>
+	 */
+	public static TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
+			Variable variableToEliminate) {
+		List<Variable> variablesToKeep = AuxiliaryOperations.getUnionVariables(potentials);
+		variablesToKeep.remove(variableToEliminate);
+		return multiplyAndMarginalize(potentials, variablesToKeep, Arrays.asList(variableToEliminate));
 	}
 
-	/** @param numeratorPotential <code>Potential</code>
-	 * @param denominatorPotential <code>Potential</code>
-	  * @return numeratorPotential / denominatorPotential 
-	  *   <code>TablePotential</code> 
-	 * @throws <code>Exception</code> */
-	public static TablePotential divide(Potential numeratorPotential, 
-			Potential denominatorPotential) throws Exception {
-		// Sequential part
-		SharedDataDivide sdd = new SharedDataDivide(numeratorPotential,
-			denominatorPotential);
-		sdd.initialize();
-
-		// Concurrent part
-		// Starts concurrency
-		Thread[] multipliers = new Thread[numLogicalProcessors];
-		DiscreteDivide[] cdd = 
-			new DiscreteDivide[numLogicalProcessors];
-		for (int i = 0; i < numLogicalProcessors; i++) {
-			cdd[i] = new DiscreteDivide(sdd, i);
-			multipliers[i] = new Thread(cdd[i]);
-			multipliers[i].start();
+	/**
+	 * @param numerator
+	 *            <code>Potential</code>
+	 * @param denominator
+	 *            <code>Potential</code>
+	 * @return The quotient, as in
+	 *         <code>operation.DiscretePotentialOperations.divide</code>
+	 */
+	public static TablePotential divide(Potential numerator, Potential denominator) {
+		TablePotential tNumerator = (TablePotential) numerator;
+		TablePotential tDenominator = (TablePotential) denominator;
+		List<Variable> quotientVariables = new ArrayList<Variable>(tNumerator.getVariables());
+		List<Variable> denominatorVariables = new ArrayList<Variable>(tDenominator.getVariables());
+		denominatorVariables.removeAll(quotientVariables);
+		quotientVariables.addAll(denominatorVariables);
+		int quotientSize = TablePotential.computeTableSize(quotientVariables);
+		if (tNumerator.getNumVariables() == 0 || tDenominator.getNumVariables() == 0
+				|| !isConcurrent(quotientSize, 2)) {
+			return org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations
+					.divide(numerator, denominator);
 		}
+		double[] quotientValues = TableArena.allocate(quotientSize);
+		new Operation(Arrays.asList(tNumerator, tDenominator), quotientVariables, 1.0, 1, true,
+				quotientValues).invoke();
+		return new TablePotential(quotientVariables, PotentialRole.JOINT_PROBABILITY, quotientValues);
+	}
+
+	/**
+	 * @param unionSize
+	 *            Number of configurations of the union of the variables
+	 * @param numPotentials
+	 *            Number of potentials operated
+	 * @return True when the operation is worth splitting
+	 */
+	private static boolean isConcurrent(long unionSize, int numPotentials) {
+		return pool.getParallelism() > 1 && unionSize * numPotentials >= threshold;
+	}
+
+	/**
+	 * Data shared by the tasks of an operation. Products are computed with
+	 * <code>TableKernels</code>; quotients traverse the configurations of the
+	 * union of the variables with the accumulated offsets algorithm. Every
+	 * <code>innerSize</code> consecutive configurations are summed into a
+	 * position of the result.
+	 */
+	private static final class Operation {
+
+		private final double[][] tables;
 
-		// Synchronization. The current thread waits until all 
-		// concurrent operations finish
-		for (int i = 0; i < numLogicalProcessors; i++) {
-			try {
-				multipliers[i].join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		/** Position in each table of the first configuration of the union. */
+		private final int[] initialPositions;
+
+		/** Offset in each table of each variable of the union. */
+		private final int[][] offsets;
+
+		private final int[][] accumulatedOffsets;
+
+		private final int[] dimensions;
+
+		private final double constantFactor;
+
+		private final int innerSize;
+
+		/** When true the first table is divided by the second one. */
+		private final boolean quotient;
+
+		private final double[] result;
+
+		/** Number of positions of the result computed by a task. */
+		private final int blockSize;
+
+		Operation(List<TablePotential> potentials, List<Variable> unionVariables,
+				double constantFactor, int innerSize, boolean quotient, double[] result) {
+			int numPotentials = potentials.size();
+			tables = new double[numPotentials][];
+			initialPositions = new int[numPotentials];
+			offsets = TableKernels.getOffsets(potentials, unionVariables);
+			accumulatedOffsets = new int[numPotentials][];
+			dimensions = TablePotential.calculateDimensions(unionVariables);
+			for (int i = 0; i < numPotentials; i++) {
+				TablePotential potential = potentials.get(i);
+				tables[i] = potential.values;
+				initialPositions[i] = potential.getInitialPosition();
+				accumulatedOffsets[i] = TablePotential.getAccumulatedOffsets(unionVariables,
+						potential.getVariables());
 			}
+			this.constantFactor = constantFactor;
+			this.innerSize = innerSize;
+			this.quotient = quotient;
+			this.result = result;
+			long unionSize = (long) result.length * innerSize;
+			long configurationsPerBlock = Math.max(MIN_BLOCK_SIZE,
+					unionSize / ((long) pool.getParallelism() * BLOCKS_PER_THREAD));
+			blockSize = (int) Math.max(1, configurationsPerBlock / innerSize);
 		}
 
-		return sdd.result;
-	}
-	
-	/** Calculates potentialPositions for each interval */
-	static void splitOperatorsPotentials(List<TablePotential> potentials,
-			TablePotential result, int[][] resultIntervals, 
-			int[][] potentialsPositions) {
-		
-		List<Variable> resultVariables = result.getVariables();
-		
-		int aux;
-		int numIntervals = org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations.numLogicalProcessors;
-
-		for (int i = 0; i < numIntervals; i++) {
-			for (int j = 0; j < potentials.size(); j++) {
-				TablePotential potential = potentials.get(j);
-				int[] offsetsPotential = potential.getOffsets();
-				List<Variable> potentialVariables = 
-					potential.getVariables();
-				aux = 0;
-				
-				// This is different for each operation (marginalization, etc)
-				for (int k = 0; k < potentialVariables.size(); k++) {
-					Variable variable = potentialVariables.get(k);
-					// gets the variable coordinate value in the 
-					// potentialPosition
-					int indexResult = resultVariables.indexOf(variable);
-					int valueResult = resultIntervals[i][indexResult];
-					aux += offsetsPotential[k] * valueResult;
+		/** Computes the whole result in the shared pool. */
+		void invoke() {
+			pool.invoke(new Block(this, 0, result.length));
+		}
+
+		/**
+		 * @param from
+		 *            First position of the result, inclusive
+		 * @param to
+		 *            Last position of the result, exclusive
+		 */
+		void compute(int from, int to) {
+			if (!quotient) {
+				TableKernels.multiplyAndSum(tables, initialPositions, offsets, dimensions,
+						constantFactor, innerSize, result, from, to);
+				return;
+			}
+			int numPotentials = tables.length;
+			int numVariables = dimensions.length;
+			// coordinate and table positions of the first configuration
+			int[] coordinate = new int[numVariables];
+			int[] positions = initialPositions.clone();
+			int remainder = from * innerSize;
+			for (int j = 0; j < numVariables; j++) {
+				coordinate[j] = remainder % dimensions[j];
+				remainder /= dimensions[j];
+				for (int i = 0; i < numPotentials; i++) {
+					positions[i] += coordinate[j] * offsets[i][j];
+				}
+			}
+			int increasedVariable = 0;
+			for (int resultPosition = from; resultPosition < to; resultPosition++) {
+				double accumulator = 0.0;
+				for (int innerIteration = 0; innerIteration < innerSize; innerIteration++) {
+					double denominator = tables[1][positions[1]];
+					accumulator += denominator == 0.0 ? 0.0 : tables[0][positions[0]] / denominator;
+					// find the next configuration and the index of the
+					// increased variable
+					for (int j = 0; j < numVariables; j++) {
+						coordinate[j]++;
+						if (coordinate[j] < dimensions[j]) {
+							increasedVariable = j;
+							break;
+						}
+						coordinate[j] = 0;
+					}
+					for (int i = 0; i < numPotentials; i++) {
+						positions[i] += accumulatedOffsets[i][increasedVariable];
+					}
 				}
-				potentialsPositions[i][j] = aux;	
+				result[resultPosition] = accumulator;
 			}
 		}
 	}
 
-	/** Divides an operation in <code>numLogicalProcessors</code> parts by 
-	 *   computing the following arrays <code>resultIntervals</code>, 
-	 *   <code>lengthResultIntervals</code> and 
-	 *   <code>variableToIncrement</code>. */
-	static void splitResultPotential(
-			TablePotential result, int[][] resultIntervals,
-			int[] lengthResultIntervals, int[] resultPositionIntervals) {
-		int[] offsetsResult = result.getOffsets();
-		int[] dimensions = result.getDimensions();
-		int numIntervals = org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations.numLogicalProcessors;
-		int numResultVariables = offsetsResult.length;
-		int lastVariable = numResultVariables - 1;
-		int resultSize = 
-			offsetsResult[lastVariable] * dimensions[lastVariable];
-		
-		int intervalLength = resultSize / numIntervals;
-		
-		int remainderConfigurations = resultSize % numIntervals;
-		
-		// Calculate length of each interval
-		resultPositionIntervals[0] = 0; 
-		for (int i = 0; i < numIntervals; i++) {
-			lengthResultIntervals[i] = intervalLength;
-			if (i < remainderConfigurations) {
-				lengthResultIntervals[i]++;
-			}
-			if (i > 0) {
-				resultPositionIntervals[i] = resultPositionIntervals[i - 1] +
-					lengthResultIntervals[i];
-			}
+	/** Task that computes a range of positions of the result. */
+	@SuppressWarnings("serial")
+	private static final class Block extends RecursiveAction {
+
+		private final Operation operation;
+
+		private final int from;
+
+		private final int to;
+
+		Block(Operation operation, int from, int to) {
+			this.operation = operation;
+			this.from = from;
+			this.to = to;
 		}
-		
-		int actualPosition = 0;
-		// Calculate intervals
-		// First configuration starts with (0,0,...,0).  
-		int i;
-		for (i = 1; i <numIntervals; i++) {
-			actualPosition += lengthResultIntervals[i-1];
-			int remainder = actualPosition;
-			for (int j = lastVariable; j >=0; j--) {
-				resultIntervals[i][j] = remainder / offsetsResult[j];
-				remainder = remainder % offsetsResult[j];
+
+		@Override
+		protected void compute() {
+			if (to - from <= operation.blockSize) {
+				operation.compute(from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Block(operation, from, middle), new Block(operation, middle, to));
 			}
 		}
 	}
-	
+
 }
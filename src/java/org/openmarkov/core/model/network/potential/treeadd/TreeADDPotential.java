@@ -25,11 +25,14 @@ import org.openmarkov.core.model.network.State;
 import org.openmarkov.core.model.network.Variable;
 import org.openmarkov.core.model.network.VariableType;
 import org.openmarkov.core.model.network.modelUncertainty.UncertainValue;
+import org.openmarkov.core.model.network.potential.ADDNode;
+import org.openmarkov.core.model.network.potential.ADDPotential;
 import org.openmarkov.core.model.network.potential.Potential;
 import org.openmarkov.core.model.network.potential.PotentialRole;
 import org.openmarkov.core.model.network.potential.PotentialType;
 import org.openmarkov.core.model.network.potential.TablePotential;
 import org.openmarkov.core.model.network.potential.UniformPotential;
+import org.openmarkov.core.model.network.potential.operation.ADDOperations;
 import org.openmarkov.core.model.network.potential.operation.AuxiliaryOperations;
 import org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations;
 import org.openmarkov.core.model.network.potential.plugin.RelationPotentialType;
@@ -269,7 +272,12 @@ public class TreeADDPotential extends Potential {
 						inferenceOptions, projectedPotentials);
 				potentialsToBlend.put(branch, tablePotentials.get(0));
 			}
-			projected = blendPotentials(topVariable, potentialsToBlend, evidenceCase);
+			if (inferenceOptions != null && inferenceOptions.decisionDiagrams
+					&& !hasUncertainty(potentialsToBlend.values())) {
+				projected = toDecisionDiagram(topVariable, potentialsToBlend, evidenceCase);
+			} else {
+				projected = blendPotentials(topVariable, potentialsToBlend, evidenceCase);
+			}
 		} else {
 			// if there is no evidence for the numerical topVariable it is not
 			// possible to project the tree
@@ -487,6 +495,56 @@ public class TreeADDPotential extends Potential {
 		return newFindings;
 	}
 
+	/**
+	 * Builds the projection as a decision diagram instead of expanding the
+	 * table, as <code>blendPotentials</code> does: the diagram of the branch
+	 * of each state of <code>topVariable</code> is placed under that state.
+	 * The branches that are trees have already been projected as diagrams.
+	 * The diagram is not expanded: its size is bounded by that of the tree.
+	 * @return An <code>ADDPotential</code>
+	 */
+	private TablePotential toDecisionDiagram(Variable topVariable,
+			Map<TreeADDBranch, TablePotential> branchPotentials, EvidenceCase evidence) {
+		List<TablePotential> potentials = new ArrayList<>();
+		ADDNode[] children = new ADDNode[topVariable.getNumStates()];
+		for (TreeADDBranch branch : branchPotentials.keySet()) {
+			TablePotential branchPotential = branchPotentials.get(branch);
+			potentials.add(branchPotential);
+			ADDNode diagram = ADDPotential.toDiagram(branchPotential);
+			for (State branchState : branch.getBranchStates()) {
+				children[topVariable.getStateIndex(branchState)] = diagram;
+			}
+		}
+		// as in blendPotentials, the states without branch take the first one
+		for (int i = 0; i < children.length; i++) {
+			if (children[i] == null) {
+				children[i] = ADDPotential.toDiagram(potentials.get(0));
+			}
+		}
+		List<Variable> resultVariables = AuxiliaryOperations.getUnionVariables(potentials);
+		ADDNode root;
+		if (evidence != null && evidence.contains(topVariable)) {
+			root = children[evidence.getFinding(topVariable).getStateIndex()];
+		} else {
+			root = ADDOperations.branch(topVariable, children);
+			if (!resultVariables.contains(topVariable)) {
+				resultVariables.add(resultVariables.indexOf(getConditionedVariable()) + 1,
+						topVariable);
+			}
+		}
+		return new ADDPotential(resultVariables, potentials.get(0).getPotentialRole(), root);
+	}
+
+	/** @return True when some potential has uncertain values */
+	private static boolean hasUncertainty(Collection<TablePotential> potentials) {
+		for (TablePotential potential : potentials) {
+			if (potential.uncertainValues != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private TablePotential blendPotentials(Variable topVariable,
 			Map<TreeADDBranch, TablePotential> branchPotentials, EvidenceCase evidence) {
 		List<TablePotential> potentials = new ArrayList<>();
@@ -9,16 +9,20 @@
 package org.openmarkov.dbgenerator;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
 import java.util.Stack;
 
+import org.openmarkov.core.exception.NonProjectablePotentialException;
+import org.openmarkov.core.exception.WrongCriterionException;
+import org.openmarkov.core.inference.SamplingPlan;
 import org.openmarkov.core.io.database.CaseDatabase;
 import org.openmarkov.core.model.graph.Graph;
 import org.openmarkov.core.model.graph.Node;
+import org.openmarkov.core.model.network.EvidenceCase;
 import org.openmarkov.core.model.network.ProbNet;
 import org.openmarkov.core.model.network.ProbNode;
-import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.Potential;
 
 public class DBGenerator {
 	
@@ -28,20 +32,32 @@ public class DBGenerator {
 	 * @param numberOfCases
 	 */
 	public CaseDatabase generate(ProbNet probNet, int numberOfCases)
+		throws NonProjectablePotentialException, WrongCriterionException
 	{
 		int[][] cases = new int[numberOfCases][probNet.getProbNodes().size()];
 		Random randomGenerator = new Random();
 		ArrayList<Integer> sortedNodeIndexes = sortNodesTopologically (probNet);
+		List<Potential> potentialsToSample = new ArrayList<Potential>();
+		for(int j=0; j < sortedNodeIndexes.size(); ++j)
+		{
+			ProbNode node = probNet.getProbNodes().get(sortedNodeIndexes.get(j));
+			potentialsToSample.add(node.getPotentials().get(0));
+		}
+		SamplingPlan plan = new SamplingPlan(potentialsToSample, new ArrayList<Potential>(),
+				new EvidenceCase());
+		int[] ids = new int[sortedNodeIndexes.size()];
+		for(int j=0; j < sortedNodeIndexes.size(); ++j)
+		{
+			ids[j] = plan.getId(probNet.getProbNodes().get(sortedNodeIndexes.get(j)).getVariable());
+		}
+		int[] configuration = plan.createConfiguration();
+		double[] utilities = plan.createUtilities();
 		for(int i=0; i <numberOfCases; ++i )
 		{
-			HashMap<Variable, Integer> sampledStateIndexes = new HashMap<Variable, Integer>();
-			
+			plan.sample(randomGenerator, configuration, utilities);
 			for(int j=0; j < sortedNodeIndexes.size(); ++j)
 			{
-				ProbNode node = probNet.getProbNodes().get(sortedNodeIndexes.get(j));
-				int sampledIndex = node.getPotentials().get(0).sample(randomGenerator, sampledStateIndexes);
-				sampledStateIndexes.put(node.getVariable(), sampledIndex);
-				cases[i][sortedNodeIndexes.get(j)] = sampledIndex;
+				cases[i][sortedNodeIndexes.get(j)] = configuration[ids[j]];
 			}
 		}
 		return new CaseDatabase(probNet.getVariables (), cases);
@@ -0,0 +1,380 @@
+/*
+* Copyright 2012 CISIAD, UNED, Spain
+*
+* Licensed under the European Union Public Licence, version 1.1 (EUPL)
+*
+* Unless required by applicable law, this code is distributed
+* on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+*/
+package org.openmarkov.dbgenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.openmarkov.core.exception.NodeNotFoundException;
+import org.openmarkov.core.exception.WriterException;
+import org.openmarkov.core.model.network.NodeType;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.TablePotential;
+import org.openmarkov.core.model.network.type.BayesianNetworkType;
+import org.openmarkov.core.model.network.type.InfluenceDiagramType;
+import org.openmarkov.io.probmodel.PGMXWriter;
+
+/**
+ * Generates random Bayesian networks and influence diagrams for scaling
+ * tests. The structure is a random partial k-tree, with k the bound on the
+ * induced width: each node takes its parents from a k-clique of the k-tree
+ * built so far, so the moral graph has a treewidth not greater than k and
+ * the cost of exact inference can be controlled independently of the
+ * number of nodes. The network is the same for the same parameters and
+ * seed. Usage:
+ * <pre>
+ * java -cp OpenMarkov.jar org.openmarkov.dbgenerator.NetworkGenerator network.pgmx
+ *      [-nodes n] [-maxParents n] [-width k] [-states 2,3...] [-statesProbabilities p,q...]
+ *      [-sparsity f] [-decisions n] [-utilities n] [-seed n]
+ * </pre>
+ *
+ * @author agent
+ */
+public class NetworkGenerator {
+
+	// Attributes
+	/** Total number of nodes, including decisions and utilities. */
+	private int numNodes = 20;
+
+	private int maxParents = 3;
+
+	private int maxInducedWidth = 4;
+
+	private int[] numStates = {2, 3};
+
+	private double[] numStatesProbabilities = {0.5, 0.5};
+
+	/** Probability of each value of a conditional probability table being 0. */
+	private double sparsity = 0.0;
+
+	private int numDecisions = 0;
+
+	private int numUtilities = 0;
+
+	// Methods
+	public static void main(String[] args) throws WriterException {
+		if (args.length == 0) {
+			throw new IllegalArgumentException("No output file received");
+		}
+		NetworkGenerator generator = new NetworkGenerator();
+		long seed = 0;
+		for (int i = 1; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-nodes")) {
+				generator.setNumNodes(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-maxParents")) {
+				generator.setMaxParents(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-width")) {
+				generator.setMaxInducedWidth(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-states")) {
+				String[] values = args[++i].split(",");
+				int[] numStates = new int[values.length];
+				double[] probabilities = new double[values.length];
+				for (int j = 0; j < values.length; j++) {
+					numStates[j] = Integer.parseInt(values[j]);
+					probabilities[j] = 1.0 / values.length;
+				}
+				generator.setNumStates(numStates, probabilities);
+			} else if (arg.equals("-statesProbabilities")) {
+				String[] values = args[++i].split(",");
+				double[] probabilities = new double[values.length];
+				for (int j = 0; j < values.length; j++) {
+					probabilities[j] = Double.parseDouble(values[j]);
+				}
+				generator.setNumStates(generator.numStates, probabilities);
+			} else if (arg.equals("-sparsity")) {
+				generator.setSparsity(Double.parseDouble(args[++i]));
+			} else if (arg.equals("-decisions")) {
+				generator.setNumDecisions(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-utilities")) {
+				generator.setNumUtilities(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		generator.generate(args[0], seed);
+	}
+
+	/**
+	 * Generates a network and writes it in ProbModelXML format.
+	 * @param netName path of the file
+	 * @param seed
+	 * @return The network written
+	 * @throws WriterException
+	 */
+	public ProbNet generate(String netName, long seed) throws WriterException {
+		ProbNet probNet = generate(seed);
+		new PGMXWriter().writeProbNet(netName, probNet);
+		return probNet;
+	}
+
+	/**
+	 * Generates a network: an influence diagram if it has decisions or
+	 * utilities, and a Bayesian network otherwise. The chance and decision
+	 * nodes are created in topological order, with the decisions evenly
+	 * spread and linked in a chain, so that they are totally ordered, and the
+	 * utility nodes at the end. The chance nodes are named X0, X1..., the
+	 * decisions D0, D1... and the utility nodes U0, U1...
+	 * @param seed
+	 * @return The network
+	 */
+	public ProbNet generate(long seed) {
+		int numChanceAndDecisionNodes = numNodes - numUtilities;
+		if (numChanceAndDecisionNodes <= numDecisions) {
+			throw new IllegalArgumentException("The network must have chance nodes: " + numNodes
+					+ " nodes, " + numDecisions + " decisions and " + numUtilities + " utilities");
+		}
+		if (maxInducedWidth == 0 && (numDecisions > 1 || numUtilities > 0)) {
+			throw new IllegalArgumentException(
+					"Decisions and utilities need an induced width of at least 1");
+		}
+		Random random = new Random(seed);
+		boolean influenceDiagram = numDecisions > 0 || numUtilities > 0;
+		ProbNet probNet = new ProbNet(influenceDiagram ? InfluenceDiagramType.getUniqueInstance()
+				: BayesianNetworkType.getUniqueInstance());
+		List<Integer> decisionPositions = new ArrayList<Integer>();
+		for (int i = 0; i < numDecisions; i++) {
+			decisionPositions.add((int) ((long) (i + 1) * numChanceAndDecisionNodes / (numDecisions + 1)));
+		}
+		List<Variable> variables = new ArrayList<Variable>();
+		// (k + 1)-cliques of the k-tree, as indexes in variables
+		List<List<Integer>> cliques = new ArrayList<List<Integer>>();
+		int previousDecision = -1;
+		for (int i = 0; i < numChanceAndDecisionNodes; i++) {
+			boolean decision = decisionPositions.contains(i);
+			Variable variable = new Variable((decision ? "D" + probNet.getNumNodes(NodeType.DECISION)
+					: "X" + probNet.getNumNodes(NodeType.CHANCE)), drawNumStates(random));
+			probNet.addProbNode(variable, decision ? NodeType.DECISION : NodeType.CHANCE);
+			List<Integer> candidates;
+			if (i <= maxInducedWidth) {
+				candidates = new ArrayList<Integer>();
+				for (int j = 0; j < i; j++) {
+					candidates.add(j);
+				}
+			} else {
+				candidates = drawKClique(cliques, decision ? previousDecision : -1, random);
+				List<Integer> clique = new ArrayList<Integer>(candidates);
+				clique.add(i);
+				cliques.add(clique);
+			}
+			if (i == Math.min(maxInducedWidth, numChanceAndDecisionNodes - 1)) {
+				List<Integer> clique = new ArrayList<Integer>(candidates);
+				clique.add(i);
+				cliques.add(clique);
+			}
+			List<Variable> parents = drawParents(variables, candidates,
+					decision ? previousDecision : -1, random);
+			variables.add(variable);
+			addLinks(probNet, parents, variable);
+			if (decision) {
+				previousDecision = i;
+			} else {
+				List<Variable> potentialVariables = new ArrayList<Variable>();
+				potentialVariables.add(variable);
+				potentialVariables.addAll(parents);
+				probNet.addPotential(createConditionalProbability(potentialVariables, random));
+			}
+		}
+		for (int i = 0; i < numUtilities; i++) {
+			Variable variable = new Variable("U" + i);
+			probNet.addProbNode(variable, NodeType.UTILITY);
+			List<Integer> candidates = drawKClique(cliques, -1, random);
+			List<Variable> parents = drawParents(variables, candidates, -1, random);
+			addLinks(probNet, parents, variable);
+			TablePotential utility = new TablePotential(parents, PotentialRole.UTILITY);
+			for (int j = 0; j < utility.values.length; j++) {
+				utility.values[j] = 100.0 * random.nextDouble();
+			}
+			utility.setUtilityVariable(variable);
+			probNet.addPotential(utility);
+		}
+		return probNet;
+	}
+
+	/**
+	 * @return A k-clique of the k-tree: a random (k + 1)-clique without one
+	 *         of its nodes, which is not <code>requiredNode</code>. If
+	 *         <code>requiredNode</code> is not -1, the clique contains it.
+	 */
+	private List<Integer> drawKClique(List<List<Integer>> cliques, int requiredNode, Random random) {
+		List<List<Integer>> candidateCliques = cliques;
+		if (requiredNode != -1) {
+			candidateCliques = new ArrayList<List<Integer>>();
+			for (List<Integer> clique : cliques) {
+				if (clique.contains(requiredNode)) {
+					candidateCliques.add(clique);
+				}
+			}
+		}
+		List<Integer> kClique = new ArrayList<Integer>(candidateCliques.get(random
+				.nextInt(candidateCliques.size())));
+		int removed;
+		do {
+			removed = random.nextInt(kClique.size());
+		} while (kClique.get(removed) == requiredNode);
+		kClique.remove(removed);
+		return kClique;
+	}
+
+	/**
+	 * @return Between 1 and <code>maxParents</code> random variables among
+	 *         the candidates, or none if there are no candidates. If
+	 *         <code>requiredParent</code> is not -1, it is always included.
+	 */
+	private List<Variable> drawParents(List<Variable> variables, List<Integer> candidates,
+			int requiredParent, Random random) {
+		List<Integer> shuffled = new ArrayList<Integer>(candidates);
+		Collections.shuffle(shuffled, random);
+		if (requiredParent != -1) {
+			shuffled.remove(Integer.valueOf(requiredParent));
+			shuffled.add(0, requiredParent);
+		}
+		int maxNumParents = Math.min(maxParents, shuffled.size());
+		int numParents = maxNumParents == 0 ? 0 : 1 + random.nextInt(maxNumParents);
+		if (requiredParent != -1) {
+			numParents = Math.max(numParents, 1);
+		}
+		List<Variable> parents = new ArrayList<Variable>();
+		for (int index : shuffled.subList(0, numParents)) {
+			parents.add(variables.get(index));
+		}
+		return parents;
+	}
+
+	private static void addLinks(ProbNet probNet, List<Variable> parents, Variable child) {
+		for (Variable parent : parents) {
+			try {
+				probNet.addLink(parent, child, true);
+			} catch (NodeNotFoundException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * @param variables the conditioned variable followed by its parents
+	 * @return A conditional probability table in which each value is 0 with
+	 *         probability <code>sparsity</code>, except that each distribution
+	 *         keeps at least one positive value
+	 */
+	private TablePotential createConditionalProbability(List<Variable> variables, Random random) {
+		TablePotential potential = new TablePotential(variables,
+				PotentialRole.CONDITIONAL_PROBABILITY);
+		int numStates = variables.get(0).getNumStates();
+		for (int column = 0; column < potential.values.length; column += numStates) {
+			double sum = 0.0;
+			for (int i = column; i < column + numStates; i++) {
+				double value = random.nextDouble() < sparsity ? 0.0 : random.nextDouble();
+				potential.values[i] = value;
+				sum += value;
+			}
+			if (sum == 0.0) {
+				int i = column + random.nextInt(numStates);
+				potential.values[i] = 1.0;
+				sum = 1.0;
+			}
+			for (int i = column; i < column + numStates; i++) {
+				potential.values[i] /= sum;
+			}
+		}
+		return potential;
+	}
+
+	private int drawNumStates(Random random) {
+		double value = random.nextDouble();
+		double accumulated = 0.0;
+		for (int i = 0; i < numStates.length - 1; i++) {
+			accumulated += numStatesProbabilities[i];
+			if (value < accumulated) {
+				return numStates[i];
+			}
+		}
+		return numStates[numStates.length - 1];
+	}
+
+	/** @param numNodes total number of nodes, including decisions and utilities */
+	public void setNumNodes(int numNodes) {
+		if (numNodes < 1) {
+			throw new IllegalArgumentException("The number of nodes must be positive: " + numNodes);
+		}
+		this.numNodes = numNodes;
+	}
+
+	/** @param maxParents maximum number of parents of a node */
+	public void setMaxParents(int maxParents) {
+		if (maxParents < 0) {
+			throw new IllegalArgumentException("Negative number of parents: " + maxParents);
+		}
+		this.maxParents = maxParents;
+	}
+
+	/**
+	 * @param maxInducedWidth bound on the treewidth of the moral graph. As
+	 *            the parents of a node belong to a clique of this size, it
+	 *            also bounds the number of parents.
+	 */
+	public void setMaxInducedWidth(int maxInducedWidth) {
+		if (maxInducedWidth < 0) {
+			throw new IllegalArgumentException("Negative induced width: " + maxInducedWidth);
+		}
+		this.maxInducedWidth = maxInducedWidth;
+	}
+
+	/**
+	 * @param numStates numbers of states of the chance and decision variables
+	 * @param probabilities probability of each number of states
+	 */
+	public void setNumStates(int[] numStates, double[] probabilities) {
+		if (numStates.length == 0 || numStates.length != probabilities.length) {
+			throw new IllegalArgumentException("There must be a probability for each number of states");
+		}
+		double sum = 0.0;
+		for (int i = 0; i < numStates.length; i++) {
+			if (numStates[i] < 2 || probabilities[i] < 0.0) {
+				throw new IllegalArgumentException("Wrong number of states " + numStates[i]
+						+ " or probability " + probabilities[i]);
+			}
+			sum += probabilities[i];
+		}
+		this.numStates = numStates.clone();
+		this.numStatesProbabilities = new double[probabilities.length];
+		for (int i = 0; i < probabilities.length; i++) {
+			numStatesProbabilities[i] = probabilities[i] / sum;
+		}
+	}
+
+	/** @param sparsity fraction of zeros in the conditional probability tables */
+	public void setSparsity(double sparsity) {
+		if (sparsity < 0.0 || sparsity > 1.0) {
+			throw new IllegalArgumentException("The sparsity must be between 0 and 1: " + sparsity);
+		}
+		this.sparsity = sparsity;
+	}
+
+	public void setNumDecisions(int numDecisions) {
+		if (numDecisions < 0) {
+			throw new IllegalArgumentException("Negative number of decisions: " + numDecisions);
+		}
+		this.numDecisions = numDecisions;
+	}
+
+	public void setNumUtilities(int numUtilities) {
+		if (numUtilities < 0) {
+			throw new IllegalArgumentException("Negative number of utilities: " + numUtilities);
+		}
+		this.numUtilities = numUtilities;
+	}
+
+}
@@ -16,6 +16,8 @@ import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
 import org.apache.commons.io.FilenameUtils;
+import org.openmarkov.core.exception.NonProjectablePotentialException;
+import org.openmarkov.core.exception.WrongCriterionException;
 import org.openmarkov.core.gui.dialog.io.DBWriterFileChooser;
 import org.openmarkov.core.gui.dialog.io.FileFilterBasic;
 import org.openmarkov.core.gui.dialog.io.NetsIO;
@@ -299,7 +301,18 @@ public class DBGeneratorGUI extends javax.swing.JDialog
     private void generateButtonActionPerformed (java.awt.event.ActionEvent evt)
     {// GEN-FIRST:event_EvaluateButtonActionPerformed
         DBGenerator dbGenerator = new DBGenerator ();
-        CaseDatabase database = dbGenerator.generate (net, ((Integer) caseNumber.getValue ()));
+        CaseDatabase database;
+        try
+        {
+            database = dbGenerator.generate (net, ((Integer) caseNumber.getValue ()));
+        }
+        catch (NonProjectablePotentialException | WrongCriterionException e)
+        {
+            JOptionPane.showMessageDialog (null, stringDatabase.getString ("DBGenerator.Error"),
+                                           stringDatabase.getString ("ErrorWindow.Title.Label"),
+                                           JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         String databasePath = null;
         try
         {
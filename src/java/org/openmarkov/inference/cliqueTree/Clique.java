@@ -0,0 +1,217 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.inference.cliqueTree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.TablePotential;
+
+/**
+ * Node of a <code>CliqueTree</code>. It stores the potentials assigned to the
+ * clique, the evidence potentials of the variables whose home is this clique
+ * and the messages received from its neighbors (Shenoy-Shafer architecture).
+ *
+ * @author agent
+ */
+public class Clique {
+
+	// Attributes
+	private List<Variable> variables;
+
+	/** Potentials of the network assigned to this clique. */
+	private List<TablePotential> potentials;
+
+	/** Indicator potentials of the findings whose home is this clique. */
+	private HashMap<Variable, TablePotential> evidencePotentials;
+
+	private List<Clique> neighbors;
+
+	/**
+	 * Messages valid for the current evidence. Key = sender clique. A
+	 * <code>null</code> value means a unity message.
+	 */
+	private HashMap<Clique, TablePotential> messages;
+
+	/**
+	 * Logarithm of the factor by which each message was scaled, including the
+	 * factors of the messages it was computed from. Key = sender clique.
+	 */
+	private HashMap<Clique, Double> messageLogScales;
+
+	/** Product of the factors and the incoming messages. Cached. */
+	private TablePotential belief;
+
+	// Constructor
+	/** @param variables <code>List</code> of <code>Variable</code> */
+	public Clique(List<Variable> variables) {
+		this.variables = variables;
+		potentials = new ArrayList<TablePotential>();
+		evidencePotentials = new HashMap<Variable, TablePotential>();
+		neighbors = new ArrayList<Clique>();
+		messages = new HashMap<Clique, TablePotential>();
+		messageLogScales = new HashMap<Clique, Double>();
+	}
+
+	/**
+	 * @param clique
+	 *            <code>Clique</code> whose variables and potentials are
+	 *            shared, not copied. Neither the neighbors nor the evidence
+	 *            and the messages are copied.
+	 */
+	Clique(Clique clique) {
+		this(clique.variables);
+		potentials.addAll(clique.potentials);
+	}
+
+	// Methods
+	/** @return The variables of this clique */
+	public List<Variable> getVariables() {
+		return variables;
+	}
+
+	/** @return The potentials assigned to this clique */
+	public List<TablePotential> getPotentials() {
+		return potentials;
+	}
+
+	/** @return The cliques linked to this one */
+	public List<Clique> getNeighbors() {
+		return neighbors;
+	}
+
+	/** @return Product of the number of states of the variables. */
+	public double getTableSize() {
+		double tableSize = 1.0;
+		for (Variable variable : variables) {
+			tableSize *= variable.getNumStates();
+		}
+		return tableSize;
+	}
+
+	/**
+	 * @param neighbor
+	 *            <code>Clique</code>
+	 * @return The variables shared with <code>neighbor</code>
+	 */
+	public List<Variable> getSeparator(Clique neighbor) {
+		List<Variable> separator = new ArrayList<Variable>(variables);
+		separator.retainAll(neighbor.variables);
+		return separator;
+	}
+
+	/**
+	 * @param excluded
+	 *            Neighbor whose message is not included. It may be
+	 *            <code>null</code>
+	 * @return The potentials, evidence potentials and messages received from
+	 *         the neighbors other than <code>excluded</code>.
+	 */
+	public List<TablePotential> getFactors(Clique excluded) {
+		List<TablePotential> factors = new ArrayList<TablePotential>(potentials);
+		factors.addAll(evidencePotentials.values());
+		for (Clique neighbor : neighbors) {
+			if (neighbor != excluded) {
+				TablePotential message = messages.get(neighbor);
+				if (message != null) {
+					factors.add(message);
+				}
+			}
+		}
+		return factors;
+	}
+
+	/** @return The cached belief, or <code>null</code> if not computed */
+	TablePotential getBelief() {
+		return belief;
+	}
+
+	void setBelief(TablePotential belief) {
+		this.belief = belief;
+	}
+
+	TablePotential getMessage(Clique sender) {
+		return messages.get(sender);
+	}
+
+	void setMessage(Clique sender, TablePotential message, double logScale) {
+		messages.put(sender, message);
+		messageLogScales.put(sender, logScale);
+		belief = null;
+	}
+
+	/**
+	 * @param excluded
+	 *            Neighbor whose message is not included. It may be
+	 *            <code>null</code>
+	 * @return Sum of the logarithms of the scale factors of the messages
+	 *         received from the neighbors other than <code>excluded</code>.
+	 */
+	double getLogScale(Clique excluded) {
+		double logScale = 0.0;
+		for (Clique neighbor : neighbors) {
+			if (neighbor != excluded) {
+				Double messageLogScale = messageLogScales.get(neighbor);
+				if (messageLogScale != null) {
+					logScale += messageLogScale;
+				}
+			}
+		}
+		return logScale;
+	}
+
+	/** @return True if the message from <code>sender</code> is up to date */
+	boolean hasMessage(Clique sender) {
+		return messages.containsKey(sender);
+	}
+
+	/** @return True if the message was up to date */
+	boolean removeMessage(Clique sender) {
+		boolean hadMessage = messages.containsKey(sender);
+		messages.remove(sender);
+		messageLogScales.remove(sender);
+		belief = null;
+		return hadMessage;
+	}
+
+	void setEvidencePotential(Variable variable, TablePotential evidencePotential) {
+		if (evidencePotential == null) {
+			evidencePotentials.remove(variable);
+		} else {
+			evidencePotentials.put(variable, evidencePotential);
+		}
+		belief = null;
+	}
+
+	/** Adds the potentials and the neighbors of <code>clique</code> to this one. */
+	void absorb(Clique clique) {
+		potentials.addAll(clique.potentials);
+		neighbors.remove(clique);
+		for (Clique neighbor : clique.neighbors) {
+			if (neighbor != this) {
+				int index = neighbor.neighbors.indexOf(clique);
+				neighbor.neighbors.set(index, this);
+				neighbors.add(neighbor);
+			}
+		}
+	}
+
+	void addNeighbor(Clique neighbor) {
+		neighbors.add(neighbor);
+		neighbor.neighbors.add(this);
+	}
+
+	public String toString() {
+		return variables.toString();
+	}
+
+}
@@ -0,0 +1,802 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.inference.cliqueTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.openmarkov.core.exception.DoEditException;
+import org.openmarkov.core.exception.IncompatibleEvidenceException;
+import org.openmarkov.core.exception.NonProjectablePotentialException;
+import org.openmarkov.core.exception.NormalizeNullVectorException;
+import org.openmarkov.core.exception.WrongCriterionException;
+import org.openmarkov.core.inference.heuristic.EliminationHeuristic;
+import org.openmarkov.core.model.graph.Node;
+import org.openmarkov.core.model.network.EvidenceCase;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.ProbNode;
+import org.openmarkov.core.model.network.UtilMarkovNet;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.Potential;
+import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.SparseTablePotential;
+import org.openmarkov.core.model.network.potential.TablePotential;
+import org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations;
+import org.openmarkov.core.model.network.potential.operation.TableArena;
+import org.openmarkov.inference.cliqueTree.action.EliminateNodeEdit;
+import org.openmarkov.inference.heuristic.minimalFillIn.IncrementalMinimalFillIn;
+
+/**
+ * Clique tree (junction tree) built from a list of <code>TablePotential</code>s.
+ * The tree is obtained by triangulating the Markov network of the potentials
+ * with an <code>EliminationHeuristic</code>: each elimination creates a
+ * cluster that is linked to the cluster of the first of its neighbors
+ * eliminated afterwards, and the non-maximal clusters are absorbed by their
+ * neighbors. Findings are entered as indicator potentials in the smallest
+ * clique that contains the variable. After <code>propagate</code> (collect and
+ * distribute) the marginal of every variable can be read from its clique.
+ *
+ * @author agent
+ */
+public class CliqueTree {
+
+	// Attributes
+	private List<Clique> cliques;
+
+	/** Smallest clique containing each variable. */
+	private HashMap<Variable, Clique> homeCliques;
+
+	/** Findings entered in the tree. */
+	private EvidenceCase evidence;
+
+	/** Logarithm of the product of the constant potentials. */
+	private double logConstantFactor;
+
+	/** When true the potentials are operated in the shared fork/join pool. */
+	private boolean concurrentPotentialOperations;
+
+	/** When true the beliefs of the cliques are stored in single precision. */
+	private boolean singlePrecision;
+
+	/** Heuristic that chooses the elimination order of the triangulation. */
+	private Class<? extends EliminationHeuristic> heuristicClass;
+
+	private Logger logger;
+
+	// Constructors
+	/**
+	 * Triangulates the Markov network with <code>IncrementalMinimalFillIn</code>.
+	 *
+	 * @param potentials
+	 *            <code>List</code> of <code>TablePotential</code>. Constant
+	 *            potentials only contribute to the probability of the
+	 *            evidence. Those whose density is below
+	 *            <code>SparseTablePotential.getDensityThreshold()</code> are
+	 *            replaced by sparse copies.
+	 */
+	public CliqueTree(List<TablePotential> potentials) {
+		this(potentials, IncrementalMinimalFillIn.class);
+	}
+
+	/**
+	 * @param potentials
+	 *            <code>List</code> of <code>TablePotential</code>, as in the
+	 *            other constructor
+	 * @param heuristicClass
+	 *            Class of the <code>EliminationHeuristic</code> that chooses
+	 *            the elimination order used to triangulate the Markov network
+	 */
+	public CliqueTree(List<TablePotential> potentials,
+			Class<? extends EliminationHeuristic> heuristicClass) {
+		this.heuristicClass = heuristicClass;
+		logger = Logger.getLogger(CliqueTree.class);
+		evidence = new EvidenceCase();
+		logConstantFactor = 0.0;
+		List<Potential> properPotentials = new ArrayList<Potential>();
+		for (TablePotential potential : potentials) {
+			if (potential.getNumVariables() > 0) {
+				// mostly zero potentials are multiplied through their non-zero
+				// configurations
+				properPotentials.add(SparseTablePotential.sparsify(potential));
+			} else {
+				logConstantFactor += Math.log(potential.getValue(potential.getInitialPosition()));
+			}
+		}
+		cliques = new ArrayList<Clique>();
+		homeCliques = new HashMap<Variable, Clique>();
+		if (!properPotentials.isEmpty()) {
+			buildTree(properPotentials);
+		}
+	}
+
+	/**
+	 * Creates a tree with the cliques, the links and the potentials of
+	 * <code>cliqueTree</code>, but with its own evidence and messages. The
+	 * tables of the potentials are shared, not copied. As
+	 * <code>cliqueTree</code> is only read, several threads can copy the same
+	 * tree at the same time provided that nobody propagates on it.
+	 *
+	 * @param cliqueTree
+	 *            <code>CliqueTree</code>
+	 */
+	public CliqueTree(CliqueTree cliqueTree) {
+		logger = Logger.getLogger(CliqueTree.class);
+		evidence = new EvidenceCase();
+		logConstantFactor = cliqueTree.logConstantFactor;
+		concurrentPotentialOperations = cliqueTree.concurrentPotentialOperations;
+		singlePrecision = cliqueTree.singlePrecision;
+		HashMap<Clique, Clique> copies = new HashMap<Clique, Clique>();
+		cliques = new ArrayList<Clique>(cliqueTree.cliques.size());
+		for (Clique clique : cliqueTree.cliques) {
+			Clique copy = new Clique(clique);
+			copies.put(clique, copy);
+			cliques.add(copy);
+		}
+		for (Clique clique : cliqueTree.cliques) {
+			List<Clique> neighbors = copies.get(clique).getNeighbors();
+			for (Clique neighbor : clique.getNeighbors()) {
+				neighbors.add(copies.get(neighbor));
+			}
+		}
+		homeCliques = new HashMap<Variable, Clique>();
+		for (Variable variable : cliqueTree.homeCliques.keySet()) {
+			homeCliques.put(variable, copies.get(cliqueTree.homeCliques.get(variable)));
+		}
+	}
+
+	// Methods
+	/**
+	 * @return True when the messages and the beliefs are computed with
+	 *         <code>operation.concurrent.DiscretePotentialOperations</code>
+	 */
+	public boolean isConcurrentPotentialOperations() {
+		return concurrentPotentialOperations;
+	}
+
+	/**
+	 * @param concurrentPotentialOperations
+	 *            When true the messages and the beliefs are computed with
+	 *            <code>operation.concurrent.DiscretePotentialOperations</code>
+	 */
+	public void setConcurrentPotentialOperations(boolean concurrentPotentialOperations) {
+		this.concurrentPotentialOperations = concurrentPotentialOperations;
+	}
+
+	/**
+	 * @return True when the beliefs of the cliques, which are the largest
+	 *         tables of the tree, are stored in single precision
+	 */
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	/**
+	 * @param singlePrecision
+	 *            When true the beliefs computed from now on are stored in
+	 *            single precision. They are computed sequentially, and the
+	 *            messages and the marginals are still double.
+	 */
+	public void setSinglePrecision(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+	}
+
+	/** @return The cliques of the tree (a forest, in general) */
+	public List<Clique> getCliques() {
+		return cliques;
+	}
+
+	/** @return The variables contained in the tree */
+	public Set<Variable> getVariables() {
+		return homeCliques.keySet();
+	}
+
+	/**
+	 * @param variable
+	 *            <code>Variable</code>
+	 * @return The smallest clique containing <code>variable</code> or
+	 *         <code>null</code> if it does not belong to the tree
+	 */
+	public Clique getHomeClique(Variable variable) {
+		return homeCliques.get(variable);
+	}
+
+	/** @return The largest clique size (number of configurations). */
+	public double getMaxCliqueSize() {
+		double maxCliqueSize = 0.0;
+		for (Clique clique : cliques) {
+			maxCliqueSize = Math.max(maxCliqueSize, clique.getTableSize());
+		}
+		return maxCliqueSize;
+	}
+
+	/**
+	 * Creates the heuristic that decides the elimination order used to
+	 * triangulate the Markov network.
+	 *
+	 * @param markovNet
+	 *            <code>ProbNet</code>
+	 * @param variablesToEliminate
+	 *            <code>List</code> of <code>List</code> of
+	 *            <code>Variable</code>
+	 * @return <code>EliminationHeuristic</code>
+	 */
+	protected EliminationHeuristic createHeuristic(ProbNet markovNet,
+			List<List<Variable>> variablesToEliminate) {
+		return EliminationHeuristic.newInstance(heuristicClass, markovNet, variablesToEliminate);
+	}
+
+	/**
+	 * Triangulates the Markov network of the potentials, creates the cliques
+	 * and assigns each potential to one clique.
+	 *
+	 * @param potentials
+	 *            <code>List</code> of <code>Potential</code>
+	 */
+	private void buildTree(List<Potential> potentials) {
+		ProbNet markovNet = UtilMarkovNet.buildMarkovNet(potentials);
+		List<Variable> variables = markovNet.getVariables();
+		int numVariables = variables.size();
+		List<List<Variable>> variablesToEliminate = new ArrayList<List<Variable>>();
+		variablesToEliminate.add(new ArrayList<Variable>(variables));
+		EliminationHeuristic heuristic = createHeuristic(markovNet, variablesToEliminate);
+		markovNet.getPNESupport().addUndoableEditListener(heuristic);
+
+		// one cluster per eliminated variable
+		List<Clique> clusters = new ArrayList<Clique>(numVariables);
+		HashMap<Variable, Integer> eliminationIndexes = new HashMap<Variable, Integer>();
+		for (int i = 0; i < numVariables; i++) {
+			Variable variableToDelete = heuristic.getVariableToDelete();
+			ProbNode probNode = markovNet.getProbNode(variableToDelete);
+			List<Variable> clusterVariables = new ArrayList<Variable>();
+			clusterVariables.add(variableToDelete);
+			for (Node neighbor : probNode.getNode().getNeighbors()) {
+				clusterVariables.add(((ProbNode) neighbor.getObject()).getVariable());
+			}
+			clusters.add(new Clique(clusterVariables));
+			eliminationIndexes.put(variableToDelete, i);
+			try {
+				markovNet.getPNESupport().doEdit(new EliminateNodeEdit(markovNet, variableToDelete));
+			} catch (DoEditException | NonProjectablePotentialException
+					| WrongCriterionException e) {
+				// Unreachable code: the edit only changes the graph
+				logger.fatal(e);
+			}
+		}
+		markovNet.getPNESupport().removeUndoableEditListener(heuristic);
+
+		// each cluster is linked to the cluster of the first neighbor
+		// eliminated after its variable
+		for (int i = 0; i < numVariables; i++) {
+			Clique cluster = clusters.get(i);
+			List<Variable> clusterVariables = cluster.getVariables();
+			int parentIndex = numVariables;
+			for (int j = 1; j < clusterVariables.size(); j++) {
+				parentIndex = Math.min(parentIndex, eliminationIndexes.get(clusterVariables.get(j)));
+			}
+			if (parentIndex < numVariables) {
+				cluster.addNeighbor(clusters.get(parentIndex));
+			}
+		}
+
+		// each potential goes to the cluster of its first eliminated variable,
+		// which contains all the variables of the potential
+		for (Potential potential : potentials) {
+			int clusterIndex = numVariables;
+			for (Variable variable : potential.getVariables()) {
+				clusterIndex = Math.min(clusterIndex, eliminationIndexes.get(variable));
+			}
+			clusters.get(clusterIndex).getPotentials().add((TablePotential) potential);
+		}
+
+		cliques = removeNonMaximalClusters(clusters);
+
+		for (Clique clique : cliques) {
+			for (Variable variable : clique.getVariables()) {
+				Clique homeClique = homeCliques.get(variable);
+				if (homeClique == null || clique.getTableSize() < homeClique.getTableSize()) {
+					homeCliques.put(variable, clique);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A cluster contained in one of its neighbors is absorbed by it. The
+	 * running intersection property is preserved.
+	 *
+	 * @param clusters
+	 *            <code>List</code> of <code>Clique</code>
+	 * @return The maximal cliques
+	 */
+	private List<Clique> removeNonMaximalClusters(List<Clique> clusters) {
+		Set<Clique> remaining = new LinkedHashSet<Clique>(clusters);
+		boolean absorbed = true;
+		while (absorbed) {
+			absorbed = false;
+			for (Clique cluster : clusters) {
+				if (remaining.contains(cluster)) {
+					Clique container = null;
+					for (int i = 0; i < cluster.getNeighbors().size() && container == null; i++) {
+						Clique neighbor = cluster.getNeighbors().get(i);
+						if (neighbor.getVariables().containsAll(cluster.getVariables())) {
+							container = neighbor;
+						}
+					}
+					if (container != null) {
+						container.absorb(cluster);
+						remaining.remove(cluster);
+						absorbed = true;
+					}
+				}
+			}
+		}
+		return new ArrayList<Clique>(remaining);
+	}
+
+	/**
+	 * Replaces the findings entered in the tree. Only the findings that have
+	 * been added, changed or retracted with respect to the previous evidence
+	 * are updated, and only the messages sent away from their home cliques
+	 * are invalidated; the next <code>propagate</code> recomputes just those
+	 * messages. Findings of variables that do not belong to the tree are
+	 * ignored.
+	 *
+	 * @param evidence
+	 *            <code>EvidenceCase</code>
+	 */
+	public void setEvidence(EvidenceCase evidence) {
+		// retracted findings
+		for (Variable variable : this.evidence.getVariables()) {
+			if (!evidence.contains(variable)) {
+				Clique homeClique = homeCliques.get(variable);
+				homeClique.setEvidencePotential(variable, null);
+				invalidateMessagesFrom(homeClique);
+			}
+		}
+		// new or changed findings
+		EvidenceCase newEvidence = new EvidenceCase();
+		for (Variable variable : evidence.getVariables()) {
+			Clique homeClique = homeCliques.get(variable);
+			if (homeClique != null) {
+				int stateIndex = evidence.getState(variable);
+				if (!this.evidence.contains(variable)
+						|| this.evidence.getState(variable) != stateIndex) {
+					homeClique.setEvidencePotential(variable,
+							createEvidencePotential(variable, stateIndex));
+					invalidateMessagesFrom(homeClique);
+				}
+				try {
+					newEvidence.addFinding(evidence.getFinding(variable));
+				} catch (Exception e) {
+					// Unreachable code: evidence was already consistent
+					logger.fatal(e);
+				}
+			}
+		}
+		this.evidence = newEvidence;
+	}
+
+	/**
+	 * Invalidates the messages that depend on the factors of
+	 * <code>origin</code>, i.e., the messages directed away from it. The
+	 * traversal stops at messages already invalid, because the messages
+	 * beyond them were invalidated at the same time.
+	 *
+	 * @param origin
+	 *            <code>Clique</code>
+	 */
+	private void invalidateMessagesFrom(Clique origin) {
+		List<Clique> senders = new ArrayList<Clique>();
+		List<Clique> receivers = new ArrayList<Clique>();
+		for (Clique neighbor : origin.getNeighbors()) {
+			senders.add(origin);
+			receivers.add(neighbor);
+		}
+		while (!senders.isEmpty()) {
+			Clique sender = senders.remove(senders.size() - 1);
+			Clique receiver = receivers.remove(receivers.size() - 1);
+			if (receiver.removeMessage(sender)) {
+				for (Clique neighbor : receiver.getNeighbors()) {
+					if (neighbor != sender) {
+						senders.add(receiver);
+						receivers.add(neighbor);
+					}
+				}
+			}
+		}
+		origin.setBelief(null);
+	}
+
+	/** @return The findings entered in the tree */
+	public EvidenceCase getEvidence() {
+		return evidence;
+	}
+
+	/**
+	 * @param variable
+	 *            <code>Variable</code>
+	 * @param stateIndex
+	 *            <code>int</code>
+	 * @return A potential with 1.0 in the state of the finding and 0.0 in the
+	 *         rest.
+	 */
+	private static TablePotential createEvidencePotential(Variable variable, int stateIndex) {
+		double[] table = new double[variable.getNumStates()];
+		table[stateIndex] = 1.0;
+		return new TablePotential(Arrays.asList(variable), PotentialRole.CONDITIONAL_PROBABILITY,
+				table);
+	}
+
+	/**
+	 * Computes the messages that are not up to date: first from the leaves to
+	 * the root of each tree (collect evidence) and then from the root to the
+	 * leaves (distribute evidence). As no message is ever divided, retracting
+	 * a finding only requires recomputing the messages invalidated in
+	 * <code>setEvidence</code>.
+	 *
+	 * @throws IncompatibleEvidenceException
+	 *             when the probability of the evidence is 0
+	 */
+	public void propagate() throws IncompatibleEvidenceException {
+		Set<Clique> visited = new HashSet<Clique>();
+		for (Clique root : cliques) {
+			if (!visited.contains(root)) {
+				List<Clique> order = new ArrayList<Clique>();
+				HashMap<Clique, Clique> parents = new HashMap<Clique, Clique>();
+				sortFromRoot(root, order, parents, visited);
+				// collect evidence
+				for (int i = order.size() - 1; i > 0; i--) {
+					Clique clique = order.get(i);
+					Clique parent = parents.get(clique);
+					if (!parent.hasMessage(clique)) {
+						sendMessage(clique, parent);
+					}
+				}
+				// distribute evidence
+				for (Clique clique : order) {
+					for (Clique neighbor : clique.getNeighbors()) {
+						if (neighbor != parents.get(clique) && !neighbor.hasMessage(clique)) {
+							sendMessage(clique, neighbor);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Breadth-first traversal of the tree that contains <code>root</code>.
+	 *
+	 * @param root
+	 *            <code>Clique</code>
+	 * @param order
+	 *            Receives the cliques, parents before children
+	 * @param parents
+	 *            Receives the parent of each clique but the root
+	 * @param visited
+	 *            Receives the visited cliques
+	 */
+	private static void sortFromRoot(Clique root, List<Clique> order,
+			HashMap<Clique, Clique> parents, Set<Clique> visited) {
+		order.add(root);
+		visited.add(root);
+		for (int i = 0; i < order.size(); i++) {
+			Clique clique = order.get(i);
+			for (Clique neighbor : clique.getNeighbors()) {
+				if (!visited.contains(neighbor)) {
+					visited.add(neighbor);
+					parents.put(neighbor, clique);
+					order.add(neighbor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shenoy-Shafer message: product of the factors of <code>sender</code>
+	 * and the messages it has received from the other neighbors, marginalized
+	 * onto the separator. The message is scaled to sum 1 to avoid underflows;
+	 * the logarithm of the scale factor is kept to recover the probability of
+	 * the evidence.
+	 *
+	 * @param sender
+	 *            <code>Clique</code>
+	 * @param receiver
+	 *            <code>Clique</code>
+	 * @throws IncompatibleEvidenceException
+	 */
+	private void sendMessage(Clique sender, Clique receiver) throws IncompatibleEvidenceException {
+		List<TablePotential> factors = sender.getFactors(receiver);
+		TablePotential message = null;
+		double logScale = sender.getLogScale(receiver);
+		if (!factors.isEmpty()) {
+			message = multiplyAndMarginalize(factors,
+					sender.getSeparator(receiver));
+			message.setPotentialRole(PotentialRole.JOINT_PROBABILITY);
+			logScale += Math.log(scale(message));
+		}
+		receiver.setMessage(sender, message, logScale);
+	}
+
+	/**
+	 * @param potential
+	 *            <code>TablePotential</code> whose values are divided by their
+	 *            sum
+	 * @return The sum of the values before scaling
+	 * @throws IncompatibleEvidenceException
+	 *             when all the values are 0
+	 */
+	private static double scale(TablePotential potential) throws IncompatibleEvidenceException {
+		// the table may be in single precision or off the heap
+		long tableLength = potential.getTableLength();
+		double sum = 0.0;
+		for (long i = 0; i < tableLength; i++) {
+			sum += potential.getValue(i);
+		}
+		if (sum == 0.0) {
+			throw new IncompatibleEvidenceException("Incompatible Evidence");
+		}
+		for (long i = 0; i < tableLength; i++) {
+			potential.setValue(i, potential.getValue(i) / sum);
+		}
+		return sum;
+	}
+
+	/**
+	 * @param clique
+	 *            <code>Clique</code>
+	 * @return The product of the factors of the clique and all the messages it
+	 *         has received.
+	 */
+	private TablePotential getBelief(Clique clique) {
+		TablePotential belief = clique.getBelief();
+		if (belief == null) {
+			List<TablePotential> factors = clique.getFactors(null);
+			if (singlePrecision) {
+				belief = DiscretePotentialOperations.multiplyAndMarginalize(factors,
+						clique.getVariables(), true);
+			} else {
+				belief = multiplyAndMarginalize(factors,
+						clique.getVariables());
+			}
+			clique.setBelief(belief);
+		}
+		return belief;
+	}
+
+	/**
+	 * @precondition <code>propagate</code> has been invoked after the last
+	 *               change of evidence
+	 * @param variable
+	 *            <code>Variable</code>
+	 * @return The posterior probability of <code>variable</code>, or
+	 *         <code>null</code> if it does not belong to the tree
+	 * @throws IncompatibleEvidenceException
+	 */
+	public TablePotential getMarginal(Variable variable) throws IncompatibleEvidenceException {
+		Clique homeClique = homeCliques.get(variable);
+		TablePotential marginal = null;
+		if (homeClique != null) {
+			List<Variable> variables = Arrays.asList(variable);
+			marginal = marginalizeAndNormalize(getBelief(homeClique), variables);
+		}
+		return marginal;
+	}
+
+	/**
+	 * @precondition <code>propagate</code> has been invoked after the last
+	 *               change of evidence
+	 * @return The logarithm of the product of the potentials of the tree,
+	 *         summed over all the configurations of its variables. When the
+	 *         potentials are the conditional probabilities of a Bayesian
+	 *         network projected on some findings, it is the logarithm of the
+	 *         probability of those findings and the findings entered in the
+	 *         tree.
+	 */
+	public double getLogProbabilityOfEvidence() {
+		double logProbability = logConstantFactor;
+		Set<Clique> visited = new HashSet<Clique>();
+		for (Clique root : cliques) {
+			if (!visited.contains(root)) {
+				sortFromRoot(root, new ArrayList<Clique>(), new HashMap<Clique, Clique>(), visited);
+				TablePotential belief = getBelief(root);
+				double sum = 0.0;
+				for (long i = 0; i < belief.getTableLength(); i++) {
+					sum += belief.getValue(i);
+				}
+				logProbability += Math.log(sum) + root.getLogScale(null);
+			}
+		}
+		return logProbability;
+	}
+
+	/**
+	 * @precondition <code>propagate</code> has been invoked after the last
+	 *               change of evidence
+	 * @param variables
+	 *            <code>List</code> of <code>Variable</code> of the tree
+	 * @return The posterior joint probability of <code>variables</code>. When
+	 *         they are not contained in a single clique, the variables of the
+	 *         smallest subtree that covers them are eliminated one by one.
+	 * @throws IncompatibleEvidenceException
+	 */
+	public TablePotential getJointProbability(List<Variable> variables)
+			throws IncompatibleEvidenceException {
+		for (Clique clique : cliques) {
+			if (clique.getVariables().containsAll(variables)) {
+				return marginalizeAndNormalize(getBelief(clique), variables);
+			}
+		}
+		// Collect the cliques in the paths between the home cliques
+		Set<Clique> subtree = new LinkedHashSet<Clique>();
+		HashMap<Clique, Clique> parents = new HashMap<Clique, Clique>();
+		Set<Clique> visited = new HashSet<Clique>();
+		for (Variable variable : variables) {
+			Clique clique = homeCliques.get(variable);
+			if (clique != null) {
+				if (!visited.contains(clique)) {
+					// first clique found in this tree: root of the paths
+					sortFromRoot(clique, new ArrayList<Clique>(), parents, visited);
+				}
+				while (clique != null && subtree.add(clique)) {
+					clique = parents.get(clique);
+				}
+			}
+		}
+		List<TablePotential> factors = new ArrayList<TablePotential>();
+		Set<Variable> variablesToEliminate = new LinkedHashSet<Variable>();
+		for (Clique clique : subtree) {
+			factors.addAll(clique.getPotentials());
+			for (Variable variable : clique.getVariables()) {
+				Clique homeClique = homeCliques.get(variable);
+				if (homeClique == clique && evidence.contains(variable)) {
+					factors.add(createEvidencePotential(variable, evidence.getState(variable)));
+				}
+			}
+			for (Clique neighbor : clique.getNeighbors()) {
+				TablePotential message = clique.getMessage(neighbor);
+				if (!subtree.contains(neighbor) && message != null) {
+					factors.add(message);
+				}
+			}
+			variablesToEliminate.addAll(clique.getVariables());
+		}
+		variablesToEliminate.removeAll(variables);
+		// the intermediate factors are released as soon as they are consumed
+		TablePotential jointProbability;
+		TableArena arena = TableArena.open();
+		try {
+			// greedy elimination: each time the variable whose bucket is smallest
+			while (!variablesToEliminate.isEmpty()) {
+				Variable variableToEliminate = null;
+				double minBucketSize = Double.MAX_VALUE;
+				for (Variable variable : variablesToEliminate) {
+					double bucketSize = getBucketSize(factors, variable);
+					if (bucketSize < minBucketSize) {
+						minBucketSize = bucketSize;
+						variableToEliminate = variable;
+					}
+				}
+				variablesToEliminate.remove(variableToEliminate);
+				List<TablePotential> potentialsVariable = new ArrayList<TablePotential>();
+				for (TablePotential potential : factors) {
+					if (potential.getVariables().contains(variableToEliminate)) {
+						potentialsVariable.add(potential);
+					}
+				}
+				if (!potentialsVariable.isEmpty()) {
+					factors.removeAll(potentialsVariable);
+					factors.add(multiplyAndMarginalize(potentialsVariable,
+							variableToEliminate));
+					for (TablePotential potential : potentialsVariable) {
+						arena.release(potential);
+					}
+				}
+			}
+			jointProbability = multiplyAndMarginalize(factors, variables,
+					new ArrayList<Variable>());
+			arena.keep(jointProbability);
+		} finally {
+			arena.close();
+		}
+		return normalize(jointProbability);
+	}
+
+	/**
+	 * @param potentials
+	 *            <code>List</code> of <code>TablePotential</code>
+	 * @param variable
+	 *            <code>Variable</code>
+	 * @return Size of the product of the potentials that contain
+	 *         <code>variable</code>
+	 */
+	private static double getBucketSize(List<TablePotential> potentials, Variable variable) {
+		Set<Variable> bucketVariables = new HashSet<Variable>();
+		for (TablePotential potential : potentials) {
+			if (potential.getVariables().contains(variable)) {
+				bucketVariables.addAll(potential.getVariables());
+			}
+		}
+		double bucketSize = 1.0;
+		for (Variable bucketVariable : bucketVariables) {
+			bucketSize *= bucketVariable.getNumStates();
+		}
+		return bucketSize;
+	}
+
+	/**
+	 * @param potential
+	 *            <code>TablePotential</code>
+	 * @param variables
+	 *            <code>List</code> of <code>Variable</code> contained in the
+	 *            potential
+	 * @return The potential marginalized onto <code>variables</code> and
+	 *         normalized
+	 * @throws IncompatibleEvidenceException
+	 */
+	private TablePotential marginalizeAndNormalize(TablePotential potential,
+			List<Variable> variables) throws IncompatibleEvidenceException {
+		List<Variable> variablesToEliminate = new ArrayList<Variable>(potential.getVariables());
+		variablesToEliminate.removeAll(variables);
+		TablePotential marginal = multiplyAndMarginalize(
+				Arrays.asList(potential), variables, variablesToEliminate);
+		return normalize(marginal);
+	}
+
+	private TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
+			List<Variable> variablesToKeep, List<Variable> variablesToEliminate) {
+		// the concurrent operations do not read single-precision beliefs
+		if (concurrentPotentialOperations && !singlePrecision) {
+			return org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations
+					.multiplyAndMarginalize(potentials, variablesToKeep, variablesToEliminate);
+		}
+		return DiscretePotentialOperations.multiplyAndMarginalize(potentials, variablesToKeep,
+				variablesToEliminate);
+	}
+
+	private TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
+			List<Variable> variablesOfInterest) {
+		if (concurrentPotentialOperations) {
+			return org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations
+					.multiplyAndMarginalize(potentials, variablesOfInterest);
+		}
+		return DiscretePotentialOperations.multiplyAndMarginalize(potentials, variablesOfInterest);
+	}
+
+	private TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
+			Variable variableToEliminate) {
+		if (concurrentPotentialOperations) {
+			return org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations
+					.multiplyAndMarginalize(potentials, variableToEliminate);
+		}
+		return DiscretePotentialOperations.multiplyAndMarginalize(potentials, variableToEliminate);
+	}
+
+	private static TablePotential normalize(TablePotential potential)
+			throws IncompatibleEvidenceException {
+		potential.setPotentialRole(PotentialRole.JOINT_PROBABILITY);
+		try {
+			return DiscretePotentialOperations.normalize(potential);
+		} catch (NormalizeNullVectorException e) {
+			throw new IncompatibleEvidenceException("Incompatible Evidence");
+		}
+	}
+
+	public String toString() {
+		return cliques.toString();
+	}
+
+}
@@ -0,0 +1,581 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.inference.cliqueTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.swing.event.UndoableEditEvent;
+
+import org.openmarkov.core.action.PNUndoableEditListener;
+import org.openmarkov.core.exception.IncompatibleEvidenceException;
+import org.openmarkov.core.exception.InvalidStateException;
+import org.openmarkov.core.exception.NonProjectablePotentialException;
+import org.openmarkov.core.exception.NormalizeNullVectorException;
+import org.openmarkov.core.exception.NotEvaluableNetworkException;
+import org.openmarkov.core.exception.UnexpectedInferenceException;
+import org.openmarkov.core.exception.WrongCriterionException;
+import org.openmarkov.core.inference.EvidenceBatch;
+import org.openmarkov.core.inference.InferenceAlgorithm;
+import org.openmarkov.core.inference.annotation.InferenceAnnotation;
+import org.openmarkov.core.inference.heuristic.EliminationHeuristic;
+import org.openmarkov.core.model.network.EvidenceCase;
+import org.openmarkov.core.model.network.Finding;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.Potential;
+import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.TablePotential;
+import org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations;
+import org.openmarkov.core.model.network.type.BayesianNetworkType;
+
+/**
+ * Clique tree propagation for Bayesian networks. The tree is compiled once,
+ * from the potentials of the network without evidence; findings are entered as
+ * indicator potentials and a single collect/distribute pass gives the
+ * posterior probability of every variable. The tree, with its messages, is
+ * kept between queries: when the evidence changes only the messages affected
+ * by the changed findings are recomputed. Any edit of the network discards
+ * the compiled tree.
+ * <p>
+ * When the tree of the whole network does not fit in memory, a cutset can be
+ * given: each configuration of the cutset is entered as evidence before
+ * compiling a smaller tree, and the posterior probabilities of the
+ * configurations are combined weighted by the probability of the evidence.
+ *
+ * @author agent
+ */
+@InferenceAnnotation(name = "CliqueTreePropagation", acceptsCutset = true)
+public class CliqueTreePropagation extends InferenceAlgorithm implements
+		PNUndoableEditListener {
+
+	// Attributes
+	/** Compiled at the first query. */
+	private CliqueTree cliqueTree;
+
+	/** True when this object is registered as listener of the network. */
+	private boolean listeningToEdits = false;
+
+	/** Variables instantiated in turn. Usually empty. */
+	private List<Variable> cutsetVariables = new ArrayList<Variable>();
+
+	/** Threads used to evaluate batches of evidence cases. */
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	// Constructor
+	/**
+	 * @param probNet
+	 * @throws NotEvaluableNetworkException
+	 */
+	public CliqueTreePropagation(ProbNet probNet) throws NotEvaluableNetworkException {
+		super(probNet);
+		setConditioningVariables(new ArrayList<Variable>());
+	}
+
+	// Methods
+	@Override
+	public boolean isEvaluable(ProbNet probNet) {
+		return probNet.getNetworkType() == BayesianNetworkType.getUniqueInstance();
+	}
+
+	public static void checkEvaluability(ProbNet probNet) throws NotEvaluableNetworkException {
+		if (probNet.getNetworkType() != BayesianNetworkType.getUniqueInstance()) {
+			throw new NotEvaluableNetworkException("Network type "
+					+ probNet.getNetworkType().toString() + " is not evaluable.");
+		}
+	}
+
+	/**
+	 * @return The clique tree of the network. It is compiled the first time
+	 *         this method is invoked.
+	 * @throws UnexpectedInferenceException
+	 */
+	public CliqueTree getCliqueTree() throws UnexpectedInferenceException {
+		if (cliqueTree == null) {
+			List<TablePotential> potentials;
+			try {
+				potentials = probNet.tableProjectPotentials(new EvidenceCase());
+			} catch (NonProjectablePotentialException | WrongCriterionException e) {
+				throw new UnexpectedInferenceException("Unexpected inference exception :"
+						+ e.getMessage());
+			}
+			cliqueTree = newCliqueTree(potentials);
+			if (!listeningToEdits) {
+				probNet.getPNESupport().addUndoableEditListener(this);
+				listeningToEdits = true;
+			}
+		}
+		cliqueTree.setConcurrentPotentialOperations(usesConcurrentPotentialOperations());
+		cliqueTree.setSinglePrecision(usesSinglePrecisionTables());
+		return cliqueTree;
+	}
+
+	/** @return True unless a cutset has been given. */
+	@Override
+	public boolean isIncremental() {
+		return cutsetVariables.isEmpty();
+	}
+
+	@Override
+	public void setCutsetVariables(List<Variable> cutsetVariables) {
+		this.cutsetVariables = new ArrayList<Variable>(cutsetVariables);
+		cliqueTree = null;
+	}
+
+	/** @return The number of threads used to evaluate batches of cases */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * @param numThreads
+	 *            Number of threads used to evaluate batches of cases. With 1
+	 *            the cases are evaluated in the calling thread.
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive.");
+		}
+		this.numThreads = numThreads;
+	}
+
+	/** Discards the tree and unregisters this object as listener of the network. */
+	@Override
+	public void dispose() {
+		if (listeningToEdits) {
+			probNet.getPNESupport().removeUndoableEditListener(this);
+			listeningToEdits = false;
+		}
+		cliqueTree = null;
+	}
+
+	/** It does nothing. */
+	public void undoableEditWillHappen(UndoableEditEvent event) {
+	}
+
+	/** The network has changed: the tree will be compiled again. */
+	public void undoableEditHappened(UndoableEditEvent event) {
+		cliqueTree = null;
+	}
+
+	/** The network has changed: the tree will be compiled again. */
+	public void undoEditHappened(UndoableEditEvent event) {
+		cliqueTree = null;
+	}
+
+	/**
+	 * Enters the pre and post-resolution evidence in the tree and propagates.
+	 *
+	 * @throws IncompatibleEvidenceException
+	 * @throws UnexpectedInferenceException
+	 */
+	private CliqueTree propagateEvidence() throws IncompatibleEvidenceException,
+			UnexpectedInferenceException {
+		CliqueTree tree = getCliqueTree();
+		tree.setEvidence(joinPreAndPostResolutionEvidence());
+		tree.propagate();
+		return tree;
+	}
+
+	private EvidenceCase joinPreAndPostResolutionEvidence() throws IncompatibleEvidenceException {
+		EvidenceCase evidence = new EvidenceCase(getPreResolutionEvidence());
+		try {
+			evidence.addFindings(getPostResolutionEvidence().getFindings());
+		} catch (InvalidStateException e) {
+			e.printStackTrace();
+		}
+		return evidence;
+	}
+
+	@Override
+	public HashMap<Variable, TablePotential> getProbsAndUtilities()
+			throws IncompatibleEvidenceException, UnexpectedInferenceException {
+		return getProbsAndUtilities(probNet.getVariables());
+	}
+
+	@Override
+	public HashMap<Variable, TablePotential> getProbsAndUtilities(List<Variable> variablesOfInterest)
+			throws IncompatibleEvidenceException, UnexpectedInferenceException {
+		if (!cutsetVariables.isEmpty()) {
+			return getProbsAndUtilitiesWithCutset(variablesOfInterest);
+		}
+		CliqueTree tree = propagateEvidence();
+		EvidenceCase evidence = tree.getEvidence();
+		HashMap<Variable, TablePotential> individualProbabilities = new HashMap<>();
+		for (Variable variable : variablesOfInterest) {
+			TablePotential probability;
+			if (evidence.contains(variable)) {
+				probability = constructEvidenceTablePotential(variable, evidence);
+			} else {
+				probability = tree.getMarginal(variable);
+			}
+			if (probability != null) {
+				individualProbabilities.put(variable, probability);
+			}
+		}
+		return individualProbabilities;
+	}
+
+	@Override
+	public TablePotential getJointProbability(List<Variable> variables)
+			throws IncompatibleEvidenceException, UnexpectedInferenceException {
+		if (!cutsetVariables.isEmpty()) {
+			return getJointProbabilityWithCutset(variables);
+		}
+		CliqueTree tree = propagateEvidence();
+		if (!tree.getVariables().containsAll(variables)) {
+			throw new UnexpectedInferenceException("Some variables of " + variables
+					+ " do not belong to the clique tree.");
+		}
+		return tree.getJointProbability(variables);
+	}
+
+	/**
+	 * The distinct cases, sorted by observed variables, are split into one
+	 * chunk per thread, which run in the pool of the concurrent potential
+	 * operations. Each chunk is evaluated on its own copy of the
+	 * clique tree, which shares the potentials of the compiled tree, so the
+	 * consecutive cases of a chunk only recompute the messages affected by
+	 * the findings that change from one case to the next.
+	 */
+	@Override
+	public List<TablePotential> getJointProbabilities(List<EvidenceCase> evidenceCases,
+			final List<Variable> variables) throws UnexpectedInferenceException {
+		if (!cutsetVariables.isEmpty()) {
+			return super.getJointProbabilities(evidenceCases, variables);
+		}
+		CliqueTree tree = getCliqueTree();
+		if (!tree.getVariables().containsAll(variables)) {
+			throw new UnexpectedInferenceException("Some variables of " + variables
+					+ " do not belong to the clique tree.");
+		}
+		EvidenceBatch batch = new EvidenceBatch(evidenceCases);
+		final List<EvidenceCase> distinctCases = batch.getDistinctCases();
+		final List<TablePotential> results = Collections.synchronizedList(new ArrayList<TablePotential>(
+				Collections.<TablePotential> nCopies(distinctCases.size(), null)));
+		List<Integer> order = batch.getEvaluationOrder();
+		int numChunks = Math.max(1, Math.min(numThreads, order.size()));
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numChunks);
+		for (int i = 0; i < numChunks; i++) {
+			// the trees are copied here, before any thread reads them
+			final CliqueTree chunkTree = new CliqueTree(tree);
+			final List<Integer> chunk = order.subList(i * order.size() / numChunks, (i + 1)
+					* order.size() / numChunks);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					for (int index : chunk) {
+						results.set(index, getJointProbability(chunkTree, distinctCases.get(index),
+								variables));
+					}
+					return null;
+				}
+			});
+		}
+		if (numChunks == 1) {
+			try {
+				tasks.get(0).call();
+			} catch (Exception e) {
+				throw new UnexpectedInferenceException(e.getMessage());
+			}
+		} else {
+			try {
+				for (Future<Void> future : org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations
+						.getPool().invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new UnexpectedInferenceException("Interrupted inference");
+			} catch (ExecutionException e) {
+				throw new UnexpectedInferenceException(e.getCause().getMessage());
+			}
+		}
+		return batch.expand(results);
+	}
+
+	/**
+	 * @param tree
+	 *            Copy of the clique tree owned by the calling thread
+	 * @param evidenceCase
+	 *            Pre-resolution evidence of the case
+	 * @param variables
+	 * @return The joint probability of <code>variables</code> given the case
+	 *         and the post-resolution evidence, or <code>null</code> when the
+	 *         evidence is incompatible.
+	 */
+	private TablePotential getJointProbability(CliqueTree tree, EvidenceCase evidenceCase,
+			List<Variable> variables) {
+		TablePotential jointProbability = null;
+		try {
+			EvidenceCase evidence = new EvidenceCase(evidenceCase);
+			evidence.addFindings(getPostResolutionEvidence().getFindings());
+			tree.setEvidence(evidence);
+			tree.propagate();
+			jointProbability = tree.getJointProbability(variables);
+		} catch (IncompatibleEvidenceException | InvalidStateException e) {
+			// the result of this case is null
+		}
+		return jointProbability;
+	}
+
+	/**
+	 * @param variablesOfInterest
+	 * @return The posterior probabilities, as the average of the posterior
+	 *         probabilities given each configuration of the cutset weighted
+	 *         by the probability of the configuration and the evidence. The
+	 *         variables that do not belong to the clique tree are omitted.
+	 * @throws IncompatibleEvidenceException
+	 * @throws UnexpectedInferenceException
+	 */
+	private HashMap<Variable, TablePotential> getProbsAndUtilitiesWithCutset(
+			List<Variable> variablesOfInterest) throws IncompatibleEvidenceException,
+			UnexpectedInferenceException {
+		HashMap<Variable, double[]> sums = new HashMap<Variable, double[]>();
+		double maxLogWeight = Double.NEGATIVE_INFINITY;
+		for (EvidenceCase caseEvidence : getCutsetConfigurations()) {
+			CliqueTree tree = compileAndPropagate(caseEvidence);
+			if (tree == null) {
+				continue;
+			}
+			double logWeight = tree.getLogProbabilityOfEvidence();
+			if (logWeight == Double.NEGATIVE_INFINITY) {
+				// the configuration does not contribute, and exp(-inf - -inf) is NaN
+				continue;
+			}
+			if (logWeight > maxLogWeight) {
+				rescale(sums.values(), Math.exp(maxLogWeight - logWeight));
+				maxLogWeight = logWeight;
+			}
+			double weight = Math.exp(logWeight - maxLogWeight);
+			for (Variable variable : variablesOfInterest) {
+				TablePotential probability = caseEvidence.contains(variable)
+						? constructEvidenceTablePotential(variable, caseEvidence)
+						: tree.getMarginal(variable);
+				if (probability != null) {
+					double[] sum = sums.get(variable);
+					if (sum == null) {
+						sum = new double[variable.getNumStates()];
+						sums.put(variable, sum);
+					}
+					for (int i = 0; i < sum.length; i++) {
+						sum[i] += weight * probability.getValue(i);
+					}
+				}
+			}
+		}
+		if (maxLogWeight == Double.NEGATIVE_INFINITY) {
+			throw new IncompatibleEvidenceException("Incompatible Evidence");
+		}
+		HashMap<Variable, TablePotential> individualProbabilities = new HashMap<>();
+		for (Variable variable : variablesOfInterest) {
+			double[] sum = sums.get(variable);
+			if (sum != null) {
+				TablePotential probability = new TablePotential(Arrays.asList(variable),
+						PotentialRole.CONDITIONAL_PROBABILITY, sum);
+				individualProbabilities.put(variable, normalize(probability));
+			}
+		}
+		return individualProbabilities;
+	}
+
+	/**
+	 * @param variables
+	 * @return The posterior joint probability of <code>variables</code>,
+	 *         combining the configurations of the cutset.
+	 * @throws IncompatibleEvidenceException
+	 * @throws UnexpectedInferenceException
+	 */
+	private TablePotential getJointProbabilityWithCutset(List<Variable> variables)
+			throws IncompatibleEvidenceException, UnexpectedInferenceException {
+		double[] sum = null;
+		double maxLogWeight = Double.NEGATIVE_INFINITY;
+		for (EvidenceCase caseEvidence : getCutsetConfigurations()) {
+			CliqueTree tree = compileAndPropagate(caseEvidence);
+			if (tree == null) {
+				continue;
+			}
+			double logWeight = tree.getLogProbabilityOfEvidence();
+			if (logWeight == Double.NEGATIVE_INFINITY) {
+				continue;
+			}
+			List<TablePotential> factors = new ArrayList<TablePotential>();
+			List<Variable> unobservedVariables = new ArrayList<Variable>();
+			for (Variable variable : variables) {
+				if (caseEvidence.contains(variable)) {
+					factors.add(constructEvidenceTablePotential(variable, caseEvidence));
+				} else {
+					unobservedVariables.add(variable);
+				}
+			}
+			if (!unobservedVariables.isEmpty()) {
+				if (!tree.getVariables().containsAll(unobservedVariables)) {
+					throw new UnexpectedInferenceException("Some variables of " + variables
+							+ " do not belong to the clique tree.");
+				}
+				factors.add(tree.getJointProbability(unobservedVariables));
+			}
+			TablePotential joint = DiscretePotentialOperations.reorder(
+					DiscretePotentialOperations.multiply(factors), variables);
+			if (sum == null) {
+				sum = new double[(int) joint.getTableLength()];
+			}
+			if (logWeight > maxLogWeight) {
+				rescale(Arrays.asList(sum), Math.exp(maxLogWeight - logWeight));
+				maxLogWeight = logWeight;
+			}
+			double weight = Math.exp(logWeight - maxLogWeight);
+			for (int i = 0; i < sum.length; i++) {
+				sum[i] += weight * joint.getValue(i);
+			}
+		}
+		if (sum == null) {
+			throw new IncompatibleEvidenceException("Incompatible Evidence");
+		}
+		TablePotential jointProbability = new TablePotential(new ArrayList<Variable>(variables),
+				PotentialRole.JOINT_PROBABILITY, sum);
+		return normalize(jointProbability);
+	}
+
+	/**
+	 * @return The pre and post-resolution evidence extended with each
+	 *         configuration of the cutset variables that are not observed.
+	 * @throws IncompatibleEvidenceException
+	 */
+	private List<EvidenceCase> getCutsetConfigurations() throws IncompatibleEvidenceException {
+		EvidenceCase evidence = joinPreAndPostResolutionEvidence();
+		List<Variable> unobservedCutset = new ArrayList<Variable>();
+		for (Variable variable : cutsetVariables) {
+			if (!evidence.contains(variable)) {
+				unobservedCutset.add(variable);
+			}
+		}
+		List<EvidenceCase> configurations = new ArrayList<EvidenceCase>();
+		int[] stateIndices = new int[unobservedCutset.size()];
+		boolean done = false;
+		while (!done) {
+			EvidenceCase configuration = new EvidenceCase(evidence);
+			try {
+				for (int i = 0; i < stateIndices.length; i++) {
+					configuration.addFinding(new Finding(unobservedCutset.get(i), stateIndices[i]));
+				}
+			} catch (InvalidStateException e) {
+				// Unreachable code: the variables are not in the evidence
+				e.printStackTrace();
+			}
+			configurations.add(configuration);
+			// next configuration
+			int i = 0;
+			while (i < stateIndices.length
+					&& ++stateIndices[i] == unobservedCutset.get(i).getNumStates()) {
+				stateIndices[i++] = 0;
+			}
+			done = (i == stateIndices.length);
+		}
+		return configurations;
+	}
+
+	/**
+	 * @param evidence
+	 * @return A clique tree compiled from the potentials of the network
+	 *         projected on <code>evidence</code> and propagated, or
+	 *         <code>null</code> if the probability of the evidence is 0.
+	 * @throws UnexpectedInferenceException
+	 */
+	private CliqueTree compileAndPropagate(EvidenceCase evidence)
+			throws UnexpectedInferenceException {
+		CliqueTree tree;
+		try {
+			tree = newCliqueTree(probNet.tableProjectPotentials(evidence));
+			tree.setConcurrentPotentialOperations(usesConcurrentPotentialOperations());
+			tree.setSinglePrecision(usesSinglePrecisionTables());
+			tree.propagate();
+		} catch (NonProjectablePotentialException | WrongCriterionException e) {
+			throw new UnexpectedInferenceException("Unexpected inference exception :"
+					+ e.getMessage());
+		} catch (IncompatibleEvidenceException e) {
+			tree = null;
+		}
+		return tree;
+	}
+
+	/**
+	 * @param potentials
+	 * @return A clique tree of the potentials triangulated with the heuristic
+	 *         of the inference options, if any.
+	 */
+	private CliqueTree newCliqueTree(List<TablePotential> potentials) {
+		Class<? extends EliminationHeuristic> heuristicClass = getEliminationHeuristic();
+		return heuristicClass == null ? new CliqueTree(potentials) : new CliqueTree(potentials,
+				heuristicClass);
+	}
+
+	/** Multiplies by <code>factor</code> the values of the arrays. */
+	private static void rescale(Collection<double[]> arrays, double factor) {
+		for (double[] array : arrays) {
+			for (int i = 0; i < array.length; i++) {
+				array[i] *= factor;
+			}
+		}
+	}
+
+	/**
+	 * @param potential
+	 * @return <code>potential</code> normalized
+	 * @throws IncompatibleEvidenceException
+	 */
+	private static TablePotential normalize(TablePotential potential)
+			throws IncompatibleEvidenceException {
+		try {
+			return DiscretePotentialOperations.normalize(potential);
+		} catch (NormalizeNullVectorException e) {
+			throw new IncompatibleEvidenceException("Incompatible Evidence");
+		}
+	}
+
+	/**
+	 * @param variable
+	 * @param evidence
+	 * @return A PotentialTable with 1.0 in the evidence state and 0.0 in the
+	 *         rest.
+	 */
+	private TablePotential constructEvidenceTablePotential(Variable variable, EvidenceCase evidence) {
+		List<Variable> variables = new ArrayList<Variable>();
+		variables.add(variable);
+		double[] table = new double[variable.getNumStates()];
+		table[evidence.getState(variable)] = 1.0;
+		return new TablePotential(variables, PotentialRole.CONDITIONAL_PROBABILITY, table);
+	}
+
+	@Override
+	public Potential getOptimizedPolicy(Variable decisionVariable)
+			throws IncompatibleEvidenceException, UnexpectedInferenceException {
+		return null;
+	}
+
+	@Override
+	public Potential getExpectedUtilities(Variable decisionVariable)
+			throws IncompatibleEvidenceException, UnexpectedInferenceException {
+		return null;
+	}
+
+	@Override
+	public TablePotential getGlobalUtility() throws IncompatibleEvidenceException,
+			UnexpectedInferenceException {
+		return null;
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.inference.cliqueTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.openmarkov.core.exception.NonProjectablePotentialException;
+import org.openmarkov.core.exception.NotEvaluableNetworkException;
+import org.openmarkov.core.exception.UnexpectedInferenceException;
+import org.openmarkov.core.exception.WrongCriterionException;
+import org.openmarkov.core.model.network.EvidenceCase;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.TablePotential;
+
+/**
+ * Immutable compiled form of a Bayesian network. The potentials of the
+ * network are copied and its clique tree is built once, when the model is
+ * created; later edits of the network do not affect the model. Queries are
+ * made through <code>QuerySession</code>s, each with its own evidence and
+ * messages, which share the potentials of the model without copying them.
+ * Therefore any number of threads can query the same model at the same
+ * time, each one with its own session.
+ *
+ * @author agent
+ */
+public final class CompiledModel {
+
+	// Attributes
+	private final String name;
+
+	private final List<Variable> variables;
+
+	private final HashMap<String, Variable> variablesByName;
+
+	/** Never propagated: it is only copied by the sessions. */
+	private final CliqueTree cliqueTree;
+
+	// Constructor
+	/**
+	 * @param probNet
+	 *            Bayesian network. It is only read.
+	 * @throws NotEvaluableNetworkException
+	 *             if <code>probNet</code> is not a Bayesian network
+	 * @throws UnexpectedInferenceException
+	 *             if a potential can not be converted into a table
+	 */
+	public CompiledModel(ProbNet probNet) throws NotEvaluableNetworkException,
+			UnexpectedInferenceException {
+		CliqueTreePropagation.checkEvaluability(probNet);
+		name = probNet.getName();
+		List<TablePotential> potentials;
+		try {
+			potentials = probNet.tableProjectPotentials(new EvidenceCase());
+		} catch (NonProjectablePotentialException | WrongCriterionException e) {
+			throw new UnexpectedInferenceException("Unexpected inference exception :"
+					+ e.getMessage());
+		}
+		// the projection may return the potentials of the network
+		List<TablePotential> copies = new ArrayList<TablePotential>(potentials.size());
+		for (TablePotential potential : potentials) {
+			copies.add(new TablePotential(potential));
+		}
+		cliqueTree = new CliqueTree(copies);
+		variables = Collections.unmodifiableList(new ArrayList<Variable>(probNet.getVariables()));
+		variablesByName = new HashMap<String, Variable>();
+		for (Variable variable : variables) {
+			variablesByName.put(variable.getName(), variable);
+		}
+	}
+
+	// Methods
+	/** @return The name of the network the model was compiled from */
+	public String getName() {
+		return name;
+	}
+
+	/** @return The variables of the model. The list can not be modified. */
+	public List<Variable> getVariables() {
+		return variables;
+	}
+
+	/**
+	 * @param variableName
+	 *            <code>String</code>
+	 * @return The variable with that name or <code>null</code> if it does not
+	 *         belong to the model
+	 */
+	public Variable getVariable(String variableName) {
+		return variablesByName.get(variableName);
+	}
+
+	/** @return Largest clique size (number of configurations). */
+	public double getMaxCliqueSize() {
+		return cliqueTree.getMaxCliqueSize();
+	}
+
+	/**
+	 * @return A new session without evidence. It must not be shared by
+	 *         several threads.
+	 */
+	public QuerySession createSession() {
+		return new QuerySession(this, new CliqueTree(cliqueTree));
+	}
+
+	/**
+	 * @param evidence
+	 *            <code>EvidenceCase</code>
+	 * @return A new session with <code>evidence</code>.
+	 */
+	public QuerySession createSession(EvidenceCase evidence) {
+		QuerySession session = createSession();
+		session.setEvidence(evidence);
+		return session;
+	}
+
+	public String toString() {
+		return name + " (compiled)";
+	}
+
+}
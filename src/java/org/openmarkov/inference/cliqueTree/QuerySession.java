@@ -0,0 +1,164 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.inference.cliqueTree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.openmarkov.core.exception.IncompatibleEvidenceException;
+import org.openmarkov.core.exception.UnexpectedInferenceException;
+import org.openmarkov.core.model.network.EvidenceCase;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.TablePotential;
+
+/**
+ * Queries on a <code>CompiledModel</code> with a given evidence. The session
+ * keeps its own copy of the clique tree structure, with the evidence
+ * potentials and the messages, so that changing the evidence only recomputes
+ * the messages affected by the changed findings. A session is not
+ * thread-safe: each thread must create its own sessions.
+ *
+ * @author agent
+ */
+public class QuerySession {
+
+	// Attributes
+	private final CompiledModel model;
+
+	private final CliqueTree cliqueTree;
+
+	private EvidenceCase evidence;
+
+	/** True when the messages of the tree are valid for the evidence. */
+	private boolean propagated;
+
+	// Constructor
+	/**
+	 * @param model
+	 *            <code>CompiledModel</code>
+	 * @param cliqueTree
+	 *            Copy of the tree of <code>model</code> owned by this session
+	 */
+	QuerySession(CompiledModel model, CliqueTree cliqueTree) {
+		this.model = model;
+		this.cliqueTree = cliqueTree;
+		evidence = new EvidenceCase();
+		propagated = false;
+	}
+
+	// Methods
+	/** @return The model queried by this session */
+	public CompiledModel getModel() {
+		return model;
+	}
+
+	/** @return A copy of the evidence of the session */
+	public EvidenceCase getEvidence() {
+		return new EvidenceCase(evidence);
+	}
+
+	/**
+	 * Replaces the evidence of the session. The evidence is copied, so the
+	 * caller may modify it afterwards.
+	 *
+	 * @param evidence
+	 *            <code>EvidenceCase</code> whose variables belong to the model
+	 */
+	public void setEvidence(EvidenceCase evidence) {
+		this.evidence = new EvidenceCase(evidence);
+		cliqueTree.setEvidence(this.evidence);
+		propagated = false;
+	}
+
+	/**
+	 * @return The posterior probabilities of all the variables of the model.
+	 * @throws IncompatibleEvidenceException
+	 */
+	public HashMap<Variable, TablePotential> getProbsAndUtilities()
+			throws IncompatibleEvidenceException {
+		return getProbsAndUtilities(model.getVariables());
+	}
+
+	/**
+	 * @param variablesOfInterest
+	 *            <code>List</code> of <code>Variable</code>
+	 * @return The posterior probability of each variable of interest that
+	 *         belongs to the model.
+	 * @throws IncompatibleEvidenceException
+	 */
+	public HashMap<Variable, TablePotential> getProbsAndUtilities(List<Variable> variablesOfInterest)
+			throws IncompatibleEvidenceException {
+		propagate();
+		HashMap<Variable, TablePotential> individualProbabilities = new HashMap<>();
+		for (Variable variable : variablesOfInterest) {
+			TablePotential probability;
+			if (evidence.contains(variable)) {
+				probability = constructEvidenceTablePotential(variable);
+			} else {
+				probability = cliqueTree.getMarginal(variable);
+			}
+			if (probability != null) {
+				individualProbabilities.put(variable, probability);
+			}
+		}
+		return individualProbabilities;
+	}
+
+	/**
+	 * @param variables
+	 *            <code>List</code> of <code>Variable</code> of the model
+	 * @return The posterior joint probability of <code>variables</code>
+	 * @throws IncompatibleEvidenceException
+	 * @throws UnexpectedInferenceException
+	 *             if some variable does not belong to the model
+	 */
+	public TablePotential getJointProbability(List<Variable> variables)
+			throws IncompatibleEvidenceException, UnexpectedInferenceException {
+		if (!cliqueTree.getVariables().containsAll(variables)) {
+			throw new UnexpectedInferenceException("Some variables of " + variables
+					+ " do not belong to the model " + model.getName() + ".");
+		}
+		propagate();
+		return cliqueTree.getJointProbability(variables);
+	}
+
+	/**
+	 * @return The logarithm of the probability of the evidence
+	 * @throws IncompatibleEvidenceException
+	 *             when the probability of the evidence is 0
+	 */
+	public double getLogProbabilityOfEvidence() throws IncompatibleEvidenceException {
+		propagate();
+		return cliqueTree.getLogProbabilityOfEvidence();
+	}
+
+	private void propagate() throws IncompatibleEvidenceException {
+		if (!propagated) {
+			cliqueTree.propagate();
+			propagated = true;
+		}
+	}
+
+	/**
+	 * @param variable
+	 * @return A PotentialTable with 1.0 in the evidence state and 0.0 in the
+	 *         rest.
+	 */
+	private TablePotential constructEvidenceTablePotential(Variable variable) {
+		List<Variable> variables = new ArrayList<Variable>();
+		variables.add(variable);
+		double[] table = new double[variable.getNumStates()];
+		table[evidence.getState(variable)] = 1.0;
+		return new TablePotential(variables, PotentialRole.CONDITIONAL_PROBABILITY, table);
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.inference.cliqueTree.action;
+
+import java.util.List;
+
+import org.openmarkov.core.action.SimplePNEdit;
+import org.openmarkov.core.action.UsesVariable;
+import org.openmarkov.core.exception.DoEditException;
+import org.openmarkov.core.model.graph.Node;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.ProbNode;
+import org.openmarkov.core.model.network.Variable;
+
+/**
+ * Symbolic elimination of a node of a Markov network, used when triangulating
+ * the network: the neighbors of the node are linked pairwise and then the node
+ * is removed. No potential is touched. The edit implements
+ * <code>UsesVariable</code> so that the <code>EliminationHeuristic</code>
+ * registered as listener can update its internal structures.
+ *
+ * @author agent
+ */
+@SuppressWarnings("serial")
+public class EliminateNodeEdit extends SimplePNEdit implements UsesVariable {
+
+	// Attributes
+	/** Variable whose node will be eliminated. */
+	private Variable variable;
+
+	// Constructor
+	/**
+	 * @param markovNet
+	 *            <code>ProbNet</code> with undirected links
+	 * @param variable
+	 *            <code>Variable</code>
+	 */
+	public EliminateNodeEdit(ProbNet markovNet, Variable variable) {
+		super(markovNet);
+		this.variable = variable;
+	}
+
+	// Methods
+	@Override
+	public void doEdit() throws DoEditException {
+		ProbNode probNode = probNet.getProbNode(variable);
+		if (probNode == null) {
+			throw new DoEditException("Variable " + variable.getName()
+					+ " does not belong to the network.");
+		}
+		List<Node> neighbors = probNode.getNode().getNeighbors();
+		int numNeighbors = neighbors.size();
+		for (int i = 0; i < numNeighbors - 1; i++) {
+			Node neighborI = neighbors.get(i);
+			for (int j = i + 1; j < numNeighbors; j++) {
+				Node neighborJ = neighbors.get(j);
+				if (!neighborI.isNeighbor(neighborJ)) {
+					probNet.getGraph().addLink(neighborI, neighborJ, false);
+				}
+			}
+		}
+		probNet.removeProbNode(probNode);
+	}
+
+	/** @return The eliminated <code>Variable</code> */
+	public Variable getVariable() {
+		return variable;
+	}
+
+	/** @return <code>String</code> */
+	public String toString() {
+		return "EliminateNodeEdit: " + variable.getName();
+	}
+
+}
@@ -230,7 +230,7 @@ public class CanoMoralElimination extends EliminationHeuristic {
 	 * @return A <code>long</code> integer. Clique size = the product of the 
 	 * cardinalities of the variables stored in the nodes. */
 	public static long cliqueSize(Collection<Node> nodes) {
-		int result = 1;
+		long result = 1;
 		for (Node node : nodes) {
 			ProbNode probNode = (ProbNode)node.getObject();
 			result *= probNode.getVariable().getNumStates();
@@ -0,0 +1,104 @@
+/*
+* Copyright 2011 CISIAD, UNED, Spain
+*
+* Licensed under the European Union Public Licence, version 1.1 (EUPL)
+*
+* Unless required by applicable law, this code is distributed
+* on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+*/
+
+package org.openmarkov.inference.heuristic.canoAndMoral;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openmarkov.core.inference.heuristic.IncrementalEliminationHeuristic;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.Variable;
+
+/** Heuristic H6 of <cite>Andres Cano and Serafin Moral</cite>, 
+ * <cite>Heuristic Algorithms for the Triangulation of Graphs</cite>: chooses
+ * the variable that minimizes the size of the clique created by its 
+ * elimination divided by the sum of the sizes of the maximal cliques that
+ * contain it. Unlike <code>CanoMoralElimination</code>, the score of each 
+ * candidate is kept in a priority queue and only the scores of the variables 
+ * around the eliminated one are recomputed.
+ * @author agent */
+public class IncrementalCanoMoralElimination extends IncrementalEliminationHeuristic {
+
+	// Constructor
+	public IncrementalCanoMoralElimination(ProbNet probNet,
+			List<List<Variable>> variablesToEliminate) {
+		super(probNet, variablesToEliminate);
+	}
+
+	// Methods
+	/** @return Size of the clique formed by <code>variable</code> and its
+	 *  neighbors divided by the sum of the sizes of the maximal cliques of 
+	 *  that subgraph that contain <code>variable</code>. */
+	protected double getScore(Variable variable) {
+		Set<Variable> variableNeighbors = neighbors.get(variable);
+		// the maximal cliques that contain variable are variable plus each
+		// maximal clique of its neighbors, so its size cancels out
+		double sumCliqueSizes = sumCliqueSizes(new HashSet<Variable>(), 
+				new HashSet<Variable>(variableNeighbors), new HashSet<Variable>());
+		// a variable without neighbors is a clique by itself
+		return getWeight(variableNeighbors) / Math.max(sumCliqueSizes, 1.0);
+	}
+
+	/** Bron-Kerbosch enumeration, with pivoting, of the maximal cliques of the
+	 *  neighborhood of a variable.
+	 * @param clique Variables of the clique being expanded.
+	 * @param candidates Variables that can extend <code>clique</code>.
+	 * @param excluded Variables that can extend <code>clique</code> but whose
+	 *  cliques have already been enumerated.
+	 * @return Sum of the sizes of the maximal cliques that contain 
+	 *  <code>clique</code>. */
+	private double sumCliqueSizes(Set<Variable> clique, Set<Variable> candidates,
+			Set<Variable> excluded) {
+		if (candidates.isEmpty()) {
+			return (excluded.isEmpty() && !clique.isEmpty()) ? getWeight(clique) : 0.0;
+		}
+		Variable pivot = null;
+		int maxNeighborsInCandidates = -1;
+		List<Variable> pivotCandidates = new ArrayList<Variable>(candidates);
+		pivotCandidates.addAll(excluded);
+		for (Variable variable : pivotCandidates) {
+			int neighborsInCandidates = 0;
+			Set<Variable> variableNeighbors = neighbors.get(variable);
+			for (Variable candidate : candidates) {
+				if (variableNeighbors.contains(candidate)) {
+					neighborsInCandidates++;
+				}
+			}
+			if (neighborsInCandidates > maxNeighborsInCandidates) {
+				maxNeighborsInCandidates = neighborsInCandidates;
+				pivot = variable;
+			}
+		}
+		Set<Variable> pivotNeighbors = neighbors.get(pivot);
+		double sumCliqueSizes = 0.0;
+		for (Variable variable : new HashSet<Variable>(candidates)) {
+			if (!pivotNeighbors.contains(variable)) {
+				Set<Variable> variableNeighbors = neighbors.get(variable);
+				Set<Variable> newClique = new HashSet<Variable>(clique);
+				newClique.add(variable);
+				Set<Variable> newCandidates = new HashSet<Variable>(candidates);
+				newCandidates.retainAll(variableNeighbors);
+				Set<Variable> newExcluded = new HashSet<Variable>(excluded);
+				newExcluded.retainAll(variableNeighbors);
+				sumCliqueSizes += sumCliqueSizes(newClique, newCandidates, newExcluded);
+				candidates.remove(variable);
+				excluded.add(variable);
+			}
+		}
+		return sumCliqueSizes;
+	}
+	
+	protected boolean dependsOnLinksBetweenNeighbors() {
+		return true;
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+* Copyright 2011 CISIAD, UNED, Spain
+*
+* Licensed under the European Union Public Licence, version 1.1 (EUPL)
+*
+* Unless required by applicable law, this code is distributed
+* on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+*/
+
+package org.openmarkov.inference.heuristic.minimalFillIn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.openmarkov.core.inference.heuristic.IncrementalEliminationHeuristic;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.Variable;
+
+/** Chooses the variable that adds less links when eliminated, like 
+ * <code>MinimalFillIn</code>, but keeps the fill-in of each candidate in a 
+ * priority queue.
+ * @author agent */
+public class IncrementalMinimalFillIn extends IncrementalEliminationHeuristic {
+
+	// Constructor
+	public IncrementalMinimalFillIn(ProbNet probNet,
+			List<List<Variable>> variablesToEliminate) {
+		super(probNet, variablesToEliminate);
+	}
+
+	// Methods
+	/** @return Number of links between the neighbors of 
+	 *  <code>variable</code> that are missing. */
+	protected double getScore(Variable variable) {
+		List<Variable> variableNeighbors = new ArrayList<Variable>(neighbors.get(variable));
+		int numNeighbors = variableNeighbors.size();
+		long fillIn = 0;
+		for (int i = 0; i < numNeighbors - 1; i++) {
+			Set<Variable> neighborsI = neighbors.get(variableNeighbors.get(i));
+			for (int j = i + 1; j < numNeighbors; j++) {
+				if (!neighborsI.contains(variableNeighbors.get(j))) {
+					fillIn++;
+				}
+			}
+		}
+		return fillIn;
+	}
+
+	protected boolean dependsOnLinksBetweenNeighbors() {
+		return true;
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+* Copyright 2011 CISIAD, UNED, Spain
+*
+* Licensed under the European Union Public Licence, version 1.1 (EUPL)
+*
+* Unless required by applicable law, this code is distributed
+* on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+*/
+
+package org.openmarkov.inference.heuristic.minimalSize;
+
+import java.util.List;
+
+import org.openmarkov.core.inference.heuristic.IncrementalEliminationHeuristic;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.Variable;
+
+/** Chooses the variable with fewer neighbors, like 
+ * <code>SimpleElimination</code>, but keeps the number of neighbors of each 
+ * candidate in a priority queue.
+ * @author agent */
+public class IncrementalMinimalSize extends IncrementalEliminationHeuristic {
+
+	// Constructor
+	public IncrementalMinimalSize(ProbNet probNet,
+			List<List<Variable>> variablesToEliminate) {
+		super(probNet, variablesToEliminate);
+	}
+
+	// Methods
+	/** @return Number of neighbors of <code>variable</code>. */
+	protected double getScore(Variable variable) {
+		return neighbors.get(variable).size();
+	}
+
+	protected boolean dependsOnLinksBetweenNeighbors() {
+		return false;
+	}
+
+}
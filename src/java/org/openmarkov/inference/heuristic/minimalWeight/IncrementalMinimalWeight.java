@@ -0,0 +1,40 @@
+/*
+* Copyright 2011 CISIAD, UNED, Spain
+*
+* Licensed under the European Union Public Licence, version 1.1 (EUPL)
+*
+* Unless required by applicable law, this code is distributed
+* on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+*/
+
+package org.openmarkov.inference.heuristic.minimalWeight;
+
+import java.util.List;
+
+import org.openmarkov.core.inference.heuristic.IncrementalEliminationHeuristic;
+import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.Variable;
+
+/** Chooses the variable whose elimination creates the clique with fewer
+ * configurations. The weight of each candidate is kept in a priority queue.
+ * @author agent */
+public class IncrementalMinimalWeight extends IncrementalEliminationHeuristic {
+
+	// Constructor
+	public IncrementalMinimalWeight(ProbNet probNet,
+			List<List<Variable>> variablesToEliminate) {
+		super(probNet, variablesToEliminate);
+	}
+
+	// Methods
+	/** @return Number of configurations of <code>variable</code> and its
+	 *  neighbors. */
+	protected double getScore(Variable variable) {
+		return variable.getNumStates() * getWeight(neighbors.get(variable));
+	}
+
+	protected boolean dependsOnLinksBetweenNeighbors() {
+		return false;
+	}
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain Licensed under the European Union Public
+ * Licence, version 1.1 (EUPL) Unless required by applicable law, this code is
+ * distributed on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+package org.openmarkov.inference.likelihoodWeighting;
+
+import java.util.HashMap;
+
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.TablePotential;
+
+/**
+ * Receives the intermediate results of <code>LikelihoodWeighting</code> in
+ * anytime mode. It is invoked in the thread that runs the inference.
+ * @author agent
+ */
+public interface AnytimeListener
+{
+    /**
+     * @param probsAndUtilities Posterior probabilities and utilities estimated
+     *            with the samples drawn so far
+     * @param numSamples Number of samples drawn so far
+     * @param effectiveSampleSize Effective sample size of the weights
+     */
+    void probsAndUtilitiesUpdated (HashMap<Variable, TablePotential> probsAndUtilities,
+                                   long numSamples, double effectiveSampleSize);
+}
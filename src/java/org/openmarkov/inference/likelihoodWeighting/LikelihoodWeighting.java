@@ -10,13 +10,21 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.openmarkov.core.exception.IncompatibleEvidenceException;
 import org.openmarkov.core.exception.InvalidStateException;
+import org.openmarkov.core.exception.NonProjectablePotentialException;
 import org.openmarkov.core.exception.NormalizeNullVectorException;
 import org.openmarkov.core.exception.NotEvaluableNetworkException;
 import org.openmarkov.core.exception.UnexpectedInferenceException;
+import org.openmarkov.core.exception.WrongCriterionException;
 import org.openmarkov.core.inference.InferenceAlgorithm;
+import org.openmarkov.core.inference.SamplingPlan;
 import org.openmarkov.core.inference.annotation.InferenceAnnotation;
 import org.openmarkov.core.model.graph.Link;
 import org.openmarkov.core.model.network.EvidenceCase;
@@ -35,6 +43,12 @@ import org.openmarkov.core.model.network.type.TuningNetworkType;
 
 /**
  * Likelihood weighting algorithm for bayesian networks.
+ * The samples can be drawn by several threads. Given a seed, the results are
+ * reproducible whatever the number of threads.
+ * In anytime mode, instead of a fixed number of samples, sampling goes on
+ * until a target effective sample size, a maximum confidence-interval
+ * half-width or a deadline is met, and the intermediate posteriors can be
+ * received with an <code>AnytimeListener</code>.
  * @author ibermejo
  * @author fjdiez
  * @version 1.0
@@ -44,9 +58,42 @@ public class LikelihoodWeighting extends InferenceAlgorithm
 {
     private static final int DEFAULT_SAMPLE_SIZE = 10000;
     
+    /**
+     * The samples are drawn in blocks of this size, each one with its own
+     * random stream derived from the seed, so that the result does not depend
+     * on the number of threads.
+     */
+    private static final int SAMPLES_PER_BLOCK = 1000;
+    
+    /** Upper limit of the number of samples in anytime mode. */
+    private static final long DEFAULT_MAX_SAMPLE_SIZE = 10000000;
+    
+    /**
+     * The confidence intervals are not trusted while the effective sample
+     * size is smaller than this.
+     */
+    private static final double MIN_EFFECTIVE_SAMPLE_SIZE = 100;
+    
+    /** Quantile of the normal distribution for 95% confidence intervals. */
+    private static final double Z_95 = 1.959964;
+    
     private int sampleSize = DEFAULT_SAMPLE_SIZE;
     private double accumulatedWeight = 0.0;
     private int positiveSampleCount = 0;
+    private long numSamples = 0;
+    private double accumulatedSquaredWeight = 0.0;
+    
+    // Anytime mode: sampling stops when any of the targets that are set is met
+    private double targetEffectiveSampleSize = 0.0;
+    private double maxHalfWidth = 0.0;
+    private long maxMillis = 0;
+    private long maxSampleSize = DEFAULT_MAX_SAMPLE_SIZE;
+    private AnytimeListener anytimeListener = null;
+    
+    /** Master seed. When <code>null</code> each query uses a different seed. */
+    private Long seed = null;
+    
+    private int numThreads = 1;
     
     public LikelihoodWeighting (ProbNet probNet)
         throws NotEvaluableNetworkException
@@ -71,9 +118,9 @@ public class LikelihoodWeighting extends InferenceAlgorithm
 
     @Override
     public HashMap<Variable, TablePotential> getProbsAndUtilities (List<Variable> variablesOfInterest)
-        throws IncompatibleEvidenceException
+        throws IncompatibleEvidenceException, UnexpectedInferenceException
     {
-    	EvidenceCase evidence = getPostResolutionEvidence();
+    	EvidenceCase evidence = new EvidenceCase(getPostResolutionEvidence());
     	evidence.fuse(getPreResolutionEvidence(), true);
     	
         HashMap<Variable, TablePotential> probsAndUtilities;
@@ -148,97 +195,65 @@ public class LikelihoodWeighting extends InferenceAlgorithm
             parentIndexes.add (indexes);
         }      
         
-        HashMap<Variable, Integer> sampledStateIndexes = new HashMap<Variable, Integer> ();
-        for(Variable variable:  evidence.getVariables ())
-        {
-            sampledStateIndexes.put (variable, evidence.getFinding (variable).getStateIndex ());
-        }
-        
-        ArrayList<double[]> accumulatedProbabilities = new ArrayList<double[]> (variablesOfInterest.size ());
-        for(Variable variable:  variablesOfInterest)
+        int[] lengths = new int[variablesOfInterest.size ()];
+        for(int j = 0; j < variablesOfInterest.size (); j++)
         {
-            double[] accumulatedProbability = null;
+            Variable variable = variablesOfInterest.get (j);
             if(NodeType.UTILITY != probNet.getProbNode(variable).getNodeType())
             {
-            	accumulatedProbability = new double[variable.getNumStates ()];
+                lengths[j] = variable.getNumStates ();
             }else
             {
-            	accumulatedProbability = new double[1];
-            }
-            for(int i= 0; i < accumulatedProbability.length; ++i)
-            {
-                accumulatedProbability[i]=0.0;
+                lengths[j] = 1;
             }
-            accumulatedProbabilities.add (accumulatedProbability);
-        }        
+        }
 
         // Loop through sampling until we reach sample limit
-        Random randomGenerator = new XORShiftRandom();
-        accumulatedWeight = 0.0;
-        positiveSampleCount = 0;
-        
-        HashMap<Variable, Double> utilities = new HashMap<Variable, Double> ();
-        for (int i = 0; i < sampleSize; ++i)
+        SamplingPlan plan = createSamplingPlan (potentialsToSample, potentialsOfEvidence,
+                                                linkRestrictions, evidence);
+        final int[] ids = plan.getIds (variablesOfInterest);
+        final List<Variable> variables = variablesOfInterest;
+        PartialResultPublisher publisher = null;
+        if(anytimeListener != null)
         {
-            // Sample
-            for(Potential potential: potentialsToSample)
+            publisher = new PartialResultPublisher ()
             {
-            	if(potential.getPotentialRole() != PotentialRole.UTILITY)
-            	{
-            		sampledStateIndexes.put (potential.getVariable (0),
-                                         potential.sample (randomGenerator, sampledStateIndexes));
-            	}else
-            	{
-            		utilities.put(potential.getUtilityVariable(), potential.getUtility(sampledStateIndexes, utilities));
-            	}
-            }
-            // Weight sample according to likelihood
-            double weight = 1.0;
-            for(Potential potential: potentialsOfEvidence)
-            {
-                // Ignore potentials that belong to parentless nodes as they are constant across samples
-                if(potential.getVariables ().size () > 1 || potential.getProbability (sampledStateIndexes) == 0)
+                public void publish (double[][] sums, double accumulatedWeight, long numSamples,
+                                     double effectiveSampleSize)
                 {
-                    weight*= potential.getProbability (sampledStateIndexes);
+                    try
+                    {
+                        anytimeListener.probsAndUtilitiesUpdated (
+                                getProbsAndUtilities (variables, sums, accumulatedWeight),
+                                numSamples, effectiveSampleSize);
+                    }catch(NormalizeNullVectorException e)
+                    {
+                        // No sample with positive weight yet
+                    }
                 }
-            }
-            for(Potential potential: linkRestrictions)
-            {
-                weight*= potential.getProbability (sampledStateIndexes);
-            }            
-            for(int j = 0; j < variablesOfInterest.size (); j++)
+            };
+        }
+        double[][] accumulatedProbabilities = sample (plan, lengths, publisher, new SampleAccumulator ()
+        {
+            public void accumulate (double[][] sums, int[] configuration, double[] utilities,
+                                    double weight)
             {
-            	if(accumulatedProbabilities.get(j).length > 1)
-            	{
-            		accumulatedProbabilities.get (j)[sampledStateIndexes.get(variablesOfInterest.get (j))] += weight;
-            	}else
-            	{
-            		accumulatedProbabilities.get (j)[0] += utilities.get(variablesOfInterest.get(j)) * weight; 
-            	}
+                for(int j = 0; j < ids.length; j++)
+                {
+                    if(sums[j].length > 1)
+                    {
+                        sums[j][configuration[ids[j]]] += weight;
+                    }else
+                    {
+                        sums[j][0] += utilities[ids[j]] * weight;
+                    }
+                }
             }
-            accumulatedWeight += weight;
-            if(weight > 0)
-                positiveSampleCount++;
-        }
+        });
         try
         {
-	        // Normalize
-	        for (int i=0; i < variablesOfInterest.size (); ++i){
-	        	if(accumulatedProbabilities.get(i).length > 1)
-	        	{
-		            TablePotential jointProbability = new TablePotential (PotentialRole.JOINT_PROBABILITY,
-		                                                                  variablesOfInterest.get (i));
-		            jointProbability.values = accumulatedProbabilities.get (i);
-		            probsAndUtilities.put (variablesOfInterest.get (i),
-		                                         DiscretePotentialOperations.normalize (jointProbability));
-	        	}else
-	        	{
-	        		TablePotential utility = new TablePotential(new ArrayList<Variable>(),
-							PotentialRole.UTILITY, variablesOfInterest.get (i));
-	        		utility.values[0]= accumulatedProbabilities.get(i)[0] / accumulatedWeight;
-	        		probsAndUtilities.put (variablesOfInterest.get (i), utility);
-	        	}
-	        }
+	        probsAndUtilities = getProbsAndUtilities (variablesOfInterest, accumulatedProbabilities,
+	                                                  accumulatedWeight);
         }catch(NormalizeNullVectorException e)
         {
         	throw new IncompatibleEvidenceException(e.getMessage());
@@ -246,9 +261,43 @@ public class LikelihoodWeighting extends InferenceAlgorithm
         return probsAndUtilities;
     }
 
+    /**
+     * @param variablesOfInterest
+     * @param accumulatedProbabilities Sums of the weights of each state or
+     *            of the weighted utilities. They are not modified.
+     * @param accumulatedWeight Sum of the weights
+     * @return The posterior probabilities and utilities
+     * @throws NormalizeNullVectorException
+     */
+    private static HashMap<Variable, TablePotential> getProbsAndUtilities (List<Variable> variablesOfInterest,
+                                                                          double[][] accumulatedProbabilities,
+                                                                          double accumulatedWeight)
+        throws NormalizeNullVectorException
+    {
+        HashMap<Variable, TablePotential> probsAndUtilities = new HashMap<Variable, TablePotential> ();
+        // Normalize
+        for (int i=0; i < variablesOfInterest.size (); ++i){
+        	if(accumulatedProbabilities[i].length > 1)
+        	{
+	            TablePotential jointProbability = new TablePotential (PotentialRole.JOINT_PROBABILITY,
+	                                                                  variablesOfInterest.get (i));
+	            jointProbability.values = accumulatedProbabilities[i].clone ();
+	            probsAndUtilities.put (variablesOfInterest.get (i),
+	                                         DiscretePotentialOperations.normalize (jointProbability));
+        	}else
+        	{
+        		TablePotential utility = new TablePotential(new ArrayList<Variable>(),
+						PotentialRole.UTILITY, variablesOfInterest.get (i));
+        		utility.values[0]= accumulatedProbabilities[i][0] / accumulatedWeight;
+        		probsAndUtilities.put (variablesOfInterest.get (i), utility);
+        	}
+        }
+        return probsAndUtilities;
+    }
+
     @Override
     public HashMap<Variable, TablePotential> getProbsAndUtilities ()
-        throws IncompatibleEvidenceException
+        throws IncompatibleEvidenceException, UnexpectedInferenceException
     {
         List<Variable> variablesOfInterest = probNet.getVariables ();
         return getProbsAndUtilities(variablesOfInterest);
@@ -263,13 +312,13 @@ public class LikelihoodWeighting extends InferenceAlgorithm
 	
     @Override
 	public TablePotential getJointProbability(List<Variable> variables)
-			throws IncompatibleEvidenceException {
+			throws IncompatibleEvidenceException, UnexpectedInferenceException {
         
         int[] dimensions = TablePotential.calculateDimensions (variables);
         int[] offsets = TablePotential.calculateOffsets (dimensions);
 	    
 	    
-	    EvidenceCase evidence = getPostResolutionEvidence();
+	    EvidenceCase evidence = new EvidenceCase(getPostResolutionEvidence());
         evidence.fuse(getPreResolutionEvidence(), true);
         
         // Tuning Networks: Set evidence in all decision nodes
@@ -318,48 +367,22 @@ public class LikelihoodWeighting extends InferenceAlgorithm
             parentIndexes.add (indexes);
         }      
         
-        HashMap<Variable, Integer> sampledStateIndexes = new HashMap<Variable, Integer> ();
-        for(Variable variable:  evidence.getVariables ())
-        {
-            sampledStateIndexes.put (variable, evidence.getFinding (variable).getStateIndex ());
-        }
-        
         TablePotential jointProbability = new TablePotential (variables, PotentialRole.JOINT_PROBABILITY);
-        accumulatedWeight = 0.0;
-        positiveSampleCount = 0;
-        
+
         // Loop through sampling until we reach sample limit
-        Random randomGenerator = new Random ();
-        for (int i = 0; i < sampleSize; ++i)
+        SamplingPlan plan = createSamplingPlan (potentialsToSample, potentialsOfEvidence,
+                                                linkRestrictions, evidence);
+        final int[] ids = plan.getIds (variables);
+        final int[] strides = offsets;
+        jointProbability.values = sample (plan, new int[] {jointProbability.values.length}, null,
+                                          new SampleAccumulator ()
         {
-            // Sample
-            for(Potential potential: potentialsToSample)
+            public void accumulate (double[][] sums, int[] configuration, double[] utilities,
+                                    double weight)
             {
-                sampledStateIndexes.put (potential.getVariable (0),
-                                     potential.sample (randomGenerator, sampledStateIndexes));
+                sums[0][SamplingPlan.getIndex (configuration, ids, strides)] += weight;
             }
-            // Weight sample according to likelihood
-            double weight = 1.0;
-            for(Potential potential: potentialsOfEvidence)
-            {
-                // Ignore potentials that belong to parentless nodes as they are constant across samples
-                if(potential.getVariables ().size () > 1 || potential.getProbability (sampledStateIndexes) == 0)
-                {
-                    weight*= potential.getProbability (sampledStateIndexes);
-                }
-            }
-            for(Potential potential: linkRestrictions)
-            {
-                weight*= potential.getProbability (sampledStateIndexes);
-            }
-            
-            jointProbability.values[getSampleIndex(variables, offsets, sampledStateIndexes)] += weight;
-
-            accumulatedWeight += weight;
-            if(weight > 0)
-                positiveSampleCount++;
-            
-        }
+        })[0];
         try
         {
             // Normalize
@@ -372,11 +395,11 @@ public class LikelihoodWeighting extends InferenceAlgorithm
    }
     
     public Map<Variable, TablePotential> getFamilyJointProbabilities()
-            throws IncompatibleEvidenceException {
+            throws IncompatibleEvidenceException, UnexpectedInferenceException {
         
         Map<Variable, TablePotential> jointProbabilities = new HashMap<> ();
         
-        EvidenceCase evidence = getPostResolutionEvidence();
+        EvidenceCase evidence = new EvidenceCase(getPostResolutionEvidence());
         evidence.fuse(getPreResolutionEvidence(), true);
         
         // Tuning Networks: Set evidence in all decision nodes
@@ -425,64 +448,38 @@ public class LikelihoodWeighting extends InferenceAlgorithm
             parentIndexes.add (indexes);
         }      
         
-        HashMap<Variable, Integer> sampledStateIndexes = new HashMap<Variable, Integer> ();
-        for(Variable variable:  evidence.getVariables ())
-        {
-            sampledStateIndexes.put (variable, evidence.getFinding (variable).getStateIndex ());
-        }
-        
-        Map<Potential, int[]> potentialOffsets = new HashMap<>();
-        for(Potential potential: potentialsToSample)
+        SamplingPlan plan = createSamplingPlan (potentialsToSample, potentialsOfEvidence,
+                                                linkRestrictions, evidence);
+        final int[][] potentialIds = new int[potentialsToSample.size ()][];
+        final int[][] potentialOffsets = new int[potentialsToSample.size ()][];
+        int[] lengths = new int[potentialsToSample.size ()];
+        for(int j = 0; j < potentialsToSample.size (); j++)
         {
-            TablePotential accruedProbability = new TablePotential (potential.getVariables (), PotentialRole.JOINT_PROBABILITY);
-            for(int i=0; i < accruedProbability.values.length; ++i)
-            {
-                accruedProbability.values[i] = 0.0;
-            }
-            jointProbabilities.put (potential.getVariable (0), accruedProbability);
+            Potential potential = potentialsToSample.get (j);
             int[] dimensions = TablePotential.calculateDimensions (potential.getVariables());
-            int[] offsets = TablePotential.calculateOffsets (dimensions);
-            
-            potentialOffsets.put (potential, offsets);
-        }        
-        
-        // Loop through sampling until we reach sample limit
-        accumulatedWeight = 0.0;
-        positiveSampleCount = 0;
-        Random randomGenerator = new Random ();
+            potentialIds[j] = plan.getIds (potential.getVariables ());
+            potentialOffsets[j] = TablePotential.calculateOffsets (dimensions);
+            lengths[j] = TablePotential.computeTableSize (potential.getVariables ());
+        }
 
-        for (int i = 0; i < sampleSize; ++i)
+        // Loop through sampling until we reach sample limit
+        double[][] accruedProbabilities = sample (plan, lengths, null, new SampleAccumulator ()
         {
-            // Sample
-            for(Potential potential: potentialsToSample)
+            public void accumulate (double[][] sums, int[] configuration, double[] utilities,
+                                    double weight)
             {
-                sampledStateIndexes.put (potential.getVariable (0),
-                                     potential.sample (randomGenerator, sampledStateIndexes));
-            }
-            // Weight sample according to likelihood
-            double weight = 1.0;
-            for(Potential potential: potentialsOfEvidence)
-            {
-                // Ignore potentials that belong to parentless nodes as they are constant across samples
-                if(potential.getVariables ().size () > 1 || potential.getProbability (sampledStateIndexes) == 0)
+                for(int j = 0; j < potentialIds.length; j++)
                 {
-                    weight*= potential.getProbability (sampledStateIndexes);
+                    sums[j][SamplingPlan.getIndex (configuration, potentialIds[j], potentialOffsets[j])] += weight;
                 }
             }
-            for(Potential potential: linkRestrictions)
-            {
-                weight*= potential.getProbability (sampledStateIndexes);
-            }
-            
-            for(Potential potential: potentialsToSample)
-            {
-                List<Variable> variables =  potential.getVariables();
-                int[] offsets = potentialOffsets.get (potential);
-                jointProbabilities.get (potential.getVariable (0)).values[getSampleIndex(variables, offsets, sampledStateIndexes)] += weight;
-            }
-            accumulatedWeight+=weight;
-            if(weight > 0)
-                positiveSampleCount++;
+        });
+        for(int j = 0; j < potentialsToSample.size (); j++)
+        {
+            Potential potential = potentialsToSample.get (j);
+            TablePotential accruedProbability = new TablePotential (potential.getVariables (), PotentialRole.JOINT_PROBABILITY);
+            accruedProbability.values = accruedProbabilities[j];
+            jointProbabilities.put (potential.getVariable (0), accruedProbability);
         }
         // Construct list of evidence potentials
         Map<Variable, TablePotential> evidencePotentials = new HashMap<> ();
@@ -529,20 +526,301 @@ public class LikelihoodWeighting extends InferenceAlgorithm
         return jointProbabilities;
    }    
 
-	private int getSampleIndex (List<Variable> variables, int[] offsets,
-                                HashMap<Variable, Integer> sampledStateIndexes)
+    /**
+     * Adds the weight of a sample to the sums of its block.
+     */
+    private interface SampleAccumulator
     {
-        int position = 0;
-        for (int i = 0; i < variables.size (); i++)
+        void accumulate (double[][] sums, int[] configuration, double[] utilities, double weight);
+    }
+
+    /** Publishes the results estimated with the samples drawn so far. */
+    private interface PartialResultPublisher
+    {
+        void publish (double[][] sums, double accumulatedWeight, long numSamples,
+                      double effectiveSampleSize);
+    }
+
+    /** Sums of a block of samples. */
+    private static class SampleBlock
+    {
+        private double[][] sums;
+        private double accumulatedWeight = 0.0;
+        private double accumulatedSquaredWeight = 0.0;
+        private int positiveSampleCount = 0;
+        private int numSamples = 0;
+
+        private SampleBlock (int[] lengths)
         {
-            Variable variable = variables.get (i);
-            int indexVariable = variables.indexOf (variable);
-            if (indexVariable != -1)
+            sums = new double[lengths.length][];
+            for(int j = 0; j < lengths.length; ++j)
             {
-                position += offsets[indexVariable] * sampledStateIndexes.get (variable);
+                sums[j] = new double[lengths[j]];
             }
         }
-        return position;
+
+        private void add (SampleBlock block)
+        {
+            for(int j = 0; j < sums.length; ++j)
+            {
+                for(int k = 0; k < sums[j].length; ++k)
+                {
+                    sums[j][k] += block.sums[j][k];
+                }
+            }
+            accumulatedWeight += block.accumulatedWeight;
+            accumulatedSquaredWeight += block.accumulatedSquaredWeight;
+            positiveSampleCount += block.positiveSampleCount;
+            numSamples += block.numSamples;
+        }
+
+        private double getEffectiveSampleSize ()
+        {
+            return (accumulatedSquaredWeight > 0)?
+                    accumulatedWeight * accumulatedWeight / accumulatedSquaredWeight : 0.0;
+        }
+    }
+
+    /**
+     * @return The plan that samples <code>potentialsToSample</code> and
+     *         weights the samples by the potentials of the evidence and the
+     *         link restrictions
+     * @throws UnexpectedInferenceException
+     */
+    private static SamplingPlan createSamplingPlan (List<Potential> potentialsToSample,
+                                                    List<Potential> potentialsOfEvidence,
+                                                    List<Potential> linkRestrictions,
+                                                    EvidenceCase evidence)
+        throws UnexpectedInferenceException
+    {
+        List<Potential> weightPotentials = new ArrayList<Potential> (potentialsOfEvidence);
+        weightPotentials.addAll (linkRestrictions);
+        try
+        {
+            return new SamplingPlan (potentialsToSample, weightPotentials, evidence);
+        }
+        catch (NonProjectablePotentialException | WrongCriterionException e)
+        {
+            throw new UnexpectedInferenceException (e.getMessage ());
+        }
+    }
+
+    /**
+     * Draws <code>sampleSize</code> samples in blocks of
+     * <code>SAMPLES_PER_BLOCK</code>, distributed among
+     * <code>numThreads</code> threads, and adds up the sums of the blocks in
+     * the order of the blocks. In anytime mode the blocks are drawn in rounds
+     * of one block per thread until a target is met; the targets are checked
+     * after adding each block, so, except for the deadline, the number of
+     * samples does not depend on the number of threads either. Sets
+     * <code>accumulatedWeight</code>, <code>positiveSampleCount</code> and
+     * <code>numSamples</code>.
+     * @param plan Compiled potentials, shared by the threads
+     * @param lengths Length of each array of sums
+     * @param publisher Receives the sums after each round in anytime mode. It
+     *            may be <code>null</code>
+     * @return The sums of all the samples
+     * @throws UnexpectedInferenceException
+     */
+    private double[][] sample (final SamplingPlan plan, final int[] lengths,
+                               PartialResultPublisher publisher,
+                               final SampleAccumulator accumulator)
+        throws UnexpectedInferenceException
+    {
+        final long masterSeed = (seed != null)? seed : System.nanoTime ();
+        long startTime = System.currentTimeMillis ();
+        boolean anytime = isAnytime ();
+        final long totalSamples = anytime? maxSampleSize : sampleSize;
+        long numBlocks = (totalSamples + SAMPLES_PER_BLOCK - 1) / SAMPLES_PER_BLOCK;
+        SampleBlock total = new SampleBlock (lengths);
+        ExecutorService executor = (numThreads > 1)? Executors.newFixedThreadPool (numThreads) : null;
+        try
+        {
+            boolean targetMet = false;
+            long nextBlock = 0;
+            while(!targetMet && nextBlock < numBlocks)
+            {
+                long roundSize = anytime? Math.min (numThreads, numBlocks - nextBlock) : numBlocks;
+                List<Callable<SampleBlock>> tasks = new ArrayList<Callable<SampleBlock>> ();
+                for(long block = nextBlock; block < nextBlock + roundSize; ++block)
+                {
+                    final long blockIndex = block;
+                    final int blockSize = (int) Math.min (SAMPLES_PER_BLOCK, totalSamples - block * SAMPLES_PER_BLOCK);
+                    tasks.add (new Callable<SampleBlock> ()
+                    {
+                        public SampleBlock call ()
+                        {
+                            Random randomGenerator = new XORShiftRandom (getBlockSeed (masterSeed, blockIndex));
+                            return sampleBlock (blockSize, randomGenerator, plan, lengths, accumulator);
+                        }
+                    });
+                }
+                // Merge the blocks always in the same order
+                for(SampleBlock block: runTasks (tasks, executor))
+                {
+                    total.add (block);
+                    ++nextBlock;
+                    if(anytime && isTargetMet (total, startTime))
+                    {
+                        targetMet = true;
+                        break;
+                    }
+                }
+                if(publisher != null && anytime)
+                {
+                    publisher.publish (total.sums, total.accumulatedWeight, total.numSamples,
+                                       total.getEffectiveSampleSize ());
+                }
+            }
+        }
+        finally
+        {
+            if(executor != null)
+            {
+                executor.shutdown ();
+            }
+        }
+        accumulatedWeight = total.accumulatedWeight;
+        accumulatedSquaredWeight = total.accumulatedSquaredWeight;
+        positiveSampleCount = total.positiveSampleCount;
+        numSamples = total.numSamples;
+        return total.sums;
+    }
+
+    /**
+     * @param executor <code>null</code> to run the tasks in this thread
+     * @return The blocks, in the order of the tasks
+     * @throws UnexpectedInferenceException
+     */
+    private static List<SampleBlock> runTasks (List<Callable<SampleBlock>> tasks,
+                                               ExecutorService executor)
+        throws UnexpectedInferenceException
+    {
+        List<SampleBlock> blocks = new ArrayList<SampleBlock> (tasks.size ());
+        try
+        {
+            if(executor == null)
+            {
+                for(Callable<SampleBlock> task: tasks)
+                {
+                    blocks.add (task.call ());
+                }
+            }else
+            {
+                for(Future<SampleBlock> future: executor.invokeAll (tasks))
+                {
+                    blocks.add (future.get ());
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+            throw new UnexpectedInferenceException ("Interrupted inference");
+        }
+        catch (ExecutionException e)
+        {
+            throw new UnexpectedInferenceException (e.getCause ().getMessage ());
+        }
+        catch (Exception e)
+        {
+            throw new UnexpectedInferenceException (e.getMessage ());
+        }
+        return blocks;
+    }
+
+    /**
+     * @return True if any of the targets of the anytime mode is met
+     */
+    private boolean isTargetMet (SampleBlock total, long startTime)
+    {
+        double effectiveSampleSize = total.getEffectiveSampleSize ();
+        boolean targetMet = false;
+        if(maxMillis > 0 && System.currentTimeMillis () - startTime >= maxMillis)
+        {
+            targetMet = true;
+        }
+        if(targetEffectiveSampleSize > 0 && effectiveSampleSize >= targetEffectiveSampleSize)
+        {
+            targetMet = true;
+        }
+        if(maxHalfWidth > 0 && effectiveSampleSize >= MIN_EFFECTIVE_SAMPLE_SIZE
+           && getMaxHalfWidth (total.sums, effectiveSampleSize) <= maxHalfWidth)
+        {
+            targetMet = true;
+        }
+        return targetMet;
+    }
+
+    /**
+     * @param sums Sums of the weights of the states of each distribution.
+     *            Arrays of length 1 (utilities) are ignored
+     * @return The largest half-width of the 95% confidence intervals of the
+     *         probabilities, approximated with the effective sample size
+     */
+    private static double getMaxHalfWidth (double[][] sums, double effectiveSampleSize)
+    {
+        double maxHalfWidth = 0.0;
+        for(double[] distribution: sums)
+        {
+            if(distribution.length > 1)
+            {
+                double sum = 0.0;
+                for(double value: distribution)
+                {
+                    sum += value;
+                }
+                if(sum == 0.0)
+                {
+                    return Double.POSITIVE_INFINITY;
+                }
+                for(double value: distribution)
+                {
+                    double probability = value / sum;
+                    maxHalfWidth = Math.max (maxHalfWidth, Z_95 * Math.sqrt (probability * (1 - probability)
+                                                                           / effectiveSampleSize));
+                }
+            }
+        }
+        return maxHalfWidth;
+    }
+
+    /**
+     * Draws a block of samples. It only reads the plan, so several blocks can
+     * be drawn at the same time. The loop does not create any object.
+     */
+    private static SampleBlock sampleBlock (int blockSize, Random randomGenerator,
+                                            SamplingPlan plan, int[] lengths,
+                                            SampleAccumulator accumulator)
+    {
+        SampleBlock block = new SampleBlock (lengths);
+        int[] configuration = plan.createConfiguration ();
+        double[] utilities = plan.createUtilities ();
+        for (int i = 0; i < blockSize; ++i)
+        {
+            plan.sample (randomGenerator, configuration, utilities);
+            // Weight sample according to likelihood
+            double weight = plan.getWeight (configuration);
+            accumulator.accumulate (block.sums, configuration, utilities, weight);
+            block.accumulatedWeight += weight;
+            block.accumulatedSquaredWeight += weight * weight;
+            if(weight > 0)
+                block.positiveSampleCount++;
+        }
+        block.numSamples = blockSize;
+        return block;
+    }
+
+    /**
+     * SplitMix64 finalizer applied to the master seed and the block index:
+     * the streams of consecutive blocks are not correlated.
+     */
+    private static long getBlockSeed (long masterSeed, long blockIndex)
+    {
+        long z = masterSeed + (blockIndex + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
     /**
@@ -559,6 +837,118 @@ public class LikelihoodWeighting extends InferenceAlgorithm
 		this.sampleSize = sampleSize;
 	}
 	
+	/**
+	 * @return True if some target of the anytime mode is set. Then the
+	 *         sample size is ignored and samples are drawn until a target is
+	 *         met or <code>maxSampleSize</code> samples have been drawn.
+	 */
+	public boolean isAnytime() {
+		return targetEffectiveSampleSize > 0 || maxHalfWidth > 0 || maxMillis > 0;
+	}
+
+	/**
+	 * @return the target effective sample size; 0 if not set
+	 */
+	public double getTargetEffectiveSampleSize() {
+		return targetEffectiveSampleSize;
+	}
+
+	/**
+	 * @param targetEffectiveSampleSize Anytime target: effective sample size
+	 *            of the weights. 0 unsets it
+	 */
+	public void setTargetEffectiveSampleSize(double targetEffectiveSampleSize) {
+		this.targetEffectiveSampleSize = targetEffectiveSampleSize;
+	}
+
+	/**
+	 * @return the maximum half-width of the confidence intervals; 0 if not set
+	 */
+	public double getMaxHalfWidth() {
+		return maxHalfWidth;
+	}
+
+	/**
+	 * @param maxHalfWidth Anytime target: maximum half-width of the 95%
+	 *            confidence interval of the posterior probabilities of the
+	 *            variables of interest. 0 unsets it
+	 */
+	public void setMaxHalfWidth(double maxHalfWidth) {
+		this.maxHalfWidth = maxHalfWidth;
+	}
+
+	/**
+	 * @return the deadline in milliseconds; 0 if not set
+	 */
+	public long getMaxMillis() {
+		return maxMillis;
+	}
+
+	/**
+	 * @param maxMillis Anytime target: milliseconds since the sampling
+	 *            started. 0 unsets it
+	 */
+	public void setMaxMillis(long maxMillis) {
+		this.maxMillis = maxMillis;
+	}
+
+	/**
+	 * @return the maximum number of samples in anytime mode
+	 */
+	public long getMaxSampleSize() {
+		return maxSampleSize;
+	}
+
+	/**
+	 * @param maxSampleSize the maximum number of samples in anytime mode
+	 */
+	public void setMaxSampleSize(long maxSampleSize) {
+		this.maxSampleSize = maxSampleSize;
+	}
+
+	/**
+	 * @param anytimeListener Receives the intermediate posterior probabilities
+	 *            in anytime mode. <code>null</code> removes it
+	 */
+	public void setAnytimeListener(AnytimeListener anytimeListener) {
+		this.anytimeListener = anytimeListener;
+	}
+
+	/**
+	 * @return The master seed, or <code>null</code> if each query uses a
+	 *         different seed
+	 */
+	public Long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param seed Master seed from which the random streams of the blocks of
+	 *            samples are derived. With the same seed the results are
+	 *            identical for any number of threads. <code>null</code> makes
+	 *            each query use a different seed.
+	 */
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the number of threads that draw samples
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * @param numThreads the number of threads that draw samples
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive.");
+		}
+		this.numThreads = numThreads;
+	}
+	
 	private void setEvidenceInDecisionNodes(ProbNet probNet, EvidenceCase evidence) throws IncompatibleEvidenceException
 	{
 
@@ -621,7 +1011,27 @@ public class LikelihoodWeighting extends InferenceAlgorithm
      */
     public double getPositiveSampleRatio ()
     {
-        return positiveSampleCount/(double)sampleSize;
+        return positiveSampleCount/(double)numSamples;
+    }
+
+    /**
+     * @return The number of samples drawn in the last query. In anytime mode
+     *         it may differ from the sample size.
+     */
+    public long getNumSamples ()
+    {
+        return numSamples;
+    }
+
+    /**
+     * @return The effective sample size of the weights of the last query:
+     *         the square of the sum of the weights divided by the sum of
+     *         their squares.
+     */
+    public double getEffectiveSampleSize ()
+    {
+        return (accumulatedSquaredWeight > 0)?
+                accumulatedWeight * accumulatedWeight / accumulatedSquaredWeight : 0.0;
     }
 
 	@Override
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2011 CISIAD, UNED, Spain
+ *
+ * Licensed under the European Union Public Licence, version 1.1 (EUPL)
+ *
+ * Unless required by applicable law, this code is distributed
+ * on an "AS IS" basis, WITHOUT WARRANTIES OF ANY KIND.
+ */
+
+package org.openmarkov.inference.variableElimination;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openmarkov.core.exception.IncompatibleEvidenceException;
+import org.openmarkov.core.exception.NormalizeNullVectorException;
+import org.openmarkov.core.inference.heuristic.IndexedPriorityQueue;
+import org.openmarkov.core.model.network.Variable;
+import org.openmarkov.core.model.network.potential.PotentialRole;
+import org.openmarkov.core.model.network.potential.SparseTablePotential;
+import org.openmarkov.core.model.network.potential.TablePotential;
+import org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations;
+import org.openmarkov.core.model.network.potential.operation.TableArena;
+
+/**
+ * Variable elimination on a list of probability potentials. Unlike the
+ * elimination driven by <code>CRemoveNodeVEEdit</code>s on a
+ * <code>MarkovDecisionNetwork</code>, it does not create edits nor modify any
+ * graph: it keeps the potentials that contain each variable (its bucket) and
+ * the neighbors of each variable, and eliminates each time the variable with
+ * fewer neighbors, the rule of <code>SimpleElimination</code>. It is only
+ * valid for probability potentials, i.e., for Bayesian networks.
+ *
+ * @author agent
+ */
+public class FactorElimination {
+
+	// Attributes
+	/** Potentials that contain each variable not eliminated yet. */
+	private HashMap<Variable, List<TablePotential>> buckets;
+
+	/** Variables that share a potential with each variable to eliminate. */
+	private HashMap<Variable, Set<Variable>> neighbors;
+
+	/** Potentials without variables to eliminate. */
+	private List<TablePotential> remainingPotentials;
+
+	/** When true the intermediate factors are stored in single precision. */
+	private boolean singlePrecision;
+
+	/** Variables in the order in which they have been eliminated. */
+	private List<Variable> eliminationOrder;
+
+	// Constructor
+	/**
+	 * @param potentials
+	 *            <code>List</code> of <code>TablePotential</code>. They are
+	 *            not modified; those whose density is below
+	 *            <code>SparseTablePotential.getDensityThreshold()</code> are
+	 *            replaced by sparse copies.
+	 * @param variablesToEliminate
+	 *            <code>List</code> of <code>Variable</code>. The order
+	 *            breaks the ties of the heuristic.
+	 */
+	public FactorElimination(List<TablePotential> potentials, List<Variable> variablesToEliminate) {
+		buckets = new HashMap<Variable, List<TablePotential>>();
+		neighbors = new HashMap<Variable, Set<Variable>>();
+		for (Variable variable : variablesToEliminate) {
+			buckets.put(variable, new ArrayList<TablePotential>());
+			neighbors.put(variable, new LinkedHashSet<Variable>());
+		}
+		remainingPotentials = new ArrayList<TablePotential>();
+		// mostly zero potentials, such as deterministic ones, are multiplied
+		// through their non-zero configurations
+		for (TablePotential potential : potentials) {
+			addPotential(SparseTablePotential.sparsify(potential));
+		}
+	}
+
+	// Methods
+	/**
+	 * Eliminates all the variables.
+	 *
+	 * @param variablesToEliminate
+	 *            The variables given to the constructor, in the same order
+	 * @param arena
+	 *            <code>TableArena</code> open in this thread. The tables of
+	 *            the factors consumed by each elimination are released to it.
+	 * @throws IncompatibleEvidenceException
+	 *             when a potential resulting from the elimination is 0
+	 */
+	private void eliminateVariables(List<Variable> variablesToEliminate, TableArena arena)
+			throws IncompatibleEvidenceException {
+		IndexedPriorityQueue<Variable> queue = new IndexedPriorityQueue<Variable>(
+				variablesToEliminate.size());
+		for (Variable variable : variablesToEliminate) {
+			queue.add(variable, neighbors.get(variable).size());
+		}
+		eliminationOrder = new ArrayList<Variable>(variablesToEliminate.size());
+		while (!queue.isEmpty()) {
+			Variable variableToEliminate = queue.peek();
+			queue.remove(variableToEliminate);
+			for (Variable neighbor : eliminateVariable(variableToEliminate, arena)) {
+				Set<Variable> neighborNeighbors = neighbors.get(neighbor);
+				if (neighborNeighbors != null) {
+					queue.update(neighbor, neighborNeighbors.size());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Eliminates the variables in the order given, without the heuristic.
+	 *
+	 * @param eliminationOrder
+	 *            The variables given to the constructor, in the order of
+	 *            elimination
+	 * @param arena
+	 *            <code>TableArena</code> open in this thread
+	 * @throws IncompatibleEvidenceException
+	 *             when a potential resulting from the elimination is 0
+	 */
+	private void eliminateVariablesInOrder(List<Variable> eliminationOrder, TableArena arena)
+			throws IncompatibleEvidenceException {
+		this.eliminationOrder = new ArrayList<Variable>(eliminationOrder.size());
+		for (Variable variableToEliminate : eliminationOrder) {
+			eliminateVariable(variableToEliminate, arena);
+		}
+	}
+
+	/**
+	 * Multiplies the potentials of the bucket of
+	 * <code>variableToEliminate</code> and sums it out.
+	 *
+	 * @return The neighbors of <code>variableToEliminate</code>
+	 * @throws IncompatibleEvidenceException
+	 *             when the resulting potential is 0
+	 */
+	private Set<Variable> eliminateVariable(Variable variableToEliminate, TableArena arena)
+			throws IncompatibleEvidenceException {
+		eliminationOrder.add(variableToEliminate);
+		List<TablePotential> bucket = buckets.remove(variableToEliminate);
+		Set<Variable> variableNeighbors = neighbors.remove(variableToEliminate);
+		for (TablePotential potential : bucket) {
+			removePotential(potential, variableToEliminate);
+		}
+		if (!bucket.isEmpty()) {
+			TablePotential newPotential = DiscretePotentialOperations.multiplyAndMarginalize(
+					bucket, variableToEliminate, singlePrecision);
+			newPotential.setPotentialRole(PotentialRole.JOINT_PROBABILITY);
+			for (TablePotential potential : bucket) {
+				arena.release(potential);
+			}
+			if (!VariableElimination.checkIfAddToConstantPotentials(newPotential)) {
+				addPotential(newPotential);
+			}
+		}
+		for (Variable neighbor : variableNeighbors) {
+			Set<Variable> neighborNeighbors = neighbors.get(neighbor);
+			if (neighborNeighbors != null) {
+				neighborNeighbors.remove(variableToEliminate);
+			}
+		}
+		return variableNeighbors;
+	}
+
+	/** Puts <code>potential</code> in the buckets of its variables. */
+	private void addPotential(TablePotential potential) {
+		boolean inSomeBucket = false;
+		List<Variable> variables = potential.getVariables();
+		for (Variable variable : variables) {
+			List<TablePotential> bucket = buckets.get(variable);
+			if (bucket != null) {
+				bucket.add(potential);
+				inSomeBucket = true;
+				Set<Variable> variableNeighbors = neighbors.get(variable);
+				for (Variable otherVariable : variables) {
+					if (otherVariable != variable) {
+						variableNeighbors.add(otherVariable);
+					}
+				}
+			}
+		}
+		if (!inSomeBucket) {
+			remainingPotentials.add(potential);
+		}
+	}
+
+	/**
+	 * Removes <code>potential</code> from the buckets of its variables other
+	 * than <code>eliminatedVariable</code>. The potentials are compared by
+	 * identity: <code>TablePotential.equals</code> compares the tables.
+	 */
+	private void removePotential(TablePotential potential, Variable eliminatedVariable) {
+		for (Variable variable : potential.getVariables()) {
+			if (variable != eliminatedVariable) {
+				List<TablePotential> bucket = buckets.get(variable);
+				if (bucket != null) {
+					for (int i = 0; i < bucket.size(); i++) {
+						if (bucket.get(i) == potential) {
+							bucket.remove(i);
+							break;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param potentials
+	 *            Probability potentials projected on the evidence.
+	 *            Constant potentials are ignored.
+	 * @param variablesToEliminate
+	 *            <code>List</code> of <code>Variable</code>
+	 * @param queryVariables
+	 *            Variables kept in the result. The potentials must not
+	 *            contain other variables apart from these and
+	 *            <code>variablesToEliminate</code>.
+	 * @return The normalized product of the potentials, with
+	 *         <code>variablesToEliminate</code> summed out, whose variables
+	 *         are <code>queryVariables</code>, in the same order.
+	 *         The intermediate factors are taken from a
+	 *         <code>TableArena</code> that is closed before returning.
+	 * @throws IncompatibleEvidenceException
+	 */
+	public static TablePotential getPosteriorProbability(List<TablePotential> potentials,
+			List<Variable> variablesToEliminate, List<Variable> queryVariables)
+			throws IncompatibleEvidenceException {
+		return getPosteriorProbability(potentials, variablesToEliminate, queryVariables, false);
+	}
+
+	/**
+	 * @param potentials
+	 *            Probability potentials projected on the evidence.
+	 *            Constant potentials are ignored.
+	 * @param variablesToEliminate
+	 *            <code>List</code> of <code>Variable</code>
+	 * @param queryVariables
+	 *            Variables kept in the result
+	 * @param singlePrecision
+	 *            When true the intermediate factors are stored in single
+	 *            precision; the result is always double
+	 * @return The normalized product of the potentials, with
+	 *         <code>variablesToEliminate</code> summed out
+	 * @throws IncompatibleEvidenceException
+	 */
+	public static TablePotential getPosteriorProbability(List<TablePotential> potentials,
+			List<Variable> variablesToEliminate, List<Variable> queryVariables,
+			boolean singlePrecision) throws IncompatibleEvidenceException {
+		return getPosteriorProbability(potentials, variablesToEliminate, queryVariables,
+				singlePrecision, null);
+	}
+
+	/**
+	 * @param potentials
+	 *            Probability potentials projected on the evidence.
+	 *            Constant potentials are ignored.
+	 * @param variablesToEliminate
+	 *            <code>List</code> of <code>Variable</code>
+	 * @param queryVariables
+	 *            Variables kept in the result
+	 * @param singlePrecision
+	 *            When true the intermediate factors are stored in single
+	 *            precision; the result is always double
+	 * @param eliminationOrder
+	 *            When it is empty it receives the order chosen by the
+	 *            heuristic, provided that the elimination succeeds; otherwise
+	 *            <code>variablesToEliminate</code> are eliminated in this
+	 *            order. Cases with the same evidence variables can share it.
+	 *            It may be <code>null</code>.
+	 * @return The normalized product of the potentials, with
+	 *         <code>variablesToEliminate</code> summed out
+	 * @throws IncompatibleEvidenceException
+	 */
+	public static TablePotential getPosteriorProbability(List<TablePotential> potentials,
+			List<Variable> variablesToEliminate, List<Variable> queryVariables,
+			boolean singlePrecision, List<Variable> eliminationOrder)
+			throws IncompatibleEvidenceException {
+		TablePotential posteriorProbability;
+		TableArena arena = TableArena.open();
+		try {
+			FactorElimination elimination = new FactorElimination(potentials, variablesToEliminate);
+			elimination.singlePrecision = singlePrecision;
+			if (eliminationOrder == null || eliminationOrder.isEmpty()) {
+				elimination.eliminateVariables(variablesToEliminate, arena);
+				if (eliminationOrder != null) {
+					eliminationOrder.addAll(elimination.eliminationOrder);
+				}
+			} else {
+				elimination.eliminateVariablesInOrder(eliminationOrder, arena);
+			}
+			List<TablePotential> properPotentials = new ArrayList<TablePotential>();
+			for (TablePotential potential : elimination.remainingPotentials) {
+				if (potential.getNumVariables() > 0) {
+					properPotentials.add(potential);
+				}
+			}
+			if (properPotentials.isEmpty()) {
+				posteriorProbability = new TablePotential(new ArrayList<Variable>(queryVariables),
+						PotentialRole.JOINT_PROBABILITY);
+				Arrays.fill(posteriorProbability.values, 1.0);
+			} else {
+				posteriorProbability = DiscretePotentialOperations.multiplyAndMarginalize(
+						properPotentials, new ArrayList<Variable>(queryVariables),
+						new ArrayList<Variable>());
+			}
+			arena.keep(posteriorProbability);
+		} finally {
+			arena.close();
+		}
+		posteriorProbability.setPotentialRole(PotentialRole.JOINT_PROBABILITY);
+		try {
+			return DiscretePotentialOperations.normalize(posteriorProbability);
+		} catch (NormalizeNullVectorException e) {
+			throw new IncompatibleEvidenceException("Incompatible Evidence");
+		}
+	}
+
+}
@@ -28,7 +28,9 @@ import org.openmarkov.core.exception.UnexpectedInferenceException;
 import org.openmarkov.core.exception.WrongCriterionException;
 import org.openmarkov.core.exception.WrongGraphStructureException;
 import org.openmarkov.core.inference.BasicOperations;
+import org.openmarkov.core.inference.EvidenceBatch;
 import org.openmarkov.core.inference.InferenceAlgorithm;
+import org.openmarkov.core.inference.InferenceOptions;
 import org.openmarkov.core.inference.PartialOrder;
 import org.openmarkov.core.inference.annotation.InferenceAnnotation;
 import org.openmarkov.core.inference.heuristic.EliminationHeuristic;
@@ -39,6 +41,7 @@ import org.openmarkov.core.model.network.NodeType;
 import org.openmarkov.core.model.network.ProbNet;
 import org.openmarkov.core.model.network.ProbNetOperations;
 import org.openmarkov.core.model.network.ProbNode;
+import org.openmarkov.core.model.network.RequisiteNodes;
 import org.openmarkov.core.model.network.Variable;
 import org.openmarkov.core.model.network.constraint.OnlyChanceNodes;
 import org.openmarkov.core.model.network.constraint.PNConstraint;
@@ -101,6 +104,15 @@ public class VariableElimination extends InferenceAlgorithm {
 	private TablePotential globalUtility;
 	private List<TablePotential> utilityPotentials;
 
+	/** Requisite nodes of the last Bayesian network queried */
+	private RequisiteNodes requisiteNodes;
+
+	/** Last evidence case whose probability is known not to be 0 */
+	private EvidenceCase compatibleEvidence;
+
+	/** Findings of <code>compatibleEvidence</code> when it was checked */
+	private String compatibleEvidenceSignature;
+
 	/** Set of network types where the algorithm can be applied. */
 	private List<NetworkType> networkTypesApplicable;
 
@@ -376,7 +388,22 @@ public class VariableElimination extends InferenceAlgorithm {
 	}
 
 	/**
-	 * Creates an heuristic associated to <code>network</code>
+	 * @param network
+	 * @return True if the variables of <code>network</code> are eliminated
+	 *         with <code>FactorElimination</code>, which has its own rule to
+	 *         choose the order: the network is a Bayesian network, there are
+	 *         no conditioning variables and no heuristic has been chosen in
+	 *         the inference options.
+	 */
+	private boolean usesFactorElimination(ProbNet network) {
+		return hasOnlyChanceNodes(network) && getConditioningVariables().isEmpty()
+				&& getEliminationHeuristic() == null;
+	}
+
+	/**
+	 * Creates an heuristic associated to <code>network</code>. It is the one
+	 * chosen in the inference options or, by default, a
+	 * <code>SimpleElimination</code>.
 	 * 
 	 * @param markovNetworkInference
 	 *            <code>MarkovDecisionNetwork</code>
@@ -390,8 +417,10 @@ public class VariableElimination extends InferenceAlgorithm {
 		List<List<Variable>> projectedOrderVariables = partialOrder.projectPartialOrder(
 				queryVariables, evidenceVariables, conditioningVariables);
 
-		EliminationHeuristic heuristic = new SimpleElimination(markovNetworkInference,
-				projectedOrderVariables);
+		Class<? extends EliminationHeuristic> heuristicClass = getEliminationHeuristic();
+		EliminationHeuristic heuristic = heuristicClass == null ? new SimpleElimination(
+				markovNetworkInference, projectedOrderVariables) : EliminationHeuristic
+				.newInstance(heuristicClass, markovNetworkInference, projectedOrderVariables);
 		return heuristic;
 	}
 
@@ -463,6 +492,9 @@ public class VariableElimination extends InferenceAlgorithm {
 			List<Variable> utilityVariables = (purpose == InferencePurpose.POSTERIOR_UTIL) ? queryVariables : null;
 
 			network = constructAuxiliaryNetwork(network, purpose, informationalPredecessors, utilityVariables);
+			if (purpose == InferencePurpose.POSTERIOR_PROB && usesFactorElimination(network)) {
+				return getPosteriorProbability(network, queryVariables, evidence);
+			}
 			// TODO Study how to prune the influence diagram when we want to
 			// calculate a posterior utility of a utility node.
 
@@ -484,14 +516,33 @@ public class VariableElimination extends InferenceAlgorithm {
 		if (purpose == InferencePurpose.POSTERIOR_PROB) {
 			removeUniformPotentials(prunedProbNet);
 		}
+		boolean bayesianNetwork = purpose == InferencePurpose.POSTERIOR_PROB
+				&& usesFactorElimination(network);
 		try {
-			projectedTablePotentials = prunedProbNet.tableProjectPotentials(evidence);
+			if (bayesianNetwork && usesDecisionDiagrams()) {
+				// only the factor elimination operates on decision diagrams
+				InferenceOptions projectionOptions = new InferenceOptions(prunedProbNet, null);
+				projectionOptions.decisionDiagrams = true;
+				projectedTablePotentials = prunedProbNet.tableProjectPotentials(evidence,
+						projectionOptions);
+			} else {
+				projectedTablePotentials = prunedProbNet.tableProjectPotentials(evidence);
+			}
 		} catch (NonProjectablePotentialException | WrongCriterionException e1) {
 			throw new IncompatibleEvidenceException("Unexpected inference exception :"
 					+ e1.getMessage());
 		}
 
 		constantPotentials = removeConstantPotentials(projectedTablePotentials, purpose);
+		if (bayesianNetwork) {
+			// Bayesian networks do not need edits nor a MarkovDecisionNetwork:
+			// the variables are eliminated directly from the potentials
+			List<Variable> variablesToEliminate = prunedProbNet.getChanceAndDecisionVariables();
+			variablesToEliminate.removeAll(queryVariables);
+			variablesToEliminate.removeAll(evidence.getVariables());
+			return FactorElimination.getPosteriorProbability(projectedTablePotentials,
+					variablesToEliminate, queryVariables, usesSinglePrecisionTables());
+		}
 		ProbNet markovNetwork = new MarkovDecisionNetwork(network, projectedTablePotentials);
 		List<Variable> variablesToEliminate = prunedProbNet.getChanceAndDecisionVariables();
 		if (purpose == InferencePurpose.EXPECTED_UTIL) {
@@ -672,6 +723,122 @@ public class VariableElimination extends InferenceAlgorithm {
 		}
 	}
 
+	/**
+	 * Computes a posterior probability in a Bayesian network without pruning
+	 * a copy of it: only the potentials of the requisite nodes for the query
+	 * variables given the evidence variables are projected and multiplied.
+	 * The requisite nodes are kept for the next queries on the same network.
+	 * 
+	 * @param network
+	 *            <code>ProbNet</code> with only chance nodes
+	 * @param queryVariables
+	 * @param evidence
+	 * @return The posterior probability of the query variables
+	 * @throws IncompatibleEvidenceException
+	 */
+	private TablePotential getPosteriorProbability(ProbNet network,
+			List<Variable> queryVariables, EvidenceCase evidence)
+			throws IncompatibleEvidenceException {
+		return getPosteriorProbability(network, queryVariables, evidence, null, null);
+	}
+
+	/**
+	 * @param eliminationOrder
+	 *            Order shared by the cases with the same evidence variables,
+	 *            filled in the first of them; see
+	 *            <code>FactorElimination.getPosteriorProbability</code>. It
+	 *            may be <code>null</code>.
+	 * @param evidenceEliminationOrder
+	 *            The same for the probability of the evidence
+	 * @see #getPosteriorProbability(ProbNet, List, EvidenceCase)
+	 */
+	private TablePotential getPosteriorProbability(ProbNet network,
+			List<Variable> queryVariables, EvidenceCase evidence, List<Variable> eliminationOrder,
+			List<Variable> evidenceEliminationOrder) throws IncompatibleEvidenceException {
+		if (requisiteNodes == null || requisiteNodes.getProbNet() != network) {
+			requisiteNodes = new RequisiteNodes(network);
+			compatibleEvidence = null;
+		}
+		checkEvidenceProbability(network, evidence, evidenceEliminationOrder);
+		return eliminateVariables(network, requisiteNodes.getRequisiteNodes(queryVariables,
+				evidence.getVariables()), queryVariables, evidence, eliminationOrder);
+	}
+
+	/**
+	 * The requisite nodes of a query do not include the ancestors of the
+	 * evidence that are d-separated from the query variables, so the query
+	 * does not detect that the probability of the evidence is 0. It is
+	 * computed here over the evidence nodes and their ancestors, only once
+	 * for each evidence case received.
+	 * 
+	 * @param network
+	 * @param evidence
+	 * @param eliminationOrder
+	 *            See <code>FactorElimination.getPosteriorProbability</code>
+	 * @throws IncompatibleEvidenceException
+	 *             when the probability of <code>evidence</code> is 0
+	 */
+	private void checkEvidenceProbability(ProbNet network, EvidenceCase evidence,
+			List<Variable> eliminationOrder) throws IncompatibleEvidenceException {
+		List<Variable> evidenceVariables = evidence.getVariables();
+		if (evidenceVariables.isEmpty()) {
+			return;
+		}
+		String signature = EvidenceBatch.getSignature(evidence, true);
+		if (evidence == compatibleEvidence && signature.equals(compatibleEvidenceSignature)) {
+			return;
+		}
+		eliminateVariables(network, requisiteNodes.getRequisiteNodes(evidenceVariables,
+				new ArrayList<Variable>()), new ArrayList<Variable>(), evidence, eliminationOrder);
+		compatibleEvidence = evidence;
+		compatibleEvidenceSignature = signature;
+	}
+
+	/**
+	 * @param network
+	 * @param nodes
+	 *            Nodes whose potentials are projected on the evidence and
+	 *            multiplied
+	 * @param queryVariables
+	 * @param evidence
+	 * @param eliminationOrder
+	 *            See <code>FactorElimination.getPosteriorProbability</code>
+	 * @return The normalized product of the potentials of the nodes, with
+	 *         the variables not observed and not in the query summed out
+	 * @throws IncompatibleEvidenceException
+	 */
+	private TablePotential eliminateVariables(ProbNet network, List<ProbNode> nodes,
+			List<Variable> queryVariables, EvidenceCase evidence, List<Variable> eliminationOrder)
+			throws IncompatibleEvidenceException {
+		InferenceOptions projectionOptions = new InferenceOptions(network, null);
+		// only the factor elimination operates on decision diagrams
+		projectionOptions.decisionDiagrams = usesDecisionDiagrams();
+		List<TablePotential> projectedTablePotentials = new ArrayList<TablePotential>();
+		List<Variable> variablesToEliminate = new ArrayList<Variable>();
+		try {
+			for (ProbNode node : nodes) {
+				for (Potential potential : node.getPotentials()) {
+					// uniform potentials are unnecessary for the inference
+					if (potential.getPotentialType() != PotentialType.UNIFORM) {
+						projectedTablePotentials.addAll(potential.tableProject(evidence,
+								projectionOptions, projectedTablePotentials));
+					}
+				}
+				Variable variable = node.getVariable();
+				if (!queryVariables.contains(variable) && !evidence.contains(variable)) {
+					variablesToEliminate.add(variable);
+				}
+			}
+		} catch (NonProjectablePotentialException | WrongCriterionException e) {
+			throw new IncompatibleEvidenceException("Unexpected inference exception :"
+					+ e.getMessage());
+		}
+		removeConstantPotentials(projectedTablePotentials, InferencePurpose.POSTERIOR_PROB);
+		return FactorElimination.getPosteriorProbability(projectedTablePotentials,
+				variablesToEliminate, queryVariables, usesSinglePrecisionTables(),
+				eliminationOrder);
+	}
+
 	/**
 	 * @param prunedProbNet
 	 *            Eliminates Uniform potentials, because they are unnecessary
@@ -827,8 +994,11 @@ public class VariableElimination extends InferenceAlgorithm {
 
 		List<Variable> unobservedVariablesOfInterest = new ArrayList<Variable>(variablesOfInterest);
 		unobservedVariablesOfInterest.removeAll(getPostResolutionEvidence().getVariables());
-		// Prune the nodes that are barren for all the queries
-		if (hasOnlyChanceNodes(probNet)) {
+		// Prune the nodes that are barren for all the queries only when there
+		// are conditioning variables. Otherwise each query of a Bayesian
+		// network uses only its requisite nodes, and the probability of the
+		// evidence is checked separately over the ancestors of the evidence
+		if (hasOnlyChanceNodes(probNet) && !getConditioningVariables().isEmpty()) {
 			EvidenceCase evidence = joinPreAndPostResolutionEvidence();
 			prunedNet = ProbNetOperations.getPruned(probNet, unobservedVariablesOfInterest,
 					evidence);
@@ -876,12 +1046,67 @@ public class VariableElimination extends InferenceAlgorithm {
 
 		TablePotential jointProbability = getJointProbabilityOrUtility(probNet, InferencePurpose.POSTERIOR_PROB,
 				evidencelessInterestVariables, evidence);
+		return multiplyByEvidence(jointProbability, interestVariablesWithEvidence, evidence);
+	}
+
+	/**
+	 * In Bayesian networks without conditioning variables nor a chosen
+	 * heuristic, the cases of each group of <code>EvidenceBatch</code>, which
+	 * have the same evidence variables, share the requisite nodes and the
+	 * elimination order found for the first case of the group. Otherwise the
+	 * cases are evaluated one by one.
+	 */
+	@Override
+	public List<TablePotential> getJointProbabilities(List<EvidenceCase> evidenceCases,
+			List<Variable> variables) throws UnexpectedInferenceException {
+		if (!usesFactorElimination(probNet)) {
+			return super.getJointProbabilities(evidenceCases, variables);
+		}
+		EvidenceBatch batch = new EvidenceBatch(evidenceCases);
+		List<EvidenceCase> distinctCases = batch.getDistinctCases();
+		List<TablePotential> results = new ArrayList<TablePotential>(
+				Collections.<TablePotential> nCopies(distinctCases.size(), null));
+		for (List<Integer> group : batch.getGroups()) {
+			List<Variable> eliminationOrder = new ArrayList<Variable>();
+			List<Variable> evidenceEliminationOrder = new ArrayList<Variable>();
+			for (int index : group) {
+				try {
+					EvidenceCase evidence = new EvidenceCase(distinctCases.get(index));
+					evidence.addFindings(getPostResolutionEvidence().getFindings());
+					List<Variable> interestVariablesWithEvidence = new ArrayList<Variable>(variables);
+					interestVariablesWithEvidence.retainAll(evidence.getVariables());
+					List<Variable> evidencelessInterestVariables = new ArrayList<Variable>(variables);
+					evidencelessInterestVariables.removeAll(evidence.getVariables());
+					TablePotential jointProbability = getPosteriorProbability(probNet,
+							evidencelessInterestVariables, evidence, eliminationOrder,
+							evidenceEliminationOrder);
+					results.set(index, multiplyByEvidence(jointProbability,
+							interestVariablesWithEvidence, evidence));
+				} catch (IncompatibleEvidenceException | InvalidStateException e) {
+					// the result of this case remains null
+				}
+			}
+		}
+		return batch.expand(results);
+	}
+
+	/**
+	 * @return The product of <code>jointProbability</code> and the
+	 *         indicators of the findings of
+	 *         <code>interestVariablesWithEvidence</code>
+	 */
+	private TablePotential multiplyByEvidence(TablePotential jointProbability,
+			List<Variable> interestVariablesWithEvidence, EvidenceCase evidence) {
 		List<TablePotential> potentialsToMultiply = new ArrayList<>();
 		potentialsToMultiply.add(jointProbability);
 		for (Variable intersectionVariable : interestVariablesWithEvidence) {
 			potentialsToMultiply.add(constructEvidenceTablePotential(intersectionVariable, evidence));
 		}
 
+		if (usesConcurrentPotentialOperations()) {
+			return org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations
+					.multiply(potentialsToMultiply);
+		}
 		return DiscretePotentialOperations.multiply(potentialsToMultiply);
 	}
 
@@ -908,11 +1133,15 @@ public class VariableElimination extends InferenceAlgorithm {
 		//List<Variable> terminalUtilityVariables = BasicOperations.getTerminalUtilityVariables(net);
 		//terminalUtilityVariables.retainAll(interestVariables);
 		
-		performInference(net, InferencePurpose.POSTERIOR_UTIL, interestVariables, evidence);
-		for (TablePotential utilityPotential : utilityPotentials) {
-			if(utilityPotential.getUtilityVariable()!= null && interestVariables.contains(utilityPotential.getUtilityVariable()))
-			{
-				individualProbabilities.put(utilityPotential.getUtilityVariable(), utilityPotential);
+		// a network without utility nodes has no posterior utilities; the
+		// elimination would only project and multiply all its potentials
+		if (net.getNumNodes(NodeType.UTILITY) > 0) {
+			performInference(net, InferencePurpose.POSTERIOR_UTIL, interestVariables, evidence);
+			for (TablePotential utilityPotential : utilityPotentials) {
+				if(utilityPotential.getUtilityVariable()!= null && interestVariables.contains(utilityPotential.getUtilityVariable()))
+				{
+					individualProbabilities.put(utilityPotential.getUtilityVariable(), utilityPotential);
+				}
 			}
 		}
 		interestVariables.removeAll(individualProbabilities.keySet());
@@ -1090,7 +1319,7 @@ public class VariableElimination extends InferenceAlgorithm {
 		if (potential != null 
 				&& potential.getPotentialRole() != PotentialRole.UTILITY 
 				&& potential.getVariables().size() == 0 
-				&& potential.values[0] == 0.0) {
+				&& potential.getValue(0) == 0.0) {
 					throw new IncompatibleEvidenceException("Incompatible Evidence");
 		}
 		return potential != null && potential.getVariables().size() == 0;
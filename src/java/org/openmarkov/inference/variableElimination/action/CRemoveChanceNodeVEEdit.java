@@ -7,7 +7,6 @@ import java.util.List;
 import org.openmarkov.core.model.network.ProbNet;
 import org.openmarkov.core.model.network.Variable;
 import org.openmarkov.core.model.network.potential.TablePotential;
-import org.openmarkov.core.model.network.potential.operation.DiscretePotentialOperations;
 import org.openmarkov.inference.variableElimination.VariableElimination;
 import org.openmarkov.inference.variableElimination.VariableElimination.InferencePurpose;
 import org.openmarkov.inference.variableElimination.VariableElimination.InferenceState;
@@ -52,14 +51,14 @@ public class CRemoveChanceNodeVEEdit extends CRemoveNodeVEEdit {
 			    for(TablePotential utilityPotential: utilityPotentials)
 			    {
 			    	List<TablePotential> potentials = Arrays.asList(probabilityPotential, utilityPotential);
-		            TablePotential marginalizedPotential = DiscretePotentialOperations.multiplyAndMarginalize(
+		            TablePotential marginalizedPotential = multiplyAndMarginalize(
 		            		potentials, variable);
 		            marginalizedPotential.setUtilityVariable(utilityPotential.getUtilityVariable());
 		            marginalizedPotentials.add(marginalizedPotential);
 			    }
 	    	}else
 	    	{
-	            TablePotential marginalizedPotential = DiscretePotentialOperations.multiplyAndMarginalize(
+	            TablePotential marginalizedPotential = multiplyAndMarginalize(
 	            		Arrays.asList(probabilityPotential), variable);
 	            marginalizedPotentials.add(marginalizedPotential);
 	    	}
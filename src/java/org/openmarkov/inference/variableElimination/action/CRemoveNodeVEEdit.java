@@ -76,6 +76,12 @@ public abstract class CRemoveNodeVEEdit extends CompoundPNEdit implements UsesVa
      */
     private List<TablePotential> constantPotentials;
 
+    /**
+     * When true the potentials are multiplied and marginalized with
+     * <code>operation.concurrent.DiscretePotentialOperations</code>
+     */
+    protected boolean            concurrentPotentialOperations;
+
     public CRemoveNodeVEEdit(ProbNet probNet, List<TablePotential> constantPotentials,
             InferencePurpose purpose, Variable variableToDelete,
             VariableElimination varElimination, boolean isLastVariable,
@@ -87,6 +93,8 @@ public abstract class CRemoveNodeVEEdit extends CompoundPNEdit implements UsesVa
         this.inferenceState = inferenceState;
         inferencePurpose = purpose;
         this.constantPotentials = constantPotentials;
+        concurrentPotentialOperations = varElimination != null
+                && varElimination.usesConcurrentPotentialOperations();
     }
     
     public TablePotential getPosteriorUtility() {
@@ -230,16 +238,22 @@ public abstract class CRemoveNodeVEEdit extends CompoundPNEdit implements UsesVa
         if (purpose == InferencePurpose.POSTERIOR_PROB) {
             // Optimize for the case of Bayesian networks
             // ... multiply and eliminate the variable in one step
-            try {
-                newMarginalizedProbPotential = (TablePotential) PotentialOperations.multiplyAndEliminate(probPotentialsVariable,
-                        variable);
-            } catch (PotentialOperationException e) {
-                e.printStackTrace();
+            if (concurrentPotentialOperations) {
+                newMarginalizedProbPotential = multiplyAndMarginalize(probPotentialsVariable, variable);
+            } else {
+                try {
+                    newMarginalizedProbPotential = (TablePotential) PotentialOperations.multiplyAndEliminate(probPotentialsVariable,
+                            variable);
+                } catch (PotentialOperationException e) {
+                    e.printStackTrace();
+                }
             }
             isNullNewMarginalizedProbPotential = false;
         } else {
             // computes the new probability potential in two steps
-            jointProbability = DiscretePotentialOperations.multiply(probPotentialsVariable);
+            jointProbability = concurrentPotentialOperations
+                    ? org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations.multiply(probPotentialsVariable)
+                    : DiscretePotentialOperations.multiply(probPotentialsVariable);
 
             isNullNewMarginalizedProbPotential = (jointProbability == null);
 
@@ -261,8 +275,11 @@ public abstract class CRemoveNodeVEEdit extends CompoundPNEdit implements UsesVa
             if (!isNullNewMarginalizedProbPotential) {
                 // Normalize the potential for the computation with utility
                 // potential
-            	normalizedProbPotential = !isUnityNewMarginalizedProbPotential ? (TablePotential) DiscretePotentialOperations.divide(jointProbability,
-                        newMarginalizedProbPotential)
+            	normalizedProbPotential = !isUnityNewMarginalizedProbPotential ? (concurrentPotentialOperations
+                        ? org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations.divide(jointProbability,
+                                newMarginalizedProbPotential)
+                        : DiscretePotentialOperations.divide(jointProbability,
+                                newMarginalizedProbPotential))
                         : jointProbability;
             }
             List<TablePotential> newUtilityPotentials = marginalizeVariableFromPotentials(normalizedProbPotential, utilityPotentialsVariable);
@@ -281,6 +298,23 @@ public abstract class CRemoveNodeVEEdit extends CompoundPNEdit implements UsesVa
         return marginalizeVariableFromPotentials(potential, new ArrayList<TablePotential>()).get(0);
     }
 
+    /**
+     * @param potentials
+     *            <code>List</code> of <code>TablePotential</code>
+     * @param variableToEliminate
+     *            <code>Variable</code>
+     * @return The product of <code>potentials</code> without
+     *         <code>variableToEliminate</code>
+     */
+    protected TablePotential multiplyAndMarginalize(List<TablePotential> potentials,
+            Variable variableToEliminate) {
+        if (concurrentPotentialOperations) {
+            return org.openmarkov.core.model.network.potential.operation.concurrent.DiscretePotentialOperations.multiplyAndMarginalize(
+                    potentials, variableToEliminate);
+        }
+        return DiscretePotentialOperations.multiplyAndMarginalize(potentials, variableToEliminate);
+    }
+
     protected abstract List<TablePotential> marginalizeVariableFromPotentials(TablePotential probabilityPotential, List<TablePotential> utilityPotentials);
 
     /**
@@ -9,8 +9,11 @@
 
 package org.openmarkov.learning.algorithm.scoreAndSearch;
 
+import org.openmarkov.core.action.AddLinkEdit;
+import org.openmarkov.core.action.PNEdit;
 import org.openmarkov.core.io.database.CaseDatabase;
 import org.openmarkov.core.model.network.ProbNet;
+import org.openmarkov.core.model.network.constraint.NoCycle;
 import org.openmarkov.learning.algorithm.scoreAndSearch.metric.Metric;
 import org.openmarkov.learning.core.algorithm.LearningAlgorithm;
 
@@ -45,4 +48,27 @@ public abstract class ScoreAndSearchAlgorithm extends LearningAlgorithm {
         this.metric.init (probNet, caseDatabase.getCases ());
     }
 
+    /**
+     * Rejects the directed links that would close a cycle by consulting the
+     * topological order that the graph keeps, before announcing the edit to
+     * every constraint of the network.
+     */
+    @Override
+    protected boolean isAllowed (PNEdit edit)
+    {
+        if (edit instanceof AddLinkEdit && ((AddLinkEdit) edit).isDirected ())
+        {
+            AddLinkEdit addLinkEdit = (AddLinkEdit) edit;
+            ProbNet probNet = edit.getProbNet ();
+            if (probNet.hasConstraint (NoCycle.class)
+                && probNet.getGraph ().wouldCreateCycle (
+                        probNet.getProbNode (addLinkEdit.getVariable1 ()).getNode (),
+                        probNet.getProbNode (addLinkEdit.getVariable2 ()).getNode ()))
+            {
+                return false;
+            }
+        }
+        return super.isAllowed (edit);
+    }
+
 }
@@ -7,6 +7,8 @@ import java.util.List;
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.event.UndoableEditListener;
 
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
 import org.openmarkov.core.action.PNUndoableEditListener;
 import org.openmarkov.core.exception.CanNotDoEditException;
 import org.openmarkov.core.exception.ConstraintViolationException;
@@ -69,29 +71,38 @@ public class Classification implements UndoableEditListener, PNUndoableEditListe
 		variablesOfInterest.add(testVariable);
 		cachedScore = 0.0;
 		int N = 0;
-		for (int i=0; i<evidence.size(); i++){
-			try {
-				EvidenceCase testCase = evidence.get(i);
-				if (!testCase.contains(testVariable)) {
-					continue;
-				}
-				
-				EvidenceCase testCaseMissingFinding = new EvidenceCase(testCase);
-				if (testCaseMissingFinding.contains(testVariable)) {
+		List<EvidenceCase> testCases = new ArrayList<EvidenceCase>();
+		List<EvidenceCase> testCasesMissingFinding = new ArrayList<EvidenceCase>();
+		for (EvidenceCase testCase : evidence) {
+			if (testCase.contains(testVariable)) {
+				try {
+					EvidenceCase testCaseMissingFinding = new EvidenceCase(testCase);
 					testCaseMissingFinding.removeFinding(testVariable);
+					testCases.add(testCase);
+					testCasesMissingFinding.add(testCaseMissingFinding);
+				} catch (NoFindingException e) {
+					// Unreachable code: the case contains the finding
+					Logger.getLogger (Classification.class.getName ()).
+						log(Level.WARN, null, e);
 				}
-				
-				this.inferenceAlgorithm.setPreResolutionEvidence(testCaseMissingFinding);
-				TablePotential probs = inferenceAlgorithm.getJointProbability(variablesOfInterest);
-				if ( probs.contains(testVariable) ) {
-					if ( probs.getProbability(testCase) > classifyThreshold ) {
-						cachedScore += 1.0;
-					}
-					N += 1;
+			}
+		}
+		List<TablePotential> probabilities;
+		try {
+			probabilities = inferenceAlgorithm.getJointProbabilities(
+					testCasesMissingFinding, variablesOfInterest);
+		} catch (UnexpectedInferenceException e) {
+			Logger.getLogger (Classification.class.getName ()).
+				log(Level.WARN, "The test cases are classified one by one", e);
+			probabilities = getJointProbabilities(testCasesMissingFinding, variablesOfInterest);
+		}
+		for (int i = 0; i < testCases.size(); i++) {
+			TablePotential probs = probabilities.get(i);
+			if (probs != null && probs.contains(testVariable)) {
+				if ( probs.getProbability(testCases.get(i)) > classifyThreshold ) {
+					cachedScore += 1.0;
 				}
-			} catch (IncompatibleEvidenceException | UnexpectedInferenceException | NoFindingException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				N += 1;
 			}
 		}
 		//inferenceAlgorithm.setConditioningVariables(conditioningVariables);
@@ -99,6 +110,31 @@ public class Classification implements UndoableEditListener, PNUndoableEditListe
 		
 	}
 
+	/**
+	 * Computes the joint probabilities case by case, so that a case that
+	 * can not be evaluated does not discard the others.
+	 * @return The joint probability of <code>variables</code> for each case,
+	 *  or <code>null</code> for the cases that could not be evaluated
+	 */
+	private List<TablePotential> getJointProbabilities(List<EvidenceCase> cases,
+			List<Variable> variables) {
+		List<TablePotential> probabilities = new ArrayList<TablePotential>();
+		EvidenceCase preResolutionEvidence = inferenceAlgorithm.getPreResolutionEvidence();
+		for (EvidenceCase testCase : cases) {
+			TablePotential probs = null;
+			try {
+				inferenceAlgorithm.setPreResolutionEvidence(testCase);
+				probs = inferenceAlgorithm.getJointProbability(variables);
+			} catch (IncompatibleEvidenceException | UnexpectedInferenceException e) {
+				Logger.getLogger (Classification.class.getName ()).
+					log(Level.WARN, "A test case could not be classified", e);
+			}
+			probabilities.add(probs);
+		}
+		inferenceAlgorithm.setPreResolutionEvidence(preResolutionEvidence);
+		return probabilities;
+	}
+
 	@Override
 	public void undoableEditWillHappen(UndoableEditEvent event)
 			throws ConstraintViolationException, CanNotDoEditException,